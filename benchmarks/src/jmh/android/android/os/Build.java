@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/** JVM replacement for the framework class, describing a generic recent device. */
+public final class Build {
+
+  public static final String DEVICE = "jvm";
+  public static final String MANUFACTURER = "jvm";
+  public static final String MODEL = "jvm";
+
+  /** JVM replacement for the framework class. */
+  public static final class VERSION {
+
+    public static final int SDK_INT = VERSION_CODES.R;
+    public static final String RELEASE = "11";
+
+    private VERSION() {}
+  }
+
+  /** JVM replacement for the framework class. */
+  public static final class VERSION_CODES {
+
+    public static final int M = 23;
+    public static final int N = 24;
+    public static final int R = 30;
+
+    private VERSION_CODES() {}
+  }
+
+  private Build() {}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.text;
+
+import androidx.annotation.Nullable;
+
+/** JVM replacement for the framework class, implementing the methods used by the library. */
+public final class TextUtils {
+
+  private static final String[] EMPTY_STRING_ARRAY = new String[0];
+
+  public static boolean isEmpty(@Nullable CharSequence str) {
+    return str == null || str.length() == 0;
+  }
+
+  public static boolean equals(@Nullable CharSequence a, @Nullable CharSequence b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length() != b.length()) {
+      return false;
+    }
+    if (a instanceof String && b instanceof String) {
+      return a.equals(b);
+    }
+    for (int i = 0; i < a.length(); i++) {
+      if (a.charAt(i) != b.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static String[] split(String text, String expression) {
+    return text.isEmpty() ? EMPTY_STRING_ARRAY : text.split(expression, -1);
+  }
+
+  private TextUtils() {}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.util;
+
+import androidx.annotation.Nullable;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * JVM replacement for the framework class, which discards all messages so that extractors logging
+ * warnings are measured like any others.
+ */
+public final class Log {
+
+  public static final int VERBOSE = 2;
+  public static final int DEBUG = 3;
+  public static final int INFO = 4;
+  public static final int WARN = 5;
+  public static final int ERROR = 6;
+  public static final int ASSERT = 7;
+
+  private Log() {}
+
+  public static int v(@Nullable String tag, String msg) {
+    return 0;
+  }
+
+  public static int v(@Nullable String tag, @Nullable String msg, @Nullable Throwable tr) {
+    return 0;
+  }
+
+  public static int d(@Nullable String tag, String msg) {
+    return 0;
+  }
+
+  public static int d(@Nullable String tag, @Nullable String msg, @Nullable Throwable tr) {
+    return 0;
+  }
+
+  public static int i(@Nullable String tag, String msg) {
+    return 0;
+  }
+
+  public static int i(@Nullable String tag, @Nullable String msg, @Nullable Throwable tr) {
+    return 0;
+  }
+
+  public static int w(@Nullable String tag, String msg) {
+    return 0;
+  }
+
+  public static int w(@Nullable String tag, @Nullable String msg, @Nullable Throwable tr) {
+    return 0;
+  }
+
+  public static int w(@Nullable String tag, @Nullable Throwable tr) {
+    return 0;
+  }
+
+  public static int e(@Nullable String tag, String msg) {
+    return 0;
+  }
+
+  public static int e(@Nullable String tag, @Nullable String msg, @Nullable Throwable tr) {
+    return 0;
+  }
+
+  public static int wtf(@Nullable String tag, @Nullable String msg) {
+    return 0;
+  }
+
+  public static int wtf(@Nullable String tag, @Nullable String msg, @Nullable Throwable tr) {
+    return 0;
+  }
+
+  public static int println(int priority, @Nullable String tag, String msg) {
+    return 0;
+  }
+
+  public static boolean isLoggable(@Nullable String tag, int level) {
+    return false;
+  }
+
+  public static String getStackTraceString(@Nullable Throwable tr) {
+    if (tr == null) {
+      return "";
+    }
+    StringWriter stringWriter = new StringWriter();
+    PrintWriter printWriter = new PrintWriter(stringWriter);
+    tr.printStackTrace(printWriter);
+    printWriter.flush();
+    return stringWriter.toString();
+  }
+}
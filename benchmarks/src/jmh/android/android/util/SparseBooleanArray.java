@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.util;
+
+import java.util.Arrays;
+
+/** JVM replacement for the framework class, with the same binary search based implementation. */
+public class SparseBooleanArray {
+
+  private int[] keys;
+  private boolean[] values;
+  private int size;
+
+  public SparseBooleanArray() {
+    this(10);
+  }
+
+  public SparseBooleanArray(int initialCapacity) {
+    keys = new int[initialCapacity];
+    values = new boolean[initialCapacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean get(int key) {
+    return get(key, false);
+  }
+
+  public boolean get(int key, boolean valueIfKeyNotFound) {
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    return index < 0 ? valueIfKeyNotFound : values[index];
+  }
+
+  public void put(int key, boolean value) {
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+    index = ~index;
+    if (size == keys.length) {
+      int newCapacity = Math.max(4, size * 2);
+      keys = Arrays.copyOf(keys, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    keys[index] = key;
+    values[index] = value;
+    size++;
+  }
+
+  public void append(int key, boolean value) {
+    put(key, value);
+  }
+
+  public void delete(int key) {
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    if (index >= 0) {
+      removeAt(index);
+    }
+  }
+
+  public void removeAt(int index) {
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(values, index + 1, values, index, size - index - 1);
+    size--;
+  }
+
+  public int keyAt(int index) {
+    return keys[index];
+  }
+
+  public boolean valueAt(int index) {
+    return values[index];
+  }
+
+  public void setValueAt(int index, boolean value) {
+    values[index] = value;
+  }
+
+  public int indexOfKey(int key) {
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    return index < 0 ? -1 : index;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+}
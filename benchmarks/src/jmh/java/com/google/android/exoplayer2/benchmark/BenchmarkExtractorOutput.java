@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmark;
+
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link ExtractorOutput} that copies sample data into a reusable buffer, as a sample queue
+ * copies it into allocations, and otherwise only counts what it receives.
+ */
+/* package */ final class BenchmarkExtractorOutput implements ExtractorOutput {
+
+  private static final int SCRATCH_SIZE = 64 * 1024;
+
+  private final Map<Integer, BenchmarkTrackOutput> trackOutputs;
+  private final byte[] scratch;
+
+  private long sampleCount;
+  private long sampleBytes;
+  private long sampleTimeChecksum;
+
+  public BenchmarkExtractorOutput() {
+    trackOutputs = new HashMap<>();
+    scratch = new byte[SCRATCH_SIZE];
+  }
+
+  /** Returns a value depending on all the sample data and metadata received. */
+  public long getChecksum() {
+    return sampleCount * 31 + sampleBytes * 17 + sampleTimeChecksum;
+  }
+
+  @Override
+  public TrackOutput track(int id, @C.TrackType int type) {
+    @Nullable BenchmarkTrackOutput trackOutput = trackOutputs.get(id);
+    if (trackOutput == null) {
+      trackOutput = new BenchmarkTrackOutput();
+      trackOutputs.put(id, trackOutput);
+    }
+    return trackOutput;
+  }
+
+  @Override
+  public void endTracks() {}
+
+  @Override
+  public void seekMap(SeekMap seekMap) {}
+
+  private final class BenchmarkTrackOutput implements TrackOutput {
+
+    @Override
+    public void format(Format format) {}
+
+    @Override
+    public int sampleData(
+        DataReader input, int length, boolean allowEndOfInput, @SampleDataPart int sampleDataPart)
+        throws IOException {
+      int bytesRead = input.read(scratch, /* offset= */ 0, min(length, SCRATCH_SIZE));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        if (allowEndOfInput) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        throw new EOFException();
+      }
+      sampleBytes += bytesRead;
+      return bytesRead;
+    }
+
+    @Override
+    public void sampleData(
+        ParsableByteArray data, int length, @SampleDataPart int sampleDataPart) {
+      while (length > 0) {
+        int bytesToRead = min(length, SCRATCH_SIZE);
+        data.readBytes(scratch, /* offset= */ 0, bytesToRead);
+        sampleBytes += bytesToRead;
+        length -= bytesToRead;
+      }
+    }
+
+    @Override
+    public void sampleMetadata(
+        long timeUs,
+        @C.BufferFlags int flags,
+        int size,
+        int offset,
+        @Nullable CryptoData cryptoData) {
+      sampleCount++;
+      sampleTimeChecksum += timeUs ^ flags;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmark;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.flac.FlacExtractor;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the extractors, extracting a whole file from memory per operation.
+ *
+ * <p>The {@code megabytes} secondary result is the extraction throughput in MB/s of input. Run
+ * with the {@code gc} profiler, {@code gc.alloc.rate.norm} is the number of bytes allocated per
+ * extracted file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ExtractorBenchmark {
+
+  /** The file to extract, and the extractor used, as {@code <extractor>:<asset path>}. */
+  @Param({
+    "ts:media/ts/bbb_2500ms.ts",
+    "fmp4:media/mp4/sample_fragmented.mp4",
+    "mp4:media/mp4/sample.mp4",
+    "mkv:media/mkv/sample.mkv",
+    "mp3:media/mp3/bear-vbr-xing-header.mp3",
+    "ogg:media/ogg/bear_vorbis.ogg",
+    "flac:media/flac/bear.flac"
+  })
+  public String input;
+
+  /**
+   * The maximum number of bytes returned by each read from the input, as a network or file data
+   * source would.
+   */
+  @Param({"16384"})
+  public int maxReadLength;
+
+  private String extractorName;
+  private byte[] data;
+
+  @Setup
+  public void setUp() throws IOException {
+    Log.setLogLevel(Log.LOG_LEVEL_OFF);
+    int separatorIndex = input.indexOf(':');
+    extractorName = input.substring(0, separatorIndex);
+    String assetPath = input.substring(separatorIndex + 1);
+    try (InputStream inputStream =
+        ExtractorBenchmark.class.getClassLoader().getResourceAsStream(assetPath)) {
+      if (inputStream == null) {
+        throw new FileNotFoundException(assetPath);
+      }
+      data = Util.toByteArray(inputStream);
+    }
+    // Fail fast on an unsupported extractor name.
+    createExtractor(extractorName);
+  }
+
+  @Benchmark
+  public long extract(ThroughputCounters counters) throws IOException {
+    Extractor extractor = createExtractor(extractorName);
+    BenchmarkExtractorOutput output = new BenchmarkExtractorOutput();
+    extractor.init(output);
+    PositionHolder positionHolder = new PositionHolder();
+    ExtractorInput extractorInput = createExtractorInput(/* position= */ 0);
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(extractorInput, positionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        extractorInput = createExtractorInput(positionHolder.position);
+      }
+    }
+    extractor.release();
+    counters.megabytes += data.length / 1_000_000d;
+    return output.getChecksum();
+  }
+
+  private ExtractorInput createExtractorInput(long position) {
+    return new DefaultExtractorInput(
+        new ByteArrayDataReader(data, (int) position, maxReadLength), position, data.length);
+  }
+
+  private static Extractor createExtractor(String extractorName) {
+    switch (extractorName) {
+      case "ts":
+        return new TsExtractor();
+      case "fmp4":
+        return new FragmentedMp4Extractor();
+      case "mp4":
+        return new Mp4Extractor();
+      case "mkv":
+        return new MatroskaExtractor();
+      case "mp3":
+        return new Mp3Extractor();
+      case "ogg":
+        return new OggExtractor();
+      case "flac":
+        return new FlacExtractor();
+      default:
+        throw new IllegalArgumentException("Unknown extractor: " + extractorName);
+    }
+  }
+
+  /** Secondary results, reported as rates per second. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class ThroughputCounters {
+
+    /** The number of megabytes of input extracted. */
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      megabytes = 0;
+    }
+  }
+
+  private static final class ByteArrayDataReader implements DataReader {
+
+    private final byte[] data;
+    private final int maxReadLength;
+
+    private int position;
+
+    public ByteArrayDataReader(byte[] data, int position, int maxReadLength) {
+      this.data = data;
+      this.position = position;
+      this.maxReadLength = maxReadLength;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (position == data.length) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead = min(min(length, maxReadLength), data.length - position);
+      System.arraycopy(data, position, buffer, offset, bytesToRead);
+      position += bytesToRead;
+      return bytesToRead;
+    }
+  }
+}
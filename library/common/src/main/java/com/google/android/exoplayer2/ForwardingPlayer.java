@@ -1023,6 +1023,11 @@ public class ForwardingPlayer implements Player {
       listener.onMetadata(metadata);
     }
 
+    @Override
+    public void onSeiData(List<SeiDataItem> seiDataItems) {
+      listener.onSeiData(seiDataItems);
+    }
+
     @Override
     public void onDeviceInfoChanged(DeviceInfo deviceInfo) {
       listener.onDeviceInfoChanged(deviceInfo);
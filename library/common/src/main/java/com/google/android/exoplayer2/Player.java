@@ -47,6 +47,7 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -1075,6 +1076,88 @@ public interface Player {
      * @param pts presentation time stamp extract from pes header of hls
      */
     default void onAgoraDefinedDataWhenRender(byte[] data, long pts){}
+
+    /**
+     * Called when user-data-unregisted of sei is extracted from the stream, with read-only views of
+     * the pooled payload instead of copies. The views are only valid for the duration of the call.
+     *
+     * <p>The default implementation copies the views and calls {@link
+     * #onUserDataUnregistedAfterExtract(byte[], byte[], long)}.
+     *
+     * @param uuid The uuid in the user-data-unregisted content, or null if the payload is shorter.
+     * @param data The payload following the uuid, or null if there is none.
+     * @param pts The presentation time stamp of the access unit carrying the sei.
+     */
+    default void onUserDataUnregistedAfterExtract(
+        @Nullable ByteBuffer uuid, @Nullable ByteBuffer data, long pts) {
+      onUserDataUnregistedAfterExtract(
+          uuid == null ? null : SeiDataItem.toByteArray(uuid),
+          data == null ? null : SeiDataItem.toByteArray(data),
+          pts);
+    }
+
+    /**
+     * Called when render time reaches the pts of user-data-unregisted, with read-only views of the
+     * pooled payload instead of copies. The views are only valid for the duration of the call.
+     *
+     * <p>The default implementation copies the views and calls {@link
+     * #onUserDataUnregistedWhenRender(byte[], byte[], long)}.
+     *
+     * @param uuid The uuid in the user-data-unregisted content, or null if the payload is shorter.
+     * @param data The payload following the uuid, or null if there is none.
+     * @param pts The presentation time stamp of the access unit carrying the sei.
+     */
+    default void onUserDataUnregistedWhenRender(
+        @Nullable ByteBuffer uuid, @Nullable ByteBuffer data, long pts) {
+      onUserDataUnregistedWhenRender(
+          uuid == null ? null : SeiDataItem.toByteArray(uuid),
+          data == null ? null : SeiDataItem.toByteArray(data),
+          pts);
+    }
+
+    /**
+     * Called when agora-defined-data of sei is extracted from the stream, with a read-only view of
+     * the pooled payload instead of a copy. The view is only valid for the duration of the call.
+     *
+     * <p>The default implementation copies the view and calls {@link
+     * #onAgoraDefinedDataAfterExtract(byte[], long)}.
+     *
+     * @param data The payload of the agora-defined-data content.
+     * @param pts The presentation time stamp of the access unit carrying the sei.
+     */
+    default void onAgoraDefinedDataAfterExtract(ByteBuffer data, long pts) {
+      onAgoraDefinedDataAfterExtract(SeiDataItem.toByteArray(data), pts);
+    }
+
+    /**
+     * Called when render time reaches the pts of agora-defined-data, with a read-only view of the
+     * pooled payload instead of a copy. The view is only valid for the duration of the call.
+     *
+     * <p>The default implementation copies the view and calls {@link
+     * #onAgoraDefinedDataWhenRender(byte[], long)}.
+     *
+     * @param data The payload of the agora-defined-data content.
+     * @param pts The presentation time stamp of the access unit carrying the sei.
+     */
+    default void onAgoraDefinedDataWhenRender(ByteBuffer data, long pts) {
+      onAgoraDefinedDataWhenRender(SeiDataItem.toByteArray(data), pts);
+    }
+
+    /**
+     * Called with the SEI items whose presentation time has been reached since the last call.
+     *
+     * <p>Items are delivered in batches, in extraction order, so several items may be reported at
+     * once when the playback position advances past more than one of them between two updates.
+     *
+     * <p>The list and the payloads are reused and only valid for the duration of the call.
+     * Listeners needing them afterwards must copy them.
+     *
+     * <p>{@link #onEvents(Player, Events)} will also be called to report this event along with
+     * other events that happen in the same {@link Looper} message queue iteration.
+     *
+     * @param seiDataItems The rendered {@link SeiDataItem SeiDataItems}. Never empty.
+     */
+    default void onSeiData(List<SeiDataItem> seiDataItems) {}
   }
 
   /**
@@ -1334,7 +1417,8 @@ public interface Player {
     EVENT_DEVICE_INFO_CHANGED,
     EVENT_DEVICE_VOLUME_CHANGED,
     EVENT_USER_DATA_UNREGISTED,
-    EVENT_AGORA_DEFINED_DATA
+    EVENT_AGORA_DEFINED_DATA,
+    EVENT_SEI_DATA
   })
   @interface Event {}
   /** {@link #getCurrentTimeline()} changed. */
@@ -1409,6 +1493,8 @@ public interface Player {
   int EVENT_USER_DATA_UNREGISTED = 31;
 
   int EVENT_AGORA_DEFINED_DATA = 32;
+  /** SEI items reached their presentation time. See {@link Listener#onSeiData(List)}. */
+  int EVENT_SEI_DATA = 33;
   /**
    * Commands that can be executed on a {@code Player}. One of {@link #COMMAND_PLAY_PAUSE}, {@link
    * #COMMAND_PREPARE}, {@link #COMMAND_STOP}, {@link #COMMAND_SEEK_TO_DEFAULT_POSITION}, {@link
@@ -0,0 +1,78 @@
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.ParsableByteArrayPool;
+import java.nio.ByteBuffer;
+
+/**
+ * The SeiDataItem class use to wrap sei data
+ */
+public class SeiDataItem {
+
+  public static final int SEI_DATA_TYPE_USER_DATA_UNREGISTED = 5;
+  public static final int SEI_DATA_TYPE_AGORA_DEFINED_DATA = 100;
+
+  /**
+   * Pool from which extractors allocate SEI payloads, and to which {@link #release()} returns them.
+   */
+  public static final ParsableByteArrayPool PAYLOAD_POOL =
+      new ParsableByteArrayPool(/* maxPooledCount= */ 64, /* maxPooledCapacity= */ 4096);
+
+  private int seiDataType;
+  private ParsableByteArray data;
+  private long pts;
+  private boolean released;
+
+
+  public SeiDataItem(
+      int seiDataType,
+      ParsableByteArray data,
+      long pts){
+
+    this.seiDataType = seiDataType;
+    this.data = data;
+    this.pts = pts;
+  }
+
+  /** Returns the SEI payload type, e.g. {@link #SEI_DATA_TYPE_USER_DATA_UNREGISTED}. */
+  public int getSeiDataType() {return seiDataType;}
+  /**
+   * Returns the SEI payload, excluding the payload type and size fields. The payload spans from
+   * position zero to {@link ParsableByteArray#limit()}; the backing array may be larger.
+   */
+  public ParsableByteArray getData() {return data;}
+  /** Returns the presentation time of the access unit carrying the SEI, in microseconds. */
+  public long getPts() {return pts;}
+
+  /**
+   * Returns a read-only view of {@code length} bytes of the payload starting at {@code offset}. The
+   * view's remaining bytes are the requested range, and it is only valid until the item is
+   * released.
+   */
+  public ByteBuffer getReadOnlyData(int offset, int length) {
+    return ByteBuffer.wrap(data.getData(), offset, length).asReadOnlyBuffer();
+  }
+
+  /** Returns a copy of the remaining bytes of {@code view}, leaving its position unchanged. */
+  public static byte[] toByteArray(ByteBuffer view) {
+    byte[] bytes = new byte[view.remaining()];
+    view.duplicate().get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Returns the payload to {@link #PAYLOAD_POOL}. Must only be called by the owner of the item once
+   * no listener can access the payload anymore. Subsequent calls are ignored.
+   */
+  public synchronized void release() {
+    if (!released) {
+      released = true;
+      PAYLOAD_POOL.release(data);
+    }
+  }
+
+  /** Returns whether {@link #release()} has been called. */
+  public synchronized boolean isReleased() {
+    return released;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A bounded, thread-safe pool of {@link ParsableByteArray} instances.
+ *
+ * <p>Instances may be acquired on one thread and released on another. Arrays whose capacity
+ * exceeds the configured maximum are not retained, so that a single oversized payload does not pin
+ * memory for the lifetime of the pool.
+ */
+public final class ParsableByteArrayPool {
+
+  private final int maxPooledCapacity;
+  private final @NullableType ParsableByteArray[] pooledArrays;
+
+  private int pooledCount;
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxPooledCount The maximum number of instances retained by the pool.
+   * @param maxPooledCapacity The maximum capacity of an instance retained by the pool, in bytes.
+   */
+  public ParsableByteArrayPool(int maxPooledCount, int maxPooledCapacity) {
+    checkArgument(maxPooledCount > 0);
+    this.maxPooledCapacity = maxPooledCapacity;
+    pooledArrays = new ParsableByteArray[maxPooledCount];
+  }
+
+  /**
+   * Returns an instance whose position is zero and whose limit is {@code length}. The capacity of
+   * the returned instance may be larger than {@code length}.
+   *
+   * @param length The required limit, in bytes.
+   * @return A {@link ParsableByteArray} owned by the caller until passed to {@link
+   *     #release(ParsableByteArray)}.
+   */
+  public ParsableByteArray acquire(int length) {
+    @Nullable ParsableByteArray array = null;
+    synchronized (this) {
+      if (pooledCount > 0) {
+        array = pooledArrays[--pooledCount];
+        pooledArrays[pooledCount] = null;
+      }
+    }
+    if (array == null) {
+      return new ParsableByteArray(length);
+    }
+    array.reset(length);
+    return array;
+  }
+
+  /**
+   * Returns an instance to the pool. The caller must not access the instance afterwards.
+   *
+   * @param array The instance to return.
+   */
+  public void release(ParsableByteArray array) {
+    if (array.capacity() > maxPooledCapacity) {
+      return;
+    }
+    synchronized (this) {
+      if (pooledCount < pooledArrays.length) {
+        pooledArrays[pooledCount++] = array;
+      }
+    }
+  }
+
+  /** Returns the number of instances currently held by the pool. */
+  public synchronized int getPooledCount() {
+    return pooledCount;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParsableByteArrayPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class ParsableByteArrayPoolTest {
+
+  @Test
+  public void acquire_afterRelease_reusesInstanceWithRequestedLimit() {
+    ParsableByteArrayPool pool =
+        new ParsableByteArrayPool(/* maxPooledCount= */ 2, /* maxPooledCapacity= */ 100);
+    ParsableByteArray array = pool.acquire(/* length= */ 50);
+    array.setPosition(10);
+
+    pool.release(array);
+    ParsableByteArray reusedArray = pool.acquire(/* length= */ 20);
+
+    assertThat(reusedArray).isSameInstanceAs(array);
+    assertThat(reusedArray.getPosition()).isEqualTo(0);
+    assertThat(reusedArray.limit()).isEqualTo(20);
+    assertThat(reusedArray.capacity()).isAtLeast(20);
+  }
+
+  @Test
+  public void acquire_largerThanPooledCapacity_growsInstance() {
+    ParsableByteArrayPool pool =
+        new ParsableByteArrayPool(/* maxPooledCount= */ 2, /* maxPooledCapacity= */ 100);
+    pool.release(pool.acquire(/* length= */ 10));
+
+    ParsableByteArray array = pool.acquire(/* length= */ 80);
+
+    assertThat(array.limit()).isEqualTo(80);
+    assertThat(array.capacity()).isAtLeast(80);
+  }
+
+  @Test
+  public void release_oversizedInstance_isNotRetained() {
+    ParsableByteArrayPool pool =
+        new ParsableByteArrayPool(/* maxPooledCount= */ 2, /* maxPooledCapacity= */ 100);
+
+    pool.release(new ParsableByteArray(/* limit= */ 101));
+
+    assertThat(pool.getPooledCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void release_whenFull_discardsInstance() {
+    ParsableByteArrayPool pool =
+        new ParsableByteArrayPool(/* maxPooledCount= */ 1, /* maxPooledCapacity= */ 100);
+
+    pool.release(new ParsableByteArray(/* limit= */ 10));
+    pool.release(new ParsableByteArray(/* limit= */ 10));
+
+    assertThat(pool.getPooledCount()).isEqualTo(1);
+  }
+}
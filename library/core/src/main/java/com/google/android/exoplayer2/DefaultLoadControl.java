@@ -423,7 +423,7 @@ public class DefaultLoadControl implements LoadControl {
     }
   }
 
-  private static int getDefaultBufferSize(@C.TrackType int trackType) {
+  /* package */ static int getDefaultBufferSize(@C.TrackType int trackType) {
     switch (trackType) {
       case C.TRACK_TYPE_DEFAULT:
         return DEFAULT_MUXED_BUFFER_SIZE;
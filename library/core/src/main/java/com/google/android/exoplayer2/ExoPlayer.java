@@ -390,6 +390,7 @@ public interface ExoPlayer extends Player {
     /* package */ long releaseTimeoutMs;
     /* package */ long detachSurfaceTimeoutMs;
     /* package */ boolean pauseAtEndOfMediaItems;
+    /* package */ boolean dynamicSchedulingEnabled;
     /* package */ boolean buildCalled;
 
     /**
@@ -430,6 +431,7 @@ public interface ExoPlayer extends Player {
      *   <li>{@code releaseTimeoutMs}: {@link #DEFAULT_RELEASE_TIMEOUT_MS}
      *   <li>{@code detachSurfaceTimeoutMs}: {@link #DEFAULT_DETACH_SURFACE_TIMEOUT_MS}
      *   <li>{@code pauseAtEndOfMediaItems}: {@code false}
+     *   <li>{@code dynamicSchedulingEnabled}: {@code false}
      *   <li>{@link Clock}: {@link Clock#DEFAULT}
      * </ul>
      *
@@ -592,6 +594,28 @@ public interface ExoPlayer extends Player {
       return this;
     }
 
+    /**
+     * Sets whether dynamic scheduling is enabled.
+     *
+     * <p>By default, the player calls {@link Renderer#render(long, long)} every 10 milliseconds
+     * while playing. If dynamic scheduling is enabled, the player instead sleeps until the first of
+     * its renderers needs to progress, as indicated by {@link
+     * Renderer#getDurationToProgressUs(long, long)}, which reduces the CPU usage of the playback
+     * thread when renderers are well ahead. The number of wakeups can be monitored through {@link
+     * ExoPlayer#getPlaybackLoopCounters()}.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param dynamicSchedulingEnabled Whether to enable dynamic scheduling.
+     * @return This builder.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder experimentalSetDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+      checkState(!buildCalled);
+      this.dynamicSchedulingEnabled = dynamicSchedulingEnabled;
+      return this;
+    }
+
     /**
      * Sets the {@link RenderersFactory} that will be used by the player.
      *
@@ -1398,6 +1422,18 @@ public interface ExoPlayer extends Player {
   @Nullable
   DecoderCounters getVideoDecoderCounters();
 
+  /**
+   * Returns the {@link SeiDataCounters} tracking the delivery of SEI items to {@link
+   * Player.Listener#onSeiData(List)}.
+   */
+  SeiDataCounters getSeiDataCounters();
+
+  /**
+   * Returns the {@link PlaybackLoopCounters} tracking how often the playback thread wakes up. Callers
+   * must invoke {@link PlaybackLoopCounters#ensureUpdated()} before reading the counters.
+   */
+  PlaybackLoopCounters getPlaybackLoopCounters();
+
   /**
    * Sets whether the player should pause automatically when audio is rerouted from a headset to
    * device speakers. See the <a
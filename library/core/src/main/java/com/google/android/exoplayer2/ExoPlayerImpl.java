@@ -44,6 +44,7 @@ import android.media.MediaFormat;
 import android.media.metrics.LogSessionId;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Message;
 import android.util.Pair;
 import android.view.Surface;
 import android.view.SurfaceHolder;
@@ -83,6 +84,7 @@ import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.HandlerWrapper;
 import com.google.android.exoplayer2.util.ListenerSet;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.Util;
 import com.google.android.exoplayer2.video.VideoDecoderOutputBufferRenderer;
@@ -92,6 +94,7 @@ import com.google.android.exoplayer2.video.VideoSize;
 import com.google.android.exoplayer2.video.spherical.CameraMotionListener;
 import com.google.android.exoplayer2.video.spherical.SphericalGLSurfaceView;
 import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -114,6 +117,9 @@ import java.util.concurrent.TimeoutException;
 
   private static final int SEI_USER_DATA_UUID_LENGTH = 16;
 
+  private static final int MSG_PLAYBACK_INFO_UPDATE = 0;
+  private static final int MSG_SEI_DATA_UPDATE = 1;
+
   /**
    * This empty track selector result can only be used for {@link PlaybackInfo#trackSelectorResult}
    * when the player does not have any track selection made (such as when player is reset, or when
@@ -302,10 +308,18 @@ import java.util.concurrent.TimeoutException;
               .add(COMMAND_SEEK_TO_DEFAULT_POSITION)
               .add(COMMAND_SEEK_TO_MEDIA_ITEM)
               .build();
-      playbackInfoUpdateHandler = clock.createHandler(applicationLooper, /* callback= */ null);
+      playbackInfoUpdateHandler =
+          clock.createHandler(applicationLooper, /* callback= */ this::handleUpdateMessage);
       playbackInfoUpdateListener =
           playbackInfoUpdate ->
-              playbackInfoUpdateHandler.post(() -> handlePlaybackInfo(playbackInfoUpdate));
+              playbackInfoUpdateHandler
+                  .obtainMessage(MSG_PLAYBACK_INFO_UPDATE, playbackInfoUpdate)
+                  .sendToTarget();
+      ExoPlayerImplInternal.SeiDataUpdateListener seiDataUpdateListener =
+          seiDataUpdate ->
+              playbackInfoUpdateHandler
+                  .obtainMessage(MSG_SEI_DATA_UPDATE, seiDataUpdate)
+                  .sendToTarget();
       playbackInfo = PlaybackInfo.createDummy(emptyTrackSelectorResult);
       analyticsCollector.setPlayer(this.wrappingPlayer, applicationLooper);
       PlayerId playerId = Util.SDK_INT < 31 ? new PlayerId() : Api31.createPlayerId();
@@ -323,9 +337,11 @@ import java.util.concurrent.TimeoutException;
               builder.livePlaybackSpeedControl,
               builder.releaseTimeoutMs,
               pauseAtEndOfMediaItems,
+              builder.dynamicSchedulingEnabled,
               applicationLooper,
               clock,
               playbackInfoUpdateListener,
+              seiDataUpdateListener,
               playerId);
 
       volume = 1;
@@ -959,7 +975,8 @@ import java.util.concurrent.TimeoutException;
                       PlaybackException.ERROR_CODE_TIMEOUT)));
     }
     listeners.release();
-    playbackInfoUpdateHandler.removeCallbacksAndMessages(null);
+    // Pending SEI updates are still handled, so that they return their payloads to the pool.
+    playbackInfoUpdateHandler.removeMessages(MSG_PLAYBACK_INFO_UPDATE);
     bandwidthMeter.removeEventListener(analyticsCollector);
     playbackInfo = playbackInfo.copyWithPlaybackState(Player.STATE_IDLE);
     playbackInfo = playbackInfo.copyWithLoadingMediaPeriodId(playbackInfo.periodId);
@@ -1520,6 +1537,18 @@ import java.util.concurrent.TimeoutException;
     return videoDecoderCounters;
   }
 
+  @Override
+  public SeiDataCounters getSeiDataCounters() {
+    verifyApplicationThread();
+    return internalPlayer.getSeiDataCounters();
+  }
+
+  @Override
+  public PlaybackLoopCounters getPlaybackLoopCounters() {
+    verifyApplicationThread();
+    return internalPlayer.getPlaybackLoopCounters();
+  }
+
   @Override
   @Nullable
   public DecoderCounters getAudioDecoderCounters() {
@@ -1846,18 +1875,6 @@ import java.util.concurrent.TimeoutException;
       updatePriorityTaskManagerForIsLoadingChange(newPlaybackInfo.isLoading);
     }
 
-    if(null != newPlaybackInfo.seiDataItemInfo &&
-        newPlaybackInfo.seiDataItemInfo != previousPlaybackInfo.seiDataItemInfo){
-
-      if(newPlaybackInfo.seiDataItemInfo.seiDataItem.getSeiDataType() ==
-          SeiDataItem.SEI_DATA_TYPE_USER_DATA_UNREGISTED){
-        notifyUserDataUnregisted(newPlaybackInfo);
-      } else if(newPlaybackInfo.seiDataItemInfo.seiDataItem.getSeiDataType() ==
-          SeiDataItem.SEI_DATA_TYPE_AGORA_DEFINED_DATA){
-        notifyAgoraDefinedData(newPlaybackInfo);
-      }
-    }
-
     if (!previousPlaybackInfo.timeline.equals(newPlaybackInfo.timeline)) {
       listeners.queueEvent(
           Player.EVENT_TIMELINE_CHANGED,
@@ -1974,73 +1991,81 @@ import java.util.concurrent.TimeoutException;
     }
   }
 
-  private void notifyUserDataUnregisted(PlaybackInfo playbackInfo){
-    SeiDataItem lastSeiDataItem = playbackInfo.seiDataItemInfo.seiDataItem;
-
-    byte[] uuid = getUUIDFromUserDataUnregisted(lastSeiDataItem.getData().getData());
-    byte[] userData = getUserDataFromUserDataUnregisted(lastSeiDataItem.getData().getData());
-
-    if(PlaybackInfo.SeiDataItemInfo.WHEN_EXTRACT == playbackInfo.seiDataItemInfo.when){
-
-      listeners.queueEvent(
-          Player.EVENT_USER_DATA_UNREGISTED,
-          listener -> listener.onUserDataUnregistedAfterExtract(
-              uuid,
-              userData,
-              lastSeiDataItem.getPts())
-      );
-
-    } else if(PlaybackInfo.SeiDataItemInfo.WHEN_RENDER == playbackInfo.seiDataItemInfo.when){
-      listeners.queueEvent(
-          Player.EVENT_USER_DATA_UNREGISTED,
-          listener -> listener.onUserDataUnregistedWhenRender(
-              uuid,
-              userData,
-              lastSeiDataItem.getPts())
-      );
+  private boolean handleUpdateMessage(Message message) {
+    if (message.what == MSG_SEI_DATA_UPDATE) {
+      ExoPlayerImplInternal.SeiDataUpdate seiDataUpdate =
+          (ExoPlayerImplInternal.SeiDataUpdate) message.obj;
+      handleSeiDataUpdate(seiDataUpdate);
+      internalPlayer.recycleSeiDataUpdate(seiDataUpdate);
+      return true;
+    }
+    if (message.what != MSG_PLAYBACK_INFO_UPDATE) {
+      return false;
     }
+    ExoPlayerImplInternal.PlaybackInfoUpdate playbackInfoUpdate =
+        (ExoPlayerImplInternal.PlaybackInfoUpdate) message.obj;
+    handlePlaybackInfo(playbackInfoUpdate);
+    internalPlayer.recyclePlaybackInfoUpdate(playbackInfoUpdate);
+    return true;
   }
 
-  private void notifyAgoraDefinedData(PlaybackInfo playbackInfo){
-
-    SeiDataItem lastSeiDataItem = playbackInfo.seiDataItemInfo.seiDataItem;
-
-    if(PlaybackInfo.SeiDataItemInfo.WHEN_EXTRACT == playbackInfo.seiDataItemInfo.when){
-
-      listeners.queueEvent(
-          Player.EVENT_AGORA_DEFINED_DATA,
-          listener -> listener.onAgoraDefinedDataAfterExtract(
-              lastSeiDataItem.getData().getData(),
-              lastSeiDataItem.getPts())
-      );
+  private void handleSeiDataUpdate(ExoPlayerImplInternal.SeiDataUpdate seiDataUpdate) {
+    List<SeiDataItem> renderedItems = seiDataUpdate.renderedItems;
+    if (!playerReleased) {
+      List<SeiDataItem> extractedItems = seiDataUpdate.extractedItems;
+      for (int i = 0; i < extractedItems.size(); i++) {
+        queueSeiDataEvent(extractedItems.get(i), /* rendered= */ false);
+      }
+      for (int i = 0; i < renderedItems.size(); i++) {
+        queueSeiDataEvent(renderedItems.get(i), /* rendered= */ true);
+      }
+      if (!renderedItems.isEmpty()) {
+        listeners.queueEvent(EVENT_SEI_DATA, listener -> listener.onSeiData(renderedItems));
+      }
+      listeners.flushEvents();
     }
-    else if(PlaybackInfo.SeiDataItemInfo.WHEN_RENDER == playbackInfo.seiDataItemInfo.when){
-      listeners.queueEvent(
-          Player.EVENT_AGORA_DEFINED_DATA,
-          listener -> listener.onAgoraDefinedDataWhenRender(
-              lastSeiDataItem.getData().getData(),
-              lastSeiDataItem.getPts())
-      );
+    // This method is never called from within a listener callback, so the flush above has
+    // delivered all events and no listener can access the payloads anymore. Discarded items were
+    // reported as extracted by an earlier update, which has been handled before this one.
+    for (int i = 0; i < renderedItems.size(); i++) {
+      renderedItems.get(i).release();
     }
-  }
-
-  private byte[] getUUIDFromUserDataUnregisted(byte[] data){
-    byte [] uuid = null;
-    if(data.length >= SEI_USER_DATA_UUID_LENGTH){
-      uuid = new byte[SEI_USER_DATA_UUID_LENGTH];
-      System.arraycopy(data, 0, uuid, 0, SEI_USER_DATA_UUID_LENGTH);
+    List<SeiDataItem> discardedItems = seiDataUpdate.discardedItems;
+    for (int i = 0; i < discardedItems.size(); i++) {
+      discardedItems.get(i).release();
     }
-    return uuid;
   }
 
-  private byte[] getUserDataFromUserDataUnregisted(byte[] data){
-    byte [] userData = null;
-    if(data.length > SEI_USER_DATA_UUID_LENGTH){
-      int userDataLength = data.length - SEI_USER_DATA_UUID_LENGTH;
-      userData = new byte[userDataLength];
-      System.arraycopy(data, SEI_USER_DATA_UUID_LENGTH, userData, 0, userDataLength);
+  private void queueSeiDataEvent(SeiDataItem seiDataItem, boolean rendered) {
+    // The payload buffer is pooled and may be larger than the payload, so the per-item callbacks
+    // receive read-only views of the payload, which are valid until the item is released.
+    int length = seiDataItem.getData().limit();
+    long pts = seiDataItem.getPts();
+    if (seiDataItem.getSeiDataType() == SeiDataItem.SEI_DATA_TYPE_USER_DATA_UNREGISTED) {
+      @Nullable
+      ByteBuffer uuid =
+          length >= SEI_USER_DATA_UUID_LENGTH
+              ? seiDataItem.getReadOnlyData(/* offset= */ 0, SEI_USER_DATA_UUID_LENGTH)
+              : null;
+      @Nullable
+      ByteBuffer userData =
+          length > SEI_USER_DATA_UUID_LENGTH
+              ? seiDataItem.getReadOnlyData(
+                  SEI_USER_DATA_UUID_LENGTH, length - SEI_USER_DATA_UUID_LENGTH)
+              : null;
+      listeners.queueEvent(
+          Player.EVENT_USER_DATA_UNREGISTED,
+          rendered
+              ? listener -> listener.onUserDataUnregistedWhenRender(uuid, userData, pts)
+              : listener -> listener.onUserDataUnregistedAfterExtract(uuid, userData, pts));
+    } else if (seiDataItem.getSeiDataType() == SeiDataItem.SEI_DATA_TYPE_AGORA_DEFINED_DATA) {
+      ByteBuffer data = seiDataItem.getReadOnlyData(/* offset= */ 0, length);
+      listeners.queueEvent(
+          Player.EVENT_AGORA_DEFINED_DATA,
+          rendered
+              ? listener -> listener.onAgoraDefinedDataWhenRender(data, pts)
+              : listener -> listener.onAgoraDefinedDataAfterExtract(data, pts));
     }
-    return userData;
   }
 
   private PositionInfo getPreviousPositionInfo(
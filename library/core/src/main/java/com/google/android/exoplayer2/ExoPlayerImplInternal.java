@@ -66,10 +66,11 @@ import com.google.common.collect.Sets;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
 
 /** Implements the internal behavior of {@link ExoPlayerImpl}. */
 /* package */ final class ExoPlayerImplInternal
@@ -82,8 +83,6 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
   private static final String TAG = "ExoPlayerImplInternal";
 
-  private static final int MAX_COUNT_OF_SEI_DATA_ITEM_CACHE = 100;
-
   public static final class PlaybackInfoUpdate {
 
     private boolean hasPendingChange;
@@ -99,6 +98,20 @@ import java.util.concurrent.atomic.AtomicBoolean;
       this.playbackInfo = playbackInfo;
     }
 
+    /**
+     * Resets the update to its initial state for the given {@link PlaybackInfo}, so that the
+     * instance can be reused for the next update once the previous one has been handled.
+     */
+    /* package */ void reset(PlaybackInfo playbackInfo) {
+      hasPendingChange = false;
+      this.playbackInfo = playbackInfo;
+      operationAcks = 0;
+      positionDiscontinuity = false;
+      discontinuityReason = Player.DISCONTINUITY_REASON_AUTO_TRANSITION;
+      hasPlayWhenReadyChangeReason = false;
+      playWhenReadyChangeReason = Player.PLAY_WHEN_READY_CHANGE_REASON_USER_REQUEST;
+    }
+
     public void incrementPendingOperationAcks(int operationAcks) {
       hasPendingChange |= operationAcks > 0;
       this.operationAcks += operationAcks;
@@ -134,6 +147,48 @@ import java.util.concurrent.atomic.AtomicBoolean;
     void onPlaybackInfoUpdate(ExoPlayerImplInternal.PlaybackInfoUpdate playbackInfo);
   }
 
+  /**
+   * A batch of {@link SeiDataItem SeiDataItems} passed from the playback thread to the application
+   * thread. Instances are reused once they have been handed back through {@link
+   * #recycleSeiDataUpdate(SeiDataUpdate)}, so the lists must not be retained.
+   */
+  public static final class SeiDataUpdate {
+
+    /** The items extracted since the last update, in extraction order. */
+    public final List<SeiDataItem> extractedItems;
+    /** The items whose presentation time has been reached since the last update. */
+    public final List<SeiDataItem> renderedItems;
+    /**
+     * Items reported as extracted by an earlier update that were discarded before being rendered,
+     * for example by a seek. The receiver must release them once handled.
+     */
+    public final List<SeiDataItem> discardedItems;
+
+    public SeiDataUpdate() {
+      extractedItems = new ArrayList<>();
+      renderedItems = new ArrayList<>();
+      discardedItems = new ArrayList<>();
+    }
+
+    /** Clears the update, so that the instance can be reused for the next update. */
+    /* package */ void clear() {
+      extractedItems.clear();
+      renderedItems.clear();
+      discardedItems.clear();
+    }
+  }
+
+  /** Receives batches of {@link SeiDataItem SeiDataItems} on the playback thread. */
+  public interface SeiDataUpdateListener {
+    /**
+     * Called when SEI items have been extracted or their presentation time has been reached.
+     *
+     * @param seiDataUpdate The {@link SeiDataUpdate}. At least one of its lists is non-empty. The
+     *     receiver must release the rendered and discarded items once handled.
+     */
+    void onSeiDataUpdate(SeiDataUpdate seiDataUpdate);
+  }
+
   // Internal messages
   private static final int MSG_PREPARE = 0;
   private static final int MSG_SET_PLAY_WHEN_READY = 1;
@@ -161,10 +216,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private static final int MSG_SET_PAUSE_AT_END_OF_WINDOW = 23;
   private static final int MSG_SET_OFFLOAD_SCHEDULING_ENABLED = 24;
   private static final int MSG_ATTEMPT_RENDERER_ERROR_RECOVERY = 25;
-  private static final int MSG_SEI_DATA = 30;
 
   private static final int ACTIVE_INTERVAL_MS = 10;
   private static final int IDLE_INTERVAL_MS = 1000;
+  /**
+   * Maximum interval between two calls to doSomeWork while playing with dynamic scheduling enabled.
+   */
+  private static final int READY_MAXIMUM_INTERVAL_MS = 1000;
   /**
    * Duration under which pausing the main DO_SOME_WORK loop is not expected to yield significant
    * power saving.
@@ -200,16 +258,24 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private final ArrayList<PendingMessageInfo> pendingMessages;
   private final Clock clock;
   private final PlaybackInfoUpdateListener playbackInfoUpdateListener;
+  private final AtomicReference<@NullableType PlaybackInfoUpdate> recycledPlaybackInfoUpdate;
+  private final SeiDataUpdateListener seiDataUpdateListener;
+  private final AtomicReference<@NullableType SeiDataUpdate> recycledSeiDataUpdate;
+  private final SeiDataQueue seiDataQueue;
+  private final SeiDataCounters seiDataCounters;
   private final MediaPeriodQueue queue;
   private final MediaSourceList mediaSourceList;
   private final LivePlaybackSpeedControl livePlaybackSpeedControl;
   private final long releaseTimeoutMs;
+  private final boolean dynamicSchedulingEnabled;
+  private final PlaybackLoopCounters playbackLoopCounters;
 
   @SuppressWarnings("unused")
   private SeekParameters seekParameters;
 
   private PlaybackInfo playbackInfo;
   private PlaybackInfoUpdate playbackInfoUpdate;
+  private SeiDataUpdate seiDataUpdate;
   private boolean released;
   private boolean pauseAtEndOfWindow;
   private boolean pendingPauseAtEndOfPeriod;
@@ -230,9 +296,6 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private long playbackMaybeBecameStuckAtMs;
   private long playbackInfoLastNotifyTimeUs;
 
-  // sei data cache
-  private LinkedList<SeiDataItem> seiDataCache;
-
   public ExoPlayerImplInternal(
       Renderer[] renderers,
       TrackSelector trackSelector,
@@ -246,11 +309,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
       LivePlaybackSpeedControl livePlaybackSpeedControl,
       long releaseTimeoutMs,
       boolean pauseAtEndOfWindow,
+      boolean dynamicSchedulingEnabled,
       Looper applicationLooper,
       Clock clock,
       PlaybackInfoUpdateListener playbackInfoUpdateListener,
+      SeiDataUpdateListener seiDataUpdateListener,
       PlayerId playerId) {
     this.playbackInfoUpdateListener = playbackInfoUpdateListener;
+    this.seiDataUpdateListener = seiDataUpdateListener;
     this.renderers = renderers;
     this.trackSelector = trackSelector;
     this.emptyTrackSelectorResult = emptyTrackSelectorResult;
@@ -263,6 +329,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
     this.releaseTimeoutMs = releaseTimeoutMs;
     this.setForegroundModeTimeoutMs = releaseTimeoutMs;
     this.pauseAtEndOfWindow = pauseAtEndOfWindow;
+    this.dynamicSchedulingEnabled = dynamicSchedulingEnabled;
     this.clock = clock;
 
     playbackMaybeBecameStuckAtMs = C.TIME_UNSET;
@@ -271,6 +338,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     playbackInfo = PlaybackInfo.createDummy(emptyTrackSelectorResult);
     playbackInfoUpdate = new PlaybackInfoUpdate(playbackInfo);
+    recycledPlaybackInfoUpdate = new AtomicReference<>();
     rendererCapabilities = new RendererCapabilities[renderers.length];
     for (int i = 0; i < renderers.length; i++) {
       renderers[i].init(/* index= */ i, playerId);
@@ -298,15 +366,51 @@ import java.util.concurrent.atomic.AtomicBoolean;
     handler = clock.createHandler(playbackLooper, this);
     playbackInfoLastNotifyTimeUs = 0;
 
-    seiDataCache = new LinkedList<SeiDataItem>();
+    seiDataQueue = new SeiDataQueue();
+    seiDataUpdate = new SeiDataUpdate();
+    recycledSeiDataUpdate = new AtomicReference<>();
+    seiDataCounters = new SeiDataCounters();
+    playbackLoopCounters = new PlaybackLoopCounters();
+  }
+
+  /**
+   * Returns a {@link PlaybackInfoUpdate} that has been handled by the {@link
+   * PlaybackInfoUpdateListener}, so that it can be reused for a later update. May be called from
+   * any thread. The caller must not access the update after calling this method.
+   */
+  public void recyclePlaybackInfoUpdate(PlaybackInfoUpdate playbackInfoUpdate) {
+    recycledPlaybackInfoUpdate.set(playbackInfoUpdate);
+  }
+
+  /**
+   * Returns a {@link SeiDataUpdate} that has been handled by the {@link SeiDataUpdateListener}, so
+   * that it can be reused for a later update. May be called from any thread. The caller must not
+   * access the update after calling this method.
+   */
+  public void recycleSeiDataUpdate(SeiDataUpdate seiDataUpdate) {
+    recycledSeiDataUpdate.set(seiDataUpdate);
+  }
+
+  /**
+   * Returns the {@link PlaybackLoopCounters} of this player. Callers must invoke {@link
+   * PlaybackLoopCounters#ensureUpdated()} before reading the counters.
+   */
+  public PlaybackLoopCounters getPlaybackLoopCounters() {
+    return playbackLoopCounters;
+  }
+
+  /**
+   * Returns the {@link SeiDataCounters} of this player. Callers must invoke {@link
+   * SeiDataCounters#ensureUpdated()} before reading the counters.
+   */
+  public SeiDataCounters getSeiDataCounters() {
+    return seiDataCounters;
   }
 
   @Override
-  public void onSeiDataNotify(int type, ParsableByteArray data, long pts){
-    SeiDataItem dataItem = new SeiDataItem(type, data, pts);
-    handler
-        .obtainMessage(MSG_SEI_DATA, dataItem)
-        .sendToTarget();
+  public void onSeiDataNotify(int type, ParsableByteArray data, long pts) {
+    // Called on the loading thread. Items are picked up in batches by doSomeWork.
+    seiDataQueue.offer(new SeiDataItem(type, data, pts));
   }
 
   public void experimentalSetForegroundModeTimeoutMs(long setForegroundModeTimeoutMs) {
@@ -579,9 +683,6 @@ import java.util.concurrent.atomic.AtomicBoolean;
         case MSG_ATTEMPT_RENDERER_ERROR_RECOVERY:
           attemptRendererErrorRecovery();
           break;
-        case MSG_SEI_DATA:
-          updateSeiDataItem((SeiDataItem)msg.obj);
-          break;
         case MSG_RELEASE:
           releaseInternal();
           // Return immediately to not send playback info updates after release.
@@ -708,12 +809,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
   }
 
   private void maybeNotifyPlaybackInfoChanged() {
-
     playbackInfoUpdate.setPlaybackInfo(playbackInfo);
     if (playbackInfoUpdate.hasPendingChange) {
       playbackInfoUpdateListener.onPlaybackInfoUpdate(playbackInfoUpdate);
-      playbackInfoUpdate = new PlaybackInfoUpdate(playbackInfo);
-
+      // The application thread hands handled updates back, so that steady-state playback swaps
+      // between two instances instead of allocating a new one for every update.
+      @Nullable PlaybackInfoUpdate recycledUpdate = recycledPlaybackInfoUpdate.getAndSet(null);
+      if (recycledUpdate != null && recycledUpdate != playbackInfoUpdate) {
+        recycledUpdate.reset(playbackInfo);
+        playbackInfoUpdate = recycledUpdate;
+      } else {
+        playbackInfoUpdate = new PlaybackInfoUpdate(playbackInfo);
+      }
     }
   }
 
@@ -946,8 +1053,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
       long periodPositionUs = playingPeriodHolder.toPeriodTime(rendererPositionUs);
       maybeTriggerPendingMessages(playbackInfo.positionUs, periodPositionUs);
       playbackInfo.positionUs = periodPositionUs;
-
-      tryToDeliverSeiData(periodPositionUs);
+      deliverSeiData(periodPositionUs);
     }
 
     // Update the buffered position and total buffered duration.
@@ -988,6 +1094,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
   private void doSomeWork() throws ExoPlaybackException, IOException {
     long operationStartTimeMs = clock.uptimeMillis();
+    playbackLoopCounters.onWakeup(operationStartTimeMs);
     updatePeriods();
 
     if (playbackInfo.playbackState == Player.STATE_IDLE
@@ -1010,8 +1117,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     boolean renderersEnded = true;
     boolean renderersAllowPlayback = true;
+    long rendererPositionElapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
     if (playingPeriodHolder.prepared) {
-      long rendererPositionElapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
       playingPeriodHolder.mediaPeriod.discardBuffer(
           playbackInfo.positionUs - backBufferDurationUs, retainBackBufferFromKeyframe);
       for (int i = 0; i < renderers.length; i++) {
@@ -1019,9 +1126,6 @@ import java.util.concurrent.atomic.AtomicBoolean;
         if (!isRendererEnabled(renderer)) {
           continue;
         }
-        // TODO: Each renderer should return the maximum delay before which it wishes to be called
-        // again. The minimum of these values should then be used as the delay before the next
-        // invocation of this method.
         renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
         renderersEnded = renderersEnded && renderer.isEnded();
         // Determine whether the renderer allows playback to continue. Playback can continue if the
@@ -1113,7 +1217,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
     boolean sleepingForOffload = false;
     if ((shouldPlayWhenReady() && playbackInfo.playbackState == Player.STATE_READY)
         || playbackInfo.playbackState == Player.STATE_BUFFERING) {
-      sleepingForOffload = !maybeScheduleWakeup(operationStartTimeMs, ACTIVE_INTERVAL_MS);
+      long intervalMs = getActiveIntervalMs(playingPeriodHolder, rendererPositionElapsedRealtimeUs);
+      sleepingForOffload = !maybeScheduleWakeup(operationStartTimeMs, intervalMs);
     } else if (enabledRendererCount != 0 && playbackInfo.playbackState != Player.STATE_ENDED) {
       scheduleNextWork(operationStartTimeMs, IDLE_INTERVAL_MS);
     } else {
@@ -1152,9 +1257,61 @@ import java.util.concurrent.atomic.AtomicBoolean;
     return window.isLive() && window.isDynamic && window.windowStartTimeMs != C.TIME_UNSET;
   }
 
+  /**
+   * Returns the interval until the next call to doSomeWork while playing or buffering.
+   *
+   * <p>With dynamic scheduling enabled and playback progressing, the interval is the shortest
+   * duration for which the enabled renderers can wait before they need to progress, bounded by the
+   * end of the playing period, the position of the next pending message and {@link
+   * #READY_MAXIMUM_INTERVAL_MS}. Loading does not need to be polled, as media periods request it
+   * through {@link #onContinueLoadingRequested}.
+   */
+  private long getActiveIntervalMs(
+      MediaPeriodHolder playingPeriodHolder, long rendererPositionElapsedRealtimeUs) {
+    if (!dynamicSchedulingEnabled
+        || playbackInfo.playbackState != Player.STATE_READY
+        || !shouldPlayWhenReady()
+        || !playingPeriodHolder.prepared
+        || queue.getReadingPeriod() != playingPeriodHolder) {
+      // Buffering and transitioning between periods are latency sensitive, so keep polling at the
+      // default interval.
+      return ACTIVE_INTERVAL_MS;
+    }
+    long durationToProgressUs = Util.msToUs(READY_MAXIMUM_INTERVAL_MS);
+    for (Renderer renderer : renderers) {
+      if (isRendererEnabled(renderer)) {
+        durationToProgressUs =
+            min(
+                durationToProgressUs,
+                renderer.getDurationToProgressUs(
+                    rendererPositionUs, rendererPositionElapsedRealtimeUs));
+      }
+    }
+    long positionUs = playbackInfo.positionUs;
+    long nextEventPositionUs =
+        playingPeriodHolder.info.durationUs != C.TIME_UNSET
+            ? playingPeriodHolder.info.durationUs
+            : Long.MAX_VALUE;
+    for (int i = 0; i < pendingMessages.size(); i++) {
+      PendingMessageInfo pendingMessageInfo = pendingMessages.get(i);
+      if (playbackInfo.periodId.periodUid.equals(pendingMessageInfo.resolvedPeriodUid)
+          && pendingMessageInfo.resolvedPeriodTimeUs > positionUs) {
+        nextEventPositionUs = min(nextEventPositionUs, pendingMessageInfo.resolvedPeriodTimeUs);
+      }
+    }
+    if (nextEventPositionUs != Long.MAX_VALUE) {
+      float speed = mediaClock.getPlaybackParameters().speed;
+      long remainingRealtimeUs = (long) ((nextEventPositionUs - positionUs) / speed);
+      durationToProgressUs = min(durationToProgressUs, remainingRealtimeUs);
+    }
+    return max(ACTIVE_INTERVAL_MS, Util.usToMs(durationToProgressUs));
+  }
+
   private void scheduleNextWork(long thisOperationStartTimeMs, long intervalMs) {
     handler.removeMessages(MSG_DO_SOME_WORK);
     handler.sendEmptyMessageAtTime(MSG_DO_SOME_WORK, thisOperationStartTimeMs + intervalMs);
+    playbackLoopCounters.lastScheduledIntervalMs = intervalMs;
+    playbackLoopCounters.ensureUpdated();
   }
 
   private boolean maybeScheduleWakeup(long operationStartTimeMs, long intervalMs) {
@@ -1328,6 +1485,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
       }
     }
 
+    // Pending SEI items belong to the position being left.
+    clearSeiData();
+
     // Do the actual seeking.
     if (newPlayingPeriodHolder != null) {
       queue.removeAfter(newPlayingPeriodHolder);
@@ -1475,6 +1635,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
 
     queue.clear();
+    clearSeiData();
     shouldContinueLoading = false;
 
     playbackInfo =
@@ -1497,8 +1658,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
             /* totalBufferedDurationUs= */ 0,
             /* positionUs= */ startPositionUs,
             offloadSchedulingEnabled,
-            /* sleepingForOffload= */ false,
-            null);
+            /* sleepingForOffload= */ false);
     if (releaseMediaSourceList) {
       mediaSourceList.release();
     }
@@ -2574,54 +2734,46 @@ import java.util.concurrent.atomic.AtomicBoolean;
   }
 
 
-  private void updateSeiDataItem(SeiDataItem seiDataItem){
-    if(appendSeiDataItem(seiDataItem) &&
-        needUpdatePlaybackInfo()){
-      playbackInfo = playbackInfo.copyWithSeiDataItem(new PlaybackInfo.SeiDataItemInfo(
-          seiDataItem,
-          PlaybackInfo.SeiDataItemInfo.WHEN_EXTRACT));
+  private void deliverSeiData(long periodPositionUs) {
+    List<SeiDataItem> extractedItems = seiDataUpdate.extractedItems;
+    List<SeiDataItem> renderedItems = seiDataUpdate.renderedItems;
+    boolean hasExtractedItems = seiDataQueue.pollExtracted(periodPositionUs, extractedItems);
+    boolean hasRenderedItems = seiDataQueue.pollRendered(periodPositionUs, renderedItems);
+    long droppedCount = seiDataQueue.getDroppedCount();
+    if (!hasExtractedItems && !hasRenderedItems && droppedCount == seiDataCounters.droppedCount) {
+      return;
     }
-  }
-
-  private boolean appendSeiDataItem(SeiDataItem seiDataItem){
-    boolean isAppended = false;
-
-    SeiDataItem lastSeiDataItem = seiDataCache.peekLast();
-    if(null != seiDataItem && lastSeiDataItem != seiDataItem){
-
-      // limit seiDataCache lenght
-      if(MAX_COUNT_OF_SEI_DATA_ITEM_CACHE < seiDataCache.size()){
-        seiDataCache.poll();
-      }
-
-      seiDataCache.add(seiDataItem);
-      isAppended = true;
+    seiDataCounters.extractedCount += extractedItems.size();
+    if (hasRenderedItems) {
+      seiDataCounters.renderedCount += renderedItems.size();
+      seiDataCounters.batchCount++;
+      seiDataCounters.maxBatchSize = max(seiDataCounters.maxBatchSize, renderedItems.size());
+    }
+    seiDataCounters.droppedCount = droppedCount;
+    seiDataCounters.lateCount = seiDataQueue.getLateCount();
+    seiDataCounters.ensureUpdated();
+    if (hasExtractedItems || hasRenderedItems) {
+      dispatchSeiDataUpdate();
     }
-
-    return isAppended;
   }
 
-  private void tryToDeliverSeiData(long currentTimeUs){
-
-    if(seiDataCache.size() > 0){
-
-      SeiDataItem firstSeiDataItem = seiDataCache.peek();
-      if(currentTimeUs > firstSeiDataItem.getPts()){
-        seiDataCache.poll();
-        playbackInfo = playbackInfo.copyWithSeiDataItem(new PlaybackInfo.SeiDataItemInfo(firstSeiDataItem,
-            PlaybackInfo.SeiDataItemInfo.WHEN_RENDER));
-      }
-
+  private void clearSeiData() {
+    if (seiDataQueue.clear(seiDataUpdate.discardedItems)) {
+      dispatchSeiDataUpdate();
     }
   }
 
-  private boolean needUpdatePlaybackInfo(){
-    SeiDataItem lastSeiDataItem = seiDataCache.peekLast();
-    if(null != lastSeiDataItem) {
-      return lastSeiDataItem.getSeiDataType() == SeiDataItem.SEI_DATA_TYPE_USER_DATA_UNREGISTED ||
-          lastSeiDataItem.getSeiDataType() == SeiDataItem.SEI_DATA_TYPE_AGORA_DEFINED_DATA;
+  private void dispatchSeiDataUpdate() {
+    seiDataUpdateListener.onSeiDataUpdate(seiDataUpdate);
+    // As for playback info updates, handled updates are handed back so that steady-state playback
+    // swaps between two instances.
+    @Nullable SeiDataUpdate recycledUpdate = recycledSeiDataUpdate.getAndSet(null);
+    if (recycledUpdate != null && recycledUpdate != seiDataUpdate) {
+      recycledUpdate.clear();
+      seiDataUpdate = recycledUpdate;
+    } else {
+      seiDataUpdate = new SeiDataUpdate();
     }
-    return false;
   }
 
   private static PositionUpdateForPlaylistChange resolvePositionForPlaylistChange(
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A media buffer memory budget shared by several players, each using a {@link
+ * MemoryBudgetLoadControl} created for the budget.
+ *
+ * <p>All players allocate from a single {@link DefaultAllocator}, and the budget is distributed
+ * between them by priority. Players with a higher {@link MemoryBudgetLoadControl#setPriority(int)
+ * priority} are granted their full target buffer size first, and the remainder of the budget is
+ * then distributed to players with lower priorities. Players with the same priority share what is
+ * left for their priority in proportion to their target buffer sizes. Each player is granted at
+ * least the minimum player buffer size, so that it can keep playing even when the budget is
+ * exhausted, which means that the budget may be exceeded by at most that amount per player.
+ *
+ * <p>When the budget shrinks for a player because a player with a higher priority is prepared or
+ * raised in priority, the player stops loading until playback has consumed enough of its buffer to
+ * get below its new share, so lower priority players give up memory first.
+ */
+public final class MemoryBudget {
+
+  /** The default minimum buffer size granted to each player, in bytes. */
+  public static final int DEFAULT_MIN_PLAYER_BUFFER_BYTES = 32 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
+
+  private final int totalBudgetBytes;
+  private final int minPlayerBufferBytes;
+  private final DefaultAllocator allocator;
+  private final List<MemoryBudgetLoadControl> loadControls;
+  private final Comparator<MemoryBudgetLoadControl> priorityComparator;
+
+  /**
+   * Creates an instance with the {@link #DEFAULT_MIN_PLAYER_BUFFER_BYTES default minimum player
+   * buffer size}.
+   *
+   * @param totalBudgetBytes The total media buffer size of all players, in bytes.
+   */
+  public MemoryBudget(int totalBudgetBytes) {
+    this(totalBudgetBytes, DEFAULT_MIN_PLAYER_BUFFER_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param totalBudgetBytes The total media buffer size of all players, in bytes.
+   * @param minPlayerBufferBytes The minimum buffer size granted to each player, in bytes.
+   */
+  public MemoryBudget(int totalBudgetBytes, int minPlayerBufferBytes) {
+    Assertions.checkArgument(totalBudgetBytes > 0);
+    Assertions.checkArgument(minPlayerBufferBytes >= 0);
+    this.totalBudgetBytes = totalBudgetBytes;
+    this.minPlayerBufferBytes = minPlayerBufferBytes;
+    allocator = new DefaultAllocator(/* trimOnReset= */ false, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    // Keep released allocations up to the budget available for reuse by any player.
+    allocator.setTargetBufferSize(totalBudgetBytes);
+    loadControls = new ArrayList<>();
+    priorityComparator = (first, second) -> Integer.compare(second.priority, first.priority);
+  }
+
+  /** Returns the total media buffer size of all players, in bytes. */
+  public int getTotalBudgetBytes() {
+    return totalBudgetBytes;
+  }
+
+  /** Returns the number of bytes currently allocated by all players. */
+  public int getTotalBytesAllocated() {
+    return allocator.getTotalBytesAllocated();
+  }
+
+  /** Returns the number of players currently registered with the budget. */
+  public synchronized int getPlayerCount() {
+    return loadControls.size();
+  }
+
+  /* package */ DefaultAllocator getAllocator() {
+    return allocator;
+  }
+
+  /* package */ synchronized void register(MemoryBudgetLoadControl loadControl) {
+    if (!loadControls.contains(loadControl)) {
+      loadControls.add(loadControl);
+    }
+    updateTargetBufferBytes();
+  }
+
+  /* package */ synchronized void unregister(MemoryBudgetLoadControl loadControl) {
+    loadControls.remove(loadControl);
+    loadControl.targetBufferBytes = 0;
+    updateTargetBufferBytes();
+  }
+
+  /**
+   * Redistributes the budget between the registered players. Must be called whenever the priority
+   * or requested buffer size of a registered player changes.
+   */
+  /* package */ synchronized void updateTargetBufferBytes() {
+    Collections.sort(loadControls, priorityComparator);
+    long remainingBytes = totalBudgetBytes;
+    int levelStartIndex = 0;
+    while (levelStartIndex < loadControls.size()) {
+      int priority = loadControls.get(levelStartIndex).priority;
+      int levelEndIndex = levelStartIndex;
+      long levelRequestedBytes = 0;
+      while (levelEndIndex < loadControls.size()
+          && loadControls.get(levelEndIndex).priority == priority) {
+        levelRequestedBytes += loadControls.get(levelEndIndex).requestedBufferBytes;
+        levelEndIndex++;
+      }
+      long levelGrantedBytes = 0;
+      for (int i = levelStartIndex; i < levelEndIndex; i++) {
+        MemoryBudgetLoadControl loadControl = loadControls.get(i);
+        int requestedBytes = loadControl.requestedBufferBytes;
+        long grantedBytes =
+            levelRequestedBytes <= remainingBytes
+                ? requestedBytes
+                : remainingBytes * requestedBytes / levelRequestedBytes;
+        grantedBytes = max(grantedBytes, min(requestedBytes, minPlayerBufferBytes));
+        loadControl.targetBufferBytes = (int) grantedBytes;
+        levelGrantedBytes += grantedBytes;
+      }
+      remainingBytes = max(0, remainingBytes - levelGrantedBytes);
+      levelStartIndex = levelEndIndex;
+    }
+  }
+}
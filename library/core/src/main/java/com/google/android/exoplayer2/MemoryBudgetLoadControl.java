@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.android.exoplayer2.util.Assertions.checkState;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link LoadControl} whose target buffer size is granted by a {@link MemoryBudget} shared with
+ * other players.
+ *
+ * <p>Buffer durations behave as in {@link DefaultLoadControl}. The target buffer size requested
+ * from the budget is calculated from the selected tracks in the same way as {@link
+ * DefaultLoadControl} does, and the size actually used is the share granted by the budget, which
+ * depends on the {@link #setPriority(int) priority} of this player relative to the other players
+ * using the budget.
+ *
+ * <p>An instance must only be used by a single player.
+ */
+public final class MemoryBudgetLoadControl implements LoadControl {
+
+  /** The priority of players in the foreground, such as the main player of a multi-view layout. */
+  public static final int PRIORITY_FOREGROUND = C.PRIORITY_PLAYBACK;
+  /** The priority of players in the background, such as thumbnails and previews. */
+  public static final int PRIORITY_BACKGROUND = C.PRIORITY_PLAYBACK - 100;
+
+  /** Builder for {@link MemoryBudgetLoadControl}. */
+  public static final class Builder {
+
+    private final MemoryBudget memoryBudget;
+
+    private int priority;
+    private int minBufferMs;
+    private int maxBufferMs;
+    private int bufferForPlaybackMs;
+    private int bufferForPlaybackAfterRebufferMs;
+    private boolean prioritizeTimeOverSizeThresholds;
+    private int backBufferDurationMs;
+    private boolean retainBackBufferFromKeyframe;
+    private boolean buildCalled;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param memoryBudget The {@link MemoryBudget} shared with other players.
+     */
+    public Builder(MemoryBudget memoryBudget) {
+      this.memoryBudget = memoryBudget;
+      priority = PRIORITY_FOREGROUND;
+      minBufferMs = DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
+      maxBufferMs = DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
+      bufferForPlaybackMs = DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS;
+      bufferForPlaybackAfterRebufferMs =
+          DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
+      prioritizeTimeOverSizeThresholds =
+          DefaultLoadControl.DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS;
+      backBufferDurationMs = DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS;
+      retainBackBufferFromKeyframe = DefaultLoadControl.DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME;
+    }
+
+    /**
+     * Sets the initial priority of the player. Higher values are granted their share of the
+     * budget first. The default value is {@link #PRIORITY_FOREGROUND}.
+     *
+     * @param priority The priority.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setPriority(int priority) {
+      checkState(!buildCalled);
+      this.priority = priority;
+      return this;
+    }
+
+    /**
+     * Sets the buffer duration parameters. See {@link
+     * DefaultLoadControl.Builder#setBufferDurationsMs(int, int, int, int)}.
+     *
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setBufferDurationsMs(
+        int minBufferMs,
+        int maxBufferMs,
+        int bufferForPlaybackMs,
+        int bufferForPlaybackAfterRebufferMs) {
+      checkState(!buildCalled);
+      Assertions.checkArgument(bufferForPlaybackMs >= 0);
+      Assertions.checkArgument(bufferForPlaybackAfterRebufferMs >= 0);
+      Assertions.checkArgument(minBufferMs >= bufferForPlaybackMs);
+      Assertions.checkArgument(minBufferMs >= bufferForPlaybackAfterRebufferMs);
+      Assertions.checkArgument(maxBufferMs >= minBufferMs);
+      this.minBufferMs = minBufferMs;
+      this.maxBufferMs = maxBufferMs;
+      this.bufferForPlaybackMs = bufferForPlaybackMs;
+      this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+      return this;
+    }
+
+    /**
+     * Sets whether the load control prioritizes buffer time constraints over buffer size
+     * constraints. See {@link DefaultLoadControl.Builder#setPrioritizeTimeOverSizeThresholds}.
+     *
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setPrioritizeTimeOverSizeThresholds(boolean prioritizeTimeOverSizeThresholds) {
+      checkState(!buildCalled);
+      this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
+      return this;
+    }
+
+    /**
+     * Sets the back buffer duration, and whether the back buffer is retained from the previous
+     * keyframe. See {@link DefaultLoadControl.Builder#setBackBuffer(int, boolean)}.
+     *
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setBackBuffer(int backBufferDurationMs, boolean retainBackBufferFromKeyframe) {
+      checkState(!buildCalled);
+      Assertions.checkArgument(backBufferDurationMs >= 0);
+      this.backBufferDurationMs = backBufferDurationMs;
+      this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+      return this;
+    }
+
+    /** Creates a {@link MemoryBudgetLoadControl}. */
+    public MemoryBudgetLoadControl build() {
+      checkState(!buildCalled);
+      buildCalled = true;
+      return new MemoryBudgetLoadControl(this);
+    }
+  }
+
+  private final MemoryBudget memoryBudget;
+  private final PlayerAllocator allocator;
+  private final long minBufferUs;
+  private final long maxBufferUs;
+  private final long bufferForPlaybackUs;
+  private final long bufferForPlaybackAfterRebufferUs;
+  private final boolean prioritizeTimeOverSizeThresholds;
+  private final long backBufferDurationUs;
+  private final boolean retainBackBufferFromKeyframe;
+
+  // Guarded by the lock of memoryBudget.
+  /* package */ int priority;
+  /* package */ int requestedBufferBytes;
+  // Written with the lock of memoryBudget held, read from the playback thread.
+  /* package */ volatile int targetBufferBytes;
+
+  private boolean isLoading;
+
+  private MemoryBudgetLoadControl(Builder builder) {
+    memoryBudget = builder.memoryBudget;
+    allocator = new PlayerAllocator(memoryBudget.getAllocator());
+    minBufferUs = Util.msToUs(builder.minBufferMs);
+    maxBufferUs = Util.msToUs(builder.maxBufferMs);
+    bufferForPlaybackUs = Util.msToUs(builder.bufferForPlaybackMs);
+    bufferForPlaybackAfterRebufferUs = Util.msToUs(builder.bufferForPlaybackAfterRebufferMs);
+    prioritizeTimeOverSizeThresholds = builder.prioritizeTimeOverSizeThresholds;
+    backBufferDurationUs = Util.msToUs(builder.backBufferDurationMs);
+    retainBackBufferFromKeyframe = builder.retainBackBufferFromKeyframe;
+    priority = builder.priority;
+  }
+
+  /**
+   * Sets the priority of the player, and redistributes the budget between the players accordingly.
+   * Higher values are granted their share of the budget first. May be called from any thread.
+   *
+   * @param priority The priority, for example {@link #PRIORITY_FOREGROUND} or {@link
+   *     #PRIORITY_BACKGROUND}.
+   */
+  public void setPriority(int priority) {
+    synchronized (memoryBudget) {
+      this.priority = priority;
+      memoryBudget.updateTargetBufferBytes();
+    }
+  }
+
+  /** Returns the priority of the player. */
+  public int getPriority() {
+    synchronized (memoryBudget) {
+      return priority;
+    }
+  }
+
+  /** Returns the target buffer size requested by the player for its selected tracks, in bytes. */
+  public int getRequestedBufferBytes() {
+    synchronized (memoryBudget) {
+      return requestedBufferBytes;
+    }
+  }
+
+  /** Returns the target buffer size currently granted to the player by the budget, in bytes. */
+  public int getTargetBufferBytes() {
+    return targetBufferBytes;
+  }
+
+  /** Returns the number of bytes currently allocated by the player. */
+  public int getAllocatedBytes() {
+    return allocator.getTotalBytesAllocated();
+  }
+
+  /** Returns the maximum number of bytes allocated by the player at any one time. */
+  public int getPeakAllocatedBytes() {
+    return allocator.peakAllocatedBytes.get();
+  }
+
+  @Override
+  public void onPrepared() {
+    isLoading = false;
+    synchronized (memoryBudget) {
+      // Request the minimum buffer size until tracks are selected, as DefaultLoadControl does.
+      requestedBufferBytes = DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE;
+      memoryBudget.register(this);
+    }
+  }
+
+  @Override
+  public void onTracksSelected(
+      Renderer[] renderers, TrackGroupArray trackGroups, ExoTrackSelection[] trackSelections) {
+    int requestedBufferBytes = 0;
+    for (int i = 0; i < renderers.length; i++) {
+      if (trackSelections[i] != null) {
+        requestedBufferBytes +=
+            DefaultLoadControl.getDefaultBufferSize(renderers[i].getTrackType());
+      }
+    }
+    requestedBufferBytes = max(DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE, requestedBufferBytes);
+    synchronized (memoryBudget) {
+      this.requestedBufferBytes = requestedBufferBytes;
+      memoryBudget.register(this);
+    }
+  }
+
+  @Override
+  public void onStopped() {
+    isLoading = false;
+    synchronized (memoryBudget) {
+      requestedBufferBytes = 0;
+      memoryBudget.unregister(this);
+    }
+  }
+
+  @Override
+  public void onReleased() {
+    onStopped();
+  }
+
+  @Override
+  public Allocator getAllocator() {
+    return allocator;
+  }
+
+  @Override
+  public long getBackBufferDurationUs() {
+    return backBufferDurationUs;
+  }
+
+  @Override
+  public boolean retainBackBufferFromKeyframe() {
+    return retainBackBufferFromKeyframe;
+  }
+
+  @Override
+  public boolean shouldContinueLoading(
+      long playbackPositionUs, long bufferedDurationUs, float playbackSpeed) {
+    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
+    long minBufferUs = this.minBufferUs;
+    if (playbackSpeed > 1) {
+      // The playback speed is faster than real time, so scale up the minimum required media
+      // duration to keep enough media buffered for a playout duration of minBufferUs.
+      long mediaDurationMinBufferUs =
+          Util.getMediaDurationForPlayoutDuration(minBufferUs, playbackSpeed);
+      minBufferUs = min(mediaDurationMinBufferUs, maxBufferUs);
+    }
+    // Prevent playback from getting stuck if minBufferUs is too small.
+    minBufferUs = max(minBufferUs, 500_000);
+    if (bufferedDurationUs < minBufferUs) {
+      isLoading = prioritizeTimeOverSizeThresholds || !targetBufferSizeReached;
+    } else if (bufferedDurationUs >= maxBufferUs || targetBufferSizeReached) {
+      isLoading = false;
+    } // Else don't change the loading state.
+    return isLoading;
+  }
+
+  @Override
+  public boolean shouldStartPlayback(
+      long bufferedDurationUs, float playbackSpeed, boolean rebuffering, long targetLiveOffsetUs) {
+    bufferedDurationUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+    if (targetLiveOffsetUs != C.TIME_UNSET) {
+      minBufferDurationUs = min(targetLiveOffsetUs / 2, minBufferDurationUs);
+    }
+    return minBufferDurationUs <= 0
+        || bufferedDurationUs >= minBufferDurationUs
+        || (!prioritizeTimeOverSizeThresholds
+            && allocator.getTotalBytesAllocated() >= targetBufferBytes);
+  }
+
+  /** Allocates from the shared allocator of the budget, counting the bytes of a single player. */
+  private static final class PlayerAllocator implements Allocator {
+
+    private final DefaultAllocator sharedAllocator;
+    private final int individualAllocationSize;
+    private final AtomicInteger allocatedBytes;
+    private final AtomicInteger peakAllocatedBytes;
+
+    public PlayerAllocator(DefaultAllocator sharedAllocator) {
+      this.sharedAllocator = sharedAllocator;
+      individualAllocationSize = sharedAllocator.getIndividualAllocationLength();
+      allocatedBytes = new AtomicInteger();
+      peakAllocatedBytes = new AtomicInteger();
+    }
+
+    @Override
+    public Allocation allocate() {
+      Allocation allocation = sharedAllocator.allocate();
+      int bytes = allocatedBytes.addAndGet(individualAllocationSize);
+      int peakBytes = peakAllocatedBytes.get();
+      while (bytes > peakBytes && !peakAllocatedBytes.compareAndSet(peakBytes, bytes)) {
+        peakBytes = peakAllocatedBytes.get();
+      }
+      return allocation;
+    }
+
+    @Override
+    public void release(Allocation allocation) {
+      sharedAllocator.release(allocation);
+      allocatedBytes.addAndGet(-individualAllocationSize);
+    }
+
+    @Override
+    public void release(@Nullable AllocationNode allocationNode) {
+      int count = 0;
+      for (@Nullable AllocationNode node = allocationNode; node != null; node = node.next()) {
+        count++;
+      }
+      sharedAllocator.release(allocationNode);
+      allocatedBytes.addAndGet(-count * individualAllocationSize);
+    }
+
+    @Override
+    public void trim() {
+      sharedAllocator.trim();
+    }
+
+    @Override
+    public int getTotalBytesAllocated() {
+      return allocatedBytes.get();
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return individualAllocationSize;
+    }
+  }
+}
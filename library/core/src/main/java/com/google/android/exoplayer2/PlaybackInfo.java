@@ -28,22 +28,6 @@ import java.util.List;
 /** Information about an ongoing playback. */
 /* package */ final class PlaybackInfo {
 
-
-  /**  */
-  public static class SeiDataItemInfo {
-
-    public static final int WHEN_EXTRACT = 1;
-    public static final int WHEN_RENDER = 2;
-
-    public SeiDataItem seiDataItem;
-    public int when;
-
-    public SeiDataItemInfo(SeiDataItem seiDataItem, int when){
-      this.seiDataItem = seiDataItem;
-      this.when = when;
-    }
-  }
-
   /**
    * Placeholder media period id used while the timeline is empty and no period id is specified.
    * This id is used when playback infos are created with {@link #createDummy(TrackSelectorResult)}.
@@ -107,9 +91,6 @@ import java.util.List;
    */
   public volatile long positionUs;
 
-
-  @Nullable public SeiDataItemInfo seiDataItemInfo;
-
   /**
    * Creates an empty placeholder playback info which can be used for masking as long as no real
    * playback info is available.
@@ -138,8 +119,7 @@ import java.util.List;
         /* totalBufferedDurationUs= */ 0,
         /* positionUs= */ 0,
         /* offloadSchedulingEnabled= */ false,
-        /* sleepingForOffload= */ false,
-        null);
+        /* sleepingForOffload= */ false);
   }
 
   /**
@@ -183,8 +163,7 @@ import java.util.List;
       long totalBufferedDurationUs,
       long positionUs,
       boolean offloadSchedulingEnabled,
-      boolean sleepingForOffload,
-      SeiDataItemInfo seiDataItemInfo) {
+      boolean sleepingForOffload) {
     this.timeline = timeline;
     this.periodId = periodId;
     this.requestedContentPositionUs = requestedContentPositionUs;
@@ -204,7 +183,6 @@ import java.util.List;
     this.positionUs = positionUs;
     this.offloadSchedulingEnabled = offloadSchedulingEnabled;
     this.sleepingForOffload = sleepingForOffload;
-    this.seiDataItemInfo = seiDataItemInfo;
   }
 
   /** Returns a placeholder period id for an empty timeline. */
@@ -256,8 +234,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -287,8 +264,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -318,8 +294,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -349,8 +324,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -380,8 +354,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -411,8 +384,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -446,8 +418,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -477,8 +448,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -509,8 +479,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
   /**
@@ -540,32 +509,7 @@ import java.util.List;
         totalBufferedDurationUs,
         positionUs,
         offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
+        sleepingForOffload);
   }
 
-  @CheckResult
-  public PlaybackInfo copyWithSeiDataItem(SeiDataItemInfo seiDataItemInfo) {
-    return new PlaybackInfo(
-        timeline,
-        periodId,
-        requestedContentPositionUs,
-        discontinuityStartPositionUs,
-        playbackState,
-        playbackError,
-        isLoading,
-        trackGroups,
-        trackSelectorResult,
-        staticMetadata,
-        loadingMediaPeriodId,
-        playWhenReady,
-        playbackSuppressionReason,
-        playbackParameters,
-        bufferedPositionUs,
-        totalBufferedDurationUs,
-        positionUs,
-        offloadSchedulingEnabled,
-        sleepingForOffload,
-        seiDataItemInfo);
-  }
 }
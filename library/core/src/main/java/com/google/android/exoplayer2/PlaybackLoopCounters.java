@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static java.lang.Math.max;
+
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * Maintains counts of the wakeups of a player's playback loop, for debugging purposes only.
+ *
+ * <p>Counters should be written from the playback thread only. Counters may be read from any
+ * thread. To ensure that the counter values are made visible across threads, users of this class
+ * should invoke {@link #ensureUpdated()} prior to reading and after writing.
+ */
+public final class PlaybackLoopCounters {
+
+  private static final long WINDOW_DURATION_MS = 1000;
+
+  /** The total number of times the playback loop woke up to do work. */
+  public long wakeupCount;
+  /**
+   * The number of wakeups during the last complete one second window, or 0 if no window has
+   * completed yet.
+   */
+  public int wakeupsPerSecond;
+  /** The maximum value of {@link #wakeupsPerSecond} observed so far. */
+  public int maxWakeupsPerSecond;
+  /** The interval until the next wakeup, as last scheduled by the playback loop, in milliseconds. */
+  public long lastScheduledIntervalMs;
+
+  private long windowStartTimeMs;
+  private int windowWakeupCount;
+
+  /** Creates an instance. */
+  public PlaybackLoopCounters() {
+    windowStartTimeMs = C.TIME_UNSET;
+  }
+
+  /**
+   * Records a wakeup of the playback loop.
+   *
+   * @param nowMs The current time, in milliseconds, as given by {@link
+   *     com.google.android.exoplayer2.util.Clock#uptimeMillis()}.
+   */
+  /* package */ void onWakeup(long nowMs) {
+    wakeupCount++;
+    if (windowStartTimeMs == C.TIME_UNSET) {
+      windowStartTimeMs = nowMs;
+    } else if (nowMs - windowStartTimeMs >= WINDOW_DURATION_MS) {
+      // Attribute the wakeups to the last complete window, and drop any windows without wakeups.
+      wakeupsPerSecond =
+          nowMs - windowStartTimeMs >= 2 * WINDOW_DURATION_MS ? 0 : windowWakeupCount;
+      maxWakeupsPerSecond = max(maxWakeupsPerSecond, wakeupsPerSecond);
+      windowStartTimeMs = nowMs;
+      windowWakeupCount = 0;
+    }
+    windowWakeupCount++;
+  }
+
+  /**
+   * Should be called to ensure counter values are made visible across threads. The playback thread
+   * should call this method after updating the counter values. Any other thread should call this
+   * method before reading the counters.
+   */
+  public synchronized void ensureUpdated() {
+    // Do nothing. The use of synchronized ensures a memory barrier should another thread also
+    // call this method.
+  }
+
+  @Override
+  public String toString() {
+    return Util.formatInvariant(
+        "PlaybackLoopCounters {\n "
+            + "wakeups=%s,\n "
+            + "wakeupsPerSecond=%s\n "
+            + "maxWakeupsPerSecond=%s\n "
+            + "lastScheduledIntervalMs=%s\n}",
+        wakeupCount,
+        wakeupsPerSecond,
+        maxWakeupsPerSecond,
+        lastScheduledIntervalMs);
+  }
+}
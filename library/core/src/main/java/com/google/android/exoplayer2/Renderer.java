@@ -230,6 +230,12 @@ public interface Renderer extends PlayerMessage.Target {
    */
   int STATE_STARTED = 2;
 
+  /**
+   * Default duration returned by {@link #getDurationToProgressUs(long, long)}, in microseconds,
+   * matching the interval at which the player calls {@link #render(long, long)} while playing.
+   */
+  long DEFAULT_DURATION_TO_PROGRESS_US = 10_000;
+
   /**
    * Returns the name of this renderer, for logging and debugging purposes. Should typically be the
    * renderer's (un-obfuscated) class name.
@@ -442,6 +448,31 @@ public interface Renderer extends PlayerMessage.Target {
    */
   void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException;
 
+  /**
+   * Returns the realtime duration the player may wait after the current call to {@link
+   * #render(long, long)} before calling it again, without the renderer missing a deadline.
+   *
+   * <p>This is only used if dynamic scheduling is enabled (see {@link
+   * ExoPlayer.Builder#experimentalSetDynamicSchedulingEnabled(boolean)}). The player may call
+   * {@link #render(long, long)} earlier than the returned duration, for example because another
+   * renderer needs to progress sooner. Renderers that don't need to be called at all may return
+   * {@link Long#MAX_VALUE}.
+   *
+   * <p>The default implementation returns {@link #DEFAULT_DURATION_TO_PROGRESS_US}.
+   *
+   * <p>This method may be called when the renderer is in the following states: {@link
+   * #STATE_ENABLED}, {@link #STATE_STARTED}.
+   *
+   * @param positionUs The current media time in microseconds, as passed to the last call to {@link
+   *     #render(long, long)}.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds,
+   *     as passed to the last call to {@link #render(long, long)}.
+   * @return The duration until the renderer needs to be called again, in microseconds.
+   */
+  default long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    return DEFAULT_DURATION_TO_PROGRESS_US;
+  }
+
   /**
    * Whether the renderer is able to immediately render media from the current position.
    *
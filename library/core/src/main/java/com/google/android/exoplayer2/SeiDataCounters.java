@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * Maintains SEI delivery event counts, for debugging purposes only.
+ *
+ * <p>Counters should be written from the playback thread only. Counters may be read from any
+ * thread. To ensure that the counter values are made visible across threads, users of this class
+ * should invoke {@link #ensureUpdated()} prior to reading and after writing.
+ */
+public final class SeiDataCounters {
+
+  /** The number of SEI items handed to the player by the extractors. */
+  public long extractedCount;
+  /** The number of SEI items delivered to listeners when their presentation time was reached. */
+  public long renderedCount;
+  /**
+   * The number of SEI items dropped because the delivery queue was full when they were extracted.
+   */
+  public long droppedCount;
+  /**
+   * The number of SEI items whose presentation time had already been passed by the playback
+   * position when they were extracted.
+   */
+  public long lateCount;
+  /** The number of batches delivered to listeners. */
+  public long batchCount;
+  /** The maximum number of SEI items delivered in a single batch. */
+  public int maxBatchSize;
+
+  /**
+   * Should be called to ensure counter values are made visible across threads. The playback thread
+   * should call this method after updating the counter values. Any other thread should call this
+   * method before reading the counters.
+   */
+  public synchronized void ensureUpdated() {
+    // Do nothing. The use of synchronized ensures a memory barrier should another thread also
+    // call this method.
+  }
+
+  @Override
+  public String toString() {
+    return Util.formatInvariant(
+        "SeiDataCounters {\n "
+            + "extracted=%s,\n "
+            + "rendered=%s\n "
+            + "dropped=%s\n "
+            + "late=%s\n "
+            + "batches=%s\n "
+            + "maxBatchSize=%s\n}",
+        extractedCount,
+        renderedCount,
+        droppedCount,
+        lateCount,
+        batchCount,
+        maxBatchSize);
+  }
+}
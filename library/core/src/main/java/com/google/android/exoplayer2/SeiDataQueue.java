@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A ring buffer carrying {@link SeiDataItem SeiDataItems} from the loading threads to the playback
+ * thread.
+ *
+ * <p>Items are added by {@link #offer(SeiDataItem)} on the loading threads, and consumed in batches
+ * on the playback thread by {@link #pollExtracted(long, List)} and {@link #pollRendered(long,
+ * List)}. Items are held until their presentation time has been reached, so the buffer grows as
+ * needed to hold all SEI items of the buffered media, up to a maximum capacity beyond which newly
+ * offered items are dropped and counted.
+ *
+ * <p>The playback thread never takes a lock. The write and read indices are volatile, and the
+ * buffer is only replaced by {@link #offer(SeiDataItem)}, which publishes the grown buffer through
+ * a volatile field before publishing any item written into it. Offering threads are serialized
+ * among themselves, as several loading threads can feed the same player.
+ */
+/* package */ final class SeiDataQueue {
+
+  /** The default initial capacity of the queue. */
+  public static final int DEFAULT_INITIAL_CAPACITY = 256;
+  /**
+   * The default maximum capacity of the queue, which holds the SEI items of more than 18 minutes of
+   * 60 fps video.
+   */
+  public static final int DEFAULT_MAX_CAPACITY = 1 << 16;
+
+  private final int maxCapacity;
+  private final Object offerLock;
+
+  // Written by offering threads only.
+  private volatile @NullableType SeiDataItem[] items;
+  private volatile long writeIndex;
+  private volatile long droppedCount;
+
+  // Written by the playback thread only.
+  private volatile long readIndex;
+  private long extractedIndex;
+  private long lateCount;
+
+  /** Creates an instance with the default initial and maximum capacities. */
+  public SeiDataQueue() {
+    this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_CAPACITY);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param initialCapacity The initial number of items held by the queue. Must be a power of two.
+   * @param maxCapacity The maximum number of items held by the queue. Must be a power of two, and
+   *     not less than {@code initialCapacity}.
+   */
+  public SeiDataQueue(int initialCapacity, int maxCapacity) {
+    checkArgument(initialCapacity > 0 && (initialCapacity & (initialCapacity - 1)) == 0);
+    checkArgument(maxCapacity >= initialCapacity && (maxCapacity & (maxCapacity - 1)) == 0);
+    this.maxCapacity = maxCapacity;
+    offerLock = new Object();
+    items = new SeiDataItem[initialCapacity];
+  }
+
+  /**
+   * Adds an item to the queue. Called on a loading thread.
+   *
+   * @param item The item to add.
+   * @return Whether the item was added. If false, the queue has reached its maximum capacity and
+   *     the item was dropped and released.
+   */
+  public boolean offer(SeiDataItem item) {
+    synchronized (offerLock) {
+      @NullableType SeiDataItem[] items = this.items;
+      long writeIndex = this.writeIndex;
+      long readIndex = this.readIndex;
+      if (writeIndex - readIndex == items.length) {
+        if (items.length == maxCapacity) {
+          droppedCount++;
+          item.release();
+          return false;
+        }
+        items = grow(items, readIndex, writeIndex);
+      }
+      items[(int) writeIndex & (items.length - 1)] = item;
+      this.writeIndex = writeIndex + 1;
+      return true;
+    }
+  }
+
+  /**
+   * Adds the items added since the last call to {@code output}. Called on the playback thread.
+   *
+   * @param positionUs The current playback position, in microseconds. Items whose presentation
+   *     time is before this position are counted as late.
+   * @param output The list to which the newly extracted items are added, in extraction order.
+   * @return Whether any items were added to {@code output}.
+   */
+  public boolean pollExtracted(long positionUs, List<SeiDataItem> output) {
+    // The write index is read before the buffer, so that the buffer holds all items before it.
+    long writeIndex = this.writeIndex;
+    if (extractedIndex == writeIndex) {
+      return false;
+    }
+    @NullableType SeiDataItem[] items = this.items;
+    int mask = items.length - 1;
+    for (long i = extractedIndex; i < writeIndex; i++) {
+      SeiDataItem item = checkNotNull(items[(int) i & mask]);
+      if (item.getPts() < positionUs) {
+        lateCount++;
+      }
+      output.add(item);
+    }
+    extractedIndex = writeIndex;
+    return true;
+  }
+
+  /**
+   * Removes the items at the head of the queue whose presentation time has been reached, and adds
+   * them to {@code output}. Only items previously returned by {@link #pollExtracted(long, List)}
+   * are considered. Called on the playback thread.
+   *
+   * @param positionUs The current playback position, in microseconds.
+   * @param output The list to which the rendered items are added, in extraction order.
+   * @return Whether any items were added to {@code output}.
+   */
+  public boolean pollRendered(long positionUs, List<SeiDataItem> output) {
+    @NullableType SeiDataItem[] items = this.items;
+    int mask = items.length - 1;
+    long fromIndex = readIndex;
+    long readIndex = fromIndex;
+    while (readIndex < extractedIndex) {
+      int slot = (int) readIndex & mask;
+      SeiDataItem item = checkNotNull(items[slot]);
+      if (item.getPts() >= positionUs) {
+        break;
+      }
+      output.add(item);
+      // If the buffer has grown meanwhile, the grown buffer keeps a reference to the item until
+      // the slot is reused.
+      items[slot] = null;
+      readIndex++;
+    }
+    this.readIndex = readIndex;
+    return readIndex != fromIndex;
+  }
+
+  /**
+   * Discards all items in the queue. Called on the playback thread.
+   *
+   * <p>Items not yet returned by {@link #pollExtracted(long, List)} are released. Items already
+   * returned may still be accessed by the receiver of the extracted items, so they are added to
+   * {@code discardedOutput} instead, and must be released by the caller once that receiver is done
+   * with them.
+   *
+   * @param discardedOutput The list to which the extracted but unrendered items are added.
+   * @return Whether any items were added to {@code discardedOutput}.
+   */
+  public boolean clear(List<SeiDataItem> discardedOutput) {
+    long writeIndex = this.writeIndex;
+    @NullableType SeiDataItem[] items = this.items;
+    int mask = items.length - 1;
+    for (long i = readIndex; i < writeIndex; i++) {
+      int slot = (int) i & mask;
+      SeiDataItem item = checkNotNull(items[slot]);
+      if (i < extractedIndex) {
+        discardedOutput.add(item);
+      } else {
+        item.release();
+      }
+      items[slot] = null;
+    }
+    boolean hasDiscardedItems = extractedIndex != readIndex;
+    extractedIndex = writeIndex;
+    readIndex = writeIndex;
+    return hasDiscardedItems;
+  }
+
+  /** Returns the number of items dropped because the queue had reached its maximum capacity. */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /**
+   * Returns the number of items that were already late when returned by {@link
+   * #pollExtracted(long, List)}. Called on the playback thread.
+   */
+  public long getLateCount() {
+    return lateCount;
+  }
+
+  /**
+   * Copies the items from {@code readIndex} to {@code writeIndex} into a buffer of twice the size,
+   * and publishes it. Called with the offer lock held.
+   */
+  private @NullableType SeiDataItem[] grow(
+      @NullableType SeiDataItem[] items, long readIndex, long writeIndex) {
+    @NullableType SeiDataItem[] newItems = new SeiDataItem[items.length * 2];
+    int mask = items.length - 1;
+    int newMask = newItems.length - 1;
+    for (long i = readIndex; i < writeIndex; i++) {
+      newItems[(int) i & newMask] = items[(int) i & mask];
+    }
+    this.items = newItems;
+    return newItems;
+  }
+}
@@ -605,6 +605,18 @@ public class SimpleExoPlayer extends BasePlayer
     return player.getAudioDecoderCounters();
   }
 
+  @Override
+  public SeiDataCounters getSeiDataCounters() {
+    blockUntilConstructorFinished();
+    return player.getSeiDataCounters();
+  }
+
+  @Override
+  public PlaybackLoopCounters getPlaybackLoopCounters() {
+    blockUntilConstructorFinished();
+    return player.getPlaybackLoopCounters();
+  }
+
   @Override
   public void setVideoFrameMetadataListener(VideoFrameMetadataListener listener) {
     blockUntilConstructorFinished();
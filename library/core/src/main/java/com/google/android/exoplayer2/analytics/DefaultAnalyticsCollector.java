@@ -61,6 +61,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.RequiresNonNull;
@@ -706,6 +707,23 @@ public class DefaultAnalyticsCollector implements AnalyticsCollector {
         listener -> listener.onMetadata(eventTime, metadata));
   }
 
+  // SEI payloads are not reported to analytics listeners. The per-item SEI callbacks are overridden
+  // so that the default implementations don't copy every payload.
+
+  @Override
+  public final void onUserDataUnregistedAfterExtract(
+      @Nullable ByteBuffer uuid, @Nullable ByteBuffer data, long pts) {}
+
+  @Override
+  public final void onUserDataUnregistedWhenRender(
+      @Nullable ByteBuffer uuid, @Nullable ByteBuffer data, long pts) {}
+
+  @Override
+  public final void onAgoraDefinedDataAfterExtract(ByteBuffer data, long pts) {}
+
+  @Override
+  public final void onAgoraDefinedDataWhenRender(ByteBuffer data, long pts) {}
+
   @Override
   public void onCues(List<Cue> cues) {
     EventTime eventTime = generateCurrentPlayerMediaPeriodEventTime();
@@ -510,6 +510,23 @@ public abstract class DecoderAudioRenderer<
         || (inputFormat != null && (isSourceReady() || outputBuffer != null));
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    @Nullable SimpleDecoderOutputBuffer outputBuffer = this.outputBuffer;
+    if (outputBuffer == null || outputBuffer.isEndOfStream()) {
+      return DEFAULT_DURATION_TO_PROGRESS_US;
+    }
+    // The sink is full, and will hold data up to the start of the pending output buffer. Wake up
+    // when half of it has been played out, so that it never drains.
+    long durationUs =
+        (long) ((outputBuffer.timeUs - positionUs) / audioSink.getPlaybackParameters().speed / 2);
+    if (getState() == STATE_STARTED) {
+      // Account for the elapsed time since the start of this iteration of the rendering loop.
+      durationUs -= SystemClock.elapsedRealtime() * 1000 - elapsedRealtimeUs;
+    }
+    return max(DEFAULT_DURATION_TO_PROGRESS_US, durationUs);
+  }
+
   @Override
   public long getPositionUs() {
     if (getState() == STATE_STARTED) {
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.metadata;
 
 import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static java.lang.Math.max;
 
 import android.os.Handler;
 import android.os.Handler.Callback;
@@ -50,6 +51,7 @@ public final class MetadataRenderer extends BaseRenderer implements Callback {
   private long subsampleOffsetUs;
   private long pendingMetadataTimestampUs;
   @Nullable private Metadata pendingMetadata;
+  private float playbackSpeed;
 
   /**
    * @param output The output.
@@ -81,6 +83,7 @@ public final class MetadataRenderer extends BaseRenderer implements Callback {
     this.decoderFactory = Assertions.checkNotNull(decoderFactory);
     buffer = new MetadataInputBuffer();
     pendingMetadataTimestampUs = C.TIME_UNSET;
+    playbackSpeed = 1f;
   }
 
   @Override
@@ -103,6 +106,11 @@ public final class MetadataRenderer extends BaseRenderer implements Callback {
     decoder = decoderFactory.createDecoder(formats[0]);
   }
 
+  @Override
+  public void setPlaybackSpeed(float currentPlaybackSpeed, float targetPlaybackSpeed) {
+    playbackSpeed = currentPlaybackSpeed;
+  }
+
   @Override
   protected void onPositionReset(long positionUs, boolean joining) {
     pendingMetadata = null;
@@ -120,6 +128,20 @@ public final class MetadataRenderer extends BaseRenderer implements Callback {
     }
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (outputStreamEnded) {
+      return Long.MAX_VALUE;
+    }
+    if (pendingMetadata == null) {
+      // Waiting for the next sample to become available.
+      return DEFAULT_DURATION_TO_PROGRESS_US;
+    }
+    // Only one sample is read ahead, so nothing happens until the pending one is due.
+    long durationUs = (long) ((pendingMetadataTimestampUs - positionUs) / playbackSpeed);
+    return max(DEFAULT_DURATION_TO_PROGRESS_US, durationUs);
+  }
+
   /**
    * Iterates through {@code metadata.entries} and checks each one to see if contains wrapped
    * metadata. If it does, then we recursively decode the wrapped metadata. If it doesn't (recursion
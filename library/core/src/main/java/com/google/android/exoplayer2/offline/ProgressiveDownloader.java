@@ -62,12 +62,30 @@ public final class ProgressiveDownloader implements Downloader {
    * @param mediaItem The media item with a uri to the stream to be downloaded.
    * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
    *     download will be written.
-   * @param executor An {@link Executor} used to make requests for the media being downloaded. In
-   *     the future, providing an {@link Executor} that uses multiple threads may speed up the
-   *     download by allowing parts of it to be executed in parallel.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded.
    */
   public ProgressiveDownloader(
       MediaItem mediaItem, CacheDataSource.Factory cacheDataSourceFactory, Executor executor) {
+    this(mediaItem, cacheDataSourceFactory, executor, /* maxParallelRequests= */ 1);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param mediaItem The media item with a uri to the stream to be downloaded.
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
+   *     download will be written.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded. If
+   *     {@code maxParallelRequests} is greater than one, an {@link Executor} that uses multiple
+   *     threads allows ranges of the stream to be downloaded in parallel.
+   * @param maxParallelRequests The maximum number of concurrent requests used to download the
+   *     stream.
+   */
+  public ProgressiveDownloader(
+      MediaItem mediaItem,
+      CacheDataSource.Factory cacheDataSourceFactory,
+      Executor executor,
+      int maxParallelRequests) {
     this.executor = Assertions.checkNotNull(executor);
     Assertions.checkNotNull(mediaItem.localConfiguration);
     dataSpec =
@@ -81,6 +99,13 @@ public final class ProgressiveDownloader implements Downloader {
     CacheWriter.ProgressListener progressListener = this::onProgress;
     cacheWriter =
         new CacheWriter(dataSource, dataSpec, /* temporaryBuffer= */ null, progressListener);
+    if (maxParallelRequests > 1) {
+      cacheWriter.experimentalSetParallelCaching(
+          cacheDataSourceFactory,
+          executor,
+          maxParallelRequests,
+          CacheWriter.DEFAULT_MIN_PARALLEL_RANGE_LENGTH_BYTES);
+    }
     priorityTaskManager = cacheDataSourceFactory.getUpstreamPriorityTaskManager();
   }
 
@@ -55,9 +55,12 @@ public interface MediaPeriod extends SequenceableLoader {
 
     /**
      * Called to deliver sei data
-     * @param type
-     * @param userData
-     * @param pts
+     *
+     * <p>Unlike the other methods of this interface, this method may be called on a loading thread.
+     *
+     * @param type The sei data type.
+     * @param userData The sei payload. Ownership passes to the callback.
+     * @param pts The presentation time of the access unit carrying the sei, in microseconds.
      */
     default void onSeiDataNotify(int type, ParsableByteArray userData, long pts){}
   }
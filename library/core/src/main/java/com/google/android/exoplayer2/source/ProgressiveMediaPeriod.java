@@ -27,6 +27,7 @@ import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
 import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.SeiDataItem;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.drm.DrmSessionEventListener;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
@@ -39,6 +40,7 @@ import com.google.android.exoplayer2.extractor.SeekMap.Unseekable;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.metadata.icy.IcyHeaders;
+import com.google.android.exoplayer2.source.SampleQueue.SeiDataListener;
 import com.google.android.exoplayer2.source.SampleQueue.UpstreamFormatChangedListener;
 import com.google.android.exoplayer2.source.SampleStream.ReadFlags;
 import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
@@ -73,7 +75,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         ExtractorOutput,
         Loader.Callback<ProgressiveMediaPeriod.ExtractingLoadable>,
         Loader.ReleaseCallback,
-        UpstreamFormatChangedListener {
+        UpstreamFormatChangedListener,
+        SeiDataListener {
 
   /** Listener for information about the period. */
   interface Listener {
@@ -185,7 +188,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     this.allocator = allocator;
     this.customCacheKey = customCacheKey;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
-    loader = new Loader("ProgressiveMediaPeriod");
+    // A progressive load runs for as long as the media is buffered, so it uses its own thread
+    // rather than holding a thread of a shared executor.
+    loader = new Loader("ProgressiveMediaPeriod", /* executor= */ null);
     this.progressiveMediaExtractor = progressiveMediaExtractor;
     loadCondition = new ConditionVariable();
     maybeFinishPrepareRunnable = this::maybeFinishPrepare;
@@ -707,6 +712,18 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     handler.post(maybeFinishPrepareRunnable);
   }
 
+  // SeiDataListener implementation. Called by the loading thread.
+
+  @Override
+  public void onSeiDataNotify(int type, ParsableByteArray data, long pts) {
+    @Nullable Callback callback = this.callback;
+    if (callback != null) {
+      callback.onSeiDataNotify(type, data, pts);
+    } else {
+      SeiDataItem.PAYLOAD_POOL.release(data);
+    }
+  }
+
   // Internal methods.
 
   private TrackOutput prepareTrackOutput(TrackId id) {
@@ -719,6 +736,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     SampleQueue trackOutput =
         SampleQueue.createWithDrm(allocator, drmSessionManager, drmEventDispatcher);
     trackOutput.setUpstreamFormatChangeListener(this);
+    trackOutput.setUserDataListener(this);
     @NullableType
     TrackId[] sampleQueueTrackIds = Arrays.copyOf(this.sampleQueueTrackIds, trackCount + 1);
     sampleQueueTrackIds[trackCount] = id;
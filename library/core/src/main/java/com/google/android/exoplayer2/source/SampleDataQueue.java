@@ -51,6 +51,7 @@ import java.util.Arrays;
 
   // Accessed only by the loading thread (or the consuming thread when there is no loading thread).
   private long totalBytesWritten;
+  @Nullable private byte[] directWriteScratch;
 
   public SampleDataQueue(Allocator allocator) {
     this.allocator = allocator;
@@ -174,11 +175,28 @@ import java.util.Arrays;
 
   public int sampleData(DataReader input, int length, boolean allowEndOfInput) throws IOException {
     length = preAppend(length);
-    int bytesAppended =
-        input.read(
-            writeAllocationNode.allocation.data,
-            writeAllocationNode.translateOffset(totalBytesWritten),
-            length);
+    @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+    int bytesAppended;
+    if (writeBuffer == null) {
+      // The allocation is backed by an array, so read straight into it.
+      bytesAppended =
+          input.read(
+              writeAllocationNode.allocation.data,
+              writeAllocationNode.translateOffset(totalBytesWritten),
+              length);
+    } else {
+      // DataReader can only read into arrays, so stage the data before copying it off-heap. The
+      // scratch array is only needed for direct buffer allocations, and only as large as the
+      // largest read.
+      if (directWriteScratch == null || directWriteScratch.length < length) {
+        directWriteScratch = new byte[length];
+      }
+      bytesAppended = input.read(directWriteScratch, /* offset= */ 0, length);
+      if (bytesAppended != C.RESULT_END_OF_INPUT) {
+        writeBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        writeBuffer.put(directWriteScratch, /* offset= */ 0, bytesAppended);
+      }
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -192,10 +210,17 @@ import java.util.Arrays;
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(
-          writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten),
-          bytesAppended);
+      @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+      if (writeBuffer == null) {
+        buffer.readBytes(
+            writeAllocationNode.allocation.data,
+            writeAllocationNode.translateOffset(totalBytesWritten),
+            bytesAppended);
+      } else {
+        writeBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        writeBuffer.put(buffer.getData(), buffer.getPosition(), bytesAppended);
+        buffer.skipBytes(bytesAppended);
+      }
       length -= bytesAppended;
       postAppend(bytesAppended);
     }
@@ -404,8 +429,17 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      target.put(allocation.data, allocationNode.translateOffset(absolutePosition), toCopy);
+      int offset = allocationNode.translateOffset(absolutePosition);
+      @Nullable ByteBuffer readBuffer = allocationNode.readBuffer;
+      if (readBuffer == null) {
+        Allocation allocation = allocationNode.allocation;
+        target.put(allocation.data, offset, toCopy);
+      } else {
+        // Bulk copy directly between the buffers.
+        readBuffer.limit(offset + toCopy);
+        readBuffer.position(offset);
+        target.put(readBuffer);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -430,13 +464,16 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      System.arraycopy(
-          allocation.data,
-          allocationNode.translateOffset(absolutePosition),
-          target,
-          length - remaining,
-          toCopy);
+      int offset = allocationNode.translateOffset(absolutePosition);
+      @Nullable ByteBuffer readBuffer = allocationNode.readBuffer;
+      if (readBuffer == null) {
+        Allocation allocation = allocationNode.allocation;
+        System.arraycopy(allocation.data, offset, target, length - remaining, toCopy);
+      } else {
+        readBuffer.clear();
+        readBuffer.position(offset);
+        readBuffer.get(target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -474,6 +511,16 @@ import java.util.Arrays;
      * #initialize initialized}.
      */
     @Nullable public AllocationNode next;
+    /**
+     * A view of the {@link Allocation#directBuffer} used by the loading thread, or {@code null} if
+     * the node is not initialized or its allocation is backed by an array.
+     */
+    @Nullable public ByteBuffer writeBuffer;
+    /**
+     * A view of the {@link Allocation#directBuffer} used by the consuming thread, or {@code null}
+     * if the node is not initialized or its allocation is backed by an array.
+     */
+    @Nullable public ByteBuffer readBuffer;
 
     /**
      * @param startPosition See {@link #startPosition}.
@@ -505,6 +552,12 @@ import java.util.Arrays;
     public void initialize(Allocation allocation, AllocationNode next) {
       this.allocation = allocation;
       this.next = next;
+      @Nullable ByteBuffer directBuffer = allocation.directBuffer;
+      if (directBuffer != null) {
+        // The loading and consuming threads need independent positions and limits.
+        writeBuffer = directBuffer.duplicate();
+        readBuffer = directBuffer.duplicate();
+      }
     }
 
     /**
@@ -519,12 +572,14 @@ import java.util.Arrays;
     }
 
     /**
-     * Clears {@link #allocation} and {@link #next}.
+     * Clears {@link #allocation}, its views and {@link #next}.
      *
      * @return The cleared next {@link AllocationNode}.
      */
     public AllocationNode clear() {
       allocation = null;
+      writeBuffer = null;
+      readBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
@@ -670,6 +670,14 @@ public class SampleQueue implements TrackOutput {
     }
   }
 
+  @Override
+  public void seiDataView(int type, ParsableByteArray view, long pts) {
+    // Avoid copying the payload into a pooled buffer when nobody listens for it.
+    if (seiDataListener != null) {
+      TrackOutput.super.seiDataView(type, view, pts);
+    }
+  }
+
   /**
    * Invalidates the last upstream format adjustment. {@link #getAdjustedUpstreamFormat(Format)}
    * will be called to adjust the upstream {@link Format} again before the next sample is queued.
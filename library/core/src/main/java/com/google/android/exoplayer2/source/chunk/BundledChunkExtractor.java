@@ -250,5 +250,10 @@ public final class BundledChunkExtractor implements ExtractorOutput, ChunkExtrac
       }
       castNonNull(trackOutput).sampleMetadata(timeUs, flags, size, offset, cryptoData);
     }
+
+    @Override
+    public void seiDataView(int type, ParsableByteArray view, long pts) {
+      castNonNull(trackOutput).seiDataView(type, view, pts);
+    }
   }
 }
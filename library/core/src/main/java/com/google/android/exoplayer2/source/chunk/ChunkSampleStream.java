@@ -39,6 +39,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.upstream.LoaderExecutor;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
@@ -317,6 +318,15 @@ public class ChunkSampleStream<T extends ChunkSource>
     }
   }
 
+  /**
+   * Sets the listener to which SEI user data extracted from the primary track is reported.
+   *
+   * @param listener The listener, or null to discard SEI user data.
+   */
+  public void setSeiDataListener(@Nullable SampleQueue.SeiDataListener listener) {
+    primarySampleQueue.setUserDataListener(listener);
+  }
+
   /**
    * Releases the stream.
    *
@@ -612,7 +622,10 @@ public class ChunkSampleStream<T extends ChunkSource>
     }
     long elapsedRealtimeMs =
         loader.startLoading(
-            loadable, this, loadErrorHandlingPolicy.getMinimumLoadableRetryCount(loadable.type));
+            loadable,
+            this,
+            loadErrorHandlingPolicy.getMinimumLoadableRetryCount(loadable.type),
+            LoaderExecutor.getLoadPriority(primaryTrackType, loadPositionUs - positionUs));
     mediaSourceEventDispatcher.loadStarted(
         new LoadEventInfo(loadable.loadTaskId, loadable.dataSpec, elapsedRealtimeMs),
         loadable.type,
@@ -17,6 +17,8 @@ package com.google.android.exoplayer2.text;
 
 import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static com.google.android.exoplayer2.util.Assertions.checkState;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.annotation.ElementType.TYPE_USE;
 
 import android.os.Handler;
@@ -94,6 +96,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
   @Nullable private SubtitleOutputBuffer nextSubtitle;
   private int nextSubtitleEventIndex;
   private long finalStreamEndPositionUs;
+  private float playbackSpeed;
 
   /**
    * @param output The output.
@@ -125,6 +128,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
     this.decoderFactory = decoderFactory;
     formatHolder = new FormatHolder();
     finalStreamEndPositionUs = C.TIME_UNSET;
+    playbackSpeed = 1f;
   }
 
   @Override
@@ -169,6 +173,11 @@ public final class TextRenderer extends BaseRenderer implements Callback {
     }
   }
 
+  @Override
+  public void setPlaybackSpeed(float currentPlaybackSpeed, float targetPlaybackSpeed) {
+    playbackSpeed = currentPlaybackSpeed;
+  }
+
   @Override
   protected void onPositionReset(long positionUs, boolean joining) {
     clearOutput();
@@ -351,6 +360,24 @@ public final class TextRenderer extends BaseRenderer implements Callback {
     initDecoder();
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (outputStreamEnded) {
+      return Long.MAX_VALUE;
+    }
+    @Nullable SubtitleOutputBuffer nextSubtitle = this.nextSubtitle;
+    if (nextSubtitle == null
+        || nextSubtitle.isEndOfStream()
+        || finalStreamEndPositionUs != C.TIME_UNSET) {
+      // Waiting for the decoder, or about to end.
+      return DEFAULT_DURATION_TO_PROGRESS_US;
+    }
+    // Cues only change at the next event of the current subtitle or at the start of the next one.
+    long nextEventTimeUs = min(nextSubtitle.timeUs, getNextEventTime());
+    long durationUs = (long) ((nextEventTimeUs - positionUs) / playbackSpeed);
+    return max(DEFAULT_DURATION_TO_PROGRESS_US, durationUs);
+  }
+
   private long getNextEventTime() {
     if (nextSubtitleEventIndex == C.INDEX_UNSET) {
       return Long.MAX_VALUE;
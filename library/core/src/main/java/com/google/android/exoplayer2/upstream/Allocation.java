@@ -15,8 +15,13 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array, or within a direct {@link ByteBuffer}.
  *
  * <p>The allocation's length is obtained by calling {@link
  * Allocator#getIndividualAllocationLength()} on the {@link Allocator} from which it was obtained.
@@ -25,19 +30,43 @@ public final class Allocation {
 
   /**
    * The array containing the allocated space. The allocated space might not be at the start of the
-   * array, and so {@link #offset} must be used when indexing into it.
+   * array, and so {@link #offset} must be used when indexing into it. Empty if the allocation is
+   * backed by a {@link #directBuffer}.
    */
   public final byte[] data;
 
   /** The offset of the allocated space in {@link #data}. */
   public final int offset;
 
+  /**
+   * The direct buffer containing the allocated space, or null if the allocation is backed by {@link
+   * #data}. The allocated space spans the whole capacity of the buffer. Users must not modify the
+   * position and limit of this buffer, and should operate on a {@link ByteBuffer#duplicate()}
+   * instead.
+   */
+  @Nullable public final ByteBuffer directBuffer;
+
   /**
    * @param data The array containing the allocated space.
    * @param offset The offset of the allocated space in {@code data}.
    */
   public Allocation(byte[] data, int offset) {
+    this(data, offset, /* directBuffer= */ null);
+  }
+
+  /**
+   * Creates an allocation backed by a direct buffer.
+   *
+   * @param directBuffer The direct buffer containing the allocated space.
+   */
+  public Allocation(ByteBuffer directBuffer) {
+    this(Util.EMPTY_BYTE_ARRAY, /* offset= */ 0, directBuffer);
+  }
+
+  /* package */ Allocation(byte[] data, int offset, @Nullable ByteBuffer directBuffer) {
+    Assertions.checkArgument(directBuffer == null || directBuffer.isDirect());
     this.data = data;
     this.offset = offset;
+    this.directBuffer = directBuffer;
   }
 }
@@ -16,24 +16,51 @@
 package com.google.android.exoplayer2.upstream;
 
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 
-/** Default implementation of {@link Allocator}. */
+/**
+ * Default implementation of {@link Allocator}.
+ *
+ * <p>The allocator is safe to share between threads and player instances. Each thread keeps a
+ * small cache of available allocations, so that most calls to {@link #allocate()} and {@link
+ * #release(Allocation)} don't need to take the allocator lock. The lock is only taken to move
+ * allocations between a thread cache and the shared pool in batches, which reduces contention
+ * between loading threads allocating and playback threads releasing. Allocations held in thread
+ * caches are not counted by {@link #getTotalBytesAllocated()}. Allocations are only moved in
+ * batches to the caches of threads that also release allocations, so that threads that only
+ * allocate, such as loading threads, don't hold on to allocations they can't return. {@link
+ * #trim()} and {@link #reset()} move the allocations cached by all threads, including threads that
+ * have terminated, back to the shared pool.
+ */
 public final class DefaultAllocator implements Allocator {
 
+  /** The maximum number of available allocations cached by each thread. */
+  public static final int THREAD_CACHE_CAPACITY = 8;
+
   private static final int AVAILABLE_EXTRA_CAPACITY = 100;
 
   private final boolean trimOnReset;
   private final int individualAllocationSize;
+  private final boolean useDirectBuffers;
   @Nullable private final byte[] initialAllocationBlock;
+  private final AtomicInteger allocatedCount;
+  private final ThreadLocal<@NullableType ThreadCache> threadCaches;
+  private final ArrayList<ThreadCache> registeredThreadCaches;
+
+  private volatile int trimGeneration;
 
   private int targetBufferSize;
-  private int allocatedCount;
+  private int createdCount;
   private int availableCount;
   private @NullableType Allocation[] availableAllocations;
 
@@ -60,13 +87,52 @@ public final class DefaultAllocator implements Allocator {
    */
   public DefaultAllocator(
       boolean trimOnReset, int individualAllocationSize, int initialAllocationCount) {
+    this(trimOnReset, individualAllocationSize, initialAllocationCount, false);
+  }
+
+  /**
+   * Constructs an instance with some {@link Allocation}s created up front, optionally backed by
+   * direct buffers.
+   *
+   * <p>Allocations backed by direct buffers keep media data off the Java heap, which reduces
+   * garbage collection pressure for high bitrate content, and let {@link ByteBuffer} consumers
+   * such as decoder input buffers be filled with bulk buffer copies. Their {@link Allocation#data}
+   * is empty and their space is accessed through {@link Allocation#directBuffer}.
+   *
+   * <p>Note: {@link Allocation}s created up front will never be discarded by {@link #trim()}.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param useDirectBuffers Whether allocations are backed by direct buffers instead of arrays.
+   */
+  public DefaultAllocator(
+      boolean trimOnReset,
+      int individualAllocationSize,
+      int initialAllocationCount,
+      boolean useDirectBuffers) {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.trimOnReset = trimOnReset;
     this.individualAllocationSize = individualAllocationSize;
+    this.useDirectBuffers = useDirectBuffers;
+    this.createdCount = initialAllocationCount;
     this.availableCount = initialAllocationCount;
     this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
-    if (initialAllocationCount > 0) {
+    if (initialAllocationCount > 0 && useDirectBuffers) {
+      // Allocations backed by the initial buffer share an empty array, which identifies them.
+      initialAllocationBlock = new byte[0];
+      ByteBuffer initialBuffer =
+          ByteBuffer.allocateDirect(initialAllocationCount * individualAllocationSize);
+      for (int i = 0; i < initialAllocationCount; i++) {
+        int allocationOffset = i * individualAllocationSize;
+        initialBuffer.limit(allocationOffset + individualAllocationSize);
+        initialBuffer.position(allocationOffset);
+        availableAllocations[i] =
+            new Allocation(initialAllocationBlock, /* offset= */ 0, initialBuffer.slice());
+      }
+    } else if (initialAllocationCount > 0) {
       initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
       for (int i = 0; i < initialAllocationCount; i++) {
         int allocationOffset = i * individualAllocationSize;
@@ -75,9 +141,14 @@ public final class DefaultAllocator implements Allocator {
     } else {
       initialAllocationBlock = null;
     }
+    allocatedCount = new AtomicInteger();
+    threadCaches = new ThreadLocal<>();
+    registeredThreadCaches = new ArrayList<>();
   }
 
   public synchronized void reset() {
+    // Threads that loaded or played media for the previous player may not allocate again.
+    drainThreadCaches();
     if (trimOnReset) {
       setTargetBufferSize(0);
     }
@@ -92,47 +163,67 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized Allocation allocate() {
-    allocatedCount++;
-    Allocation allocation;
-    if (availableCount > 0) {
-      allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
-      availableAllocations[availableCount] = null;
-    } else {
-      allocation = new Allocation(new byte[individualAllocationSize], 0);
-      if (allocatedCount > availableAllocations.length) {
-        // Make availableAllocations be large enough to contain all allocations made by this
-        // allocator so that release() does not need to grow the availableAllocations array. See
-        // [Internal ref: b/209801945].
-        availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
-      }
-    }
-    return allocation;
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    ThreadCache threadCache = getThreadCache();
+    @Nullable Allocation allocation = threadCache.poll(trimGeneration);
+    return allocation != null ? allocation : allocateFromPool(threadCache);
   }
 
   @Override
-  public synchronized void release(Allocation allocation) {
-    availableAllocations[availableCount++] = allocation;
-    allocatedCount--;
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+  public void release(Allocation allocation) {
+    ThreadCache threadCache = getThreadCache();
+    threadCache.releasesAllocations = true;
+    // Allocations backed by the initial block are always returned to the pool.
+    if (allocation.data != initialAllocationBlock
+        && threadCache.offer(allocation, trimGeneration)) {
+      allocatedCount.decrementAndGet();
+    } else {
+      releaseToPool(threadCache, allocation);
+    }
   }
 
   @Override
-  public synchronized void release(@Nullable AllocationNode allocationNode) {
-    while (allocationNode != null) {
-      availableAllocations[availableCount++] = allocationNode.getAllocation();
-      allocatedCount--;
+  public void release(@Nullable AllocationNode allocationNode) {
+    ThreadCache threadCache = getThreadCache();
+    threadCache.releasesAllocations = true;
+    int cachedCount = 0;
+    while (allocationNode != null
+        && allocationNode.getAllocation().data != initialAllocationBlock
+        && threadCache.offer(allocationNode.getAllocation(), trimGeneration)) {
+      cachedCount++;
       allocationNode = allocationNode.next();
     }
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+    if (cachedCount > 0) {
+      allocatedCount.addAndGet(-cachedCount);
+    }
+    if (allocationNode != null) {
+      releaseToPool(threadCache, allocationNode);
+    }
   }
 
   @Override
   public synchronized void trim() {
+    drainThreadCaches();
+    // Threads don't cache allocations again until they've seen the trim, so that they trim the
+    // pool when they next release an allocation.
+    trimGeneration++;
+    trimPool();
+  }
+
+  @Override
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  private synchronized void trimPool() {
     int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
-    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount);
+    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount.get());
     if (targetAvailableCount >= availableCount) {
       // We're already at or below the target.
       return;
@@ -168,16 +259,182 @@ public final class DefaultAllocator implements Allocator {
 
     // Discard allocations beyond the target.
     Arrays.fill(availableAllocations, targetAvailableCount, availableCount, null);
+    createdCount -= availableCount - targetAvailableCount;
     availableCount = targetAvailableCount;
   }
 
-  @Override
-  public synchronized int getTotalBytesAllocated() {
-    return allocatedCount * individualAllocationSize;
+  private ThreadCache getThreadCache() {
+    @Nullable ThreadCache threadCache = threadCaches.get();
+    if (threadCache == null) {
+      threadCache = new ThreadCache(Thread.currentThread(), trimGeneration);
+      threadCaches.set(threadCache);
+      synchronized (this) {
+        registeredThreadCaches.add(threadCache);
+      }
+    }
+    return threadCache;
   }
 
-  @Override
-  public int getIndividualAllocationLength() {
-    return individualAllocationSize;
+  /**
+   * Moves the allocations cached by all threads to the pool, and unregisters the caches of threads
+   * that have terminated. Must be called with the lock held.
+   */
+  private void drainThreadCaches() {
+    for (int i = registeredThreadCaches.size() - 1; i >= 0; i--) {
+      ThreadCache threadCache = registeredThreadCaches.get(i);
+      synchronized (threadCache) {
+        while (threadCache.count > 0) {
+          availableAllocations[availableCount++] = threadCache.remove();
+        }
+      }
+      if (!threadCache.isOwnerAlive()) {
+        registeredThreadCaches.remove(i);
+      }
+    }
+  }
+
+  private synchronized Allocation allocateFromPool(ThreadCache threadCache) {
+    if (flushThreadCache(threadCache)) {
+      trimPool();
+    }
+    if (availableCount == 0) {
+      createdCount++;
+      if (createdCount > availableAllocations.length) {
+        // Make availableAllocations be large enough to contain all allocations made by this
+        // allocator so that release() does not need to grow the availableAllocations array. See
+        // [Internal ref: b/209801945].
+        availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
+      }
+      return useDirectBuffers
+          ? new Allocation(ByteBuffer.allocateDirect(individualAllocationSize))
+          : new Allocation(new byte[individualAllocationSize], 0);
+    }
+    Allocation allocation = removeAvailableAllocation();
+    if (!threadCache.releasesAllocations) {
+      // Allocations cached by a thread that never releases would only be returned to the pool once
+      // the thread releases, and would be lost if the thread terminates first.
+      return allocation;
+    }
+    // Move a batch of allocations to the thread cache so that subsequent calls to allocate() on
+    // this thread don't need to take the lock.
+    int batchSize = min(availableCount, THREAD_CACHE_CAPACITY / 2);
+    for (int i = 0; i < batchSize; i++) {
+      Allocation cachedAllocation =
+          Assertions.checkNotNull(availableAllocations[availableCount - 1]);
+      if (cachedAllocation.data == initialAllocationBlock) {
+        break;
+      }
+      threadCache.add(removeAvailableAllocation());
+    }
+    return allocation;
+  }
+
+  private synchronized void releaseToPool(ThreadCache threadCache, Allocation allocation) {
+    boolean trimPending = flushThreadCache(threadCache);
+    availableAllocations[availableCount++] = allocation;
+    allocatedCount.decrementAndGet();
+    if (trimPending) {
+      trimPool();
+    }
+    // Wake up threads waiting for the allocated size to drop.
+    notifyAll();
+  }
+
+  private synchronized void releaseToPool(ThreadCache threadCache, AllocationNode allocationNode) {
+    boolean trimPending = flushThreadCache(threadCache);
+    int releasedCount = 0;
+    @Nullable AllocationNode node = allocationNode;
+    while (node != null) {
+      availableAllocations[availableCount++] = node.getAllocation();
+      releasedCount++;
+      node = node.next();
+    }
+    allocatedCount.addAndGet(-releasedCount);
+    if (trimPending) {
+      trimPool();
+    }
+    // Wake up threads waiting for the allocated size to drop.
+    notifyAll();
+  }
+
+  /**
+   * Moves all allocations in the thread cache to the pool. Must be called with the lock held.
+   *
+   * @return Whether the pool should be trimmed because the cache missed a call to {@link #trim()}.
+   */
+  private boolean flushThreadCache(ThreadCache threadCache) {
+    synchronized (threadCache) {
+      while (threadCache.count > 0) {
+        availableAllocations[availableCount++] = threadCache.remove();
+      }
+      boolean trimPending = threadCache.trimGeneration != trimGeneration;
+      threadCache.trimGeneration = trimGeneration;
+      return trimPending;
+    }
+  }
+
+  private Allocation removeAvailableAllocation() {
+    Allocation allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
+    availableAllocations[availableCount] = null;
+    return allocation;
+  }
+
+  /**
+   * Available allocations cached by a single thread. Accessed by the owning thread, and by other
+   * threads draining the cache with the allocator lock held. The cache is its own lock, which is
+   * only contended whilst the cache is drained, and is always taken after the allocator lock.
+   */
+  private static final class ThreadCache {
+
+    private final WeakReference<Thread> owner;
+    private final @NullableType Allocation[] allocations;
+
+    public int count;
+    public int trimGeneration;
+    // Only accessed by the owning thread.
+    public boolean releasesAllocations;
+
+    public ThreadCache(Thread owner, int trimGeneration) {
+      this.owner = new WeakReference<>(owner);
+      this.trimGeneration = trimGeneration;
+      allocations = new Allocation[THREAD_CACHE_CAPACITY];
+    }
+
+    public boolean isOwnerAlive() {
+      @Nullable Thread owner = this.owner.get();
+      return owner != null && owner.isAlive();
+    }
+
+    /**
+     * Returns a cached allocation, or null if there's none or the cache hasn't seen the latest
+     * trim.
+     */
+    @Nullable
+    public synchronized Allocation poll(int trimGeneration) {
+      return count > 0 && this.trimGeneration == trimGeneration ? remove() : null;
+    }
+
+    /**
+     * Caches an allocation, and returns whether it was cached. It isn't if the cache is full or
+     * hasn't seen the latest trim.
+     */
+    public synchronized boolean offer(Allocation allocation, int trimGeneration) {
+      if (count == THREAD_CACHE_CAPACITY || this.trimGeneration != trimGeneration) {
+        return false;
+      }
+      add(allocation);
+      return true;
+    }
+
+    public synchronized void add(Allocation allocation) {
+      allocations[count++] = allocation;
+    }
+
+    // Must be called with the cache lock held.
+    public Allocation remove() {
+      Allocation allocation = Assertions.checkNotNull(allocations[--count]);
+      allocations[count] = null;
+      return allocation;
+    }
   }
 }
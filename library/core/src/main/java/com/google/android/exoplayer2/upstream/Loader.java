@@ -195,18 +195,56 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
-  private final ExecutorService downloadExecutorService;
+  @Nullable private static LoaderExecutor sharedExecutor;
+
+  @Nullable private final ExecutorService downloadExecutorService;
+  @Nullable private final LoaderExecutor.TaskQueue sharedTaskQueue;
 
   @Nullable private LoadTask<? extends Loadable> currentTask;
   @Nullable private IOException fatalError;
 
+  /**
+   * Sets a {@link LoaderExecutor} to be used by all loaders created afterwards with {@link
+   * #Loader(String)}, instead of each loader creating its own thread.
+   *
+   * <p>Loaders whose loads run for as long as their media is played, such as those of progressive
+   * media and RTSP, always use their own thread, so that they don't hold the threads of the shared
+   * executor. The executor therefore bounds the number of concurrent segment, chunk and manifest
+   * loads across all players, and loads beyond its maximum thread count wait for a thread.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param executor The {@link LoaderExecutor} shared by loaders, or null for each loader to use
+   *     its own thread.
+   */
+  public static synchronized void experimentalSetSharedExecutor(
+      @Nullable LoaderExecutor executor) {
+    sharedExecutor = executor;
+  }
+
   /**
    * @param threadNameSuffix A name suffix for the loader's thread. This should be the name of the
-   *     component using the loader.
+   *     component using the loader. Not used if a {@link #experimentalSetSharedExecutor shared
+   *     executor} is set.
    */
   public Loader(String threadNameSuffix) {
-    this.downloadExecutorService =
-        Util.newSingleThreadExecutor(THREAD_NAME_PREFIX + threadNameSuffix);
+    this(threadNameSuffix, getSharedExecutor());
+  }
+
+  /**
+   * @param threadNameSuffix A name suffix for the loader's thread. This should be the name of the
+   *     component using the loader. Not used if {@code executor} is not null.
+   * @param executor The {@link LoaderExecutor} on which loads are run, or null for the loader to
+   *     use its own thread. Loaders whose loads may run indefinitely should use their own thread.
+   */
+  public Loader(String threadNameSuffix, @Nullable LoaderExecutor executor) {
+    if (executor != null) {
+      downloadExecutorService = null;
+      sharedTaskQueue = executor.createTaskQueue();
+    } else {
+      downloadExecutorService = Util.newSingleThreadExecutor(THREAD_NAME_PREFIX + threadNameSuffix);
+      sharedTaskQueue = null;
+    }
   }
 
   /**
@@ -251,10 +289,33 @@ public final class Loader implements LoaderErrorThrower {
    */
   public <T extends Loadable> long startLoading(
       T loadable, Callback<T> callback, int defaultMinRetryCount) {
+    return startLoading(loadable, callback, defaultMinRetryCount, LoaderExecutor.PRIORITY_DEFAULT);
+  }
+
+  /**
+   * Starts loading a {@link Loadable} with the given priority.
+   *
+   * <p>The calling thread must be a {@link Looper} thread, which is the thread on which the {@link
+   * Callback} will be called.
+   *
+   * @param <T> The type of the loadable.
+   * @param loadable The {@link Loadable} to load.
+   * @param callback A callback to be called when the load ends.
+   * @param defaultMinRetryCount The minimum number of times the load must be retried before {@link
+   *     #maybeThrowError()} will propagate an error.
+   * @param priority The priority of the load if the loader uses a {@link LoaderExecutor}, for
+   *     example as returned by {@link LoaderExecutor#getLoadPriority(int, long)}. Ignored
+   *     otherwise.
+   * @throws IllegalStateException If the calling thread does not have an associated {@link Looper}.
+   * @return {@link SystemClock#elapsedRealtime} when the load started.
+   */
+  public <T extends Loadable> long startLoading(
+      T loadable, Callback<T> callback, int defaultMinRetryCount, int priority) {
     Looper looper = Assertions.checkStateNotNull(Looper.myLooper());
     fatalError = null;
     long startTimeMs = SystemClock.elapsedRealtime();
-    new LoadTask<>(looper, loadable, callback, defaultMinRetryCount, startTimeMs).start(0);
+    new LoadTask<>(looper, loadable, callback, defaultMinRetryCount, priority, startTimeMs)
+        .start(0);
     return startTimeMs;
   }
 
@@ -287,12 +348,25 @@ public final class Loader implements LoaderErrorThrower {
     if (currentTask != null) {
       currentTask.cancel(true);
     }
+    if (sharedTaskQueue != null) {
+      if (callback != null) {
+        // Run after the canceled load, without waiting behind other loads.
+        sharedTaskQueue.execute(new ReleaseTask(callback), /* priority= */ Integer.MAX_VALUE);
+      }
+      return;
+    }
+    ExecutorService downloadExecutorService = Assertions.checkNotNull(this.downloadExecutorService);
     if (callback != null) {
       downloadExecutorService.execute(new ReleaseTask(callback));
     }
     downloadExecutorService.shutdown();
   }
 
+  @Nullable
+  private static synchronized LoaderExecutor getSharedExecutor() {
+    return sharedExecutor;
+  }
+
   // LoaderErrorThrower implementation.
 
   @Override
@@ -325,6 +399,7 @@ public final class Loader implements LoaderErrorThrower {
     public final int defaultMinRetryCount;
 
     private final T loadable;
+    private final int priority;
     private final long startTimeMs;
 
     @Nullable private Loader.Callback<T> callback;
@@ -340,11 +415,13 @@ public final class Loader implements LoaderErrorThrower {
         T loadable,
         Loader.Callback<T> callback,
         int defaultMinRetryCount,
+        int priority,
         long startTimeMs) {
       super(looper);
       this.loadable = loadable;
       this.callback = callback;
       this.defaultMinRetryCount = defaultMinRetryCount;
+      this.priority = priority;
       this.startTimeMs = startTimeMs;
     }
 
@@ -507,7 +584,12 @@ public final class Loader implements LoaderErrorThrower {
 
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(Assertions.checkNotNull(currentTask));
+      LoadTask<? extends Loadable> task = Assertions.checkNotNull(currentTask);
+      if (sharedTaskQueue != null) {
+        sharedTaskQueue.execute(task, priority);
+      } else {
+        Assertions.checkNotNull(downloadExecutorService).execute(task);
+      }
     }
 
     private void finish() {
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, prioritized pool of threads that can be shared by {@link Loader Loaders}, instead of
+ * each loader owning a thread.
+ *
+ * <p>Loads with a higher priority are started first when all threads are busy, and loads with the
+ * same priority are started in submission order. Tasks submitted by the same loader never run
+ * concurrently and run in submission order, as they would on a loader's own thread.
+ *
+ * <p>Loads that keep a thread for as long as the media is being played, such as progressive media
+ * and RTSP loads, don't use a shared executor. The maximum thread count bounds the number of
+ * concurrent loads of all loaders sharing the executor, and further loads wait for a thread.
+ */
+public final class LoaderExecutor {
+
+  /** The priority of loads for which no priority is specified, such as manifest loads. */
+  public static final int PRIORITY_DEFAULT = 0;
+
+  /** The default maximum number of threads. */
+  public static final int DEFAULT_MAX_THREAD_COUNT = 8;
+
+  private static final String THREAD_NAME = "ExoPlayer:Loader:Shared";
+  private static final long KEEP_ALIVE_TIME_MS = 10_000;
+  private static final long PRIORITY_STEP_US = 100_000;
+  private static final int MAX_PRIORITY_STEPS = 100_000;
+
+  private final ThreadPoolExecutor threadPoolExecutor;
+  private final AtomicLong nextSequenceNumber;
+
+  private long startedTaskCount;
+  private long totalQueueWaitTimeMs;
+  private long maxQueueWaitTimeMs;
+
+  /** Creates an instance with {@link #DEFAULT_MAX_THREAD_COUNT} threads at most. */
+  public LoaderExecutor() {
+    this(DEFAULT_MAX_THREAD_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxThreadCount The maximum number of threads. Idle threads are terminated after a
+   *     while, so threads only exist while loads are running.
+   */
+  public LoaderExecutor(int maxThreadCount) {
+    Assertions.checkArgument(maxThreadCount > 0);
+    AtomicInteger threadCount = new AtomicInteger();
+    threadPoolExecutor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ maxThreadCount,
+            /* maximumPoolSize= */ maxThreadCount,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(
+                /* initialCapacity= */ 11,
+                (first, second) -> ((PrioritizedTask) first).compareTo((PrioritizedTask) second)),
+            runnable -> new Thread(runnable, THREAD_NAME + threadCount.incrementAndGet()));
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    nextSequenceNumber = new AtomicLong();
+  }
+
+  /**
+   * Returns the priority of a media load, so that loads whose media is needed sooner are started
+   * first.
+   *
+   * @param trackType The {@link C.TrackType track type} of the loaded media.
+   * @param bufferedDurationUs The duration of media already buffered ahead of the playback position
+   *     for the track, in microseconds, or {@link C#TIME_UNSET} if unknown.
+   * @return The load priority. Higher values are started first.
+   */
+  public static int getLoadPriority(@C.TrackType int trackType, long bufferedDurationUs) {
+    long bufferedSteps =
+        bufferedDurationUs == C.TIME_UNSET
+            ? 0
+            : min(max(0, bufferedDurationUs / PRIORITY_STEP_US), MAX_PRIORITY_STEPS);
+    int trackTypeSteps;
+    switch (trackType) {
+      case C.TRACK_TYPE_AUDIO:
+        // Audio underruns are the most noticeable, so audio loads go ahead of video loads needed
+        // shortly after them.
+        trackTypeSteps = 2;
+        break;
+      case C.TRACK_TYPE_TEXT:
+      case C.TRACK_TYPE_METADATA:
+        trackTypeSteps = -50;
+        break;
+      default:
+        trackTypeSteps = 0;
+        break;
+    }
+    return (int) (trackTypeSteps - bufferedSteps);
+  }
+
+  /** Returns the number of tasks that are waiting for a thread. */
+  public int getQueuedTaskCount() {
+    return threadPoolExecutor.getQueue().size();
+  }
+
+  /** Returns the number of tasks that have been started. */
+  public synchronized long getStartedTaskCount() {
+    return startedTaskCount;
+  }
+
+  /**
+   * Returns the total time tasks have waited for a thread after being submitted, in milliseconds.
+   */
+  public synchronized long getTotalQueueWaitTimeMs() {
+    return totalQueueWaitTimeMs;
+  }
+
+  /** Returns the longest time a task has waited for a thread, in milliseconds. */
+  public synchronized long getMaxQueueWaitTimeMs() {
+    return maxQueueWaitTimeMs;
+  }
+
+  /** Returns a new {@link TaskQueue} running its tasks one at a time on this executor. */
+  /* package */ TaskQueue createTaskQueue() {
+    return new TaskQueue();
+  }
+
+  private synchronized void onTaskStarted(long queueWaitTimeMs) {
+    startedTaskCount++;
+    totalQueueWaitTimeMs += queueWaitTimeMs;
+    maxQueueWaitTimeMs = max(maxQueueWaitTimeMs, queueWaitTimeMs);
+  }
+
+  /** Runs the tasks of a single {@link Loader} in order, one at a time. */
+  /* package */ final class TaskQueue {
+
+    private final ArrayDeque<PrioritizedTask> pendingTasks;
+
+    @Nullable private PrioritizedTask activeTask;
+
+    private TaskQueue() {
+      pendingTasks = new ArrayDeque<>();
+    }
+
+    /**
+     * Submits a task, to be run once all previously submitted tasks of this queue have completed.
+     *
+     * @param runnable The task.
+     * @param priority The priority of the task. Higher values are started first.
+     */
+    public synchronized void execute(Runnable runnable, int priority) {
+      pendingTasks.add(
+          new PrioritizedTask(
+              /* taskQueue= */ this, runnable, priority, nextSequenceNumber.getAndIncrement()));
+      if (activeTask == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void onTaskFinished() {
+      activeTask = null;
+      scheduleNext();
+    }
+
+    private void scheduleNext() {
+      @Nullable PrioritizedTask nextTask = pendingTasks.poll();
+      activeTask = nextTask;
+      if (nextTask != null) {
+        nextTask.submitTimeMs = SystemClock.elapsedRealtime();
+        threadPoolExecutor.execute(nextTask);
+      }
+    }
+  }
+
+  private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+    private final TaskQueue taskQueue;
+    private final Runnable runnable;
+    private final int priority;
+    private final long sequenceNumber;
+
+    private volatile long submitTimeMs;
+
+    public PrioritizedTask(
+        TaskQueue taskQueue, Runnable runnable, int priority, long sequenceNumber) {
+      this.taskQueue = taskQueue;
+      this.runnable = runnable;
+      this.priority = priority;
+      this.sequenceNumber = sequenceNumber;
+    }
+
+    @Override
+    public void run() {
+      onTaskStarted(SystemClock.elapsedRealtime() - submitTimeMs);
+      try {
+        runnable.run();
+      } finally {
+        taskQueue.onTaskFinished();
+      }
+    }
+
+    @Override
+    public int compareTo(PrioritizedTask other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+  }
+}
@@ -139,6 +139,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
   private int consecutiveDroppedFrameCount;
   private int buffersInCodecCount;
   private long lastBufferPresentationTimeUs;
+  private long pendingOutputBufferReleaseTimeNs;
   private long lastRenderRealtimeUs;
   private long totalVideoFrameProcessingOffsetUs;
   private int videoFrameProcessingOffsetCount;
@@ -325,6 +326,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     eventDispatcher = new EventDispatcher(eventHandler, eventListener);
     deviceNeedsNoPostProcessWorkaround = deviceNeedsNoPostProcessWorkaround();
     joiningDeadlineMs = C.TIME_UNSET;
+    pendingOutputBufferReleaseTimeNs = C.TIME_UNSET;
     currentWidth = Format.NO_VALUE;
     currentHeight = Format.NO_VALUE;
     currentPixelWidthHeightRatio = Format.NO_VALUE;
@@ -531,6 +533,20 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     }
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (pendingOutputBufferReleaseTimeNs == C.TIME_UNSET
+        || joiningDeadlineMs != C.TIME_UNSET
+        || getState() != STATE_STARTED) {
+      return DEFAULT_DURATION_TO_PROGRESS_US;
+    }
+    // The pending output buffer is released by processOutputBuffer once its release time is within
+    // the release window, so there's no need to progress before then.
+    long durationUs =
+        (pendingOutputBufferReleaseTimeNs - System.nanoTime()) / 1000 - getReleaseWindowUs();
+    return max(DEFAULT_DURATION_TO_PROGRESS_US, durationUs);
+  }
+
   @Override
   protected void onStarted() {
     super.onStarted();
@@ -741,6 +757,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
   protected void resetCodecStateForFlush() {
     super.resetCodecStateForFlush();
     buffersInCodecCount = 0;
+    pendingOutputBufferReleaseTimeNs = C.TIME_UNSET;
   }
 
   @Override
@@ -914,6 +931,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
       Format format)
       throws ExoPlaybackException {
     Assertions.checkNotNull(codec); // Can not render video without codec
+    pendingOutputBufferReleaseTimeNs = C.TIME_UNSET;
 
     if (initialPositionUs == C.TIME_UNSET) {
       initialPositionUs = positionUs;
@@ -1007,7 +1025,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
 
     if (Util.SDK_INT >= 21) {
       // Let the underlying framework time the release.
-      if (earlyUs < 50000) {
+      if (earlyUs < getReleaseWindowUs()) {
         notifyFrameMetadataListener(presentationTimeUs, adjustedReleaseTimeNs, format);
         renderOutputBufferV21(codec, bufferIndex, presentationTimeUs, adjustedReleaseTimeNs);
         updateVideoFrameProcessingOffsetCounters(earlyUs);
@@ -1015,7 +1033,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
       }
     } else {
       // We need to time the release ourselves.
-      if (earlyUs < 30000) {
+      if (earlyUs < getReleaseWindowUs()) {
         if (earlyUs > 11000) {
           // We're a little too early to render the frame. Sleep until the frame can be rendered.
           // Note: The 11ms threshold was chosen fairly arbitrarily.
@@ -1035,9 +1053,18 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     }
 
     // We're either not playing, or it's not time to render the frame yet.
+    pendingOutputBufferReleaseTimeNs = adjustedReleaseTimeNs;
     return false;
   }
 
+  /**
+   * Returns how long before its release time an output buffer is released to the codec, in
+   * microseconds.
+   */
+  private static long getReleaseWindowUs() {
+    return Util.SDK_INT >= 21 ? 50_000 : 30_000;
+  }
+
   private void notifyFrameMetadataListener(
       long presentationTimeUs, long releaseTimeNs, Format format) {
     if (frameMetadataListener != null) {
@@ -70,6 +70,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyFloat;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
@@ -151,11 +152,13 @@ import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Range;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -12060,6 +12063,92 @@ public final class ExoPlayerTest {
     verify(listener, atLeast(2)).onDeviceVolumeChanged(anyInt(), anyBoolean());
   }
 
+  @Test
+  public void release_withExtractedSeiItemNotYetRendered_returnsPayloadToPool() throws Exception {
+    ParsableByteArray payload = SeiDataItem.PAYLOAD_POOL.acquire(/* length= */ 20);
+    FakeMediaSource mediaSource =
+        new FakeMediaSource(new FakeTimeline(), ExoPlayerTestRunner.VIDEO_FORMAT) {
+          @Override
+          protected MediaPeriod createMediaPeriod(
+              MediaPeriodId id,
+              TrackGroupArray trackGroupArray,
+              Allocator allocator,
+              MediaSourceEventListener.EventDispatcher mediaSourceEventDispatcher,
+              DrmSessionManager drmSessionManager,
+              DrmSessionEventListener.EventDispatcher drmEventDispatcher,
+              @Nullable TransferListener transferListener) {
+            return new FakeMediaPeriod(
+                trackGroupArray,
+                allocator,
+                /* singleSampleTimeUs= */ 0,
+                mediaSourceEventDispatcher) {
+              @Override
+              public synchronized void prepare(Callback callback, long positionUs) {
+                super.prepare(callback, positionUs);
+                // The item is never reached by the playback position, so it is never rendered.
+                callback.onSeiDataNotify(
+                    SeiDataItem.SEI_DATA_TYPE_AGORA_DEFINED_DATA, payload, Long.MAX_VALUE);
+              }
+            };
+          }
+        };
+    ExoPlayer player = new TestExoPlayerBuilder(context).build();
+    Player.Listener listener = mock(Player.Listener.class);
+    player.addListener(listener);
+    player.setMediaSource(mediaSource);
+    player.prepare();
+    runUntilPlaybackState(player, Player.STATE_READY);
+    runUntilPendingCommandsAreFullyHandled(player);
+
+    player.release();
+    ShadowLooper.idleMainLooper();
+
+    verify(listener).onAgoraDefinedDataAfterExtract(any(ByteBuffer.class), eq(Long.MAX_VALUE));
+    verify(listener, never()).onAgoraDefinedDataWhenRender(any(ByteBuffer.class), anyLong());
+    // The pool is last in, first out, so the payload is acquired again if it has been released.
+    assertThat(SeiDataItem.PAYLOAD_POOL.acquire(/* length= */ 20)).isSameInstanceAs(payload);
+  }
+
+  @Test
+  public void dynamicScheduling_playbackLoopFollowsRendererDurationToProgress() throws Exception {
+    List<Long> renderPositionsUs = new ArrayList<>();
+    FakeRenderer renderer =
+        new FakeRenderer(C.TRACK_TYPE_VIDEO) {
+          @Override
+          public void render(long positionUs, long elapsedRealtimeUs)
+              throws ExoPlaybackException {
+            super.render(positionUs, elapsedRealtimeUs);
+            if (getState() == STATE_STARTED) {
+              renderPositionsUs.add(positionUs);
+            }
+          }
+
+          @Override
+          public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+            return 40_000;
+          }
+        };
+    ExoPlayer player =
+        new TestExoPlayerBuilder(context)
+            .setRenderers(renderer)
+            .setDynamicSchedulingEnabled(true)
+            .build();
+    player.setMediaSource(
+        new FakeMediaSource(new FakeTimeline(), ExoPlayerTestRunner.VIDEO_FORMAT));
+    player.prepare();
+    player.play();
+
+    runUntilPlaybackState(player, Player.STATE_ENDED);
+    player.release();
+
+    // The first render after starting and the last one before the end of the period are not
+    // scheduled from the renderer's duration.
+    assertThat(renderPositionsUs.size()).isGreaterThan(2);
+    for (int i = 2; i < renderPositionsUs.size() - 1; i++) {
+      assertThat(renderPositionsUs.get(i) - renderPositionsUs.get(i - 1)).isEqualTo(40_000);
+    }
+  }
+
   // Internal methods.
 
   private static ActionSchedule.Builder addSurfaceSwitch(ActionSchedule.Builder builder) {
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MemoryBudgetLoadControl} and {@link MemoryBudget}. */
+@RunWith(AndroidJUnit4.class)
+public final class MemoryBudgetLoadControlTest {
+
+  private static final int MIN_BUFFER_SIZE = DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE;
+
+  @Test
+  public void singlePlayer_withinBudget_isGrantedRequestedSize() {
+    MemoryBudget budget = new MemoryBudget(/* totalBudgetBytes= */ MIN_BUFFER_SIZE * 2);
+    MemoryBudgetLoadControl loadControl = new MemoryBudgetLoadControl.Builder(budget).build();
+
+    loadControl.onPrepared();
+
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(MIN_BUFFER_SIZE);
+    assertThat(budget.getPlayerCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void backgroundPlayer_isGrantedRemainderAfterForegroundPlayer() {
+    MemoryBudget budget =
+        new MemoryBudget(
+            /* totalBudgetBytes= */ MIN_BUFFER_SIZE * 3 / 2, /* minPlayerBufferBytes= */ 0);
+    MemoryBudgetLoadControl foreground = new MemoryBudgetLoadControl.Builder(budget).build();
+    MemoryBudgetLoadControl background =
+        new MemoryBudgetLoadControl.Builder(budget)
+            .setPriority(MemoryBudgetLoadControl.PRIORITY_BACKGROUND)
+            .build();
+
+    background.onPrepared();
+    foreground.onPrepared();
+
+    assertThat(foreground.getTargetBufferBytes()).isEqualTo(MIN_BUFFER_SIZE);
+    assertThat(background.getTargetBufferBytes()).isEqualTo(MIN_BUFFER_SIZE / 2);
+  }
+
+  @Test
+  public void setPriority_lowered_shrinksBufferFirst() {
+    MemoryBudget budget =
+        new MemoryBudget(/* totalBudgetBytes= */ MIN_BUFFER_SIZE, /* minPlayerBufferBytes= */ 0);
+    MemoryBudgetLoadControl first = new MemoryBudgetLoadControl.Builder(budget).build();
+    MemoryBudgetLoadControl second = new MemoryBudgetLoadControl.Builder(budget).build();
+    first.onPrepared();
+    second.onPrepared();
+    assertThat(first.getTargetBufferBytes()).isEqualTo(MIN_BUFFER_SIZE / 2);
+    assertThat(second.getTargetBufferBytes()).isEqualTo(MIN_BUFFER_SIZE / 2);
+
+    second.setPriority(MemoryBudgetLoadControl.PRIORITY_BACKGROUND);
+
+    assertThat(first.getTargetBufferBytes()).isEqualTo(MIN_BUFFER_SIZE);
+    assertThat(second.getTargetBufferBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void exhaustedBudget_grantsMinimumPlayerBufferSize() {
+    int minPlayerBufferBytes = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+    MemoryBudget budget =
+        new MemoryBudget(/* totalBudgetBytes= */ MIN_BUFFER_SIZE, minPlayerBufferBytes);
+    MemoryBudgetLoadControl foreground = new MemoryBudgetLoadControl.Builder(budget).build();
+    MemoryBudgetLoadControl background =
+        new MemoryBudgetLoadControl.Builder(budget)
+            .setPriority(MemoryBudgetLoadControl.PRIORITY_BACKGROUND)
+            .build();
+
+    foreground.onPrepared();
+    background.onPrepared();
+
+    assertThat(background.getTargetBufferBytes()).isEqualTo(minPlayerBufferBytes);
+  }
+
+  @Test
+  public void onReleased_returnsShareToOtherPlayers() {
+    MemoryBudget budget =
+        new MemoryBudget(/* totalBudgetBytes= */ MIN_BUFFER_SIZE, /* minPlayerBufferBytes= */ 0);
+    MemoryBudgetLoadControl foreground = new MemoryBudgetLoadControl.Builder(budget).build();
+    MemoryBudgetLoadControl background =
+        new MemoryBudgetLoadControl.Builder(budget)
+            .setPriority(MemoryBudgetLoadControl.PRIORITY_BACKGROUND)
+            .build();
+    foreground.onPrepared();
+    background.onPrepared();
+
+    foreground.onReleased();
+
+    assertThat(background.getTargetBufferBytes()).isEqualTo(MIN_BUFFER_SIZE);
+    assertThat(budget.getPlayerCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void allocations_areCountedPerPlayerAndForBudget() {
+    MemoryBudget budget = new MemoryBudget(/* totalBudgetBytes= */ MIN_BUFFER_SIZE);
+    MemoryBudgetLoadControl first = new MemoryBudgetLoadControl.Builder(budget).build();
+    MemoryBudgetLoadControl second = new MemoryBudgetLoadControl.Builder(budget).build();
+    Allocator firstAllocator = first.getAllocator();
+    Allocator secondAllocator = second.getAllocator();
+    int allocationLength = firstAllocator.getIndividualAllocationLength();
+
+    Allocation firstAllocation = firstAllocator.allocate();
+    firstAllocator.allocate();
+    secondAllocator.allocate();
+    firstAllocator.release(firstAllocation);
+
+    assertThat(first.getAllocatedBytes()).isEqualTo(allocationLength);
+    assertThat(first.getPeakAllocatedBytes()).isEqualTo(2 * allocationLength);
+    assertThat(second.getAllocatedBytes()).isEqualTo(allocationLength);
+    assertThat(budget.getTotalBytesAllocated()).isEqualTo(2 * allocationLength);
+  }
+
+  @Test
+  public void shouldContinueLoading_stopsWhenGrantedSizeReached() {
+    MemoryBudget budget =
+        new MemoryBudget(
+            /* totalBudgetBytes= */ C.DEFAULT_BUFFER_SEGMENT_SIZE, /* minPlayerBufferBytes= */ 0);
+    MemoryBudgetLoadControl loadControl = new MemoryBudgetLoadControl.Builder(budget).build();
+    loadControl.onPrepared();
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, /* bufferedDurationUs= */ 0, /* playbackSpeed= */ 1f))
+        .isTrue();
+
+    loadControl.getAllocator().allocate();
+
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, /* bufferedDurationUs= */ 0, /* playbackSpeed= */ 1f))
+        .isFalse();
+  }
+}
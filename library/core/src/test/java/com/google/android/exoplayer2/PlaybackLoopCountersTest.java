@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PlaybackLoopCounters}. */
+@RunWith(AndroidJUnit4.class)
+public final class PlaybackLoopCountersTest {
+
+  @Test
+  public void onWakeup_withinFirstWindow_onlyCountsWakeups() {
+    PlaybackLoopCounters counters = new PlaybackLoopCounters();
+
+    counters.onWakeup(/* nowMs= */ 0);
+    counters.onWakeup(/* nowMs= */ 10);
+    counters.onWakeup(/* nowMs= */ 999);
+
+    assertThat(counters.wakeupCount).isEqualTo(3);
+    assertThat(counters.wakeupsPerSecond).isEqualTo(0);
+  }
+
+  @Test
+  public void onWakeup_afterCompleteWindow_reportsWakeupsPerSecond() {
+    PlaybackLoopCounters counters = new PlaybackLoopCounters();
+    for (int i = 0; i < 100; i++) {
+      counters.onWakeup(/* nowMs= */ i * 10);
+    }
+
+    counters.onWakeup(/* nowMs= */ 1000);
+
+    assertThat(counters.wakeupCount).isEqualTo(101);
+    assertThat(counters.wakeupsPerSecond).isEqualTo(100);
+    assertThat(counters.maxWakeupsPerSecond).isEqualTo(100);
+  }
+
+  @Test
+  public void onWakeup_afterIdleWindow_reportsZeroAndKeepsMaximum() {
+    PlaybackLoopCounters counters = new PlaybackLoopCounters();
+    for (int i = 0; i <= 100; i++) {
+      counters.onWakeup(/* nowMs= */ i * 10);
+    }
+
+    counters.onWakeup(/* nowMs= */ 5000);
+
+    assertThat(counters.wakeupsPerSecond).isEqualTo(0);
+    assertThat(counters.maxWakeupsPerSecond).isEqualTo(100);
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SeiDataQueue}. */
+@RunWith(AndroidJUnit4.class)
+public class SeiDataQueueTest {
+
+  @Test
+  public void pollExtracted_returnsItemsOnlyOnce() {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 4, /* maxCapacity= */ 4);
+    SeiDataItem item1 = createItem(/* pts= */ 100);
+    SeiDataItem item2 = createItem(/* pts= */ 200);
+    List<SeiDataItem> output = new ArrayList<>();
+
+    queue.offer(item1);
+    queue.offer(item2);
+
+    assertThat(queue.pollExtracted(/* positionUs= */ 0, output)).isTrue();
+    assertThat(output).containsExactly(item1, item2).inOrder();
+    output.clear();
+    assertThat(queue.pollExtracted(/* positionUs= */ 0, output)).isFalse();
+    assertThat(output).isEmpty();
+  }
+
+  @Test
+  public void pollRendered_returnsAllItemsBeforePositionInOneBatch() {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 4, /* maxCapacity= */ 4);
+    SeiDataItem item1 = createItem(/* pts= */ 100);
+    SeiDataItem item2 = createItem(/* pts= */ 200);
+    SeiDataItem item3 = createItem(/* pts= */ 300);
+    List<SeiDataItem> output = new ArrayList<>();
+    queue.offer(item1);
+    queue.offer(item2);
+    queue.offer(item3);
+    queue.pollExtracted(/* positionUs= */ 0, new ArrayList<>());
+
+    assertThat(queue.pollRendered(/* positionUs= */ 100, output)).isFalse();
+    assertThat(queue.pollRendered(/* positionUs= */ 250, output)).isTrue();
+    assertThat(output).containsExactly(item1, item2).inOrder();
+    output.clear();
+    assertThat(queue.pollRendered(/* positionUs= */ 301, output)).isTrue();
+    assertThat(output).containsExactly(item3);
+  }
+
+  @Test
+  public void pollRendered_ignoresItemsNotYetExtracted() {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 4, /* maxCapacity= */ 4);
+    List<SeiDataItem> output = new ArrayList<>();
+    queue.offer(createItem(/* pts= */ 100));
+
+    assertThat(queue.pollRendered(/* positionUs= */ 200, output)).isFalse();
+    assertThat(output).isEmpty();
+  }
+
+  @Test
+  public void offer_beyondInitialCapacity_growsWithoutDroppingItems() {
+    // 1000 items are 16 seconds of 60 fps video, well within the default buffer duration.
+    SeiDataQueue queue = new SeiDataQueue();
+    List<SeiDataItem> items = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      SeiDataItem item = createItem(/* pts= */ 1000 + i * 16_667L);
+      items.add(item);
+      assertThat(queue.offer(item)).isTrue();
+    }
+    List<SeiDataItem> extractedItems = new ArrayList<>();
+    List<SeiDataItem> renderedItems = new ArrayList<>();
+
+    queue.pollExtracted(/* positionUs= */ 0, extractedItems);
+    queue.pollRendered(/* positionUs= */ Long.MAX_VALUE, renderedItems);
+
+    assertThat(queue.getDroppedCount()).isEqualTo(0);
+    assertThat(extractedItems).containsExactlyElementsIn(items).inOrder();
+    assertThat(renderedItems).containsExactlyElementsIn(items).inOrder();
+  }
+
+  @Test
+  public void offer_growingWhilePartiallyRendered_keepsItemsInOrder() {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 4, /* maxCapacity= */ 16);
+    List<SeiDataItem> items = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      items.add(createItem(/* pts= */ i * 100));
+      queue.offer(items.get(i));
+    }
+    queue.pollExtracted(/* positionUs= */ 0, new ArrayList<>());
+    List<SeiDataItem> renderedItems = new ArrayList<>();
+    queue.pollRendered(/* positionUs= */ 150, renderedItems);
+    for (int i = 3; i < 10; i++) {
+      items.add(createItem(/* pts= */ i * 100));
+      queue.offer(items.get(i));
+    }
+
+    List<SeiDataItem> extractedItems = new ArrayList<>();
+    queue.pollExtracted(/* positionUs= */ 0, extractedItems);
+    queue.pollRendered(/* positionUs= */ Long.MAX_VALUE, renderedItems);
+
+    assertThat(extractedItems).containsExactlyElementsIn(items.subList(3, 10)).inOrder();
+    assertThat(renderedItems).containsExactlyElementsIn(items).inOrder();
+    assertThat(queue.getDroppedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void offer_onOtherThreadWhileGrowing_deliversAllItemsInOrder() throws Exception {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 2, /* maxCapacity= */ 1 << 14);
+    int itemCount = 10_000;
+    List<SeiDataItem> items = new ArrayList<>();
+    for (int i = 0; i < itemCount; i++) {
+      items.add(createItem(/* pts= */ i));
+    }
+    Thread loadingThread =
+        new Thread(
+            () -> {
+              for (int i = 0; i < itemCount; i++) {
+                queue.offer(items.get(i));
+              }
+            });
+    List<SeiDataItem> extractedItems = new ArrayList<>();
+    List<SeiDataItem> renderedItems = new ArrayList<>();
+
+    loadingThread.start();
+    while (renderedItems.size() < itemCount) {
+      queue.pollExtracted(/* positionUs= */ 0, extractedItems);
+      // Render half of the extracted items, so that the queue grows whilst holding items.
+      queue.pollRendered(/* positionUs= */ extractedItems.size() / 2, renderedItems);
+      if (!loadingThread.isAlive() && extractedItems.size() == itemCount) {
+        queue.pollRendered(/* positionUs= */ Long.MAX_VALUE, renderedItems);
+      }
+    }
+    loadingThread.join();
+
+    assertThat(queue.getDroppedCount()).isEqualTo(0);
+    assertThat(extractedItems).containsExactlyElementsIn(items).inOrder();
+    assertThat(renderedItems).containsExactlyElementsIn(items).inOrder();
+  }
+
+  @Test
+  public void offer_atMaxCapacity_dropsItemUntilSlotsAreReleased() {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 1, /* maxCapacity= */ 2);
+    SeiDataItem item3 = createItem(/* pts= */ 300);
+    queue.offer(createItem(/* pts= */ 100));
+    queue.offer(createItem(/* pts= */ 200));
+
+    assertThat(queue.offer(item3)).isFalse();
+    assertThat(queue.getDroppedCount()).isEqualTo(1);
+    assertThat(item3.isReleased()).isTrue();
+    item3 = createItem(/* pts= */ 300);
+
+    queue.pollExtracted(/* positionUs= */ 0, new ArrayList<>());
+    queue.pollRendered(/* positionUs= */ 150, new ArrayList<>());
+
+    assertThat(queue.offer(item3)).isTrue();
+    List<SeiDataItem> output = new ArrayList<>();
+    queue.pollExtracted(/* positionUs= */ 150, output);
+    assertThat(output).containsExactly(item3);
+  }
+
+  @Test
+  public void pollExtracted_countsItemsBehindPositionAsLate() {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 4, /* maxCapacity= */ 4);
+    queue.offer(createItem(/* pts= */ 100));
+    queue.offer(createItem(/* pts= */ 300));
+
+    queue.pollExtracted(/* positionUs= */ 200, new ArrayList<>());
+
+    assertThat(queue.getLateCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void clear_discardsPendingItems() {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 4, /* maxCapacity= */ 4);
+    List<SeiDataItem> output = new ArrayList<>();
+    queue.offer(createItem(/* pts= */ 100));
+    queue.pollExtracted(/* positionUs= */ 0, new ArrayList<>());
+    queue.offer(createItem(/* pts= */ 200));
+
+    queue.clear(new ArrayList<>());
+
+    assertThat(queue.pollExtracted(/* positionUs= */ 0, output)).isFalse();
+    assertThat(queue.pollRendered(/* positionUs= */ 1000, output)).isFalse();
+    assertThat(output).isEmpty();
+  }
+
+  @Test
+  public void clear_releasesItemsNotYetExtractedAndReturnsExtractedItems() {
+    SeiDataQueue queue = new SeiDataQueue(/* initialCapacity= */ 4, /* maxCapacity= */ 4);
+    SeiDataItem renderedItem = createItem(/* pts= */ 100);
+    SeiDataItem extractedItem = createItem(/* pts= */ 200);
+    SeiDataItem pendingItem = createItem(/* pts= */ 300);
+    queue.offer(renderedItem);
+    queue.offer(extractedItem);
+    queue.pollExtracted(/* positionUs= */ 0, new ArrayList<>());
+    queue.pollRendered(/* positionUs= */ 150, new ArrayList<>());
+    queue.offer(pendingItem);
+    List<SeiDataItem> discardedItems = new ArrayList<>();
+
+    assertThat(queue.clear(discardedItems)).isTrue();
+
+    assertThat(discardedItems).containsExactly(extractedItem);
+    assertThat(extractedItem.isReleased()).isFalse();
+    assertThat(pendingItem.isReleased()).isTrue();
+    assertThat(renderedItem.isReleased()).isFalse();
+  }
+
+  private static SeiDataItem createItem(long pts) {
+    return new SeiDataItem(
+        SeiDataItem.SEI_DATA_TYPE_USER_DATA_UNREGISTED, new ParsableByteArray(/* limit= */ 20), pts);
+  }
+}
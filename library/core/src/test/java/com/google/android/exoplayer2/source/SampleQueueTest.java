@@ -25,6 +25,7 @@ import static com.google.android.exoplayer2.source.SampleStream.FLAG_PEEK;
 import static com.google.common.truth.Truth.assertThat;
 import static java.lang.Long.MAX_VALUE;
 import static java.lang.Long.MIN_VALUE;
+import static java.lang.Math.min;
 import static java.util.Arrays.copyOfRange;
 import static org.junit.Assert.assertArrayEquals;
 import static org.mockito.Mockito.when;
@@ -46,6 +47,7 @@ import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.testutil.FakeCryptoConfig;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataReader;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.ParsableByteArray;
@@ -365,6 +367,49 @@ public final class SampleQueueTest {
     assertAllocationCount(0);
   }
 
+  @Test
+  public void readMultiSamples_withDirectBufferAllocator() {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+
+    writeTestData();
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
+  @Test
+  public void readMultiSamples_writtenFromDataReader() throws IOException {
+    writeTestDataFromDataReader();
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
+  @Test
+  public void readMultiSamples_writtenFromDataReaderWithDirectBufferAllocator() throws IOException {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+
+    writeTestDataFromDataReader();
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
   @Test
   public void readMultiSamplesTwice() {
     writeTestData();
@@ -1396,6 +1441,41 @@ public final class SampleQueueTest {
     }
   }
 
+  /**
+   * Writes the same data as {@link #writeTestData()}, reading the sample data from a {@link
+   * DataReader} that returns fewer bytes than requested.
+   */
+  private void writeTestDataFromDataReader() throws IOException {
+    int[] readPosition = new int[1];
+    DataReader dataReader =
+        (buffer, offset, length) -> {
+          if (readPosition[0] == DATA.length) {
+            return C.RESULT_END_OF_INPUT;
+          }
+          int bytesRead = min(min(length, 7), DATA.length - readPosition[0]);
+          System.arraycopy(DATA, readPosition[0], buffer, offset, bytesRead);
+          readPosition[0] += bytesRead;
+          return bytesRead;
+        };
+    while (readPosition[0] < DATA.length) {
+      sampleQueue.sampleData(
+          dataReader, DATA.length - readPosition[0], /* allowEndOfInput= */ false);
+    }
+    Format format = null;
+    for (int i = 0; i < SAMPLE_TIMESTAMPS.length; i++) {
+      if (SAMPLE_FORMATS[i] != format) {
+        sampleQueue.format(SAMPLE_FORMATS[i]);
+        format = SAMPLE_FORMATS[i];
+      }
+      sampleQueue.sampleMetadata(
+          SAMPLE_TIMESTAMPS[i],
+          SAMPLE_FLAGS[i],
+          SAMPLE_SIZES[i],
+          SAMPLE_OFFSETS[i],
+          /* cryptoData= */ null);
+    }
+  }
+
   private void writeTestDataWithEncryptedSections() {
     writeTestData(
         ENCRYPTED_SAMPLE_DATA,
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  @Test
+  public void allocate_afterRelease_reusesAllocation() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ false, ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+
+    allocator.release(allocation);
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void releaseChain_longerThanThreadCache_releasesAllAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ false, ALLOCATION_SIZE);
+    int count = DefaultAllocator.THREAD_CACHE_CAPACITY * 3;
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      allocations.add(allocator.allocate());
+    }
+
+    allocator.release(createChain(allocations, /* index= */ 0));
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    List<Allocation> reallocated = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      reallocated.add(allocator.allocate());
+    }
+    assertThat(reallocated).containsExactlyElementsIn(allocations);
+  }
+
+  @Test
+  public void allocateAndReleaseOnDifferentThreads_tracksAllocatedBytes() throws Exception {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ false, ALLOCATION_SIZE);
+    int count = 1000;
+    BlockingQueue<Allocation> queue = new ArrayBlockingQueue<>(/* capacity= */ 16);
+    Thread releasingThread =
+        new Thread(
+            () -> {
+              try {
+                for (int i = 0; i < count; i++) {
+                  allocator.release(queue.take());
+                }
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    releasingThread.start();
+
+    for (int i = 0; i < count; i++) {
+      queue.put(allocator.allocate());
+    }
+    releasingThread.join();
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void setTargetBufferSize_reduced_discardsCachedAllocationsOnNextRelease() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    allocator.setTargetBufferSize(ALLOCATION_SIZE * 4);
+    Allocation cachedAllocation = allocator.allocate();
+    Allocation releasedAllocation = allocator.allocate();
+    allocator.release(cachedAllocation);
+
+    allocator.reset();
+    allocator.release(releasedAllocation);
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    Allocation newAllocation = allocator.allocate();
+    assertThat(newAllocation).isNotSameInstanceAs(cachedAllocation);
+    assertThat(newAllocation).isNotSameInstanceAs(releasedAllocation);
+  }
+
+  @Test
+  public void trim_afterAllocatingAndReleasingOnDifferentThreads_discardsPooledAllocations()
+      throws Exception {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    int count = DefaultAllocator.THREAD_CACHE_CAPACITY * 4;
+    allocator.setTargetBufferSize(ALLOCATION_SIZE * count);
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      allocations.add(allocator.allocate());
+    }
+    Thread releasingThread =
+        new Thread(() -> allocator.release(createChain(allocations, /* index= */ 0)));
+    releasingThread.start();
+    releasingThread.join();
+    // This thread only allocates, so allocating from the pool must not move a batch of pooled
+    // allocations into its cache, where the trim below couldn't discard them.
+    allocator.allocate();
+
+    allocator.reset();
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    for (int i = 0; i < count; i++) {
+      assertThat(allocations).doesNotContain(allocator.allocate());
+    }
+  }
+
+  @Test
+  public void trim_afterReleasingOnTerminatedThread_returnsCachedAllocationsToPool()
+      throws Exception {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    allocator.setTargetBufferSize(ALLOCATION_SIZE * 4);
+    List<Allocation> allocations = new ArrayList<>();
+    Thread workerThread =
+        new Thread(
+            () -> {
+              for (int i = 0; i < 2; i++) {
+                allocations.add(allocator.allocate());
+              }
+              for (Allocation allocation : allocations) {
+                allocator.release(allocation);
+              }
+            });
+    workerThread.start();
+    workerThread.join();
+
+    allocator.trim();
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    List<Allocation> reallocated = new ArrayList<>();
+    for (int i = 0; i < allocations.size(); i++) {
+      reallocated.add(allocator.allocate());
+    }
+    assertThat(reallocated).containsExactlyElementsIn(allocations);
+  }
+
+  @Test
+  public void trim_keepsInitialAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true, ALLOCATION_SIZE, /* initialAllocationCount= */ 2);
+    Allocation initialAllocation = allocator.allocate();
+    allocator.release(initialAllocation);
+
+    allocator.reset();
+
+    assertThat(allocator.allocate().data).isSameInstanceAs(initialAllocation.data);
+  }
+
+  @Nullable
+  private static Allocator.AllocationNode createChain(List<Allocation> allocations, int index) {
+    if (index == allocations.size()) {
+      return null;
+    }
+    Allocation allocation = allocations.get(index);
+    @Nullable Allocator.AllocationNode next = createChain(allocations, index + 1);
+    return new Allocator.AllocationNode() {
+      @Override
+      public Allocation getAllocation() {
+        return allocation;
+      }
+
+      @Nullable
+      @Override
+      public Allocator.AllocationNode next() {
+        return next;
+      }
+    };
+  }
+}
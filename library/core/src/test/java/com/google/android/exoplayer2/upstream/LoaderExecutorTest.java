@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link LoaderExecutor}. */
+@RunWith(AndroidJUnit4.class)
+public final class LoaderExecutorTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Test
+  public void getLoadPriority_lessBufferedMedia_hasHigherPriority() {
+    int lowBufferPriority =
+        LoaderExecutor.getLoadPriority(C.TRACK_TYPE_VIDEO, /* bufferedDurationUs= */ 1_000_000);
+    int highBufferPriority =
+        LoaderExecutor.getLoadPriority(C.TRACK_TYPE_VIDEO, /* bufferedDurationUs= */ 10_000_000);
+
+    assertThat(lowBufferPriority).isGreaterThan(highBufferPriority);
+  }
+
+  @Test
+  public void getLoadPriority_audio_isAheadOfVideoWithSameBuffer() {
+    assertThat(LoaderExecutor.getLoadPriority(C.TRACK_TYPE_AUDIO, /* bufferedDurationUs= */ 0))
+        .isGreaterThan(
+            LoaderExecutor.getLoadPriority(C.TRACK_TYPE_VIDEO, /* bufferedDurationUs= */ 0));
+    assertThat(LoaderExecutor.getLoadPriority(C.TRACK_TYPE_TEXT, /* bufferedDurationUs= */ 0))
+        .isLessThan(
+            LoaderExecutor.getLoadPriority(C.TRACK_TYPE_VIDEO, /* bufferedDurationUs= */ 0));
+  }
+
+  @Test
+  public void execute_withBusyThread_runsHigherPriorityTaskFirst() throws Exception {
+    LoaderExecutor executor = new LoaderExecutor(/* maxThreadCount= */ 1);
+    ConditionVariable blockingTaskCanFinish = new ConditionVariable();
+    CountDownLatch tasksFinished = new CountDownLatch(3);
+    List<String> executionOrder = new CopyOnWriteArrayList<>();
+    executor
+        .createTaskQueue()
+        .execute(
+            () -> {
+              blockingTaskCanFinish.blockUninterruptible();
+              tasksFinished.countDown();
+            },
+            /* priority= */ 0);
+
+    executor
+        .createTaskQueue()
+        .execute(
+            () -> {
+              executionOrder.add("low");
+              tasksFinished.countDown();
+            },
+            /* priority= */ -10);
+    executor
+        .createTaskQueue()
+        .execute(
+            () -> {
+              executionOrder.add("high");
+              tasksFinished.countDown();
+            },
+            /* priority= */ 10);
+    blockingTaskCanFinish.open();
+
+    assertThat(tasksFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(executionOrder).containsExactly("high", "low").inOrder();
+    assertThat(executor.getStartedTaskCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void execute_onSameTaskQueue_runsTasksInSubmissionOrder() throws Exception {
+    LoaderExecutor executor = new LoaderExecutor(/* maxThreadCount= */ 4);
+    LoaderExecutor.TaskQueue taskQueue = executor.createTaskQueue();
+    CountDownLatch tasksFinished = new CountDownLatch(2);
+    List<String> executionOrder = new CopyOnWriteArrayList<>();
+
+    taskQueue.execute(
+        () -> {
+          executionOrder.add("first");
+          tasksFinished.countDown();
+        },
+        /* priority= */ 0);
+    taskQueue.execute(
+        () -> {
+          executionOrder.add("second");
+          tasksFinished.countDown();
+        },
+        /* priority= */ Integer.MAX_VALUE);
+
+    assertThat(tasksFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(executionOrder).containsExactly("first", "second").inOrder();
+  }
+}
@@ -26,6 +26,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.SeiDataItem;
 import com.google.android.exoplayer2.analytics.PlayerId;
 import com.google.android.exoplayer2.drm.DrmSessionEventListener;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
@@ -55,6 +56,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.primitives.Ints;
 import java.io.IOException;
@@ -805,6 +807,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
             drmEventDispatcher,
             loadErrorHandlingPolicy,
             mediaSourceEventDispatcher);
+    stream.setSeiDataListener(this::onSeiDataNotify);
     synchronized (this) {
       // The map is also accessed on the loading thread so synchronize access.
       trackEmsgHandlerBySampleStream.put(stream, trackPlayerEmsgHandler);
@@ -812,6 +815,16 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     return stream;
   }
 
+  // Called by the loading thread.
+  private void onSeiDataNotify(int type, ParsableByteArray data, long pts) {
+    @Nullable Callback callback = this.callback;
+    if (callback != null) {
+      callback.onSeiDataNotify(type, data, pts);
+    } else {
+      SeiDataItem.PAYLOAD_POOL.release(data);
+    }
+  }
+
   @Nullable
   private static Descriptor findAdaptationSetSwitchingProperty(List<Descriptor> descriptors) {
     return findDescriptor(descriptors, "urn:mpeg:dash:adaptation-set-switching:2016");
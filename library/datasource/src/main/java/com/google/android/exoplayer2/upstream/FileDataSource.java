@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
 import static com.google.android.exoplayer2.util.Util.castNonNull;
 import static java.lang.Math.min;
 
@@ -32,10 +33,22 @@ import com.google.android.exoplayer2.util.Util;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
-/** A {@link DataSource} for reading local files. */
+/**
+ * A {@link DataSource} for reading local files.
+ *
+ * <p>By default, data is read from the file into the caller's buffer by each {@link #read} call.
+ * If memory mapping is enabled using {@link Factory#setMemoryMappingEnabled}, the file is instead
+ * mapped into memory in windows of bounded size, and reads are copied from the mapped window,
+ * which avoids a system call for each read.
+ */
 public final class FileDataSource extends BaseDataSource {
 
+  /** The default maximum size of a memory mapped window of a file, in bytes. */
+  public static final int DEFAULT_MEMORY_MAPPING_WINDOW_SIZE = 8 * 1024 * 1024;
+
   /** Thrown when a {@link FileDataSource} encounters an error reading a file. */
   public static class FileDataSourceException extends DataSourceException {
 
@@ -69,6 +82,12 @@ public final class FileDataSource extends BaseDataSource {
   public static final class Factory implements DataSource.Factory {
 
     @Nullable private TransferListener listener;
+    private boolean memoryMappingEnabled;
+    private int memoryMappingWindowSize;
+
+    public Factory() {
+      memoryMappingWindowSize = DEFAULT_MEMORY_MAPPING_WINDOW_SIZE;
+    }
 
     /**
      * Sets a {@link TransferListener} for {@link FileDataSource} instances created by this factory.
@@ -81,9 +100,42 @@ public final class FileDataSource extends BaseDataSource {
       return this;
     }
 
+    /**
+     * Sets whether files are read by mapping them into memory. Memory mapping is most beneficial
+     * for sequential reads of large files, for example local high bitrate media or cached spans
+     * read by a {@link com.google.android.exoplayer2.upstream.cache.CacheDataSource} whose cache
+     * read data source factory is set to a factory created with memory mapping enabled.
+     *
+     * <p>The default is {@code false}.
+     *
+     * @param memoryMappingEnabled Whether files are read by mapping them into memory.
+     * @return This factory.
+     */
+    public Factory setMemoryMappingEnabled(boolean memoryMappingEnabled) {
+      this.memoryMappingEnabled = memoryMappingEnabled;
+      return this;
+    }
+
+    /**
+     * Sets the maximum size of a memory mapped window of a file, if memory mapping is enabled.
+     * Larger windows require fewer mappings for a sequential read, at the cost of more address
+     * space.
+     *
+     * <p>The default is {@link #DEFAULT_MEMORY_MAPPING_WINDOW_SIZE}.
+     *
+     * @param memoryMappingWindowSize The maximum window size, in bytes. Must be positive.
+     * @return This factory.
+     */
+    public Factory setMemoryMappingWindowSize(int memoryMappingWindowSize) {
+      checkArgument(memoryMappingWindowSize > 0);
+      this.memoryMappingWindowSize = memoryMappingWindowSize;
+      return this;
+    }
+
     @Override
     public FileDataSource createDataSource() {
-      FileDataSource dataSource = new FileDataSource();
+      FileDataSource dataSource =
+          new FileDataSource(memoryMappingEnabled ? memoryMappingWindowSize : 0);
       if (listener != null) {
         dataSource.addTransferListener(listener);
       }
@@ -91,13 +143,23 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  private final int memoryMappingWindowSize;
+
   @Nullable private RandomAccessFile file;
   @Nullable private Uri uri;
+  @Nullable private MappedByteBuffer mappedWindow;
+  private long fileLength;
+  private long windowEndPosition;
   private long bytesRemaining;
   private boolean opened;
 
   public FileDataSource() {
+    this(/* memoryMappingWindowSize= */ 0);
+  }
+
+  private FileDataSource(int memoryMappingWindowSize) {
     super(/* isNetwork= */ false);
+    this.memoryMappingWindowSize = memoryMappingWindowSize;
   }
 
   @Override
@@ -108,8 +170,10 @@ public final class FileDataSource extends BaseDataSource {
     this.file = openLocalFile(uri);
     try {
       file.seek(dataSpec.position);
+      fileLength = file.length();
+      windowEndPosition = dataSpec.position;
       bytesRemaining =
-          dataSpec.length == C.LENGTH_UNSET ? file.length() - dataSpec.position : dataSpec.length;
+          dataSpec.length == C.LENGTH_UNSET ? fileLength - dataSpec.position : dataSpec.length;
     } catch (IOException e) {
       throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
     }
@@ -135,7 +199,11 @@ public final class FileDataSource extends BaseDataSource {
     } else {
       int bytesRead;
       try {
-        bytesRead = castNonNull(file).read(buffer, offset, (int) min(bytesRemaining, length));
+        if (memoryMappingWindowSize > 0) {
+          bytesRead = readFromMappedWindow(buffer, offset, (int) min(bytesRemaining, length));
+        } else {
+          bytesRead = castNonNull(file).read(buffer, offset, (int) min(bytesRemaining, length));
+        }
       } catch (IOException e) {
         throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
       }
@@ -166,6 +234,9 @@ public final class FileDataSource extends BaseDataSource {
       throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
     } finally {
       file = null;
+      // The mapping is released once the buffer is garbage collected, since there's no public API
+      // to unmap it. Bounding the window size bounds the address space held until then.
+      mappedWindow = null;
       if (opened) {
         opened = false;
         transferEnded();
@@ -173,6 +244,27 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  private int readFromMappedWindow(byte[] buffer, int offset, int length) throws IOException {
+    @Nullable MappedByteBuffer mappedWindow = this.mappedWindow;
+    if (mappedWindow == null || !mappedWindow.hasRemaining()) {
+      // Never map beyond the end of the file, since accessing such a mapping fails.
+      long windowSize =
+          min(min(bytesRemaining, fileLength - windowEndPosition), memoryMappingWindowSize);
+      if (windowSize <= 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      mappedWindow =
+          castNonNull(file)
+              .getChannel()
+              .map(FileChannel.MapMode.READ_ONLY, windowEndPosition, windowSize);
+      this.mappedWindow = mappedWindow;
+      windowEndPosition += windowSize;
+    }
+    int bytesRead = min(length, mappedWindow.remaining());
+    mappedWindow.get(buffer, offset, bytesRead);
+    return bytesRead;
+  }
+
   private static RandomAccessFile openLocalFile(Uri uri) throws FileDataSourceException {
     try {
       return new RandomAccessFile(Assertions.checkNotNull(uri.getPath()), "r");
@@ -73,6 +73,25 @@ public interface Cache {
      * @param newSpan The new {@link CacheSpan}, which has been added to the cache.
      */
     void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan);
+
+    /**
+     * Called when the data of an existing {@link CacheSpan} is moved, causing it to be replaced.
+     * The new {@link CacheSpan} represents the same data as the one it replaces, and has the same
+     * {@link CacheSpan#lastTouchTimestamp}, but its {@link CacheSpan#file} or {@link
+     * CacheSpan#fileOffset} have changed. Unlike a touch, a move isn't an access of the data.
+     *
+     * <p>Note that for span relocation, {@link #onSpanAdded(Cache, CacheSpan)}, {@link
+     * #onSpanRemoved(Cache, CacheSpan)} and {@link #onSpanTouched(Cache, CacheSpan, CacheSpan)}
+     * are not called in addition to this method. The default implementation calls {@link
+     * #onSpanTouched(Cache, CacheSpan, CacheSpan)}.
+     *
+     * @param cache The source of the event.
+     * @param oldSpan The old {@link CacheSpan}, which has been removed from the cache.
+     * @param newSpan The new {@link CacheSpan}, which has been added to the cache.
+     */
+    default void onSpanMoved(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+      onSpanTouched(cache, oldSpan, newSpan);
+    }
   }
 
   /** Thrown when an error is encountered when writing data. */
@@ -239,6 +258,17 @@ public interface Cache {
    */
   void releaseHoleSpan(CacheSpan holeSpan);
 
+  /**
+   * Releases a cached {@link CacheSpan} obtained from {@link #startReadWrite(String, long, long)}
+   * once its data is no longer read. Implementations that move cached data between files keep the
+   * file of a span in place until the span is released.
+   *
+   * <p>The default implementation does nothing.
+   *
+   * @param cachedSpan The cached {@link CacheSpan} being released.
+   */
+  default void releaseCachedSpan(CacheSpan cachedSpan) {}
+
   /**
    * Removes all {@link CacheSpan CacheSpans} for a resource, deleting the underlying files.
    *
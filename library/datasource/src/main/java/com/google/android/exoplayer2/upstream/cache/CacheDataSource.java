@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.upstream.cache;
 
 import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
@@ -29,6 +30,7 @@ import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.PlaybackException;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
 import com.google.android.exoplayer2.upstream.DataSink;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSourceException;
@@ -41,6 +43,7 @@ import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
+import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.lang.annotation.Documented;
@@ -72,6 +75,9 @@ public final class CacheDataSource implements DataSource {
     private int upstreamPriority;
     private @CacheDataSource.Flags int flags;
     @Nullable private CacheDataSource.EventListener eventListener;
+    @Nullable private MemorySpanCache memorySpanCache;
+    private long readAheadLength;
+    @Nullable private CacheStatistics cacheStatistics;
 
     public Factory() {
       cacheReadDataSourceFactory = new FileDataSource.Factory();
@@ -239,12 +245,68 @@ public final class CacheDataSource implements DataSource {
       return this;
     }
 
+    /**
+     * Sets the {@link MemorySpanCache} in which the data of cached spans is held, so that repeated
+     * reads of the same spans are served from memory. Spans are loaded into it in the background
+     * once they've been read more than once.
+     *
+     * <p>The default is {@code null}.
+     *
+     * @param memorySpanCache The {@link MemorySpanCache}, or {@code null} to always read cached
+     *     data using the cache read {@link DataSource}.
+     * @return This factory.
+     */
+    public Factory setMemorySpanCache(@Nullable MemorySpanCache memorySpanCache) {
+      this.memorySpanCache = memorySpanCache;
+      return this;
+    }
+
+    /**
+     * Sets the read-ahead length.
+     *
+     * <p>If set to a positive value, requests for data that isn't cached are extended to end at the
+     * next multiple of the read-ahead length, unless cached data or the end of the content comes
+     * first. Reads are still limited to the requested data. If all of the requested data is read,
+     * the remainder of the extended request is written to the cache before the request is closed,
+     * so that subsequent adjacent reads can be served from the cache without making a request.
+     * Closing an instance therefore reads at most the read-ahead length from upstream.
+     *
+     * <p>Read-ahead only applies to instances that write to the cache, and not to instances created
+     * by {@link #createDataSourceForDownloading()}. The default is {@code 0}, meaning that only the
+     * requested data is requested from upstream. To cache data in the background instead, use a
+     * {@link CachePrefetcher}.
+     *
+     * @param readAheadLength The read-ahead length in bytes, or {@code 0} to disable read-ahead.
+     * @return This factory.
+     */
+    public Factory setReadAheadLength(long readAheadLength) {
+      Assertions.checkArgument(readAheadLength >= 0);
+      this.readAheadLength = readAheadLength;
+      return this;
+    }
+
+    /**
+     * Sets the {@link CacheStatistics} in which hits, misses, bytes read, read durations and lock
+     * wait durations are recorded. For a {@link SimpleCache}, pass {@link
+     * SimpleCache#getStatistics()} so that all statistics of the cache are recorded together.
+     *
+     * <p>The default is {@code null}.
+     *
+     * @param cacheStatistics The {@link CacheStatistics}, or {@code null} to not record statistics.
+     * @return This factory.
+     */
+    public Factory setCacheStatistics(@Nullable CacheStatistics cacheStatistics) {
+      this.cacheStatistics = cacheStatistics;
+      return this;
+    }
+
     @Override
     public CacheDataSource createDataSource() {
       return createDataSourceInternal(
           upstreamDataSourceFactory != null ? upstreamDataSourceFactory.createDataSource() : null,
           flags,
-          upstreamPriority);
+          upstreamPriority,
+          readAheadLength);
     }
 
     /**
@@ -262,7 +324,8 @@ public final class CacheDataSource implements DataSource {
       return createDataSourceInternal(
           upstreamDataSourceFactory != null ? upstreamDataSourceFactory.createDataSource() : null,
           flags | FLAG_BLOCK_ON_CACHE,
-          C.PRIORITY_DOWNLOAD);
+          C.PRIORITY_DOWNLOAD,
+          /* readAheadLength= */ 0);
     }
 
     /**
@@ -281,11 +344,17 @@ public final class CacheDataSource implements DataSource {
      */
     public CacheDataSource createDataSourceForRemovingDownload() {
       return createDataSourceInternal(
-          /* upstreamDataSource= */ null, flags | FLAG_BLOCK_ON_CACHE, C.PRIORITY_DOWNLOAD);
+          /* upstreamDataSource= */ null,
+          flags | FLAG_BLOCK_ON_CACHE,
+          C.PRIORITY_DOWNLOAD,
+          /* readAheadLength= */ 0);
     }
 
     private CacheDataSource createDataSourceInternal(
-        @Nullable DataSource upstreamDataSource, @Flags int flags, int upstreamPriority) {
+        @Nullable DataSource upstreamDataSource,
+        @Flags int flags,
+        int upstreamPriority,
+        long readAheadLength) {
       Cache cache = checkNotNull(this.cache);
       @Nullable DataSink cacheWriteDataSink;
       if (cacheIsReadOnly || upstreamDataSource == null) {
@@ -304,7 +373,10 @@ public final class CacheDataSource implements DataSource {
           flags,
           upstreamPriorityTaskManager,
           upstreamPriority,
-          eventListener);
+          eventListener,
+          memorySpanCache,
+          readAheadLength,
+          cacheStatistics);
     }
   }
 
@@ -386,12 +458,18 @@ public final class CacheDataSource implements DataSource {
   /** Minimum number of bytes to read before checking cache for availability. */
   private static final long MIN_READ_BEFORE_CHECKING_CACHE = 100 * 1024;
 
+  /** Size of the buffer used to read ahead into the cache. */
+  private static final int READ_AHEAD_BUFFER_SIZE = 16 * 1024;
+
   private final Cache cache;
   private final DataSource cacheReadDataSource;
   @Nullable private final DataSource cacheWriteDataSource;
   private final DataSource upstreamDataSource;
   private final CacheKeyFactory cacheKeyFactory;
   @Nullable private final EventListener eventListener;
+  @Nullable private final MemorySpanCache memorySpanCache;
+  private final long readAheadLength;
+  @Nullable private final CacheStatistics cacheStatistics;
 
   private final boolean blockOnCache;
   private final boolean ignoreCacheOnError;
@@ -401,14 +479,18 @@ public final class CacheDataSource implements DataSource {
   @Nullable private DataSpec requestDataSpec;
   @Nullable private DataSpec currentDataSpec;
   @Nullable private DataSource currentDataSource;
+  @Nullable private DataSource memoryReadDataSource;
   private long currentDataSourceBytesRead;
   private long readPosition;
   private long bytesRemaining;
   @Nullable private CacheSpan currentHoleSpan;
+  @Nullable private CacheSpan currentCachedSpan;
   private boolean seenCacheError;
   private boolean currentRequestIgnoresCache;
   private long totalCachedBytesRead;
   private long checkCachePosition;
+  @Nullable private CacheStatistics.Recorder statisticsRecorder;
+  @Nullable private byte[] readAheadBuffer;
 
   /**
    * Constructs an instance with default {@link DataSource} and {@link DataSink} instances for
@@ -507,7 +589,10 @@ public final class CacheDataSource implements DataSource {
         flags,
         /* upstreamPriorityTaskManager= */ null,
         /* upstreamPriority= */ C.PRIORITY_PLAYBACK,
-        eventListener);
+        eventListener,
+        /* memorySpanCache= */ null,
+        /* readAheadLength= */ 0,
+        /* cacheStatistics= */ null);
   }
 
   private CacheDataSource(
@@ -519,7 +604,10 @@ public final class CacheDataSource implements DataSource {
       @Flags int flags,
       @Nullable PriorityTaskManager upstreamPriorityTaskManager,
       int upstreamPriority,
-      @Nullable EventListener eventListener) {
+      @Nullable EventListener eventListener,
+      @Nullable MemorySpanCache memorySpanCache,
+      long readAheadLength,
+      @Nullable CacheStatistics cacheStatistics) {
     this.cache = cache;
     this.cacheReadDataSource = cacheReadDataSource;
     this.cacheKeyFactory = cacheKeyFactory != null ? cacheKeyFactory : CacheKeyFactory.DEFAULT;
@@ -543,6 +631,9 @@ public final class CacheDataSource implements DataSource {
       this.cacheWriteDataSource = null;
     }
     this.eventListener = eventListener;
+    this.memorySpanCache = memorySpanCache;
+    this.readAheadLength = readAheadLength;
+    this.cacheStatistics = cacheStatistics;
   }
 
   /** Returns the {@link Cache} used by this instance. */
@@ -568,6 +659,7 @@ public final class CacheDataSource implements DataSource {
       String key = cacheKeyFactory.buildCacheKey(dataSpec);
       DataSpec requestDataSpec = dataSpec.buildUpon().setKey(key).build();
       this.requestDataSpec = requestDataSpec;
+      statisticsRecorder = cacheStatistics != null ? cacheStatistics.getRecorder(key) : null;
       actualUri = getRedirectedUriOrDefault(cache, key, /* defaultUri= */ requestDataSpec.uri);
       readPosition = dataSpec.position;
 
@@ -619,11 +711,23 @@ public final class CacheDataSource implements DataSource {
       if (readPosition >= checkCachePosition) {
         openNextSource(requestDataSpec, true);
       }
+      if (bytesRemaining != C.LENGTH_UNSET) {
+        // The current source may be reading ahead beyond the requested data.
+        length = (int) min(length, bytesRemaining);
+      }
+      @Nullable CacheStatistics.Recorder statisticsRecorder = this.statisticsRecorder;
+      long readStartTimeNs = statisticsRecorder != null ? System.nanoTime() : 0;
       int bytesRead = checkNotNull(currentDataSource).read(buffer, offset, length);
       if (bytesRead != C.RESULT_END_OF_INPUT) {
         if (isReadingFromCache()) {
           totalCachedBytesRead += bytesRead;
         }
+        if (statisticsRecorder != null) {
+          statisticsRecorder.onBytesRead(
+              isReadingFromCache(),
+              bytesRead,
+              /* durationUs= */ (System.nanoTime() - readStartTimeNs) / 1000);
+        }
         readPosition += bytesRead;
         currentDataSourceBytesRead += bytesRead;
         if (bytesRemaining != C.LENGTH_UNSET) {
@@ -664,15 +768,16 @@ public final class CacheDataSource implements DataSource {
 
   @Override
   public void close() throws IOException {
-    requestDataSpec = null;
-    actualUri = null;
-    readPosition = 0;
     notifyBytesRead();
     try {
       closeCurrentSource();
     } catch (Throwable e) {
       handleBeforeThrow(e);
       throw e;
+    } finally {
+      requestDataSpec = null;
+      actualUri = null;
+      readPosition = 0;
     }
   }
 
@@ -694,17 +799,22 @@ public final class CacheDataSource implements DataSource {
   private void openNextSource(DataSpec requestDataSpec, boolean checkCache) throws IOException {
     @Nullable CacheSpan nextSpan;
     String key = castNonNull(requestDataSpec.key);
+    long cacheRequestLength = getCacheRequestLength(key);
     if (currentRequestIgnoresCache) {
       nextSpan = null;
     } else if (blockOnCache) {
+      long startTimeNs = statisticsRecorder != null ? System.nanoTime() : 0;
       try {
-        nextSpan = cache.startReadWrite(key, readPosition, bytesRemaining);
+        nextSpan = cache.startReadWrite(key, readPosition, cacheRequestLength);
+        if (statisticsRecorder != null) {
+          statisticsRecorder.onLockWait(/* durationUs= */ (System.nanoTime() - startTimeNs) / 1000);
+        }
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         throw new InterruptedIOException();
       }
     } else {
-      nextSpan = cache.startReadWriteNonBlocking(key, readPosition, bytesRemaining);
+      nextSpan = cache.startReadWriteNonBlocking(key, readPosition, cacheRequestLength);
     }
 
     DataSpec nextDataSpec;
@@ -716,11 +826,11 @@ public final class CacheDataSource implements DataSource {
       nextDataSpec =
           requestDataSpec.buildUpon().setPosition(readPosition).setLength(bytesRemaining).build();
     } else if (nextSpan.isCached) {
-      // Data is cached in a span file starting at nextSpan.position.
+      // Data is cached in a span file, with nextSpan.position at nextSpan.fileOffset.
       Uri fileUri = Uri.fromFile(castNonNull(nextSpan.file));
-      long filePositionOffset = nextSpan.position;
+      long filePositionOffset = nextSpan.position - nextSpan.fileOffset;
       long positionInFile = readPosition - filePositionOffset;
-      long length = nextSpan.length - positionInFile;
+      long length = nextSpan.length - (readPosition - nextSpan.position);
       if (bytesRemaining != C.LENGTH_UNSET) {
         length = min(length, bytesRemaining);
       }
@@ -733,6 +843,19 @@ public final class CacheDataSource implements DataSource {
               .setLength(length)
               .build();
       nextDataSource = cacheReadDataSource;
+      @Nullable
+      byte[] spanData = memorySpanCache != null ? memorySpanCache.get(key, nextSpan) : null;
+      if (spanData != null) {
+        // Serve the read from memory. The position is relative to the start of the span.
+        nextDataSpec =
+            nextDataSpec
+                .buildUpon()
+                .setUriPositionOffset(nextSpan.position)
+                .setPosition(readPosition - nextSpan.position)
+                .build();
+        memoryReadDataSource = new ByteArrayDataSource(spanData);
+        nextDataSource = memoryReadDataSource;
+      }
     } else {
       // Data is not cached, and data is not locked, read from upstream with cache backing.
       long length;
@@ -740,8 +863,8 @@ public final class CacheDataSource implements DataSource {
         length = bytesRemaining;
       } else {
         length = nextSpan.length;
-        if (bytesRemaining != C.LENGTH_UNSET) {
-          length = min(length, bytesRemaining);
+        if (cacheRequestLength != C.LENGTH_UNSET) {
+          length = min(length, cacheRequestLength);
         }
       }
       nextDataSpec =
@@ -772,6 +895,8 @@ public final class CacheDataSource implements DataSource {
         if (castNonNull(nextSpan).isHoleSpan()) {
           // Release the hole span before throwing, else we'll hold it forever.
           cache.releaseHoleSpan(nextSpan);
+        } else {
+          cache.releaseCachedSpan(nextSpan);
         }
         throw e;
       }
@@ -779,6 +904,11 @@ public final class CacheDataSource implements DataSource {
 
     if (nextSpan != null && nextSpan.isHoleSpan()) {
       currentHoleSpan = nextSpan;
+    } else if (nextSpan != null) {
+      currentCachedSpan = nextSpan;
+    }
+    if (statisticsRecorder != null && !currentRequestIgnoresCache) {
+      statisticsRecorder.onSpanRead(/* isCached= */ nextSpan != null && nextSpan.isCached);
     }
     currentDataSource = nextDataSource;
     currentDataSpec = nextDataSpec;
@@ -801,6 +931,54 @@ public final class CacheDataSource implements DataSource {
     }
   }
 
+  /**
+   * Returns the length of the data to request from the cache at {@link #readPosition}, which
+   * includes any data to read ahead.
+   */
+  private long getCacheRequestLength(String key) {
+    if (readAheadLength == 0 || bytesRemaining == C.LENGTH_UNSET || cacheWriteDataSource == null) {
+      return bytesRemaining;
+    }
+    long requestEndPosition =
+        Util.ceilDivide(readPosition + bytesRemaining, readAheadLength) * readAheadLength;
+    long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(key));
+    if (contentLength != C.LENGTH_UNSET) {
+      requestEndPosition = min(requestEndPosition, contentLength);
+    }
+    return max(bytesRemaining, requestEndPosition - readPosition);
+  }
+
+  /**
+   * Reads the remainder of the current source into the cache, if it's writing to the cache and
+   * was extended to read ahead of the requested data, which has been read.
+   */
+  private void maybeReadAheadIntoCache() {
+    DataSource currentDataSource = checkNotNull(this.currentDataSource);
+    DataSpec currentDataSpec = checkNotNull(this.currentDataSpec);
+    if (!isWritingToCache()
+        || bytesRemaining != 0
+        || currentDataSpec.length == C.LENGTH_UNSET
+        || currentDataSourceBytesRead >= currentDataSpec.length) {
+      return;
+    }
+    if (readAheadBuffer == null) {
+      readAheadBuffer = new byte[READ_AHEAD_BUFFER_SIZE];
+    }
+    try {
+      while (currentDataSourceBytesRead < currentDataSpec.length) {
+        int readLength =
+            (int) min(readAheadBuffer.length, currentDataSpec.length - currentDataSourceBytesRead);
+        int bytesRead = currentDataSource.read(readAheadBuffer, /* offset= */ 0, readLength);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          break;
+        }
+        currentDataSourceBytesRead += bytesRead;
+      }
+    } catch (IOException e) {
+      // Reading ahead is speculative, so keep whatever data was written to the cache.
+    }
+  }
+
   private void setNoBytesRemainingAndMaybeStoreLength(String key) throws IOException {
     bytesRemaining = 0;
     if (isWritingToCache()) {
@@ -824,7 +1002,8 @@ public final class CacheDataSource implements DataSource {
   }
 
   private boolean isReadingFromCache() {
-    return currentDataSource == cacheReadDataSource;
+    return currentDataSource == cacheReadDataSource
+        || (currentDataSource != null && currentDataSource == memoryReadDataSource);
   }
 
   private boolean isWritingToCache() {
@@ -836,14 +1015,20 @@ public final class CacheDataSource implements DataSource {
       return;
     }
     try {
+      maybeReadAheadIntoCache();
       currentDataSource.close();
     } finally {
       currentDataSpec = null;
       currentDataSource = null;
+      memoryReadDataSource = null;
       if (currentHoleSpan != null) {
         cache.releaseHoleSpan(currentHoleSpan);
         currentHoleSpan = null;
       }
+      if (currentCachedSpan != null) {
+        cache.releaseCachedSpan(currentCachedSpan);
+        currentCachedSpan = null;
+      }
     }
   }
 
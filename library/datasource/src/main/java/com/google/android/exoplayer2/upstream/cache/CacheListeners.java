@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.cache.Cache.Listener;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The {@link Listener Listeners} registered with a {@link Cache}, which are notified of span
+ * changes together with the cache's {@link CacheEvictor}.
+ *
+ * <p>Must only be accessed with the cache lock held.
+ */
+/* package */ final class CacheListeners {
+
+  private final Cache cache;
+  private final CacheEvictor evictor;
+  private final HashMap<String, ArrayList<Listener>> listeners;
+
+  /**
+   * @param cache The cache passed to listeners and the evictor.
+   * @param evictor The evictor notified of span changes after the listeners.
+   */
+  public CacheListeners(Cache cache, CacheEvictor evictor) {
+    this.cache = cache;
+    this.evictor = evictor;
+    listeners = new HashMap<>();
+  }
+
+  /** Registers a listener for the spans of a key. */
+  public void add(String key, Listener listener) {
+    Assertions.checkNotNull(key);
+    Assertions.checkNotNull(listener);
+    @Nullable ArrayList<Listener> listenersForKey = listeners.get(key);
+    if (listenersForKey == null) {
+      listenersForKey = new ArrayList<>();
+      listeners.put(key, listenersForKey);
+    }
+    listenersForKey.add(listener);
+  }
+
+  /** Unregisters a listener for the spans of a key. */
+  public void remove(String key, Listener listener) {
+    @Nullable ArrayList<Listener> listenersForKey = listeners.get(key);
+    if (listenersForKey != null) {
+      listenersForKey.remove(listener);
+      if (listenersForKey.isEmpty()) {
+        listeners.remove(key);
+      }
+    }
+  }
+
+  /** Unregisters all listeners. */
+  public void clear() {
+    listeners.clear();
+  }
+
+  public void notifySpanAdded(CacheSpan span) {
+    @Nullable ArrayList<Listener> keyListeners = listeners.get(span.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanAdded(cache, span);
+      }
+    }
+    evictor.onSpanAdded(cache, span);
+  }
+
+  public void notifySpanRemoved(CacheSpan span) {
+    @Nullable ArrayList<Listener> keyListeners = listeners.get(span.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanRemoved(cache, span);
+      }
+    }
+    evictor.onSpanRemoved(cache, span);
+  }
+
+  public void notifySpanTouched(CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanTouched(cache, oldSpan, newSpan);
+      }
+    }
+    evictor.onSpanTouched(cache, oldSpan, newSpan);
+  }
+
+  public void notifySpanMoved(CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanMoved(cache, oldSpan, newSpan);
+      }
+    }
+    evictor.onSpanMoved(cache, oldSpan, newSpan);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Caches data that's expected to be read soon in the background, so that small reads that follow
+ * each other (for example of an index and then the data it refers to) don't each have to wait for
+ * a request to be made.
+ *
+ * <p>Prefetched data is written using instances created by {@link
+ * CacheDataSource.Factory#createDataSourceForDownloading}, so a prefetch waits for data that's
+ * being written by a reader rather than requesting it again. Prefetching is best effort, and errors
+ * are only logged.
+ */
+public final class CachePrefetcher {
+
+  private static final String TAG = "CachePrefetcher";
+
+  private final CacheDataSource.Factory cacheDataSourceFactory;
+  private final Executor executor;
+  private final HashMap<String, CacheWriter> pendingCacheWriters;
+
+  /**
+   * Creates an instance.
+   *
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which data
+   *     is prefetched.
+   * @param executor The {@link Executor} on which data is prefetched.
+   */
+  public CachePrefetcher(CacheDataSource.Factory cacheDataSourceFactory, Executor executor) {
+    this.cacheDataSourceFactory = cacheDataSourceFactory;
+    this.executor = executor;
+    pendingCacheWriters = new HashMap<>();
+  }
+
+  /**
+   * Prefetches the data defined by a {@link DataSpec} into the cache, skipping any that's already
+   * cached. Does nothing if the same data is already being prefetched.
+   *
+   * @param dataSpec The {@link DataSpec} defining the data to prefetch.
+   */
+  public void prefetch(DataSpec dataSpec) {
+    String cacheKey = cacheDataSourceFactory.getCacheKeyFactory().buildCacheKey(dataSpec);
+    String prefetchId = cacheKey + "." + dataSpec.position + "." + dataSpec.length;
+    CacheWriter cacheWriter;
+    synchronized (this) {
+      if (pendingCacheWriters.containsKey(prefetchId)) {
+        return;
+      }
+      cacheWriter =
+          new CacheWriter(
+              cacheDataSourceFactory.createDataSourceForDownloading(),
+              dataSpec,
+              /* temporaryBuffer= */ null,
+              /* progressListener= */ null);
+      pendingCacheWriters.put(prefetchId, cacheWriter);
+    }
+    try {
+      executor.execute(
+          () -> {
+            try {
+              cacheWriter.cache();
+            } catch (IOException e) {
+              Log.w(TAG, "Failed to prefetch " + dataSpec.uri, e);
+            } finally {
+              onPrefetchFinished(prefetchId, cacheWriter);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      onPrefetchFinished(prefetchId, cacheWriter);
+    }
+  }
+
+  /** Returns the number of prefetches that haven't finished. */
+  public synchronized int getPendingPrefetchCount() {
+    return pendingCacheWriters.size();
+  }
+
+  /** Cancels all prefetches that haven't finished. */
+  public void cancelAll() {
+    List<CacheWriter> cacheWriters;
+    synchronized (this) {
+      cacheWriters = new ArrayList<>(pendingCacheWriters.values());
+      pendingCacheWriters.clear();
+    }
+    for (int i = 0; i < cacheWriters.size(); i++) {
+      cacheWriters.get(i).cancel();
+    }
+  }
+
+  private synchronized void onPrefetchFinished(String prefetchId, CacheWriter cacheWriter) {
+    // The prefetch may have been canceled and then requested again.
+    if (pendingCacheWriters.get(prefetchId) == cacheWriter) {
+      pendingCacheWriters.remove(prefetchId);
+    }
+  }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A snapshot of the spans of a {@link SimpleCache}, which allows the cache to be initialized
+ * without listing its directories.
+ *
+ * <p>Added and removed spans are appended to a span journal, which is replayed over the snapshot
+ * when it's read. The journal is merged into the snapshot when it has more records than the
+ * snapshot has spans, and when the cache is released. A snapshot that's missing, corrupt, or
+ * written for a different cache is ignored.
+ *
+ * <p>Spans whose files are deleted after their removal was last appended to the journal are still
+ * read, so the cache checks the spans that are read against their files before using them.
+ */
+/* package */ final class CacheSpanIndex {
+
+  private static final String FILE_NAME = "cached_spans.idx";
+  private static final String JOURNAL_FILE_NAME = "cached_spans.journal";
+
+  private static final String TAG = "CacheSpanIndex";
+  private static final int VERSION = 1;
+  private static final int JOURNAL_VERSION = 1;
+  private static final int JOURNAL_RECORD_ADD = 1;
+  private static final int JOURNAL_RECORD_REMOVE = 2;
+  /** The number of journal records below which the journal is never merged into the snapshot. */
+  private static final int MIN_JOURNAL_RECORDS_TO_MERGE = 1024;
+  /** The size of the version, UID, span count and checksum fields. */
+  private static final int FIXED_FIELDS_SIZE = 4 + 8 + 4 + 8;
+  /** The minimum size of a span entry: an empty path, the length and the last touch timestamp. */
+  private static final int MIN_SPAN_ENTRY_SIZE = 2 + 8 + 8;
+
+  private final File cacheDir;
+  private final File indexFile;
+  private final AtomicFile atomicFile;
+  private final File journalFile;
+
+  @Nullable private DataOutputStream journalOutput;
+  private int journalRecordCount;
+  private int indexSpanCount;
+  private boolean canAppendToJournal;
+
+  /** @param cacheDir The cache directory in which the index is stored. */
+  public CacheSpanIndex(File cacheDir) {
+    this.cacheDir = cacheDir;
+    indexFile = new File(cacheDir, FILE_NAME);
+    atomicFile = new AtomicFile(indexFile);
+    journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+  }
+
+  /**
+   * Reads the spans from the snapshot and replays the journal over them.
+   *
+   * @param uid The cache UID.
+   * @param contentIndex The content index, which must be initialized.
+   * @return The spans, or null if the index doesn't exist or couldn't be read.
+   */
+  @WorkerThread
+  @Nullable
+  public List<SimpleCacheSpan> read(long uid, CachedContentIndex contentIndex) {
+    if (!atomicFile.exists()) {
+      return null;
+    }
+    try {
+      // Entries by path, so that journal records replace snapshot entries.
+      LinkedHashMap<String, SpanEntry> entries = new LinkedHashMap<>();
+      readSnapshot(uid, entries);
+      readJournal(uid, entries);
+      ArrayList<SimpleCacheSpan> spans = new ArrayList<>(entries.size());
+      for (SpanEntry entry : entries.values()) {
+        File file = new File(entry.path);
+        if (!file.isAbsolute()) {
+          file = new File(cacheDir, entry.path);
+        }
+        @Nullable
+        SimpleCacheSpan span =
+            SimpleCacheSpan.createCacheEntry(
+                file, entry.length, entry.lastTouchTimestamp, contentIndex);
+        if (span == null) {
+          throw new IOException("Span index refers to unknown content: " + file);
+        }
+        spans.add(span);
+      }
+      return spans;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read span index", e);
+      canAppendToJournal = false;
+      return null;
+    }
+  }
+
+  /**
+   * Writes the spans to the snapshot, and starts a new, empty journal.
+   *
+   * @param uid The cache UID.
+   * @param contentIndex The content index holding the spans.
+   * @throws IOException If an error occurs writing the index.
+   */
+  public void write(long uid, CachedContentIndex contentIndex) throws IOException {
+    String cacheDirPath = cacheDir.getPath();
+    OutputStream outputStream = atomicFile.startWrite();
+    CheckedOutputStream checkedOutputStream =
+        new CheckedOutputStream(new BufferedOutputStream(outputStream), new CRC32());
+    DataOutputStream output = new DataOutputStream(checkedOutputStream);
+    output.writeInt(VERSION);
+    output.writeLong(uid);
+    int spanCount = 0;
+    for (CachedContent cachedContent : contentIndex.getAll()) {
+      spanCount += cachedContent.getSpans().size();
+    }
+    output.writeInt(spanCount);
+    for (CachedContent cachedContent : contentIndex.getAll()) {
+      for (SimpleCacheSpan span : cachedContent.getSpans()) {
+        output.writeUTF(getPath(cacheDirPath, Assertions.checkNotNull(span.file)));
+        output.writeLong(span.length);
+        output.writeLong(span.lastTouchTimestamp);
+      }
+    }
+    output.writeLong(checkedOutputStream.getChecksum().getValue());
+    output.flush();
+    atomicFile.endWrite(outputStream);
+    indexSpanCount = spanCount;
+
+    // If the process is killed before the journal is reset, replaying the old journal over the new
+    // snapshot yields the same spans.
+    closeJournal();
+    DataOutputStream journalOutput =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile)));
+    journalOutput.writeInt(JOURNAL_VERSION);
+    journalOutput.writeLong(uid);
+    journalOutput.flush();
+    this.journalOutput = journalOutput;
+    journalRecordCount = 0;
+    canAppendToJournal = true;
+  }
+
+  /**
+   * Flushes the records appended to the journal. The journal is merged into the snapshot instead
+   * if it has grown larger than the snapshot, or if it can't be appended to.
+   *
+   * @param uid The cache UID.
+   * @param contentIndex The content index holding the spans.
+   * @throws IOException If an error occurs writing the index.
+   */
+  public void store(long uid, CachedContentIndex contentIndex) throws IOException {
+    if (journalOutput == null && canAppendToJournal) {
+      // Continue the journal that was replayed by read().
+      canAppendToJournal = false;
+      try {
+        journalOutput =
+            new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(journalFile, /* append= */ true)));
+      } catch (IOException e) {
+        Log.w(TAG, "Opening span journal failed", e);
+      }
+    }
+    @Nullable DataOutputStream output = journalOutput;
+    if (output != null
+        && journalRecordCount <= max(MIN_JOURNAL_RECORDS_TO_MERGE, indexSpanCount)) {
+      try {
+        output.flush();
+        return;
+      } catch (IOException e) {
+        Log.w(TAG, "Appending to span journal failed", e);
+      }
+    }
+    write(uid, contentIndex);
+  }
+
+  /**
+   * Appends an added span to the journal. The record is persisted by the next call to {@link
+   * #store}.
+   */
+  public void appendSpanAdded(CacheSpan span) {
+    @Nullable DataOutputStream output = journalOutput;
+    if (output == null) {
+      // The spans are being loaded, or appending failed and the snapshot will be rewritten.
+      return;
+    }
+    try {
+      output.writeByte(JOURNAL_RECORD_ADD);
+      output.writeUTF(getPath(cacheDir.getPath(), Assertions.checkNotNull(span.file)));
+      output.writeLong(span.length);
+      output.writeLong(span.lastTouchTimestamp);
+      journalRecordCount++;
+    } catch (IOException e) {
+      Log.w(TAG, "Appending to span journal failed", e);
+      closeJournal();
+    }
+  }
+
+  /**
+   * Appends a removed span to the journal. The record is persisted by the next call to {@link
+   * #store}.
+   */
+  public void appendSpanRemoved(CacheSpan span) {
+    @Nullable DataOutputStream output = journalOutput;
+    if (output == null) {
+      return;
+    }
+    try {
+      output.writeByte(JOURNAL_RECORD_REMOVE);
+      output.writeUTF(getPath(cacheDir.getPath(), Assertions.checkNotNull(span.file)));
+      journalRecordCount++;
+    } catch (IOException e) {
+      Log.w(TAG, "Appending to span journal failed", e);
+      closeJournal();
+    }
+  }
+
+  /** Closes the journal. Records that haven't been stored may be lost. */
+  public void closeJournal() {
+    Util.closeQuietly(journalOutput);
+    journalOutput = null;
+  }
+
+  @WorkerThread
+  private void readSnapshot(long uid, LinkedHashMap<String, SpanEntry> entries)
+      throws IOException {
+    try (CheckedInputStream checkedInputStream =
+        new CheckedInputStream(new BufferedInputStream(atomicFile.openRead()), new CRC32())) {
+      DataInputStream input = new DataInputStream(checkedInputStream);
+      int version = input.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported span index version: " + version);
+      }
+      if (input.readLong() != uid) {
+        throw new IOException("Span index was written for a different cache");
+      }
+      int spanCount = input.readInt();
+      // The file is read after openRead() has restored any backup, so its length is final.
+      long maxSpanCount = (indexFile.length() - FIXED_FIELDS_SIZE) / MIN_SPAN_ENTRY_SIZE;
+      if (spanCount < 0 || spanCount > maxSpanCount) {
+        throw new IOException("Invalid span count: " + spanCount);
+      }
+      for (int i = 0; i < spanCount; i++) {
+        SpanEntry entry = readSpanEntry(input);
+        entries.put(entry.path, entry);
+      }
+      long checksum = checkedInputStream.getChecksum().getValue();
+      if (input.readLong() != checksum) {
+        throw new IOException("Span index checksum mismatch");
+      }
+      indexSpanCount = spanCount;
+    }
+  }
+
+  @WorkerThread
+  private void readJournal(long uid, LinkedHashMap<String, SpanEntry> entries)
+      throws IOException {
+    journalRecordCount = 0;
+    canAppendToJournal = false;
+    if (!journalFile.exists()) {
+      return;
+    }
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+      int version = input.readInt();
+      if (version != JOURNAL_VERSION) {
+        throw new IOException("Unsupported span journal version: " + version);
+      }
+      if (input.readLong() != uid) {
+        throw new IOException("Span journal was written for a different cache");
+      }
+      while (true) {
+        int recordType = input.read();
+        if (recordType == -1) {
+          break;
+        } else if (recordType == JOURNAL_RECORD_ADD) {
+          SpanEntry entry = readSpanEntry(input);
+          entries.put(entry.path, entry);
+        } else if (recordType == JOURNAL_RECORD_REMOVE) {
+          entries.remove(input.readUTF());
+        } else {
+          throw new IOException("Unsupported span journal record: " + recordType);
+        }
+        journalRecordCount++;
+      }
+      // Records appended to a complete journal can be read back, so it can be continued.
+      canAppendToJournal = true;
+    } catch (EOFException e) {
+      // The last record was only partially written, for example because the process was killed
+      // while appending it. The records before it are valid, but the journal must be rewritten.
+    }
+  }
+
+  private static SpanEntry readSpanEntry(DataInputStream input) throws IOException {
+    String path = input.readUTF();
+    long length = input.readLong();
+    long lastTouchTimestamp = input.readLong();
+    if (length <= 0) {
+      throw new IOException("Invalid span length: " + length);
+    }
+    return new SpanEntry(path, length, lastTouchTimestamp);
+  }
+
+  /**
+   * Returns the path stored for a file. Paths of files in the cache directory are stored relative
+   * to it, to keep the index small.
+   */
+  private static String getPath(String cacheDirPath, File file) {
+    String path = file.getPath();
+    return path.startsWith(cacheDirPath + File.separator)
+        ? path.substring(cacheDirPath.length() + 1)
+        : path;
+  }
+
+  /** An entry of the snapshot or journal. */
+  private static final class SpanEntry {
+
+    public final String path;
+    public final long length;
+    public final long lastTouchTimestamp;
+
+    public SpanEntry(String path, long length, long lastTouchTimestamp) {
+      this.path = path;
+      this.length = length;
+      this.lastTouchTimestamp = lastTouchTimestamp;
+    }
+  }
+}
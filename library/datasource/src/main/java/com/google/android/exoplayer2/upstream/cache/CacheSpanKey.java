@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Identifies a span of a resource by its cache key and position. At most one cached span of a
+ * {@link Cache} has a given identity at any time, but touching a span replaces the {@link
+ * CacheSpan} instance without changing its identity.
+ */
+/* package */ final class CacheSpanKey {
+
+  /** The cache key of the resource. */
+  public final String key;
+  /** The position of the span in the resource. */
+  public final long position;
+
+  /** Returns the identity of {@code span}. */
+  public static CacheSpanKey of(CacheSpan span) {
+    return new CacheSpanKey(span.key, span.position);
+  }
+
+  public CacheSpanKey(String key, long position) {
+    this.key = key;
+    this.position = position;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    CacheSpanKey other = (CacheSpanKey) obj;
+    return position == other.position && key.equals(other.key);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * key.hashCode() + (int) (position ^ (position >>> 32));
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+/**
+ * Cached spans ordered from least to most recently used, with constant time addition, removal and
+ * access to the least recently used span.
+ *
+ * <p>Spans are identified by their {@link CacheSpanKey}, and are ordered by their {@link
+ * CacheSpan#lastTouchTimestamp}. Spans that are touched are added with the current time, so the
+ * order is usually the order in which they're added. Spans that are added out of order (for
+ * example while a cache is being initialized) are sorted once before the least recently used span
+ * is next accessed.
+ */
+/* package */ final class CacheSpanLruList {
+
+  private final LinkedHashMap<CacheSpanKey, CacheSpan> spans;
+
+  private long bytes;
+  private long maxLastTouchTimestamp;
+  private boolean isSorted;
+
+  public CacheSpanLruList() {
+    spans = new LinkedHashMap<>();
+    maxLastTouchTimestamp = Long.MIN_VALUE;
+    isSorted = true;
+  }
+
+  /**
+   * Adds a span, replacing any span with the same identity.
+   *
+   * @param span The span to add.
+   */
+  public void add(CacheSpan span) {
+    append(span);
+    if (span.lastTouchTimestamp < maxLastTouchTimestamp) {
+      isSorted = false;
+    } else {
+      maxLastTouchTimestamp = span.lastTouchTimestamp;
+    }
+  }
+
+  /**
+   * Adds a span as the most recently used span regardless of its {@link
+   * CacheSpan#lastTouchTimestamp}, replacing any span with the same identity.
+   *
+   * @param span The span to add.
+   */
+  public void addAsMostRecentlyUsed(CacheSpan span) {
+    append(span);
+  }
+
+  /**
+   * Removes the span with the identity of {@code span}.
+   *
+   * @param span The span to remove.
+   * @return The removed span, or null if the list contained no span with the same identity.
+   */
+  @Nullable
+  public CacheSpan remove(CacheSpan span) {
+    @Nullable CacheSpan removedSpan = spans.remove(CacheSpanKey.of(span));
+    if (removedSpan != null) {
+      bytes -= removedSpan.length;
+    }
+    return removedSpan;
+  }
+
+  /**
+   * Replaces the span with the identity of {@code span}, keeping its position in the list.
+   *
+   * @param span The span to add in place of the span with the same identity.
+   * @return Whether the list contained a span with the same identity.
+   */
+  public boolean replace(CacheSpan span) {
+    CacheSpanKey spanKey = CacheSpanKey.of(span);
+    // Putting an existing key doesn't change the iteration order.
+    @Nullable CacheSpan previousSpan = spans.get(spanKey);
+    if (previousSpan == null) {
+      return false;
+    }
+    spans.put(spanKey, span);
+    bytes += span.length - previousSpan.length;
+    return true;
+  }
+
+  /** Returns whether the list contains a span with the identity of {@code span}. */
+  public boolean contains(CacheSpan span) {
+    return spans.containsKey(CacheSpanKey.of(span));
+  }
+
+  /** Returns the least recently used span, or null if the list is empty. */
+  @Nullable
+  public CacheSpan getLeastRecentlyUsed() {
+    if (spans.isEmpty()) {
+      return null;
+    }
+    if (!isSorted) {
+      sort();
+    }
+    return spans.values().iterator().next();
+  }
+
+  /** Returns whether the list is empty. */
+  public boolean isEmpty() {
+    return spans.isEmpty();
+  }
+
+  /** Returns the total length of the spans in the list, in bytes. */
+  public long getBytes() {
+    return bytes;
+  }
+
+  private void append(CacheSpan span) {
+    CacheSpanKey spanKey = CacheSpanKey.of(span);
+    // Remove any previous span first, so that the added span becomes the last in iteration order.
+    @Nullable CacheSpan previousSpan = spans.remove(spanKey);
+    if (previousSpan != null) {
+      bytes -= previousSpan.length;
+    }
+    spans.put(spanKey, span);
+    bytes += span.length;
+  }
+
+  private void sort() {
+    ArrayList<CacheSpan> sortedSpans = new ArrayList<>(spans.values());
+    Collections.sort(sortedSpans, CacheSpanLruList::compare);
+    spans.clear();
+    for (int i = 0; i < sortedSpans.size(); i++) {
+      CacheSpan span = sortedSpans.get(i);
+      spans.put(CacheSpanKey.of(span), span);
+    }
+    isSorted = true;
+  }
+
+  private static int compare(CacheSpan lhs, CacheSpan rhs) {
+    if (lhs.lastTouchTimestamp == rhs.lastTouchTimestamp) {
+      // Use the standard compareTo method as a tie-break.
+      return lhs.compareTo(rhs);
+    }
+    return lhs.lastTouchTimestamp < rhs.lastTouchTimestamp ? -1 : 1;
+  }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics of the use of a {@link Cache}, for the whole cache and for resources whose cache keys
+ * start with registered prefixes.
+ *
+ * <p>Statistics are recorded by the {@link SimpleCache} that owns the instance (see {@link
+ * SimpleCache#getStatistics()}), and by {@link CacheDataSource} instances to which the instance is
+ * passed using {@link CacheDataSource.Factory#setCacheStatistics}. The getters return copies, whose
+ * public fields can be exported.
+ *
+ * <p>Instances are thread-safe. Events are recorded using atomic counters, so recording them
+ * doesn't block, and the key prefixes that apply to a resource are only matched when a {@link
+ * CacheDataSource} opens it. Each counter of a copy is consistent, but a copy may include some of
+ * the counters of an event being recorded concurrently.
+ */
+public final class CacheStatistics {
+
+  /**
+   * A histogram of non-negative values, with buckets whose upper bounds are powers of two. Bucket
+   * {@code 0} counts values equal to {@code 0}, and bucket {@code i > 0} counts values in {@code
+   * [2^(i-1), 2^i)}. Values of {@code 2^(BUCKET_COUNT - 2)} or more are counted in the last bucket.
+   */
+  public static final class Histogram {
+
+    /** The number of buckets. */
+    public static final int BUCKET_COUNT = 34;
+
+    /** The number of values that have been added. */
+    public long count;
+    /** The sum of the values that have been added. */
+    public long sum;
+    /** The maximum value that has been added, or {@code 0} if no values have been added. */
+    public long max;
+    /** The number of values that have been added to each bucket. */
+    public final long[] bucketCounts;
+
+    public Histogram() {
+      bucketCounts = new long[BUCKET_COUNT];
+    }
+
+    private Histogram(AtomicHistogram histogram) {
+      count = histogram.count.get();
+      sum = histogram.sum.get();
+      max = histogram.max.get();
+      bucketCounts = new long[BUCKET_COUNT];
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        bucketCounts[i] = histogram.bucketCounts.get(i);
+      }
+    }
+
+    /** Adds a value, which is clamped to be non-negative. */
+    public void add(long value) {
+      if (value < 0) {
+        value = 0;
+      }
+      count++;
+      sum += value;
+      max = Math.max(max, value);
+      bucketCounts[getBucketIndex(value)]++;
+    }
+
+    /**
+     * Returns an upper bound of the value at the given percentile, or {@link C#TIME_UNSET} if no
+     * values have been added.
+     *
+     * @param percentile The percentile, in the range [0, 100].
+     */
+    public long getPercentileUpperBound(float percentile) {
+      if (count == 0) {
+        return C.TIME_UNSET;
+      }
+      long targetCount = Math.max(1, (long) Math.ceil(count * percentile / 100f));
+      long cumulativeCount = 0;
+      for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+        cumulativeCount += bucketCounts[i];
+        if (cumulativeCount >= targetCount) {
+          return Math.min(i == 0 ? 0 : (1L << i) - 1, max);
+        }
+      }
+      return max;
+    }
+
+    /** Returns the mean of the values that have been added, or {@code 0} if there are none. */
+    public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    private static int getBucketIndex(long nonNegativeValue) {
+      return Math.min(64 - Long.numberOfLeadingZeros(nonNegativeValue), BUCKET_COUNT - 1);
+    }
+  }
+
+  /** Counters of cache events. */
+  public static final class Counters {
+
+    /** The number of reads of a span that were served from the cache. */
+    public long hitCount;
+    /** The number of reads of a span that were served from upstream. */
+    public long missCount;
+    /** The number of bytes read from the cache. */
+    public long cachedBytesRead;
+    /** The number of bytes read from upstream. */
+    public long upstreamBytesRead;
+    /** The number of spans that the {@link CacheEvictor} of the cache has removed. */
+    public long evictionCount;
+    /** The number of bytes in spans that have been evicted. */
+    public long evictedBytes;
+    /** The durations of calls to read data from the cache, in microseconds. */
+    public final Histogram cacheReadDurationUs;
+    /**
+     * The durations of calls to read data from upstream, in microseconds. Calls that also write the
+     * data into the cache include the time taken to write it.
+     */
+    public final Histogram upstreamReadDurationUs;
+    /** The durations for which readers waited for locked data, in microseconds. */
+    public final Histogram lockWaitDurationUs;
+
+    public Counters() {
+      cacheReadDurationUs = new Histogram();
+      upstreamReadDurationUs = new Histogram();
+      lockWaitDurationUs = new Histogram();
+    }
+
+    private Counters(AtomicCounters counters) {
+      hitCount = counters.hitCount.get();
+      missCount = counters.missCount.get();
+      cachedBytesRead = counters.cachedBytesRead.get();
+      upstreamBytesRead = counters.upstreamBytesRead.get();
+      evictionCount = counters.evictionCount.get();
+      evictedBytes = counters.evictedBytes.get();
+      cacheReadDurationUs = new Histogram(counters.cacheReadDurationUs);
+      upstreamReadDurationUs = new Histogram(counters.upstreamReadDurationUs);
+      lockWaitDurationUs = new Histogram(counters.lockWaitDurationUs);
+    }
+
+    /** Returns the fraction of span reads served from the cache, or {@code 0} if there are none. */
+    public double getHitRatio() {
+      long readCount = hitCount + missCount;
+      return readCount == 0 ? 0 : (double) hitCount / readCount;
+    }
+
+    /** Returns the fraction of bytes read from the cache, or {@code 0} if none were read. */
+    public double getByteHitRatio() {
+      long bytesRead = cachedBytesRead + upstreamBytesRead;
+      return bytesRead == 0 ? 0 : (double) cachedBytesRead / bytesRead;
+    }
+  }
+
+  /**
+   * Records events of a resource in the counters of the whole cache and of the key prefixes that
+   * match its key when the recorder was obtained.
+   */
+  /* package */ static final class Recorder {
+
+    private final AtomicCounters[] counters;
+
+    private Recorder(AtomicCounters[] counters) {
+      this.counters = counters;
+    }
+
+    public void onSpanRead(boolean isCached) {
+      for (AtomicCounters counters : counters) {
+        (isCached ? counters.hitCount : counters.missCount).incrementAndGet();
+      }
+    }
+
+    public void onBytesRead(boolean isCached, int bytesRead, long durationUs) {
+      for (AtomicCounters counters : counters) {
+        if (isCached) {
+          counters.cachedBytesRead.addAndGet(bytesRead);
+          counters.cacheReadDurationUs.add(durationUs);
+        } else {
+          counters.upstreamBytesRead.addAndGet(bytesRead);
+          counters.upstreamReadDurationUs.add(durationUs);
+        }
+      }
+    }
+
+    public void onLockWait(long durationUs) {
+      for (AtomicCounters counters : counters) {
+        counters.lockWaitDurationUs.add(durationUs);
+      }
+    }
+
+    public void onSpanEvicted(long length) {
+      for (AtomicCounters counters : counters) {
+        counters.evictionCount.incrementAndGet();
+        counters.evictedBytes.addAndGet(length);
+      }
+    }
+  }
+
+  private final AtomicCounters counters;
+  private final List<String> keyPrefixes;
+  private final HashMap<String, AtomicCounters> keyPrefixCounters;
+  private final AtomicHistogram indexStoreDurationUs;
+
+  private volatile long initializationDurationMs;
+
+  public CacheStatistics() {
+    counters = new AtomicCounters();
+    keyPrefixes = new ArrayList<>();
+    keyPrefixCounters = new HashMap<>();
+    indexStoreDurationUs = new AtomicHistogram();
+    initializationDurationMs = C.TIME_UNSET;
+  }
+
+  /**
+   * Registers a cache key prefix, for which counters are recorded separately from the time of
+   * registration. Reads of resources that are already open aren't recorded for the prefix. Keys
+   * may match more than one prefix.
+   *
+   * @param keyPrefix The cache key prefix.
+   */
+  public synchronized void addKeyPrefix(String keyPrefix) {
+    if (!keyPrefixCounters.containsKey(keyPrefix)) {
+      keyPrefixes.add(keyPrefix);
+      keyPrefixCounters.put(keyPrefix, new AtomicCounters());
+    }
+  }
+
+  /** Returns a copy of the counters of the whole cache. */
+  public Counters getCounters() {
+    return new Counters(counters);
+  }
+
+  /**
+   * Returns a copy of the counters of resources whose keys start with a prefix, or null if the
+   * prefix hasn't been {@link #addKeyPrefix registered}.
+   */
+  @Nullable
+  public synchronized Counters getCounters(String keyPrefix) {
+    @Nullable AtomicCounters counters = keyPrefixCounters.get(keyPrefix);
+    return counters != null ? new Counters(counters) : null;
+  }
+
+  /** Returns a copy of the durations of stores of the cache index, in microseconds. */
+  public Histogram getIndexStoreDurationUs() {
+    return new Histogram(indexStoreDurationUs);
+  }
+
+  /**
+   * Returns the duration of the initialization of the cache in milliseconds, or {@link
+   * C#TIME_UNSET} if the cache hasn't been initialized.
+   */
+  public long getInitializationDurationMs() {
+    return initializationDurationMs;
+  }
+
+  /** Resets all counters and histograms. The initialization duration is retained. */
+  public synchronized void reset() {
+    counters.reset();
+    for (AtomicCounters counters : keyPrefixCounters.values()) {
+      counters.reset();
+    }
+    indexStoreDurationUs.reset();
+  }
+
+  /**
+   * Returns a {@link Recorder} for the events of a resource, which should be obtained once per
+   * request rather than once per event.
+   */
+  /* package */ synchronized Recorder getRecorder(String key) {
+    ArrayList<AtomicCounters> matchingCounters = new ArrayList<>();
+    matchingCounters.add(counters);
+    for (int i = 0; i < keyPrefixes.size(); i++) {
+      String keyPrefix = keyPrefixes.get(i);
+      if (key.startsWith(keyPrefix)) {
+        matchingCounters.add(keyPrefixCounters.get(keyPrefix));
+      }
+    }
+    return new Recorder(matchingCounters.toArray(new AtomicCounters[0]));
+  }
+
+  /* package */ void onSpanEvicted(String key, long length) {
+    getRecorder(key).onSpanEvicted(length);
+  }
+
+  /* package */ void onIndexStored(long durationUs) {
+    indexStoreDurationUs.add(durationUs);
+  }
+
+  /* package */ void onInitialized(long durationMs) {
+    initializationDurationMs = durationMs;
+  }
+
+  /** A {@link Histogram} whose values are added atomically. */
+  private static final class AtomicHistogram {
+
+    public final AtomicLong count;
+    public final AtomicLong sum;
+    public final AtomicLong max;
+    public final AtomicLongArray bucketCounts;
+
+    public AtomicHistogram() {
+      count = new AtomicLong();
+      sum = new AtomicLong();
+      max = new AtomicLong();
+      bucketCounts = new AtomicLongArray(Histogram.BUCKET_COUNT);
+    }
+
+    public void add(long value) {
+      if (value < 0) {
+        value = 0;
+      }
+      count.incrementAndGet();
+      sum.addAndGet(value);
+      long currentMax = max.get();
+      while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+        currentMax = max.get();
+      }
+      bucketCounts.incrementAndGet(Histogram.getBucketIndex(value));
+    }
+
+    public void reset() {
+      count.set(0);
+      sum.set(0);
+      max.set(0);
+      for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+        bucketCounts.set(i, 0);
+      }
+    }
+  }
+
+  /** {@link Counters} that are updated atomically. */
+  private static final class AtomicCounters {
+
+    public final AtomicLong hitCount;
+    public final AtomicLong missCount;
+    public final AtomicLong cachedBytesRead;
+    public final AtomicLong upstreamBytesRead;
+    public final AtomicLong evictionCount;
+    public final AtomicLong evictedBytes;
+    public final AtomicHistogram cacheReadDurationUs;
+    public final AtomicHistogram upstreamReadDurationUs;
+    public final AtomicHistogram lockWaitDurationUs;
+
+    public AtomicCounters() {
+      hitCount = new AtomicLong();
+      missCount = new AtomicLong();
+      cachedBytesRead = new AtomicLong();
+      upstreamBytesRead = new AtomicLong();
+      evictionCount = new AtomicLong();
+      evictedBytes = new AtomicLong();
+      cacheReadDurationUs = new AtomicHistogram();
+      upstreamReadDurationUs = new AtomicHistogram();
+      lockWaitDurationUs = new AtomicHistogram();
+    }
+
+    public void reset() {
+      hitCount.set(0);
+      missCount.set(0);
+      cachedBytesRead.set(0);
+      upstreamBytesRead.set(0);
+      evictionCount.set(0);
+      evictedBytes.set(0);
+      cacheReadDurationUs.reset();
+      upstreamReadDurationUs.reset();
+      lockWaitDurationUs.reset();
+    }
+  }
+}
@@ -15,6 +15,11 @@
  */
 package com.google.android.exoplayer2.upstream.cache;
 
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import com.google.android.exoplayer2.C;
@@ -22,8 +27,16 @@ import com.google.android.exoplayer2.upstream.DataSourceUtil;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.PriorityTaskManager.PriorityTooLowException;
+import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Caching related utility methods. */
 public final class CacheWriter {
@@ -46,6 +59,9 @@ public final class CacheWriter {
   /** Default buffer size to be used while caching. */
   public static final int DEFAULT_BUFFER_SIZE_BYTES = 128 * 1024;
 
+  /** Default minimum length of a range that's cached by a request made in parallel. */
+  public static final long DEFAULT_MIN_PARALLEL_RANGE_LENGTH_BYTES = 2 * 1024 * 1024;
+
   private final CacheDataSource dataSource;
   private final Cache cache;
   private final DataSpec dataSpec;
@@ -53,11 +69,18 @@ public final class CacheWriter {
   private final byte[] temporaryBuffer;
   @Nullable private final ProgressListener progressListener;
 
+  @Nullable private CacheDataSource.Factory parallelDataSourceFactory;
+  @Nullable private Executor parallelExecutor;
+  private int maxParallelRequests;
+  private long minParallelRangeLength;
+
   private long nextPosition;
-  private long endPosition;
+  private volatile long endPosition;
   private long bytesCached;
+  @Nullable private Throwable parallelCachingError;
 
   private volatile boolean isCanceled;
+  private volatile boolean isParallelCachingFailed;
 
   /**
    * @param dataSource A {@link CacheDataSource} that writes to the target cache.
@@ -79,6 +102,43 @@ public final class CacheWriter {
     this.progressListener = progressListener;
     cacheKey = dataSource.getCacheKeyFactory().buildCacheKey(dataSpec);
     nextPosition = dataSpec.position;
+    maxParallelRequests = 1;
+  }
+
+  /**
+   * Sets the writer to cache ranges of the requested data using concurrent requests.
+   *
+   * <p>If the end of the requested data isn't known, it's resolved by opening a request for the
+   * data after the last cached data. The remaining data is then split into ranges that are cached
+   * concurrently by the thread calling {@link #cache} and by tasks run on {@code executor}. The
+   * {@link ProgressListener} may be called on any of these threads. If the end of the data can't be
+   * resolved, or the remaining data is too short to be split, it's cached sequentially.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param dataSourceFactory The factory whose {@link
+   *     CacheDataSource.Factory#createDataSourceForDownloading} method is used to create a {@link
+   *     CacheDataSource} for each additional request. The created instances must write to the same
+   *     {@link Cache}, using the same {@link CacheKeyFactory}, as the {@link CacheDataSource}
+   *     passed to the constructor.
+   * @param executor The {@link Executor} on which additional requests are made. Tasks that haven't
+   *     started by the time the calling thread runs out of ranges to cache are skipped, so an
+   *     executor with fewer threads than requests only reduces the parallelism.
+   * @param maxParallelRequests The maximum number of concurrent requests, including the request
+   *     made by the thread calling {@link #cache}.
+   * @param minRangeLength The minimum length of a range, in bytes. Ranges are made longer than this
+   *     to avoid making more than {@code maxParallelRequests} requests.
+   */
+  public void experimentalSetParallelCaching(
+      CacheDataSource.Factory dataSourceFactory,
+      Executor executor,
+      int maxParallelRequests,
+      long minRangeLength) {
+    checkArgument(maxParallelRequests > 0 && minRangeLength > 0);
+    this.parallelDataSourceFactory = dataSourceFactory;
+    this.parallelExecutor = executor;
+    this.maxParallelRequests = maxParallelRequests;
+    this.minParallelRangeLength = minRangeLength;
   }
 
   /**
@@ -107,6 +167,7 @@ public final class CacheWriter {
    */
   @WorkerThread
   public void cache() throws IOException {
+    isParallelCachingFailed = false;
     throwIfCanceled();
 
     bytesCached = cache.getCachedBytes(cacheKey, dataSpec.position, dataSpec.length);
@@ -120,6 +181,17 @@ public final class CacheWriter {
       progressListener.onProgress(getLength(), bytesCached, /* newBytesCached= */ 0);
     }
 
+    if (maxParallelRequests > 1) {
+      if (endPosition == C.POSITION_UNSET) {
+        resolveEndPosition();
+      }
+      if (endPosition != C.POSITION_UNSET
+          && endPosition - nextPosition >= 2 * minParallelRangeLength) {
+        cacheInParallel();
+        return;
+      }
+    }
+
     while (endPosition == C.POSITION_UNSET || nextPosition < endPosition) {
       throwIfCanceled();
       long maxRemainingLength =
@@ -131,20 +203,170 @@ public final class CacheWriter {
         // There's a hole of length -blockLength.
         blockLength = -blockLength;
         long nextRequestLength = blockLength == Long.MAX_VALUE ? C.LENGTH_UNSET : blockLength;
-        nextPosition += readBlockToCache(nextPosition, nextRequestLength);
+        nextPosition +=
+            readBlockToCache(dataSource, temporaryBuffer, nextPosition, nextRequestLength);
+      }
+    }
+  }
+
+  /**
+   * Tries to resolve the end position of the requested data by opening a request for the data after
+   * the last cached data, without reading from it.
+   */
+  private void resolveEndPosition() throws IOException {
+    // Requests for holes that are followed by cached data are limited to the hole, so skip them.
+    long position = nextPosition;
+    long blockLength;
+    while ((blockLength = cache.getCachedLength(cacheKey, position, Long.MAX_VALUE))
+        != -Long.MAX_VALUE) {
+      position += blockLength > 0 ? blockLength : -blockLength;
+    }
+    DataSpec unboundedDataSpec =
+        dataSpec.buildUpon().setPosition(position).setLength(C.LENGTH_UNSET).build();
+    long resolvedLength;
+    try {
+      resolvedLength = dataSource.open(unboundedDataSpec);
+    } catch (IOException e) {
+      // Leave it to sequential caching to retry the request and report the error.
+      return;
+    } finally {
+      DataSourceUtil.closeQuietly(dataSource);
+    }
+    if (resolvedLength != C.LENGTH_UNSET) {
+      onRequestEndPosition(position + resolvedLength);
+    }
+  }
+
+  /** Caches the data from {@link #nextPosition} to {@link #endPosition} using parallel requests. */
+  private void cacheInParallel() throws IOException {
+    CacheDataSource.Factory dataSourceFactory = checkNotNull(parallelDataSourceFactory);
+    Executor executor = checkNotNull(parallelExecutor);
+    long remainingLength = endPosition - nextPosition;
+    int requestCount = (int) min(maxParallelRequests, remainingLength / minParallelRangeLength);
+    long rangeLength = max(minParallelRangeLength, Util.ceilDivide(remainingLength, requestCount));
+    AtomicLong nextRangePosition = new AtomicLong(nextPosition);
+    parallelCachingError = null;
+
+    CountDownLatch tasksFinished = new CountDownLatch(requestCount - 1);
+    List<AtomicBoolean> tasksStarted = new ArrayList<>();
+    for (int i = 1; i < requestCount; i++) {
+      AtomicBoolean taskStarted = new AtomicBoolean();
+      tasksStarted.add(taskStarted);
+      CacheDataSource rangeDataSource = dataSourceFactory.createDataSourceForDownloading();
+      byte[] rangeBuffer = new byte[temporaryBuffer.length];
+      try {
+        executor.execute(
+            () -> {
+              if (!taskStarted.compareAndSet(false, true)) {
+                // The calling thread has already cached all of the ranges.
+                return;
+              }
+              try {
+                cacheRanges(rangeDataSource, rangeBuffer, nextRangePosition, rangeLength);
+              } finally {
+                tasksFinished.countDown();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        // Continue with fewer requests.
+      }
+    }
+    cacheRanges(dataSource, temporaryBuffer, nextRangePosition, rangeLength);
+    // Skip tasks that haven't started, since there are no ranges left for them to cache.
+    for (int i = 0; i < tasksStarted.size(); i++) {
+      if (tasksStarted.get(i).compareAndSet(false, true)) {
+        tasksFinished.countDown();
+      }
+    }
+    boolean wasInterrupted = false;
+    while (true) {
+      try {
+        tasksFinished.await();
+        break;
+      } catch (InterruptedException e) {
+        // The tasks must finish before returning, so that the method can be called again.
+        isParallelCachingFailed = true;
+        wasInterrupted = true;
+      }
+    }
+    if (wasInterrupted) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+
+    @Nullable Throwable error;
+    synchronized (this) {
+      error = parallelCachingError;
+    }
+    if (error != null) {
+      if (error instanceof IOException) {
+        throw (IOException) error;
       }
+      Util.sneakyThrow(error);
+    }
+    nextPosition = endPosition;
+  }
+
+  /**
+   * Caches ranges of data until there are none left or caching fails. Errors are recorded in
+   * {@link #parallelCachingError}.
+   */
+  private void cacheRanges(
+      CacheDataSource dataSource,
+      byte[] temporaryBuffer,
+      AtomicLong nextRangePosition,
+      long rangeLength) {
+    try {
+      while (true) {
+        throwIfCanceled();
+        long rangePosition = nextRangePosition.getAndAdd(rangeLength);
+        long rangeEndPosition = min(rangePosition + rangeLength, endPosition);
+        if (rangePosition >= rangeEndPosition) {
+          return;
+        }
+        long position = rangePosition;
+        while (position < rangeEndPosition) {
+          throwIfCanceled();
+          long blockLength =
+              cache.getCachedLength(cacheKey, position, rangeEndPosition - position);
+          if (blockLength > 0) {
+            position += blockLength;
+          } else {
+            long bytesRead = readBlockToCache(dataSource, temporaryBuffer, position, -blockLength);
+            if (bytesRead == 0) {
+              // The data ended before the range.
+              break;
+            }
+            position += bytesRead;
+          }
+        }
+      }
+    } catch (Throwable e) {
+      onParallelCachingError(e);
+    }
+  }
+
+  private synchronized void onParallelCachingError(Throwable error) {
+    // Errors after the first are usually caused by the other requests being stopped.
+    if (parallelCachingError == null) {
+      parallelCachingError = error;
     }
+    isParallelCachingFailed = true;
   }
 
   /**
    * Reads the specified block of data, writing it into the cache.
    *
+   * @param dataSource The {@link CacheDataSource} used to read the data.
+   * @param temporaryBuffer A temporary buffer used to read the data.
    * @param position The starting position of the block.
    * @param length The length of the block, or {@link C#LENGTH_UNSET} if unbounded.
    * @return The number of bytes read.
    * @throws IOException If an error occurs reading the data or writing it to the cache.
    */
-  private long readBlockToCache(long position, long length) throws IOException {
+  private long readBlockToCache(
+      CacheDataSource dataSource, byte[] temporaryBuffer, long position, long length)
+      throws IOException {
     boolean isLastBlock = position + length == endPosition || length == C.LENGTH_UNSET;
 
     long resolvedLength = C.LENGTH_UNSET;
@@ -205,7 +427,7 @@ public final class CacheWriter {
     return totalBytesRead;
   }
 
-  private void onRequestEndPosition(long endPosition) {
+  private synchronized void onRequestEndPosition(long endPosition) {
     if (this.endPosition == endPosition) {
       return;
     }
@@ -215,7 +437,7 @@ public final class CacheWriter {
     }
   }
 
-  private void onNewBytesCached(long newBytesCached) {
+  private synchronized void onNewBytesCached(long newBytesCached) {
     bytesCached += newBytesCached;
     if (progressListener != null) {
       progressListener.onProgress(getLength(), bytesCached, newBytesCached);
@@ -227,7 +449,7 @@ public final class CacheWriter {
   }
 
   private void throwIfCanceled() throws InterruptedIOException {
-    if (isCanceled) {
+    if (isCanceled || isParallelCachingFailed) {
       throw new InterruptedIOException();
     }
   }
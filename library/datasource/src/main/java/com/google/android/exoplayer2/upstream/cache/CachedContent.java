@@ -26,9 +26,16 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Log;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.TreeSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 
-/** Defines the cached content for a single resource. */
+/**
+ * Defines the cached content for a single resource.
+ *
+ * <p>Instances are modified only by the owning {@link Cache} whilst holding its lock. The span and
+ * metadata queries may be called concurrently from any thread without holding the lock.
+ */
 /* package */ final class CachedContent {
 
   private static final String TAG = "CachedContent";
@@ -37,13 +44,13 @@ import java.util.TreeSet;
   public final int id;
   /** The cache key that uniquely identifies the resource. */
   public final String key;
-  /** The cached spans of this content. */
-  private final TreeSet<SimpleCacheSpan> cachedSpans;
+  /** The cached spans of this content, keyed by position. */
+  private final ConcurrentSkipListMap<Long, SimpleCacheSpan> cachedSpans;
   /** Currently locked ranges. */
   private final ArrayList<Range> lockedRanges;
 
   /** Metadata values. */
-  private DefaultContentMetadata metadata;
+  private volatile DefaultContentMetadata metadata;
 
   /**
    * Creates a CachedContent.
@@ -59,7 +66,7 @@ import java.util.TreeSet;
     this.id = id;
     this.key = key;
     this.metadata = metadata;
-    cachedSpans = new TreeSet<>();
+    cachedSpans = new ConcurrentSkipListMap<>();
     lockedRanges = new ArrayList<>();
   }
 
@@ -135,12 +142,15 @@ import java.util.TreeSet;
 
   /** Adds the given {@link SimpleCacheSpan} which contains a part of the content. */
   public void addSpan(SimpleCacheSpan span) {
-    cachedSpans.add(span);
+    cachedSpans.put(span.position, span);
   }
 
-  /** Returns a set of all {@link SimpleCacheSpan}s. */
-  public TreeSet<SimpleCacheSpan> getSpans() {
-    return cachedSpans;
+  /**
+   * Returns a view of all {@link SimpleCacheSpan}s, in order of position. Iterating over the view
+   * whilst the content is modified doesn't fail, but may or may not reflect the modification.
+   */
+  public Collection<SimpleCacheSpan> getSpans() {
+    return cachedSpans.values();
   }
 
   /**
@@ -152,13 +162,16 @@ import java.util.TreeSet;
    * @return The corresponding cache {@link SimpleCacheSpan}.
    */
   public SimpleCacheSpan getSpan(long position, long length) {
-    SimpleCacheSpan lookupSpan = SimpleCacheSpan.createLookup(key, position);
-    SimpleCacheSpan floorSpan = cachedSpans.floor(lookupSpan);
-    if (floorSpan != null && floorSpan.position + floorSpan.length > position) {
-      return floorSpan;
+    @Nullable Map.Entry<Long, SimpleCacheSpan> floorEntry = cachedSpans.floorEntry(position);
+    if (floorEntry != null) {
+      SimpleCacheSpan floorSpan = floorEntry.getValue();
+      if (floorSpan.position + floorSpan.length > position) {
+        return floorSpan;
+      }
     }
-    SimpleCacheSpan ceilSpan = cachedSpans.ceiling(lookupSpan);
-    if (ceilSpan != null) {
+    @Nullable Map.Entry<Long, SimpleCacheSpan> ceilEntry = cachedSpans.ceilingEntry(position);
+    if (ceilEntry != null) {
+      SimpleCacheSpan ceilSpan = ceilEntry.getValue();
       long holeLength = ceilSpan.position - position;
       length = length == C.LENGTH_UNSET ? holeLength : min(holeLength, length);
     }
@@ -191,7 +204,7 @@ import java.util.TreeSet;
     }
     long currentEndPosition = span.position + span.length;
     if (currentEndPosition < queryEndPosition) {
-      for (SimpleCacheSpan next : cachedSpans.tailSet(span, false)) {
+      for (SimpleCacheSpan next : cachedSpans.tailMap(span.position, false).values()) {
         if (next.position > currentEndPosition) {
           // There's a hole in the cache within the queried region.
           break;
@@ -210,6 +223,7 @@ import java.util.TreeSet;
 
   /**
    * Sets the given span's last touch timestamp. The passed span becomes invalid after this call.
+   * Concurrent queries observe either the passed span or the updated span, never neither.
    *
    * @param cacheSpan Span to be copied and updated.
    * @param lastTouchTimestamp The new last touch timestamp.
@@ -219,7 +233,7 @@ import java.util.TreeSet;
    */
   public SimpleCacheSpan setLastTouchTimestamp(
       SimpleCacheSpan cacheSpan, long lastTouchTimestamp, boolean updateFile) {
-    checkState(cachedSpans.remove(cacheSpan));
+    checkState(cachedSpans.containsKey(cacheSpan.position));
     File file = checkNotNull(cacheSpan.file);
     if (updateFile) {
       File directory = checkNotNull(file.getParentFile());
@@ -233,7 +247,7 @@ import java.util.TreeSet;
     }
     SimpleCacheSpan newCacheSpan =
         cacheSpan.copyWithFileAndLastTouchTimestamp(file, lastTouchTimestamp);
-    cachedSpans.add(newCacheSpan);
+    cachedSpans.put(newCacheSpan.position, newCacheSpan);
     return newCacheSpan;
   }
 
@@ -244,8 +258,20 @@ import java.util.TreeSet;
 
   /** Removes the given span from cache. */
   public boolean removeSpan(CacheSpan span) {
-    if (cachedSpans.remove(span)) {
-      if (span.file != null) {
+    return removeSpan(span, /* deleteFile= */ true);
+  }
+
+  /**
+   * Removes the given span from cache.
+   *
+   * @param span The span to remove.
+   * @param deleteFile Whether to delete the span's file. Must be false if the file is shared with
+   *     other spans.
+   * @return Whether the span was removed.
+   */
+  public boolean removeSpan(CacheSpan span, boolean deleteFile) {
+    if (cachedSpans.remove(span.position) != null) {
+      if (deleteFile && span.file != null) {
         span.file.delete();
       }
       return true;
@@ -272,7 +298,7 @@ import java.util.TreeSet;
     CachedContent that = (CachedContent) o;
     return id == that.id
         && key.equals(that.key)
-        && cachedSpans.equals(that.cachedSpans)
+        && cachedSpans.keySet().equals(that.cachedSpans.keySet())
         && metadata.equals(that.metadata);
   }
 
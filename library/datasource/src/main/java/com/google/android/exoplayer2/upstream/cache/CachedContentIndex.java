@@ -31,6 +31,7 @@ import android.util.SparseBooleanArray;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.database.DatabaseIOException;
 import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.database.VersionTable;
@@ -43,10 +44,14 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -56,7 +61,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -70,10 +80,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /* package */ class CachedContentIndex {
 
   /* package */ static final String FILE_NAME_ATOMIC = "cached_content_index.exi";
+  // Starts with FILE_NAME_ATOMIC, so that caches treat it as an index file.
+  private static final String FILE_NAME_JOURNAL = FILE_NAME_ATOMIC + ".journal";
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
-  private final HashMap<String, CachedContent> keyToContent;
+  /**
+   * Maps keys to their content. Modified only by the owning {@link Cache} whilst holding its lock,
+   * but may be read concurrently without it.
+   */
+  private final ConcurrentMap<String, CachedContent> keyToContent;
   /**
    * Maps assigned ids to their corresponding keys. Also contains (id -> null) entries for ids that
    * have been removed from the index since it was last stored. This prevents reuse of these ids,
@@ -138,6 +154,31 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         /* preferLegacyStorage= */ false);
   }
 
+  /**
+   * Creates an instance using journal storage, which appends changes to a file rather than
+   * rewriting the whole index. The cost of {@link #store()} is proportional to the changes since
+   * the index was last stored, except when the journal is occasionally compacted.
+   *
+   * <p>An existing index in database storage, or otherwise in legacy storage in {@code
+   * journalStorageDir}, is migrated to journal storage.
+   *
+   * @param journalStorageDir The directory in which the journal is stored.
+   * @param databaseProvider Provides the database from which an existing index is migrated, or
+   *     {@code null} to migrate only from legacy storage.
+   * @return The instance.
+   */
+  public static CachedContentIndex createWithJournalStorage(
+      File journalStorageDir, @Nullable DatabaseProvider databaseProvider) {
+    return new CachedContentIndex(
+        new JournalStorage(new File(journalStorageDir, FILE_NAME_JOURNAL)),
+        databaseProvider != null
+            ? new DatabaseStorage(databaseProvider)
+            : new LegacyStorage(
+                new File(journalStorageDir, FILE_NAME_ATOMIC),
+                /* secretKey= */ null,
+                /* encrypt= */ false));
+  }
+
   /**
    * Creates an instance supporting either or both of database and legacy storage.
    *
@@ -160,7 +201,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       boolean legacyStorageEncrypt,
       boolean preferLegacyStorage) {
     checkState(databaseProvider != null || legacyStorageDir != null);
-    keyToContent = new HashMap<>();
+    keyToContent = new ConcurrentHashMap<>();
     idToKey = new SparseArray<>();
     removedIds = new SparseBooleanArray();
     newIds = new SparseBooleanArray();
@@ -184,6 +225,15 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
   }
 
+  private CachedContentIndex(Storage storage, @Nullable Storage previousStorage) {
+    keyToContent = new ConcurrentHashMap<>();
+    idToKey = new SparseArray<>();
+    removedIds = new SparseBooleanArray();
+    newIds = new SparseBooleanArray();
+    this.storage = storage;
+    this.previousStorage = previousStorage;
+  }
+
   /**
    * Loads the index data for the given cache UID.
    *
@@ -257,7 +307,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * Returns a read only collection of all {@link CachedContent CachedContents} in the index.
    *
    * <p>Subsequent changes to the index are reflected in the returned collection. If the index is
-   * modified whilst iterating over the collection, the result of the iteration is undefined.
+   * modified whilst iterating over the collection, the iteration may or may not reflect the
+   * modification.
    */
   public Collection<CachedContent> getAll() {
     return Collections.unmodifiableCollection(keyToContent.values());
@@ -310,8 +361,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   /**
    * Returns a set of all content keys. The set is backed by the {@code keyToContent} map, so
    * changes to the map are reflected in the set, and vice-versa. If the map is modified while an
-   * iteration over the set is in progress (except through the iterator's own remove operation), the
-   * results of the iteration are undefined.
+   * iteration over the set is in progress, the iteration may or may not reflect the modification.
    */
   public Set<String> getKeys() {
     return keyToContent.keySet();
@@ -334,6 +384,46 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     return cachedContent != null ? cachedContent.getMetadata() : DefaultContentMetadata.EMPTY;
   }
 
+  /** Returns a copy of the cached spans of the given key. See {@link Cache#getCachedSpans}. */
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    @Nullable CachedContent cachedContent = get(key);
+    return cachedContent == null || cachedContent.isEmpty()
+        ? new TreeSet<>()
+        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+  }
+
+  /** See {@link Cache#getCachedLength(String, long, long)}. */
+  public long getCachedLength(String key, long position, long length) {
+    if (length == C.LENGTH_UNSET) {
+      length = Long.MAX_VALUE;
+    }
+    @Nullable CachedContent cachedContent = get(key);
+    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+  }
+
+  /** See {@link Cache#getCachedBytes(String, long, long)}. */
+  public long getCachedBytes(String key, long position, long length) {
+    long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
+    if (endPosition < 0) {
+      // The calculation rolled over (length is probably Long.MAX_VALUE).
+      endPosition = Long.MAX_VALUE;
+    }
+    long currentPosition = position;
+    long cachedBytes = 0;
+    while (currentPosition < endPosition) {
+      long maxRemainingLength = endPosition - currentPosition;
+      long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
+      if (blockLength > 0) {
+        cachedBytes += blockLength;
+      } else {
+        // There's a hole of length -blockLength.
+        blockLength = -blockLength;
+      }
+      currentPosition += blockLength;
+    }
+    return cachedBytes;
+  }
+
   private CachedContent addNew(String key) {
     int id = getNewId(idToKey);
     CachedContent cachedContent = new CachedContent(id, key);
@@ -461,7 +551,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param idToKey The id to key map to populate with persisted data.
      * @throws IOException If an error occurs loading the index.
      */
-    void load(HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+    void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException;
 
     /**
@@ -471,17 +561,17 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeFully(HashMap<String, CachedContent> content) throws IOException;
+    void storeFully(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Ensures incremental changes to the index since the initial {@link #initialize(long)} or last
-     * {@link #storeFully(HashMap)} are persisted. The storage will have been notified of all such
+     * {@link #storeFully(Map)} are persisted. The storage will have been notified of all such
      * changes via {@link #onUpdate(CachedContent)} and {@link #onRemove(CachedContent, boolean)}.
      *
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeIncremental(HashMap<String, CachedContent> content) throws IOException;
+    void storeIncremental(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Called when a {@link CachedContent} is added or updated.
@@ -555,7 +645,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       checkState(!changed);
       if (!readFile(content, idToKey)) {
         content.clear();
@@ -565,13 +655,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       writeFile(content);
       changed = false;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (!changed) {
         return;
       }
@@ -589,7 +679,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     private boolean readFile(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       if (!atomicFile.exists()) {
         return true;
       }
@@ -644,7 +734,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return true;
     }
 
-    private void writeFile(HashMap<String, CachedContent> content) throws IOException {
+    private void writeFile(Map<String, CachedContent> content) throws IOException {
       @Nullable DataOutputStream output = null;
       try {
         OutputStream outputStream = atomicFile.startWrite();
@@ -743,6 +833,242 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
   }
 
+  /**
+   * {@link Storage} implementation that appends changes to a journal file.
+   *
+   * <p>The journal starts with a header, followed by records that each add or update, or remove, a
+   * {@link CachedContent}. Each record is prefixed with its length and a checksum, so that a record
+   * that was only partially written when the process died is detected and discarded. The journal is
+   * rewritten with one record per {@link CachedContent} when it holds many more records than there
+   * are {@link CachedContent CachedContents}.
+   */
+  private static final class JournalStorage implements Storage {
+
+    private static final int MAGIC = 0x45584a4c; // "EXJL"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int RECORD_PREFIX_LENGTH = 8;
+
+    private static final byte RECORD_TYPE_UPDATE = 0;
+    private static final byte RECORD_TYPE_REMOVE = 1;
+
+    /** The minimum number of records before the journal is compacted. */
+    private static final int MIN_RECORD_COUNT_FOR_COMPACTION = 1024;
+
+    private final File file;
+    private final File tempFile;
+    private final SparseArray<@NullableType CachedContent> pendingUpdates;
+    private final ByteArrayOutputStream recordBuffer;
+    private final CRC32 crc32;
+
+    private int recordCount;
+
+    public JournalStorage(File file) {
+      this.file = file;
+      tempFile = new File(file.getPath() + ".new");
+      pendingUpdates = new SparseArray<>();
+      recordBuffer = new ByteArrayOutputStream();
+      crc32 = new CRC32();
+    }
+
+    @Override
+    public void initialize(long uid) {
+      // Do nothing. Journal storage uses a separate file for each cache.
+    }
+
+    @Override
+    public boolean exists() {
+      return file.exists();
+    }
+
+    @Override
+    public void delete() {
+      file.delete();
+      tempFile.delete();
+    }
+
+    @Override
+    public void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      checkState(pendingUpdates.size() == 0);
+      // A compaction that didn't complete leaves a temporary file behind, which is incomplete.
+      tempFile.delete();
+      if (!file.exists()) {
+        return;
+      }
+      SparseArray<CachedContent> idToContent = new SparseArray<>();
+      long validLength;
+      try (DataInputStream input =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (!readHeader(input)) {
+          // The journal is in a permanently bad state.
+          file.delete();
+          return;
+        }
+        validLength = HEADER_LENGTH;
+        recordCount = 0;
+        @Nullable byte[] record;
+        while ((record = readRecord(input)) != null) {
+          applyRecord(record, idToContent);
+          validLength += RECORD_PREFIX_LENGTH + record.length;
+          recordCount++;
+        }
+      }
+      if (validLength < file.length()) {
+        // Discard the partially written record, so that records can be appended after the last
+        // complete one.
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+          randomAccessFile.setLength(validLength);
+        }
+      }
+      for (int i = 0; i < idToContent.size(); i++) {
+        CachedContent cachedContent = idToContent.valueAt(i);
+        content.put(cachedContent.key, cachedContent);
+        idToKey.put(cachedContent.id, cachedContent.key);
+      }
+    }
+
+    @Override
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
+      // Write the compacted journal to a temporary file, and then atomically replace the journal.
+      try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        for (CachedContent cachedContent : content.values()) {
+          writeUpdateRecord(cachedContent, output);
+        }
+        output.flush();
+        fileOutputStream.getFD().sync();
+      }
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Failed to replace journal: " + file);
+      }
+      recordCount = content.size();
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
+      if (pendingUpdates.size() == 0) {
+        return;
+      }
+      if (!file.exists()
+          || (recordCount + pendingUpdates.size() > MIN_RECORD_COUNT_FOR_COMPACTION
+              && recordCount + pendingUpdates.size() > 2 * content.size())) {
+        storeFully(content);
+        return;
+      }
+      try (FileOutputStream fileOutputStream = new FileOutputStream(file, /* append= */ true)) {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+        for (int i = 0; i < pendingUpdates.size(); i++) {
+          @Nullable CachedContent cachedContent = pendingUpdates.valueAt(i);
+          if (cachedContent == null) {
+            writeRemoveRecord(pendingUpdates.keyAt(i), output);
+          } else {
+            writeUpdateRecord(cachedContent, output);
+          }
+        }
+        output.flush();
+        fileOutputStream.getFD().sync();
+      }
+      recordCount += pendingUpdates.size();
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void onUpdate(CachedContent cachedContent) {
+      pendingUpdates.put(cachedContent.id, cachedContent);
+    }
+
+    @Override
+    public void onRemove(CachedContent cachedContent, boolean neverStored) {
+      if (neverStored) {
+        pendingUpdates.delete(cachedContent.id);
+      } else {
+        pendingUpdates.put(cachedContent.id, null);
+      }
+    }
+
+    private static boolean readHeader(DataInputStream input) {
+      try {
+        return input.readInt() == MAGIC && input.readInt() == VERSION;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    /**
+     * Reads the payload of the next record.
+     *
+     * @return The payload, or null if the end of the journal, or an incomplete or corrupt record,
+     *     was reached.
+     */
+    @Nullable
+    private byte[] readRecord(DataInputStream input) throws IOException {
+      byte[] payload;
+      int checksum;
+      try {
+        int payloadLength = input.readInt();
+        checksum = input.readInt();
+        if (payloadLength <= 0 || payloadLength > input.available()) {
+          return null;
+        }
+        payload = new byte[payloadLength];
+        input.readFully(payload);
+      } catch (EOFException e) {
+        return null;
+      }
+      crc32.reset();
+      crc32.update(payload, 0, payload.length);
+      return (int) crc32.getValue() == checksum ? payload : null;
+    }
+
+    private static void applyRecord(byte[] record, SparseArray<CachedContent> idToContent)
+        throws IOException {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+      byte type = input.readByte();
+      int id = input.readInt();
+      if (type == RECORD_TYPE_UPDATE) {
+        String key = input.readUTF();
+        DefaultContentMetadata metadata = readContentMetadata(input);
+        idToContent.put(id, new CachedContent(id, key, metadata));
+      } else if (type == RECORD_TYPE_REMOVE) {
+        idToContent.remove(id);
+      } else {
+        throw new IOException("Unexpected journal record type: " + type);
+      }
+    }
+
+    private void writeUpdateRecord(CachedContent cachedContent, DataOutputStream output)
+        throws IOException {
+      recordBuffer.reset();
+      DataOutputStream recordOutput = new DataOutputStream(recordBuffer);
+      recordOutput.writeByte(RECORD_TYPE_UPDATE);
+      recordOutput.writeInt(cachedContent.id);
+      recordOutput.writeUTF(cachedContent.key);
+      writeContentMetadata(cachedContent.getMetadata(), recordOutput);
+      writeRecordBuffer(output);
+    }
+
+    private void writeRemoveRecord(int id, DataOutputStream output) throws IOException {
+      recordBuffer.reset();
+      DataOutputStream recordOutput = new DataOutputStream(recordBuffer);
+      recordOutput.writeByte(RECORD_TYPE_REMOVE);
+      recordOutput.writeInt(id);
+      writeRecordBuffer(output);
+    }
+
+    private void writeRecordBuffer(DataOutputStream output) throws IOException {
+      byte[] payload = recordBuffer.toByteArray();
+      crc32.reset();
+      crc32.update(payload, 0, payload.length);
+      output.writeInt(payload.length);
+      output.writeInt((int) crc32.getValue());
+      output.write(payload);
+    }
+  }
+
   /** {@link Storage} implementation that uses an SQL database. */
   private static final class DatabaseStorage implements Storage {
 
@@ -808,7 +1134,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException {
       checkState(pendingUpdates.size() == 0);
       try {
@@ -851,7 +1177,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       try {
         SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
         writableDatabase.beginTransactionNonExclusive();
@@ -871,7 +1197,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (pendingUpdates.size() == 0) {
         return;
       }
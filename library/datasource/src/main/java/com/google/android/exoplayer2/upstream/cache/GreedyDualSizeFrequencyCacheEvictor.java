@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Evicts cache files using the Greedy-Dual-Size-Frequency policy.
+ *
+ * <p>Each span has a priority of {@code L + frequency / length}, where {@code frequency} is the
+ * number of times the span has been accessed since it was added or the cache was initialized, and
+ * {@code L} is an inflation value that's set to the priority of the most recently evicted span. The
+ * span with the lowest priority is evicted first. Small spans that are accessed frequently are
+ * therefore retained in favor of large spans that are rarely accessed, which improves the hit
+ * rate of a cache holding content of mixed sizes. Inflating {@code L} ages spans that haven't been
+ * accessed recently.
+ *
+ * <p>Adding, touching and removing spans take logarithmic time.
+ */
+public final class GreedyDualSizeFrequencyCacheEvictor implements CacheEvictor {
+
+  private final long maxBytes;
+  private final HashMap<CacheSpanKey, Entry> entries;
+  private final TreeSet<Entry> entriesByPriority;
+
+  private long currentSize;
+  private double inflation;
+  private long nextSequenceNumber;
+
+  /** @param maxBytes The maximum size of the cache, in bytes. */
+  public GreedyDualSizeFrequencyCacheEvictor(long maxBytes) {
+    this.maxBytes = maxBytes;
+    entries = new HashMap<>();
+    entriesByPriority = new TreeSet<>(GreedyDualSizeFrequencyCacheEvictor::compare);
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    addEntry(span, /* frequency= */ 1);
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    @Nullable Entry entry = entries.remove(CacheSpanKey.of(span));
+    if (entry != null) {
+      entriesByPriority.remove(entry);
+      currentSize -= entry.span.length;
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Entry entry = entries.remove(CacheSpanKey.of(oldSpan));
+    int frequency = 1;
+    if (entry != null) {
+      entriesByPriority.remove(entry);
+      currentSize -= entry.span.length;
+      frequency = entry.frequency + 1;
+    }
+    addEntry(newSpan, frequency);
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanMoved(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Entry entry = entries.get(CacheSpanKey.of(oldSpan));
+    if (entry == null) {
+      return;
+    }
+    // The span keeps its frequency and priority, since it hasn't been accessed.
+    entriesByPriority.remove(entry);
+    Entry movedEntry = new Entry(newSpan, entry.frequency, entry.priority, entry.sequenceNumber);
+    entries.put(CacheSpanKey.of(newSpan), movedEntry);
+    entriesByPriority.add(movedEntry);
+    currentSize += newSpan.length - entry.span.length;
+  }
+
+  private void addEntry(CacheSpan span, int frequency) {
+    // Zero length spans would have infinite priority, so treat them as having a length of one.
+    double priority = inflation + (double) frequency / max(span.length, 1);
+    Entry entry = new Entry(span, frequency, priority, nextSequenceNumber++);
+    entries.put(CacheSpanKey.of(span), entry);
+    entriesByPriority.add(entry);
+    currentSize += span.length;
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes && !entriesByPriority.isEmpty()) {
+      Entry entry = entriesByPriority.first();
+      inflation = entry.priority;
+      cache.removeSpan(entry.span);
+    }
+  }
+
+  private static int compare(Entry lhs, Entry rhs) {
+    int result = Double.compare(lhs.priority, rhs.priority);
+    if (result != 0) {
+      return result;
+    }
+    // Evict the least recently accessed span out of those with the same priority.
+    return Long.compare(lhs.sequenceNumber, rhs.sequenceNumber);
+  }
+
+  private static final class Entry {
+
+    public final CacheSpan span;
+    public final int frequency;
+    public final double priority;
+    public final long sequenceNumber;
+
+    public Entry(CacheSpan span, int frequency, double priority, long sequenceNumber) {
+      this.span = span;
+      this.frequency = frequency;
+      this.priority = priority;
+      this.sequenceNumber = sequenceNumber;
+    }
+  }
+}
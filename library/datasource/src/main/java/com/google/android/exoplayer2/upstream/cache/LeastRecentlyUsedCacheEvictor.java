@@ -15,20 +15,22 @@
  */
 package com.google.android.exoplayer2.upstream.cache;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
-import java.util.TreeSet;
 
-/** Evicts least recently used cache files first. */
+/**
+ * Evicts least recently used cache files first.
+ *
+ * <p>Adding, touching and removing spans take constant time.
+ */
 public final class LeastRecentlyUsedCacheEvictor implements CacheEvictor {
 
   private final long maxBytes;
-  private final TreeSet<CacheSpan> leastRecentlyUsed;
-
-  private long currentSize;
+  private final CacheSpanLruList leastRecentlyUsed;
 
   public LeastRecentlyUsedCacheEvictor(long maxBytes) {
     this.maxBytes = maxBytes;
-    this.leastRecentlyUsed = new TreeSet<>(LeastRecentlyUsedCacheEvictor::compare);
+    this.leastRecentlyUsed = new CacheSpanLruList();
   }
 
   @Override
@@ -51,14 +53,12 @@ public final class LeastRecentlyUsedCacheEvictor implements CacheEvictor {
   @Override
   public void onSpanAdded(Cache cache, CacheSpan span) {
     leastRecentlyUsed.add(span);
-    currentSize += span.length;
     evictCache(cache, 0);
   }
 
   @Override
   public void onSpanRemoved(Cache cache, CacheSpan span) {
     leastRecentlyUsed.remove(span);
-    currentSize -= span.length;
   }
 
   @Override
@@ -67,18 +67,18 @@ public final class LeastRecentlyUsedCacheEvictor implements CacheEvictor {
     onSpanAdded(cache, newSpan);
   }
 
-  private void evictCache(Cache cache, long requiredSpace) {
-    while (currentSize + requiredSpace > maxBytes && !leastRecentlyUsed.isEmpty()) {
-      cache.removeSpan(leastRecentlyUsed.first());
-    }
+  @Override
+  public void onSpanMoved(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    leastRecentlyUsed.replace(newSpan);
   }
 
-  private static int compare(CacheSpan lhs, CacheSpan rhs) {
-    long lastTouchTimestampDelta = lhs.lastTouchTimestamp - rhs.lastTouchTimestamp;
-    if (lastTouchTimestampDelta == 0) {
-      // Use the standard compareTo method as a tie-break.
-      return lhs.compareTo(rhs);
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (leastRecentlyUsed.getBytes() + requiredSpace > maxBytes) {
+      @Nullable CacheSpan span = leastRecentlyUsed.getLeastRecentlyUsed();
+      if (span == null) {
+        break;
+      }
+      cache.removeSpan(span);
     }
-    return lhs.lastTouchTimestamp < rhs.lastTouchTimestamp ? -1 : 1;
   }
 }
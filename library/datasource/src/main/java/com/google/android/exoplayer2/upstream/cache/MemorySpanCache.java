@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An in-memory tier for cached spans, which allows a {@link CacheDataSource} to serve repeated
+ * reads of recently used spans without file I/O.
+ *
+ * <p>Span data is keyed by the cache key (as built by the {@link CacheKeyFactory} of the {@link
+ * CacheDataSource}) and the span position, and is only returned for a span with the same length
+ * and cached data. A span keeps its cached data when it's touched or moved to another file, but
+ * data that's been evicted from or rewritten in the underlying {@link Cache} is never served. Only
+ * spans of {@link SimpleCache} and {@link PackedCache}, which identify their cached data, are held.
+ *
+ * <p>A span is loaded into memory in the background once it has been read more than once, so that
+ * data that's only read once doesn't displace data that's read repeatedly, and reads don't wait for
+ * whole spans to be loaded. Entries are evicted in least recently used order once the total size of
+ * the held data exceeds the budget.
+ *
+ * <p>An instance can be shared by {@link CacheDataSource} instances on different threads.
+ */
+public final class MemorySpanCache {
+
+  private static final String TAG = "MemorySpanCache";
+
+  /** The maximum number of spans read once whose next read loads them into memory. */
+  private static final int MAX_MISSED_SPAN_COUNT = 1024;
+
+  private final long maxBytes;
+  private final long maxSpanBytes;
+  private final Executor executor;
+  private final LinkedHashMap<CacheSpanKey, Entry> entries;
+  private final LinkedHashMap<CacheSpanKey, Long> missedDataIds;
+  private final HashSet<CacheSpanKey> loadingSpanKeys;
+
+  private long bytes;
+
+  /**
+   * Creates an instance that holds spans of up to a quarter of {@code maxBytes}.
+   *
+   * @param maxBytes The maximum total size of the held span data, in bytes.
+   * @param executor The {@link Executor} on which spans are loaded into memory.
+   */
+  public MemorySpanCache(long maxBytes, Executor executor) {
+    this(maxBytes, /* maxSpanBytes= */ maxBytes / 4, executor);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum total size of the held span data, in bytes.
+   * @param maxSpanBytes The maximum length of a span that's held in memory, in bytes. Must not
+   *     exceed {@code maxBytes} or {@link Integer#MAX_VALUE}.
+   * @param executor The {@link Executor} on which spans are loaded into memory.
+   */
+  public MemorySpanCache(long maxBytes, long maxSpanBytes, Executor executor) {
+    checkArgument(maxSpanBytes <= maxBytes && maxSpanBytes <= Integer.MAX_VALUE);
+    this.maxBytes = maxBytes;
+    this.maxSpanBytes = maxSpanBytes;
+    this.executor = executor;
+    entries = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+    missedDataIds =
+        new LinkedHashMap<CacheSpanKey, Long>(
+            /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<CacheSpanKey, Long> eldest) {
+            return size() > MAX_MISSED_SPAN_COUNT;
+          }
+        };
+    loadingSpanKeys = new HashSet<>();
+  }
+
+  /** Returns whether the data of {@code span} can be held in memory. */
+  public boolean isCacheable(CacheSpan span) {
+    return span instanceof SimpleCacheSpan && span.isCached && span.length <= maxSpanBytes;
+  }
+
+  /**
+   * Returns the data of a cached span, or null if it's not held in memory. A returned span becomes
+   * the most recently used. A {@link #isCacheable cacheable} span for which null is returned for
+   * the second time is loaded into memory in the background.
+   *
+   * @param key The cache key of the span.
+   * @param span The cached span.
+   * @return The data of the span, which must not be modified, or null.
+   */
+  @Nullable
+  public byte[] get(String key, CacheSpan span) {
+    if (!isCacheable(span)) {
+      return null;
+    }
+    long dataId = ((SimpleCacheSpan) span).dataId;
+    CacheSpanKey spanKey = new CacheSpanKey(key, span.position);
+    synchronized (this) {
+      @Nullable Entry entry = entries.get(spanKey);
+      if (entry != null) {
+        if (entry.isDataOf(span)) {
+          return entry.data;
+        }
+        // The span has been rewritten since it was loaded.
+        entries.remove(spanKey);
+        bytes -= entry.data.length;
+      }
+      @Nullable Long missedDataId = missedDataIds.get(spanKey);
+      if (missedDataId == null || missedDataId != dataId) {
+        missedDataIds.put(spanKey, dataId);
+        return null;
+      }
+      missedDataIds.remove(spanKey);
+      if (!loadingSpanKeys.add(spanKey)) {
+        return null;
+      }
+    }
+    try {
+      executor.execute(() -> load(key, span, spanKey));
+    } catch (RejectedExecutionException e) {
+      onLoadFinished(spanKey);
+    }
+    return null;
+  }
+
+  /**
+   * Holds the data of a cached span, evicting the least recently used spans if the budget is
+   * exceeded. Does nothing if the span isn't {@link #isCacheable cacheable}.
+   *
+   * @param key The cache key of the span.
+   * @param span The cached span.
+   * @param data The data of the span, which must not be modified after this call.
+   */
+  public synchronized void put(String key, CacheSpan span, byte[] data) {
+    checkArgument(data.length == span.length);
+    if (!isCacheable(span)) {
+      return;
+    }
+    @Nullable
+    Entry previousEntry =
+        entries.put(
+            new CacheSpanKey(key, span.position),
+            new Entry(((SimpleCacheSpan) span).dataId, data));
+    if (previousEntry != null) {
+      bytes -= previousEntry.data.length;
+    }
+    bytes += data.length;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (bytes > maxBytes && iterator.hasNext()) {
+      bytes -= iterator.next().data.length;
+      iterator.remove();
+    }
+  }
+
+  /** Removes the data of all spans of a resource. */
+  public synchronized void removeResource(String key) {
+    Iterator<Map.Entry<CacheSpanKey, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<CacheSpanKey, Entry> entry = iterator.next();
+      if (entry.getKey().key.equals(key)) {
+        bytes -= entry.getValue().data.length;
+        iterator.remove();
+      }
+    }
+  }
+
+  /** Removes the data of all spans. */
+  public synchronized void clear() {
+    entries.clear();
+    missedDataIds.clear();
+    bytes = 0;
+  }
+
+  /** Returns the total size of the held span data, in bytes. */
+  public synchronized long getCachedBytes() {
+    return bytes;
+  }
+
+  private void load(String key, CacheSpan span, CacheSpanKey spanKey) {
+    byte[] data = new byte[(int) span.length];
+    try (RandomAccessFile file = new RandomAccessFile(Util.castNonNull(span.file), "r")) {
+      file.seek(span.fileOffset);
+      file.readFully(data);
+      // If the span has been removed or rewritten since, the data is held under an id that no
+      // cached span has, and is never returned.
+      put(key, span, data);
+    } catch (IOException e) {
+      // The span has been removed or its file renamed. It's loaded again if it's still read.
+      Log.d(TAG, "Failed to load span into memory", e);
+    } finally {
+      onLoadFinished(spanKey);
+    }
+  }
+
+  private synchronized void onLoadFinished(CacheSpanKey spanKey) {
+    loadingSpanKeys.remove(spanKey);
+  }
+
+  private static final class Entry {
+
+    public final long dataId;
+    public final byte[] data;
+
+    public Entry(long dataId, byte[] data) {
+      this.dataId = dataId;
+      this.data = data;
+    }
+
+    public boolean isDataOf(CacheSpan span) {
+      return span.length == data.length && ((SimpleCacheSpan) span).dataId == dataId;
+    }
+  }
+}
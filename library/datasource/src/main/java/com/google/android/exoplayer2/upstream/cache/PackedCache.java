@@ -0,0 +1,1146 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static java.lang.Math.max;
+
+import android.os.ConditionVariable;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * A {@link Cache} implementation that appends cached spans to large pack files, rather than storing
+ * each span in its own file like {@link SimpleCache}.
+ *
+ * <p>Content cached as many small spans, such as the segments of adaptive streams, otherwise
+ * creates one file per span, which makes initialization, eviction and reads bound by file system
+ * operations. This cache preallocates a small number of pack files and keeps an index of the spans
+ * they contain. Spans are written to a temporary file by {@link CacheDataSink} as usual, and
+ * appended to the current pack file when they're committed. Space for the span is reserved with the
+ * cache lock held, but the data is copied without it. Cached spans have their {@link
+ * CacheSpan#file} set to the pack file and their {@link CacheSpan#fileOffset} set to the offset of
+ * their data in it, which {@link CacheDataSource} reads from.
+ *
+ * <p>Added and removed spans are appended to a span journal. The journal is merged into the span
+ * index when it has more records than the index has spans, and when the cache is released.
+ *
+ * <p>Removing spans leaves unused space in pack files. When less than half of the data written to a
+ * pack file is still cached, the remaining spans are copied to the current pack file by the next
+ * call that modifies the cache, after it has released the cache lock. The cached spans are then
+ * replaced by their copies, which are reported to listeners and the evictor through {@link
+ * Cache.Listener#onSpanMoved}, so that the eviction order isn't changed. The pack file is deleted
+ * once all cached spans obtained from {@link #startReadWrite} that refer to it have been released
+ * with {@link #releaseCachedSpan}.
+ *
+ * <p>Only one instance of PackedCache or {@link SimpleCache} is allowed for a given directory at a
+ * given time.
+ */
+public final class PackedCache implements Cache {
+
+  /** The default size of pack files, in bytes. */
+  public static final long DEFAULT_PACK_SIZE = 64 * 1024 * 1024;
+
+  private static final String TAG = "PackedCache";
+
+  private static final String PACK_DIRECTORY_NAME = "packs";
+  private static final String TEMP_DIRECTORY_NAME = "tmp";
+  private static final String PACK_FILE_SUFFIX = ".pack";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final String SPAN_INDEX_FILE_NAME = "packed_spans.idx";
+  private static final String SPAN_JOURNAL_FILE_NAME = "packed_spans.journal";
+  private static final int SPAN_INDEX_VERSION = 1;
+  private static final int SPAN_JOURNAL_VERSION = 1;
+  private static final int SPAN_JOURNAL_RECORD_ADD = 1;
+  private static final int SPAN_JOURNAL_RECORD_REMOVE = 2;
+  /** The number of journal records below which the journal is never merged into the index. */
+  private static final int MIN_SPAN_JOURNAL_RECORDS_TO_MERGE = 1024;
+
+  private final File cacheDir;
+  private final File packDir;
+  private final File tempDir;
+  private final long packSize;
+  private final CacheEvictor evictor;
+  private final CachedContentIndex contentIndex;
+  private final AtomicFile spanIndexFile;
+  private final File spanJournalFile;
+  private final CacheListeners listeners;
+  private final HashMap<File, Pack> packs;
+  private final ArrayList<Pack> packsToCompact;
+  private final boolean touchCacheSpans;
+
+  private long uid;
+  private long totalSpace;
+  private int spanCount;
+  private int nextPackId;
+  private int nextTempFileId;
+  @Nullable private Pack currentPack;
+  @Nullable private DataOutputStream spanJournalOutput;
+  private int spanJournalRecordCount;
+  private boolean released;
+  private @MonotonicNonNull CacheException initializationException;
+
+  /**
+   * Constructs the cache, using pack files of {@link #DEFAULT_PACK_SIZE}. The cache will delete
+   * any unrecognized files from its pack and temporary file directories.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which the content index is stored.
+   */
+  public PackedCache(File cacheDir, CacheEvictor evictor, DatabaseProvider databaseProvider) {
+    this(cacheDir, evictor, databaseProvider, DEFAULT_PACK_SIZE);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from its pack and temporary
+   * file directories.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which the content index is stored.
+   * @param packSize The size of pack files, in bytes. Spans larger than this are stored in a pack
+   *     file of their own.
+   */
+  public PackedCache(
+      File cacheDir, CacheEvictor evictor, DatabaseProvider databaseProvider, long packSize) {
+    Assertions.checkArgument(packSize > 0);
+    if (!SimpleCache.lockFolder(cacheDir)) {
+      throw new IllegalStateException("Another cache instance uses the folder: " + cacheDir);
+    }
+
+    this.cacheDir = cacheDir;
+    this.evictor = evictor;
+    this.packSize = packSize;
+    packDir = new File(cacheDir, PACK_DIRECTORY_NAME);
+    tempDir = new File(cacheDir, TEMP_DIRECTORY_NAME);
+    contentIndex = new CachedContentIndex(databaseProvider);
+    spanIndexFile = new AtomicFile(new File(cacheDir, SPAN_INDEX_FILE_NAME));
+    spanJournalFile = new File(cacheDir, SPAN_JOURNAL_FILE_NAME);
+    listeners = new CacheListeners(this, evictor);
+    packs = new HashMap<>();
+    packsToCompact = new ArrayList<>();
+    touchCacheSpans = evictor.requiresCacheSpanTouches();
+    uid = UID_UNSET;
+
+    // Start cache initialization.
+    final ConditionVariable conditionVariable = new ConditionVariable();
+    new Thread("ExoPlayer:PackedCacheInit") {
+      @Override
+      public void run() {
+        synchronized (PackedCache.this) {
+          conditionVariable.open();
+          initialize();
+          PackedCache.this.evictor.onCacheInitialized();
+        }
+      }
+    }.start();
+    conditionVariable.block();
+  }
+
+  /**
+   * Checks whether the cache was initialized successfully.
+   *
+   * @throws CacheException If an error occurred during initialization.
+   */
+  public synchronized void checkInitialization() throws CacheException {
+    if (initializationException != null) {
+      throw initializationException;
+    }
+  }
+
+  @Override
+  public synchronized long getUid() {
+    return uid;
+  }
+
+  @Override
+  public synchronized void release() {
+    if (released) {
+      return;
+    }
+    listeners.clear();
+    try {
+      if (initializationException == null) {
+        contentIndex.store();
+        // Also persists the last touch timestamps, which aren't journaled.
+        writeSpanIndex();
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Storing index file failed", e);
+    } finally {
+      // Pack files that are still read are deleted when the cache is next initialized.
+      closeSpanJournal();
+      SimpleCache.unlockFolder(cacheDir);
+      released = true;
+    }
+  }
+
+  @Override
+  public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    Assertions.checkState(!released);
+    listeners.add(key, listener);
+    return getCachedSpans(key);
+  }
+
+  @Override
+  public synchronized void removeListener(String key, Listener listener) {
+    if (released) {
+      return;
+    }
+    listeners.remove(key, listener);
+  }
+
+  @Override
+  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+    Assertions.checkState(!released);
+    return contentIndex.getCachedSpans(key);
+  }
+
+  @Override
+  public synchronized Set<String> getKeys() {
+    Assertions.checkState(!released);
+    return new HashSet<>(contentIndex.getKeys());
+  }
+
+  @Override
+  public synchronized long getCacheSpace() {
+    Assertions.checkState(!released);
+    return totalSpace;
+  }
+
+  @Override
+  public synchronized CacheSpan startReadWrite(String key, long position, long length)
+      throws InterruptedException, CacheException {
+    Assertions.checkState(!released);
+    checkInitialization();
+
+    while (true) {
+      CacheSpan span = startReadWriteNonBlocking(key, position, length);
+      if (span != null) {
+        return span;
+      } else {
+        // Lock not available. We'll be woken up when a span is added, or when a locked span is
+        // released.
+        wait();
+      }
+    }
+  }
+
+  @Override
+  @Nullable
+  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position, long length)
+      throws CacheException {
+    Assertions.checkState(!released);
+    checkInitialization();
+
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    SimpleCacheSpan span =
+        cachedContent != null
+            ? cachedContent.getSpan(position, length)
+            : SimpleCacheSpan.createHole(key, position, length);
+
+    if (span.isCached) {
+      // Read case. The pack file is kept until the span is released.
+      Assertions.checkNotNull(packs.get(span.file)).readerCount++;
+      return touchSpan(key, span);
+    }
+
+    cachedContent = contentIndex.getOrAdd(key);
+    if (cachedContent.lockRange(position, span.length)) {
+      // Write case.
+      return span;
+    }
+
+    // Lock not available.
+    return null;
+  }
+
+  @Override
+  public File startFile(String key, long position, long length) throws CacheException {
+    File file;
+    synchronized (this) {
+      Assertions.checkState(!released);
+      checkInitialization();
+
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(key));
+      Assertions.checkState(cachedContent.isFullyLocked(position, length));
+      if (!tempDir.exists()) {
+        SimpleCache.createCacheDirectories(tempDir);
+      }
+      evictor.onStartFile(this, key, position, length);
+      file =
+          new File(
+              tempDir,
+              cachedContent.id + "." + position + "." + nextTempFileId++ + TEMP_FILE_SUFFIX);
+    }
+    // The evictor may have removed spans.
+    compactPendingPacks();
+    return file;
+  }
+
+  @Override
+  public void commitFile(File file, long length) throws CacheException {
+    String key;
+    long position;
+    Pack pack;
+    long fileOffset;
+    synchronized (this) {
+      Assertions.checkState(!released);
+      if (!file.exists()) {
+        return;
+      }
+      if (length == 0) {
+        file.delete();
+        return;
+      }
+
+      String[] nameParts = Util.split(file.getName(), "\\.");
+      key = Assertions.checkNotNull(contentIndex.getKeyForId(Integer.parseInt(nameParts[0])));
+      position = Long.parseLong(nameParts[1]);
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(key));
+      Assertions.checkState(cachedContent.isFullyLocked(position, length));
+
+      // Check if the span conflicts with the set content length
+      long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
+      if (contentLength != C.LENGTH_UNSET) {
+        Assertions.checkState((position + length) <= contentLength);
+      }
+
+      try {
+        pack = getPackForAppend(length);
+      } catch (IOException e) {
+        file.delete();
+        throw new CacheException(e);
+      }
+      fileOffset = reserveAppend(pack, length);
+    }
+
+    @Nullable IOException copyException = null;
+    try (FileInputStream inputStream = new FileInputStream(file)) {
+      copyToPack(inputStream.getChannel(), /* position= */ 0, length, pack, fileOffset);
+    } catch (IOException e) {
+      copyException = e;
+    } finally {
+      file.delete();
+    }
+
+    synchronized (this) {
+      if (copyException == null && !released) {
+        pack.liveBytes += length;
+        addSpan(
+            SimpleCacheSpan.createPackedEntry(
+                key, position, length, System.currentTimeMillis(), pack.file, fileOffset));
+      }
+      finishAppend(pack);
+      if (copyException != null) {
+        throw new CacheException(copyException);
+      }
+      if (released) {
+        return;
+      }
+      try {
+        storeIndex();
+      } catch (IOException e) {
+        throw new CacheException(e);
+      }
+      notifyAll();
+    }
+    compactPendingPacks();
+  }
+
+  @Override
+  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
+    Assertions.checkState(!released);
+    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
+    cachedContent.unlockRange(holeSpan.position);
+    contentIndex.maybeRemove(cachedContent.key);
+    notifyAll();
+  }
+
+  @Override
+  public synchronized void releaseCachedSpan(CacheSpan cachedSpan) {
+    if (released) {
+      // A new instance may already have deleted the pack file and reused its name.
+      return;
+    }
+    @Nullable Pack pack = packs.get(cachedSpan.file);
+    if (pack != null && pack.readerCount > 0) {
+      pack.readerCount--;
+      maybeDeleteRetiredPack(pack);
+    }
+  }
+
+  @Override
+  public void removeResource(String key) {
+    synchronized (this) {
+      Assertions.checkState(!released);
+      for (CacheSpan span : contentIndex.getCachedSpans(key)) {
+        removeSpanInternal(span);
+      }
+      maybeStoreIndex();
+    }
+    compactPendingPacks();
+  }
+
+  @Override
+  public void removeSpan(CacheSpan span) {
+    synchronized (this) {
+      Assertions.checkState(!released);
+      removeSpanInternal(span);
+      maybeStoreIndex();
+    }
+    compactPendingPacks();
+  }
+
+  @Override
+  public synchronized boolean isCached(String key, long position, long length) {
+    Assertions.checkState(!released);
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
+  }
+
+  @Override
+  public synchronized long getCachedLength(String key, long position, long length) {
+    Assertions.checkState(!released);
+    return contentIndex.getCachedLength(key, position, length);
+  }
+
+  @Override
+  public synchronized long getCachedBytes(String key, long position, long length) {
+    Assertions.checkState(!released);
+    return contentIndex.getCachedBytes(key, position, length);
+  }
+
+  @Override
+  public synchronized void applyContentMetadataMutations(
+      String key, ContentMetadataMutations mutations) throws CacheException {
+    Assertions.checkState(!released);
+    checkInitialization();
+
+    contentIndex.applyContentMetadataMutations(key, mutations);
+    try {
+      contentIndex.store();
+    } catch (IOException e) {
+      throw new CacheException(e);
+    }
+  }
+
+  @Override
+  public synchronized ContentMetadata getContentMetadata(String key) {
+    Assertions.checkState(!released);
+    return contentIndex.getContentMetadata(key);
+  }
+
+  /** Ensures that the cache's in-memory representation has been initialized. */
+  private void initialize() {
+    @Nullable File[] files;
+    try {
+      SimpleCache.createCacheDirectories(cacheDir);
+      SimpleCache.createCacheDirectories(packDir);
+      // Temporary files that weren't committed before the cache was released are unusable.
+      Util.recursiveDelete(tempDir);
+      files = cacheDir.listFiles();
+      if (files == null) {
+        throw new CacheException("Failed to list cache directory files: " + cacheDir);
+      }
+    } catch (CacheException e) {
+      Log.e(TAG, "Failed to initialize cache directories", e);
+      initializationException = e;
+      return;
+    }
+
+    uid = SimpleCache.loadUid(files);
+    try {
+      if (uid == UID_UNSET) {
+        uid = SimpleCache.createUid(cacheDir);
+      }
+      contentIndex.initialize(uid);
+      loadPacks();
+    } catch (IOException e) {
+      String message = "Failed to initialize cache indices: " + cacheDir;
+      Log.e(TAG, message, e);
+      initializationException = new CacheException(message, e);
+      return;
+    }
+
+    contentIndex.removeEmpty();
+    try {
+      contentIndex.store();
+      // Merges the journal replayed by loadPacks() into the index, and starts a new journal.
+      writeSpanIndex();
+    } catch (IOException e) {
+      Log.e(TAG, "Storing index file failed", e);
+    }
+  }
+
+  /**
+   * Loads the span index, replays the span journal and loads the pack files they refer to. Spans in
+   * missing pack files, and pack files without spans, are removed.
+   */
+  @WorkerThread
+  private void loadPacks() throws IOException {
+    @Nullable File[] packFiles = packDir.listFiles();
+    if (packFiles == null) {
+      throw new IOException("Failed to list pack files: " + packDir);
+    }
+    HashMap<Integer, Pack> packsById = new HashMap<>();
+    for (File packFile : packFiles) {
+      int packId = parsePackId(packFile);
+      if (packId == C.INDEX_UNSET) {
+        Util.recursiveDelete(packFile);
+      } else {
+        packsById.put(packId, new Pack(packId, packFile, packFile.length()));
+        nextPackId = max(nextPackId, packId + 1);
+      }
+    }
+
+    // Entries by content id and position, so that journal records replace index entries.
+    HashMap<Integer, HashMap<Long, SpanEntry>> entries = new HashMap<>();
+    if (spanIndexFile.exists()) {
+      try {
+        readSpanIndex(entries);
+        readSpanJournal(entries);
+      } catch (IOException e) {
+        // The pack files can't be interpreted without the span index, so they're deleted below.
+        Log.e(TAG, "Failed to read span index, discarding cached data", e);
+        entries.clear();
+      }
+    }
+    for (HashMap<Long, SpanEntry> entriesForContent : entries.values()) {
+      for (SpanEntry entry : entriesForContent.values()) {
+        @Nullable String key = contentIndex.getKeyForId(entry.contentId);
+        @Nullable Pack pack = packsById.get(entry.packId);
+        if (key != null
+            && pack != null
+            && entry.length > 0
+            && entry.fileOffset >= 0
+            && entry.fileOffset + entry.length <= pack.capacity) {
+          packs.put(pack.file, pack);
+          pack.liveBytes += entry.length;
+          pack.writePosition = max(pack.writePosition, entry.fileOffset + entry.length);
+          addSpan(
+              SimpleCacheSpan.createPackedEntry(
+                  key,
+                  entry.position,
+                  entry.length,
+                  entry.lastTouchTimestamp,
+                  pack.file,
+                  entry.fileOffset));
+        }
+      }
+    }
+
+    for (File packFile : packFiles) {
+      @Nullable Pack pack = packs.get(packFile);
+      if (pack == null) {
+        packFile.delete();
+      } else if (currentPack == null || pack.id > currentPack.id) {
+        // Continue appending to the most recently created pack file.
+        currentPack = pack;
+      }
+    }
+    for (Pack pack : packs.values()) {
+      maybeScheduleCompaction(pack);
+    }
+  }
+
+  @WorkerThread
+  private void readSpanIndex(HashMap<Integer, HashMap<Long, SpanEntry>> entries)
+      throws IOException {
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(spanIndexFile.openRead()))) {
+      int version = input.readInt();
+      if (version != SPAN_INDEX_VERSION) {
+        throw new IOException("Unsupported span index version: " + version);
+      }
+      int count = input.readInt();
+      if (count < 0) {
+        throw new IOException("Invalid span count: " + count);
+      }
+      for (int i = 0; i < count; i++) {
+        putSpanEntry(entries, readSpanEntry(input));
+      }
+    }
+  }
+
+  @WorkerThread
+  private void readSpanJournal(HashMap<Integer, HashMap<Long, SpanEntry>> entries)
+      throws IOException {
+    if (!spanJournalFile.exists()) {
+      return;
+    }
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(spanJournalFile)))) {
+      int version = input.readInt();
+      if (version != SPAN_JOURNAL_VERSION) {
+        throw new IOException("Unsupported span journal version: " + version);
+      }
+      while (true) {
+        int recordType = input.read();
+        if (recordType == -1) {
+          break;
+        } else if (recordType == SPAN_JOURNAL_RECORD_ADD) {
+          putSpanEntry(entries, readSpanEntry(input));
+        } else if (recordType == SPAN_JOURNAL_RECORD_REMOVE) {
+          int contentId = input.readInt();
+          long position = input.readLong();
+          @Nullable HashMap<Long, SpanEntry> entriesForContent = entries.get(contentId);
+          if (entriesForContent != null) {
+            entriesForContent.remove(position);
+          }
+        } else {
+          throw new IOException("Unsupported span journal record: " + recordType);
+        }
+      }
+    } catch (EOFException e) {
+      // The last record was only partially written, for example because the process was killed
+      // while appending it. The records before it are valid.
+    }
+  }
+
+  /** Writes all spans to the span index, and starts a new, empty span journal. */
+  private void writeSpanIndex() throws IOException {
+    int spanCount = 0;
+    for (CachedContent cachedContent : contentIndex.getAll()) {
+      spanCount += cachedContent.getSpans().size();
+    }
+    OutputStream outputStream = spanIndexFile.startWrite();
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+    output.writeInt(SPAN_INDEX_VERSION);
+    output.writeInt(spanCount);
+    for (CachedContent cachedContent : contentIndex.getAll()) {
+      for (SimpleCacheSpan span : cachedContent.getSpans()) {
+        writeSpanEntry(output, cachedContent.id, span);
+      }
+    }
+    output.flush();
+    spanIndexFile.endWrite(outputStream);
+
+    // If the process is killed before the journal is reset, replaying the old journal over the new
+    // index yields the same spans.
+    closeSpanJournal();
+    DataOutputStream journalOutput =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spanJournalFile)));
+    journalOutput.writeInt(SPAN_JOURNAL_VERSION);
+    journalOutput.flush();
+    spanJournalOutput = journalOutput;
+    spanJournalRecordCount = 0;
+  }
+
+  private void closeSpanJournal() {
+    Util.closeQuietly(spanJournalOutput);
+    spanJournalOutput = null;
+  }
+
+  private void appendSpanAdded(int contentId, SimpleCacheSpan span) {
+    @Nullable DataOutputStream output = spanJournalOutput;
+    if (output == null) {
+      // The spans are being loaded, or appending failed and the index will be rewritten.
+      return;
+    }
+    try {
+      output.writeByte(SPAN_JOURNAL_RECORD_ADD);
+      writeSpanEntry(output, contentId, span);
+      spanJournalRecordCount++;
+    } catch (IOException e) {
+      Log.w(TAG, "Appending to span journal failed", e);
+      closeSpanJournal();
+    }
+  }
+
+  private void appendSpanRemoved(int contentId, long position) {
+    @Nullable DataOutputStream output = spanJournalOutput;
+    if (output == null) {
+      return;
+    }
+    try {
+      output.writeByte(SPAN_JOURNAL_RECORD_REMOVE);
+      output.writeInt(contentId);
+      output.writeLong(position);
+      spanJournalRecordCount++;
+    } catch (IOException e) {
+      Log.w(TAG, "Appending to span journal failed", e);
+      closeSpanJournal();
+    }
+  }
+
+  /**
+   * Stores the content index and the span changes appended to the span journal. The journal is
+   * merged into the span index if it has grown larger than the index, or if appending to it failed.
+   */
+  private void storeIndex() throws IOException {
+    contentIndex.store();
+    @Nullable DataOutputStream output = spanJournalOutput;
+    if (output != null
+        && spanJournalRecordCount <= max(MIN_SPAN_JOURNAL_RECORDS_TO_MERGE, spanCount)) {
+      try {
+        output.flush();
+        return;
+      } catch (IOException e) {
+        Log.w(TAG, "Appending to span journal failed", e);
+      }
+    }
+    writeSpanIndex();
+  }
+
+  private void maybeStoreIndex() {
+    try {
+      storeIndex();
+    } catch (IOException e) {
+      // The removed spans will be restored if the cache is initialized before the index is stored
+      // successfully.
+      Log.w(TAG, "Storing index file failed", e);
+    }
+  }
+
+  /**
+   * Touches a cache span, returning the updated result. If the evictor does not require cache spans
+   * to be touched, then this method does nothing and the span is returned without modification.
+   *
+   * @param key The key of the span being touched.
+   * @param span The span being touched.
+   * @return The updated span.
+   */
+  private SimpleCacheSpan touchSpan(String key, SimpleCacheSpan span) {
+    if (!touchCacheSpans) {
+      return span;
+    }
+    // The new timestamp is persisted the next time the span index is written.
+    SimpleCacheSpan newSpan =
+        Assertions.checkNotNull(contentIndex.get(key))
+            .setLastTouchTimestamp(span, System.currentTimeMillis(), /* updateFile= */ false);
+    listeners.notifySpanTouched(span, newSpan);
+    return newSpan;
+  }
+
+  /**
+   * Adds a cached span to the in-memory representation and the span journal.
+   *
+   * @param span The span to be added.
+   */
+  private void addSpan(SimpleCacheSpan span) {
+    CachedContent cachedContent = contentIndex.getOrAdd(span.key);
+    cachedContent.addSpan(span);
+    totalSpace += span.length;
+    spanCount++;
+    appendSpanAdded(cachedContent.id, span);
+    listeners.notifySpanAdded(span);
+  }
+
+  private void removeSpanInternal(CacheSpan span) {
+    @Nullable CachedContent cachedContent = contentIndex.get(span.key);
+    if (cachedContent == null) {
+      return;
+    }
+    // The span may have been moved to another pack since the caller obtained it.
+    SimpleCacheSpan removedSpan = cachedContent.getSpan(span.position, span.length);
+    if (!removedSpan.isCached
+        || removedSpan.position != span.position
+        || !cachedContent.removeSpan(removedSpan, /* deleteFile= */ false)) {
+      return;
+    }
+    totalSpace -= removedSpan.length;
+    spanCount--;
+    appendSpanRemoved(cachedContent.id, removedSpan.position);
+    contentIndex.maybeRemove(cachedContent.key);
+    listeners.notifySpanRemoved(removedSpan);
+    @Nullable Pack pack = packs.get(removedSpan.file);
+    if (pack != null) {
+      pack.liveBytes -= removedSpan.length;
+      maybeScheduleCompaction(pack);
+    }
+  }
+
+  /**
+   * Returns a pack with room for {@code length} bytes, creating a new current pack if the current
+   * pack is full.
+   */
+  private Pack getPackForAppend(long length) throws IOException {
+    @Nullable Pack previousPack = currentPack;
+    if (previousPack != null && previousPack.writePosition + length <= previousPack.capacity) {
+      return previousPack;
+    }
+    int packId = nextPackId++;
+    File packFile = new File(packDir, packId + PACK_FILE_SUFFIX);
+    long capacity = max(packSize, length);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(packFile, "rw")) {
+      randomAccessFile.setLength(capacity);
+    }
+    Pack pack = new Pack(packId, packFile, capacity);
+    packs.put(packFile, pack);
+    currentPack = pack;
+    if (previousPack != null) {
+      // The previous pack won't be appended to anymore, so it's eligible for compaction.
+      maybeScheduleCompaction(previousPack);
+    }
+    return pack;
+  }
+
+  /**
+   * Reserves room for {@code length} bytes at the end of a pack, which must have room for them.
+   * {@link #finishAppend} must be called once the data has been copied.
+   *
+   * @return The offset of the reserved room in the pack file.
+   */
+  private static long reserveAppend(Pack pack, long length) {
+    long fileOffset = pack.writePosition;
+    pack.writePosition += length;
+    pack.pendingAppendCount++;
+    return fileOffset;
+  }
+
+  /**
+   * Finishes an append started with {@link #reserveAppend}. If the copied data doesn't become a
+   * cached span, the reserved room is left unused.
+   */
+  private void finishAppend(Pack pack) {
+    pack.pendingAppendCount--;
+    maybeScheduleCompaction(pack);
+  }
+
+  /**
+   * Copies data into room reserved in a pack. Must be called without holding the cache lock.
+   *
+   * @param source The channel to read the data from.
+   * @param position The position of the data in {@code source}.
+   * @param length The length of the data.
+   * @param pack The pack to copy the data to.
+   * @param fileOffset The offset in the pack file of the room reserved for the data.
+   */
+  private static void copyToPack(
+      FileChannel source, long position, long length, Pack pack, long fileOffset)
+      throws IOException {
+    source.position(position);
+    try (RandomAccessFile packFile = new RandomAccessFile(pack.file, "rw")) {
+      FileChannel packChannel = packFile.getChannel();
+      long bytesCopied = 0;
+      while (bytesCopied < length) {
+        long bytesTransferred =
+            packChannel.transferFrom(source, fileOffset + bytesCopied, length - bytesCopied);
+        if (bytesTransferred <= 0) {
+          throw new EOFException();
+        }
+        bytesCopied += bytesTransferred;
+      }
+    }
+  }
+
+  /**
+   * Queues a pack for compaction if it's no longer appended to and less than half of the data
+   * written to it is still cached.
+   */
+  private void maybeScheduleCompaction(Pack pack) {
+    if (isCompactable(pack) && !packsToCompact.contains(pack)) {
+      packsToCompact.add(pack);
+    }
+  }
+
+  private boolean isCompactable(Pack pack) {
+    return pack != currentPack
+        && !pack.compacting
+        && !pack.retired
+        && pack.pendingAppendCount == 0
+        && pack.liveBytes * 2 < pack.writePosition;
+  }
+
+  /**
+   * Compacts the packs queued for compaction. The spans are copied without holding the cache lock,
+   * which is only held to reserve room for the copies and to replace the cached spans with them.
+   */
+  private void compactPendingPacks() {
+    if (Thread.holdsLock(this)) {
+      // Called by an evictor or listener callback. The outermost call compacts the packs once it
+      // has released the lock.
+      return;
+    }
+    while (true) {
+      @Nullable Compaction compaction;
+      synchronized (this) {
+        compaction = released ? null : startCompaction();
+      }
+      if (compaction == null) {
+        return;
+      }
+      int copiedSpanCount = 0;
+      try (RandomAccessFile packFile = new RandomAccessFile(compaction.pack.file, "r")) {
+        FileChannel packChannel = packFile.getChannel();
+        while (copiedSpanCount < compaction.spans.size()) {
+          SimpleCacheSpan span = compaction.spans.get(copiedSpanCount);
+          copyToPack(
+              packChannel,
+              span.fileOffset,
+              span.length,
+              compaction.targetPacks.get(copiedSpanCount),
+              compaction.targetFileOffsets[copiedSpanCount]);
+          copiedSpanCount++;
+        }
+      } catch (IOException e) {
+        // The spans that weren't copied stay in the pack, which is compacted again on a later
+        // removal.
+        Log.w(TAG, "Failed to compact pack file: " + compaction.pack.file, e);
+      }
+      synchronized (this) {
+        finishCompaction(compaction, copiedSpanCount);
+      }
+    }
+  }
+
+  /**
+   * Dequeues a pack that's still eligible for compaction and reserves room for copies of its spans,
+   * or returns null if there's no such pack.
+   */
+  @Nullable
+  private Compaction startCompaction() {
+    while (!packsToCompact.isEmpty()) {
+      Pack pack = packsToCompact.remove(packsToCompact.size() - 1);
+      if (!isCompactable(pack)) {
+        continue;
+      }
+      ArrayList<SimpleCacheSpan> spans = new ArrayList<>();
+      if (pack.liveBytes > 0) {
+        // Packs hold a small number of large spans, so scanning all spans is cheap relative to the
+        // copy.
+        for (CachedContent cachedContent : contentIndex.getAll()) {
+          for (SimpleCacheSpan span : cachedContent.getSpans()) {
+            if (pack.file.equals(span.file)) {
+              spans.add(span);
+            }
+          }
+        }
+      }
+      Compaction compaction = new Compaction(pack, spans);
+      try {
+        for (int i = 0; i < spans.size(); i++) {
+          long length = spans.get(i).length;
+          Pack targetPack = getPackForAppend(length);
+          compaction.targetPacks.add(targetPack);
+          compaction.targetFileOffsets[i] = reserveAppend(targetPack, length);
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to compact pack file: " + pack.file, e);
+        for (int i = 0; i < compaction.targetPacks.size(); i++) {
+          finishAppend(compaction.targetPacks.get(i));
+        }
+        continue;
+      }
+      // Keeps the pack file while the spans are copied.
+      pack.compacting = true;
+      pack.readerCount++;
+      return compaction;
+    }
+    return null;
+  }
+
+  /** Replaces the cached spans of a compacted pack with the copies made so far. */
+  private void finishCompaction(Compaction compaction, int copiedSpanCount) {
+    Pack pack = compaction.pack;
+    for (int i = 0; i < compaction.spans.size(); i++) {
+      Pack targetPack = compaction.targetPacks.get(i);
+      if (i < copiedSpanCount && !released) {
+        moveSpan(compaction.spans.get(i), pack, targetPack, compaction.targetFileOffsets[i]);
+      }
+      finishAppend(targetPack);
+    }
+    pack.compacting = false;
+    pack.readerCount--;
+    if (released || copiedSpanCount < compaction.spans.size()) {
+      return;
+    }
+    try {
+      storeIndex();
+    } catch (IOException e) {
+      // The stored span index may still refer to the pack, so it's kept. It's deleted when the
+      // cache is next initialized if it's no longer referenced by then.
+      Log.w(TAG, "Storing index file failed", e);
+      return;
+    }
+    pack.retired = true;
+    maybeDeleteRetiredPack(pack);
+  }
+
+  /**
+   * Replaces a cached span with its copy in another pack, unless the span was removed while it was
+   * copied.
+   */
+  private void moveSpan(SimpleCacheSpan span, Pack pack, Pack targetPack, long fileOffset) {
+    @Nullable CachedContent cachedContent = contentIndex.get(span.key);
+    if (cachedContent == null) {
+      return;
+    }
+    SimpleCacheSpan currentSpan = cachedContent.getSpan(span.position, span.length);
+    if (!currentSpan.isCached
+        || currentSpan.position != span.position
+        || !pack.file.equals(currentSpan.file)
+        || currentSpan.fileOffset != span.fileOffset) {
+      return;
+    }
+    SimpleCacheSpan movedSpan = currentSpan.copyWithFileAndFileOffset(targetPack.file, fileOffset);
+    cachedContent.addSpan(movedSpan);
+    pack.liveBytes -= span.length;
+    targetPack.liveBytes += span.length;
+    appendSpanAdded(cachedContent.id, movedSpan);
+    listeners.notifySpanMoved(currentSpan, movedSpan);
+  }
+
+  /** Deletes a pack whose spans have all been moved, once none of its spans are read. */
+  private void maybeDeleteRetiredPack(Pack pack) {
+    if (pack.retired && pack.readerCount == 0) {
+      packs.remove(pack.file);
+      pack.file.delete();
+    }
+  }
+
+  /** Returns the id of a pack file, or {@link C#INDEX_UNSET} if it's not a pack file. */
+  private static int parsePackId(File file) {
+    String fileName = file.getName();
+    if (!fileName.endsWith(PACK_FILE_SUFFIX)) {
+      return C.INDEX_UNSET;
+    }
+    try {
+      return Integer.parseInt(fileName.substring(0, fileName.length() - PACK_FILE_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return C.INDEX_UNSET;
+    }
+  }
+
+  private void writeSpanEntry(DataOutputStream output, int contentId, SimpleCacheSpan span)
+      throws IOException {
+    output.writeInt(contentId);
+    output.writeLong(span.position);
+    output.writeLong(span.length);
+    output.writeLong(span.lastTouchTimestamp);
+    output.writeInt(Assertions.checkNotNull(packs.get(span.file)).id);
+    output.writeLong(span.fileOffset);
+  }
+
+  private static SpanEntry readSpanEntry(DataInputStream input) throws IOException {
+    int contentId = input.readInt();
+    long position = input.readLong();
+    long length = input.readLong();
+    long lastTouchTimestamp = input.readLong();
+    int packId = input.readInt();
+    long fileOffset = input.readLong();
+    return new SpanEntry(contentId, position, length, lastTouchTimestamp, packId, fileOffset);
+  }
+
+  private static void putSpanEntry(
+      HashMap<Integer, HashMap<Long, SpanEntry>> entries, SpanEntry entry) {
+    @Nullable HashMap<Long, SpanEntry> entriesForContent = entries.get(entry.contentId);
+    if (entriesForContent == null) {
+      entriesForContent = new HashMap<>();
+      entries.put(entry.contentId, entriesForContent);
+    }
+    entriesForContent.put(entry.position, entry);
+  }
+
+  /** A preallocated file that spans are appended to. */
+  private static final class Pack {
+
+    public final int id;
+    public final File file;
+    public final long capacity;
+
+    /** The offset in the file at which the next span is appended, including reserved room. */
+    public long writePosition;
+    /** The number of bytes in the file that belong to cached spans. */
+    public long liveBytes;
+    /** The number of appends to the file whose data is being copied. */
+    public int pendingAppendCount;
+    /**
+     * The number of cached spans in the file returned by {@link #startReadWriteNonBlocking} and not
+     * yet released, plus one while the file is compacted.
+     */
+    public int readerCount;
+    /** Whether the spans in the file are being copied to other packs. */
+    public boolean compacting;
+    /** Whether all spans have been moved out of the file, which is deleted once it's not read. */
+    public boolean retired;
+
+    public Pack(int id, File file, long capacity) {
+      this.id = id;
+      this.file = file;
+      this.capacity = capacity;
+    }
+  }
+
+  /** The copies of the spans of a pack being compacted. */
+  private static final class Compaction {
+
+    public final Pack pack;
+    public final ArrayList<SimpleCacheSpan> spans;
+    public final ArrayList<Pack> targetPacks;
+    public final long[] targetFileOffsets;
+
+    public Compaction(Pack pack, ArrayList<SimpleCacheSpan> spans) {
+      this.pack = pack;
+      this.spans = spans;
+      targetPacks = new ArrayList<>(spans.size());
+      targetFileOffsets = new long[spans.size()];
+    }
+  }
+
+  /** An entry of the span index or span journal. */
+  private static final class SpanEntry {
+
+    public final int contentId;
+    public final long position;
+    public final long length;
+    public final long lastTouchTimestamp;
+    public final int packId;
+    public final long fileOffset;
+
+    public SpanEntry(
+        int contentId,
+        long position,
+        long length,
+        long lastTouchTimestamp,
+        int packId,
+        long fileOffset) {
+      this.contentId = contentId;
+      this.position = position;
+      this.length = length;
+      this.lastTouchTimestamp = lastTouchTimestamp;
+      this.packId = packId;
+      this.fileOffset = fileOffset;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import java.util.HashMap;
+
+/**
+ * Limits the size of each resource in a cache, and otherwise delegates eviction to another {@link
+ * CacheEvictor}.
+ *
+ * <p>When the cached data of a resource would exceed the quota, its least recently used spans are
+ * evicted. This prevents a single large resource (for example a long live stream) from evicting all
+ * other resources from the cache.
+ */
+public final class PerKeyQuotaCacheEvictor implements CacheEvictor {
+
+  private final CacheEvictor evictor;
+  private final long maxBytesPerKey;
+  private final HashMap<String, CacheSpanLruList> spansByKey;
+
+  /**
+   * @param evictor The {@link CacheEvictor} that limits the total size of the cache.
+   * @param maxBytesPerKey The maximum size of the cached data of each resource, in bytes.
+   */
+  public PerKeyQuotaCacheEvictor(CacheEvictor evictor, long maxBytesPerKey) {
+    this.evictor = evictor;
+    this.maxBytesPerKey = maxBytesPerKey;
+    spansByKey = new HashMap<>();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    evictor.onCacheInitialized();
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictResource(cache, key, length);
+    }
+    evictor.onStartFile(cache, key, position, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    getOrCreateSpans(span.key).add(span);
+    evictor.onSpanAdded(cache, span);
+    evictResource(cache, span.key, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    @Nullable CacheSpanLruList spans = spansByKey.get(span.key);
+    if (spans != null) {
+      spans.remove(span);
+      if (spans.isEmpty()) {
+        spansByKey.remove(span.key);
+      }
+    }
+    evictor.onSpanRemoved(cache, span);
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    CacheSpanLruList spans = getOrCreateSpans(newSpan.key);
+    spans.remove(oldSpan);
+    spans.add(newSpan);
+    evictor.onSpanTouched(cache, oldSpan, newSpan);
+  }
+
+  @Override
+  public void onSpanMoved(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable CacheSpanLruList spans = spansByKey.get(newSpan.key);
+    if (spans != null) {
+      spans.replace(newSpan);
+    }
+    evictor.onSpanMoved(cache, oldSpan, newSpan);
+  }
+
+  private CacheSpanLruList getOrCreateSpans(String key) {
+    @Nullable CacheSpanLruList spans = spansByKey.get(key);
+    if (spans == null) {
+      spans = new CacheSpanLruList();
+      spansByKey.put(key, spans);
+    }
+    return spans;
+  }
+
+  private void evictResource(Cache cache, String key, long requiredSpace) {
+    @Nullable CacheSpanLruList spans = spansByKey.get(key);
+    while (spans != null && spans.getBytes() + requiredSpace > maxBytesPerKey) {
+      @Nullable CacheSpan span = spans.getLeastRecentlyUsed();
+      if (span == null) {
+        break;
+      }
+      cache.removeSpan(span);
+      spans = spansByKey.get(key);
+    }
+  }
+}
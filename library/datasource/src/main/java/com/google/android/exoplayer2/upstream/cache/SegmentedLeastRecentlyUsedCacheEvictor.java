@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+
+/**
+ * Evicts cache files using a segmented least recently used policy.
+ *
+ * <p>Spans are added to a probationary segment, and are promoted to a protected segment when
+ * they're read again. The protected segment is limited to a fraction of the cache size, and spans
+ * that don't fit in it are demoted back to the probationary segment as its most recently used
+ * spans. Spans are evicted from the probationary segment first, in least recently used order, so
+ * content that's read once (for example during a scan through a long recording) doesn't evict
+ * content that's read repeatedly.
+ *
+ * <p>Adding, touching and removing spans take constant time.
+ */
+public final class SegmentedLeastRecentlyUsedCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache size that's reserved for the protected segment. */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final CacheSpanLruList probationary;
+  private final CacheSpanLruList protectedSpans;
+
+  /**
+   * Creates an instance that reserves {@link #DEFAULT_PROTECTED_FRACTION} of the cache for the
+   * protected segment.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_PROTECTED_FRACTION);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param protectedFraction The fraction of the cache size that's reserved for spans that have
+   *     been read more than once. Must be in the range [0, 1].
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(long maxBytes, float protectedFraction) {
+    checkArgument(protectedFraction >= 0 && protectedFraction <= 1);
+    this.maxBytes = maxBytes;
+    this.maxProtectedBytes = (long) (maxBytes * protectedFraction);
+    probationary = new CacheSpanLruList();
+    protectedSpans = new CacheSpanLruList();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    probationary.add(span);
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (probationary.remove(span) == null) {
+      protectedSpans.remove(span);
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    if (probationary.remove(oldSpan) == null && protectedSpans.remove(oldSpan) == null) {
+      // The span isn't known, so treat it as newly added.
+      onSpanAdded(cache, newSpan);
+      return;
+    }
+    protectedSpans.add(newSpan);
+    while (protectedSpans.getBytes() > maxProtectedBytes) {
+      @Nullable CacheSpan demotedSpan = protectedSpans.getLeastRecentlyUsed();
+      if (demotedSpan == null) {
+        break;
+      }
+      protectedSpans.remove(demotedSpan);
+      probationary.addAsMostRecentlyUsed(demotedSpan);
+    }
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanMoved(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    // The span keeps its segment and recency, since it hasn't been read.
+    if (!probationary.replace(newSpan)) {
+      protectedSpans.replace(newSpan);
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (probationary.getBytes() + protectedSpans.getBytes() + requiredSpace > maxBytes) {
+      @Nullable CacheSpan span = probationary.getLeastRecentlyUsed();
+      if (span == null) {
+        span = protectedSpans.getLeastRecentlyUsed();
+      }
+      if (span == null) {
+        break;
+      }
+      cache.removeSpan(span);
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.upstream.cache;
 
 import android.os.ConditionVariable;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import com.google.android.exoplayer2.C;
@@ -28,18 +29,30 @@ import java.io.File;
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
  * A {@link Cache} implementation that maintains an in-memory representation.
  *
+ * <p>Methods that modify the cache are serialized. Span and metadata queries ({@link
+ * #getCachedSpans}, {@link #isCached}, {@link #getCachedLength}, {@link #getCachedBytes}, {@link
+ * #getContentMetadata}, {@link #getKeys} and {@link #getCacheSpace}) don't take the cache lock, so
+ * they aren't blocked by concurrent writes, such as commits storing the index. {@link
+ * #startReadWrite} only waits for changes to the requested key.
+ *
+ * <p>The spans are written to a span index, to which added and removed spans are appended between
+ * the times it's rewritten. The next instance reads them from it instead of listing the cache
+ * directories, and checks the spans of a key against their files before they're first returned for
+ * the key. See {@link #getInitializationMetrics()}.
+ *
  * <p>Only one instance of SimpleCache is allowed for a given directory at a given time.
  *
  * <p>To delete a SimpleCache, use {@link #delete(File, DatabaseProvider)} rather than deleting the
@@ -58,6 +71,8 @@ public final class SimpleCache implements Cache {
   private static final int SUBDIRECTORY_COUNT = 10;
 
   private static final String UID_FILE_SUFFIX = ".uid";
+  /** The number of locks between which threads blocked in {@link #startReadWrite} are spread. */
+  private static final int KEY_WAIT_STRIPE_COUNT = 16;
 
   private static final HashSet<File> lockedCacheDirs = new HashSet<>();
 
@@ -65,14 +80,22 @@ public final class SimpleCache implements Cache {
   private final CacheEvictor evictor;
   private final CachedContentIndex contentIndex;
   @Nullable private final CacheFileMetadataIndex fileIndex;
-  private final HashMap<String, ArrayList<Listener>> listeners;
+  private final CacheSpanIndex spanIndex;
+  private final CacheListeners listeners;
   private final Random random;
   private final boolean touchCacheSpans;
-
-  private long uid;
-  private long totalSpace;
-  private boolean released;
+  private final KeyWaitStripe[] keyWaitStripes;
+  private final Set<String> unverifiedKeys;
+  private final CacheStatistics statistics;
+
+  private volatile long uid;
+  private volatile long totalSpace;
+  private volatile boolean initialized;
+  private volatile boolean released;
   private @MonotonicNonNull CacheException initializationException;
+  private @MonotonicNonNull InitializationMetrics initializationMetrics;
+  private boolean loadedFromSpanIndex;
+  private boolean isEvicting;
 
   /**
    * Returns whether {@code cacheFolder} is locked by a {@link SimpleCache} instance. To unlock the
@@ -124,6 +147,29 @@ public final class SimpleCache implements Cache {
     Util.recursiveDelete(cacheDir);
   }
 
+  /**
+   * Creates a cache whose index of cached content is stored as an append-only journal in the cache
+   * directory, rather than in the database. Storing the journal, which happens whenever a span is
+   * committed, costs time proportional to the changes since it was last stored rather than to the
+   * number of cached resources. An existing index in the database is migrated to the journal. The
+   * cache will delete any unrecognized files from the directory. Hence the directory cannot be used
+   * to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which the cache file metadata is stored.
+   * @return The cache.
+   */
+  public static SimpleCache createWithJournalIndex(
+      File cacheDir, CacheEvictor evictor, DatabaseProvider databaseProvider) {
+    return new SimpleCache(
+        cacheDir,
+        evictor,
+        CachedContentIndex.createWithJournalStorage(cacheDir, databaseProvider),
+        new CacheFileMetadataIndex(databaseProvider));
+  }
+
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
    * the directory cannot be used to store other files.
@@ -250,12 +296,21 @@ public final class SimpleCache implements Cache {
     }
 
     this.cacheDir = cacheDir;
-    this.evictor = evictor;
+    // Spans that the evictor removes are recorded as evictions.
+    this.evictor = new EvictionRecordingEvictor(evictor);
     this.contentIndex = contentIndex;
     this.fileIndex = fileIndex;
-    listeners = new HashMap<>();
+    spanIndex = new CacheSpanIndex(cacheDir);
+    listeners = new CacheListeners(this, this.evictor);
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    keyWaitStripes = new KeyWaitStripe[KEY_WAIT_STRIPE_COUNT];
+    for (int i = 0; i < KEY_WAIT_STRIPE_COUNT; i++) {
+      keyWaitStripes[i] = new KeyWaitStripe();
+    }
+    // Concurrent, so that queries can check whether a key's spans need verifying without the lock.
+    unverifiedKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    statistics = new CacheStatistics();
     uid = UID_UNSET;
 
     // Start cache initialization.
@@ -265,8 +320,16 @@ public final class SimpleCache implements Cache {
       public void run() {
         synchronized (SimpleCache.this) {
           conditionVariable.open();
+          long startTimeMs = SystemClock.elapsedRealtime();
           initialize();
           SimpleCache.this.evictor.onCacheInitialized();
+          initializationMetrics =
+              new InitializationMetrics(
+                  loadedFromSpanIndex,
+                  getSpanCount(),
+                  /* durationMs= */ SystemClock.elapsedRealtime() - startTimeMs);
+          statistics.onInitialized(initializationMetrics.durationMs);
+          initialized = true;
         }
       }
     }.start();
@@ -284,8 +347,27 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Returns metrics describing the initialization of the cache, blocking until it has completed.
+   */
+  public InitializationMetrics getInitializationMetrics() {
+    blockUntilInitialized();
+    return Assertions.checkNotNull(initializationMetrics);
+  }
+
+  /**
+   * Returns the statistics of the cache. Evictions, stores of the cache index and the
+   * initialization are recorded by the cache. Hits, misses and read durations are recorded by
+   * {@link CacheDataSource} instances to which the statistics are passed using {@link
+   * CacheDataSource.Factory#setCacheStatistics}.
+   */
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
   @Override
-  public synchronized long getUid() {
+  public long getUid() {
+    blockUntilInitialized();
     return uid;
   }
 
@@ -297,10 +379,15 @@ public final class SimpleCache implements Cache {
     listeners.clear();
     removeStaleSpans();
     try {
-      contentIndex.store();
+      storeContentIndex();
+      if (initializationException == null) {
+        // Merges the span journal, and persists the last touch timestamps, which aren't journaled.
+        spanIndex.write(uid, contentIndex);
+      }
     } catch (IOException e) {
       Log.e(TAG, "Storing index file failed", e);
     } finally {
+      spanIndex.closeJournal();
       unlockFolder(cacheDir);
       released = true;
     }
@@ -309,14 +396,7 @@ public final class SimpleCache implements Cache {
   @Override
   public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
     Assertions.checkState(!released);
-    Assertions.checkNotNull(key);
-    Assertions.checkNotNull(listener);
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey == null) {
-      listenersForKey = new ArrayList<>();
-      listeners.put(key, listenersForKey);
-    }
-    listenersForKey.add(listener);
+    listeners.add(key, listener);
     return getCachedSpans(key);
   }
 
@@ -325,43 +405,41 @@ public final class SimpleCache implements Cache {
     if (released) {
       return;
     }
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey != null) {
-      listenersForKey.remove(listener);
-      if (listenersForKey.isEmpty()) {
-        listeners.remove(key);
-      }
-    }
+    listeners.remove(key, listener);
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent == null || cachedContent.isEmpty()
-        ? new TreeSet<>()
-        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    blockUntilInitialized();
+    maybeVerifySpans(key);
+    return contentIndex.getCachedSpans(key);
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
+  public Set<String> getKeys() {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return new HashSet<>(contentIndex.getKeys());
   }
 
   @Override
-  public synchronized long getCacheSpace() {
+  public long getCacheSpace() {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return totalSpace;
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position, long length)
+  public CacheSpan startReadWrite(String key, long position, long length)
       throws InterruptedException, CacheException {
     Assertions.checkState(!released);
     checkInitialization();
 
+    KeyWaitStripe keyWaitStripe = getKeyWaitStripe(key);
     while (true) {
+      // Read the generation before trying, so that changes made after the attempt aren't missed.
+      long generation = keyWaitStripe.getGeneration();
       CacheSpan span = startReadWriteNonBlocking(key, position, length);
       if (span != null) {
         return span;
@@ -371,7 +449,7 @@ public final class SimpleCache implements Cache {
         // 1. A span is added for the requested key that covers the requested position, in which
         //    case a read can be started.
         // 2. The lock for the requested key is released, in which case a write can be started.
-        wait();
+        keyWaitStripe.awaitChange(generation);
       }
     }
   }
@@ -383,6 +461,7 @@ public final class SimpleCache implements Cache {
     Assertions.checkState(!released);
     checkInitialization();
 
+    verifySpans(key);
     SimpleCacheSpan span = getSpan(key, position, length);
 
     if (span.isCached) {
@@ -457,11 +536,11 @@ public final class SimpleCache implements Cache {
     }
     addSpan(span);
     try {
-      contentIndex.store();
+      storeContentIndex();
     } catch (IOException e) {
       throw new CacheException(e);
     }
-    notifyAll();
+    getKeyWaitStripe(span.key).signalChange();
   }
 
   @Override
@@ -470,7 +549,7 @@ public final class SimpleCache implements Cache {
     CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
     cachedContent.unlockRange(holeSpan.position);
     contentIndex.maybeRemove(cachedContent.key);
-    notifyAll();
+    getKeyWaitStripe(holeSpan.key).signalChange();
   }
 
   @Override
@@ -484,47 +563,34 @@ public final class SimpleCache implements Cache {
   @Override
   public synchronized void removeSpan(CacheSpan span) {
     Assertions.checkState(!released);
-    removeSpanInternal(span);
+    if (removeSpanInternal(span) && isEvicting) {
+      statistics.onSpanEvicted(span.key, span.length);
+    }
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
+    maybeVerifySpans(key);
     @Nullable CachedContent cachedContent = contentIndex.get(key);
     return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
+  public long getCachedLength(String key, long position, long length) {
     Assertions.checkState(!released);
-    if (length == C.LENGTH_UNSET) {
-      length = Long.MAX_VALUE;
-    }
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+    blockUntilInitialized();
+    maybeVerifySpans(key);
+    return contentIndex.getCachedLength(key, position, length);
   }
 
   @Override
-  public synchronized long getCachedBytes(String key, long position, long length) {
-    long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
-    if (endPosition < 0) {
-      // The calculation rolled over (length is probably Long.MAX_VALUE).
-      endPosition = Long.MAX_VALUE;
-    }
-    long currentPosition = position;
-    long cachedBytes = 0;
-    while (currentPosition < endPosition) {
-      long maxRemainingLength = endPosition - currentPosition;
-      long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
-      if (blockLength > 0) {
-        cachedBytes += blockLength;
-      } else {
-        // There's a hole of length -blockLength.
-        blockLength = -blockLength;
-      }
-      currentPosition += blockLength;
-    }
-    return cachedBytes;
+  public long getCachedBytes(String key, long position, long length) {
+    Assertions.checkState(!released);
+    blockUntilInitialized();
+    maybeVerifySpans(key);
+    return contentIndex.getCachedBytes(key, position, length);
   }
 
   @Override
@@ -535,18 +601,37 @@ public final class SimpleCache implements Cache {
 
     contentIndex.applyContentMetadataMutations(key, mutations);
     try {
-      contentIndex.store();
+      storeContentIndex();
     } catch (IOException e) {
       throw new CacheException(e);
     }
   }
 
   @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
+  public ContentMetadata getContentMetadata(String key) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return contentIndex.getContentMetadata(key);
   }
 
+  /**
+   * Blocks until the initialization of the in-memory representation has completed, successfully
+   * or not. Must be called by methods reading the in-memory representation without the lock.
+   */
+  private void blockUntilInitialized() {
+    if (!initialized) {
+      // The initialization thread holds the lock from before the constructor returns until the
+      // initialization has completed.
+      synchronized (this) {
+        Assertions.checkState(initialized);
+      }
+    }
+  }
+
+  private KeyWaitStripe getKeyWaitStripe(String key) {
+    return keyWaitStripes[(key.hashCode() & Integer.MAX_VALUE) % KEY_WAIT_STRIPE_COUNT];
+  }
+
   /** Ensures that the cache's in-memory representation has been initialized. */
   private void initialize() {
     if (!cacheDir.exists()) {
@@ -582,6 +667,19 @@ public final class SimpleCache implements Cache {
       contentIndex.initialize(uid);
       if (fileIndex != null) {
         fileIndex.initialize(uid);
+      }
+      @Nullable List<SimpleCacheSpan> indexedSpans = spanIndex.read(uid, contentIndex);
+      if (indexedSpans != null) {
+        // The directories don't need to be listed. Files may have been deleted since the span
+        // index was last stored, so the spans are checked against their files before they're
+        // first returned for their keys.
+        for (int i = 0; i < indexedSpans.size(); i++) {
+          SimpleCacheSpan span = indexedSpans.get(i);
+          addSpan(span);
+          unverifiedKeys.add(span.key);
+        }
+        loadedFromSpanIndex = true;
+      } else if (fileIndex != null) {
         Map<String, CacheFileMetadata> fileMetadata = fileIndex.getAll();
         loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
         fileIndex.removeAll(fileMetadata.keySet());
@@ -597,7 +695,7 @@ public final class SimpleCache implements Cache {
 
     contentIndex.removeEmpty();
     try {
-      contentIndex.store();
+      storeContentIndex();
     } catch (IOException e) {
       Log.e(TAG, "Storing index file failed", e);
     }
@@ -686,7 +784,17 @@ public final class SimpleCache implements Cache {
     }
     SimpleCacheSpan newSpan =
         contentIndex.get(key).setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
-    notifySpanTouched(span, newSpan);
+    if (newSpan.file != span.file) {
+      // The file was renamed to incorporate the new last touch timestamp.
+      spanIndex.appendSpanRemoved(span);
+      spanIndex.appendSpanAdded(newSpan);
+      try {
+        spanIndex.store(uid, contentIndex);
+      } catch (IOException e) {
+        Log.w(TAG, "Storing span index failed", e);
+      }
+    }
+    listeners.notifySpanTouched(span, newSpan);
     return newSpan;
   }
 
@@ -717,20 +825,21 @@ public final class SimpleCache implements Cache {
   }
 
   /**
-   * Adds a cached span to the in-memory representation.
+   * Adds a cached span to the in-memory representation and the span journal.
    *
    * @param span The span to be added.
    */
   private void addSpan(SimpleCacheSpan span) {
     contentIndex.getOrAdd(span.key).addSpan(span);
     totalSpace += span.length;
-    notifySpanAdded(span);
+    spanIndex.appendSpanAdded(span);
+    listeners.notifySpanAdded(span);
   }
 
-  private void removeSpanInternal(CacheSpan span) {
+  private boolean removeSpanInternal(CacheSpan span) {
     @Nullable CachedContent cachedContent = contentIndex.get(span.key);
     if (cachedContent == null || !cachedContent.removeSpan(span)) {
-      return;
+      return false;
     }
     totalSpace -= span.length;
     if (fileIndex != null) {
@@ -744,20 +853,52 @@ public final class SimpleCache implements Cache {
       }
     }
     contentIndex.maybeRemove(cachedContent.key);
-    notifySpanRemoved(span);
+    spanIndex.appendSpanRemoved(span);
+    listeners.notifySpanRemoved(span);
+    return true;
   }
 
   /**
-   * Scans all of the cached spans in the in-memory representation, removing any for which the
-   * underlying file lengths no longer match.
+   * Stores the content index and the span changes appended to the span journal, which is merged
+   * into the span index if it has grown too large.
    */
-  private void removeStaleSpans() {
+  private void storeContentIndex() throws IOException {
+    long startTimeNs = System.nanoTime();
+    contentIndex.store();
+    if (initializationException == null) {
+      spanIndex.store(uid, contentIndex);
+    }
+    statistics.onIndexStored(/* durationUs= */ (System.nanoTime() - startTimeNs) / 1000);
+  }
+
+  /**
+   * Calls {@link #verifySpans} with the lock held if the spans of a key were loaded from the span
+   * index and haven't been checked yet. Must be called by queries returning spans without the lock.
+   */
+  private void maybeVerifySpans(String key) {
+    if (!unverifiedKeys.isEmpty() && unverifiedKeys.contains(key)) {
+      synchronized (this) {
+        verifySpans(key);
+      }
+    }
+  }
+
+  /**
+   * Removes the spans of a key for which the underlying file lengths no longer match, if the spans
+   * were loaded from the span index and haven't been checked yet.
+   */
+  private void verifySpans(String key) {
+    if (unverifiedKeys.isEmpty() || !unverifiedKeys.remove(key)) {
+      return;
+    }
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    if (cachedContent == null) {
+      return;
+    }
     ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
-    for (CachedContent cachedContent : contentIndex.getAll()) {
-      for (CacheSpan span : cachedContent.getSpans()) {
-        if (span.file.length() != span.length) {
-          spansToBeRemoved.add(span);
-        }
+    for (CacheSpan span : cachedContent.getSpans()) {
+      if (span.file.length() != span.length) {
+        spansToBeRemoved.add(span);
       }
     }
     for (int i = 0; i < spansToBeRemoved.size(); i++) {
@@ -765,34 +906,31 @@ public final class SimpleCache implements Cache {
     }
   }
 
-  private void notifySpanRemoved(CacheSpan span) {
-    @Nullable ArrayList<Listener> keyListeners = listeners.get(span.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanRemoved(this, span);
-      }
+  private int getSpanCount() {
+    int spanCount = 0;
+    for (CachedContent cachedContent : contentIndex.getAll()) {
+      spanCount += cachedContent.getSpans().size();
     }
-    evictor.onSpanRemoved(this, span);
+    return spanCount;
   }
 
-  private void notifySpanAdded(SimpleCacheSpan span) {
-    @Nullable ArrayList<Listener> keyListeners = listeners.get(span.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanAdded(this, span);
+  /**
+   * Scans all of the cached spans in the in-memory representation, removing any for which the
+   * underlying file lengths no longer match.
+   */
+  private void removeStaleSpans() {
+    unverifiedKeys.clear();
+    ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
+    for (CachedContent cachedContent : contentIndex.getAll()) {
+      for (CacheSpan span : cachedContent.getSpans()) {
+        if (span.file.length() != span.length) {
+          spansToBeRemoved.add(span);
+        }
       }
     }
-    evictor.onSpanAdded(this, span);
-  }
-
-  private void notifySpanTouched(SimpleCacheSpan oldSpan, CacheSpan newSpan) {
-    @Nullable ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanTouched(this, oldSpan, newSpan);
-      }
+    for (int i = 0; i < spansToBeRemoved.size(); i++) {
+      removeSpanInternal(spansToBeRemoved.get(i));
     }
-    evictor.onSpanTouched(this, oldSpan, newSpan);
   }
 
   /**
@@ -801,7 +939,7 @@ public final class SimpleCache implements Cache {
    * @param files The files belonging to the root directory.
    * @return The loaded UID, or {@link #UID_UNSET} if a UID has not yet been created.
    */
-  private static long loadUid(File[] files) {
+  /* package */ static long loadUid(File[] files) {
     for (File file : files) {
       String fileName = file.getName();
       if (fileName.endsWith(UID_FILE_SUFFIX)) {
@@ -818,7 +956,7 @@ public final class SimpleCache implements Cache {
   }
 
   @SuppressWarnings("TrulyRandom")
-  private static long createUid(File directory) throws IOException {
+  /* package */ static long createUid(File directory) throws IOException {
     // Generate a non-negative UID.
     long uid = new SecureRandom().nextLong();
     uid = uid == Long.MIN_VALUE ? 0 : Math.abs(uid);
@@ -836,7 +974,7 @@ public final class SimpleCache implements Cache {
     return Long.parseLong(fileName.substring(0, fileName.indexOf('.')), /* radix= */ 16);
   }
 
-  private static void createCacheDirectories(File cacheDir) throws CacheException {
+  /* package */ static void createCacheDirectories(File cacheDir) throws CacheException {
     // If mkdirs() returns false, double check that the directory doesn't exist before throwing.
     if (!cacheDir.mkdirs() && !cacheDir.isDirectory()) {
       String message = "Failed to create cache directory: " + cacheDir;
@@ -845,11 +983,120 @@ public final class SimpleCache implements Cache {
     }
   }
 
-  private static synchronized boolean lockFolder(File cacheDir) {
+  /* package */ static synchronized boolean lockFolder(File cacheDir) {
     return lockedCacheDirs.add(cacheDir.getAbsoluteFile());
   }
 
-  private static synchronized void unlockFolder(File cacheDir) {
+  /* package */ static synchronized void unlockFolder(File cacheDir) {
     lockedCacheDirs.remove(cacheDir.getAbsoluteFile());
   }
+
+  /** Metrics describing the initialization of a {@link SimpleCache}. */
+  public static final class InitializationMetrics {
+
+    /**
+     * Whether the spans were loaded from the span index written by the previous instance, rather
+     * than by listing the cache directories.
+     */
+    public final boolean loadedFromSpanIndex;
+    /** The number of spans loaded. */
+    public final int spanCount;
+    /** The duration of the initialization, in milliseconds. */
+    public final long durationMs;
+
+    /* package */ InitializationMetrics(
+        boolean loadedFromSpanIndex, int spanCount, long durationMs) {
+      this.loadedFromSpanIndex = loadedFromSpanIndex;
+      this.spanCount = spanCount;
+      this.durationMs = durationMs;
+    }
+  }
+
+  /**
+   * Forwards calls to the evictor of the cache, and marks spans removed by the evictor meanwhile as
+   * evicted. Must only be called with the cache lock held.
+   */
+  private final class EvictionRecordingEvictor implements CacheEvictor {
+
+    private final CacheEvictor wrappedEvictor;
+
+    public EvictionRecordingEvictor(CacheEvictor wrappedEvictor) {
+      this.wrappedEvictor = wrappedEvictor;
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+      return wrappedEvictor.requiresCacheSpanTouches();
+    }
+
+    @Override
+    public void onCacheInitialized() {
+      callWrappedEvictor(wrappedEvictor::onCacheInitialized);
+    }
+
+    @Override
+    public void onStartFile(Cache cache, String key, long position, long length) {
+      callWrappedEvictor(() -> wrappedEvictor.onStartFile(cache, key, position, length));
+    }
+
+    @Override
+    public void onSpanAdded(Cache cache, CacheSpan span) {
+      callWrappedEvictor(() -> wrappedEvictor.onSpanAdded(cache, span));
+    }
+
+    @Override
+    public void onSpanRemoved(Cache cache, CacheSpan span) {
+      callWrappedEvictor(() -> wrappedEvictor.onSpanRemoved(cache, span));
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+      callWrappedEvictor(() -> wrappedEvictor.onSpanTouched(cache, oldSpan, newSpan));
+    }
+
+    @Override
+    public void onSpanMoved(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+      callWrappedEvictor(() -> wrappedEvictor.onSpanMoved(cache, oldSpan, newSpan));
+    }
+
+    private void callWrappedEvictor(Runnable call) {
+      boolean wasEvicting = isEvicting;
+      isEvicting = true;
+      try {
+        call.run();
+      } finally {
+        isEvicting = wasEvicting;
+      }
+    }
+  }
+
+  /**
+   * A lock on which threads wait for changes to the keys mapped to it. Changes are signalled with
+   * the cache lock held, and waiting threads don't hold the cache lock.
+   */
+  private static final class KeyWaitStripe {
+
+    private long generation;
+
+    /** Returns the number of changes signalled so far. */
+    public synchronized long getGeneration() {
+      return generation;
+    }
+
+    /** Signals a change to one of the keys, waking up all waiting threads. */
+    public synchronized void signalChange() {
+      generation++;
+      notifyAll();
+    }
+
+    /**
+     * Blocks until a change is signalled, unless one has been signalled since {@code generation}
+     * was read.
+     */
+    public synchronized void awaitChange(long generation) throws InterruptedException {
+      while (this.generation == generation) {
+        wait();
+      }
+    }
+  }
 }
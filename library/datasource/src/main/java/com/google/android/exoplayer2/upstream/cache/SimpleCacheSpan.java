@@ -20,6 +20,7 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,6 +37,15 @@ import java.util.regex.Pattern;
   private static final Pattern CACHE_FILE_PATTERN_V3 =
       Pattern.compile("^(\\d+)\\.(\\d+)\\.(\\d+)\\.v3\\.exo$", Pattern.DOTALL);
 
+  private static final AtomicLong nextDataId = new AtomicLong(1);
+
+  /**
+   * Identifies the cached data of the span within the process, or {@link C#INDEX_UNSET} if the span
+   * is a hole. Touching the span or moving its data to another file keeps the id, while data that's
+   * cached again is assigned a new one.
+   */
+  public final long dataId;
+
   /**
    * Returns a new {@link File} instance from {@code cacheDir}, {@code id}, {@code position}, {@code
    * timestamp}.
@@ -51,26 +61,45 @@ import java.util.regex.Pattern;
   }
 
   /**
-   * Creates a lookup span.
+   * Creates a hole span.
    *
    * @param key The cache key of the resource.
    * @param position The position of the span in the resource.
-   * @return The span.
+   * @param length The length of the span, or {@link C#LENGTH_UNSET} if unbounded.
+   * @return The hole span.
    */
-  public static SimpleCacheSpan createLookup(String key, long position) {
-    return new SimpleCacheSpan(key, position, C.LENGTH_UNSET, C.TIME_UNSET, null);
+  public static SimpleCacheSpan createHole(String key, long position, long length) {
+    return new SimpleCacheSpan(
+        key,
+        position,
+        length,
+        C.TIME_UNSET,
+        /* file= */ null,
+        /* fileOffset= */ 0,
+        /* dataId= */ C.INDEX_UNSET);
   }
 
   /**
-   * Creates a hole span.
+   * Creates a cache span whose data is stored at an offset in a file shared with other spans.
    *
-   * @param key The cache key of the resource.
+   * @param key The cache key that uniquely identifies the resource.
    * @param position The position of the span in the resource.
-   * @param length The length of the span, or {@link C#LENGTH_UNSET} if unbounded.
-   * @return The hole span.
+   * @param length The length of the span in bytes.
+   * @param lastTouchTimestamp The last touch timestamp.
+   * @param file The file holding the span's data.
+   * @param fileOffset The offset of the span's data in {@code file}.
+   * @return The span.
    */
-  public static SimpleCacheSpan createHole(String key, long position, long length) {
-    return new SimpleCacheSpan(key, position, length, C.TIME_UNSET, null);
+  public static SimpleCacheSpan createPackedEntry(
+      String key, long position, long length, long lastTouchTimestamp, File file, long fileOffset) {
+    return new SimpleCacheSpan(
+        key,
+        position,
+        length,
+        lastTouchTimestamp,
+        file,
+        fileOffset,
+        nextDataId.getAndIncrement());
   }
 
   /**
@@ -137,7 +166,14 @@ import java.util.regex.Pattern;
     if (lastTouchTimestamp == C.TIME_UNSET) {
       lastTouchTimestamp = Long.parseLong(Assertions.checkNotNull(matcher.group(3)));
     }
-    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file);
+    return new SimpleCacheSpan(
+        key,
+        position,
+        length,
+        lastTouchTimestamp,
+        file,
+        /* fileOffset= */ 0,
+        nextDataId.getAndIncrement());
   }
 
   /**
@@ -185,10 +221,19 @@ import java.util.regex.Pattern;
    * @param lastTouchTimestamp The last touch timestamp, or {@link C#TIME_UNSET} if {@link
    *     #isCached} is false.
    * @param file The file corresponding to this span, or null if it's a hole.
+   * @param fileOffset The offset of the span's data in {@code file}.
+   * @param dataId The id of the cached data, or {@link C#INDEX_UNSET} if this is a hole.
    */
   private SimpleCacheSpan(
-      String key, long position, long length, long lastTouchTimestamp, @Nullable File file) {
-    super(key, position, length, lastTouchTimestamp, file);
+      String key,
+      long position,
+      long length,
+      long lastTouchTimestamp,
+      @Nullable File file,
+      long fileOffset,
+      long dataId) {
+    super(key, position, length, lastTouchTimestamp, file, fileOffset);
+    this.dataId = dataId;
   }
 
   /**
@@ -201,6 +246,21 @@ import java.util.regex.Pattern;
    */
   public SimpleCacheSpan copyWithFileAndLastTouchTimestamp(File file, long lastTouchTimestamp) {
     Assertions.checkState(isCached);
-    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file);
+    return new SimpleCacheSpan(
+        key, position, length, lastTouchTimestamp, file, fileOffset, dataId);
+  }
+
+  /**
+   * Returns a copy of this CacheSpan whose data has been moved to another file.
+   *
+   * @param file The new file.
+   * @param fileOffset The offset of the span's data in the new file.
+   * @return A copy with the new file and file offset.
+   * @throws IllegalStateException If called on a non-cached span (i.e. {@link #isCached} is false).
+   */
+  public SimpleCacheSpan copyWithFileAndFileOffset(File file, long fileOffset) {
+    Assertions.checkState(isCached);
+    return new SimpleCacheSpan(
+        key, position, length, lastTouchTimestamp, file, fileOffset, dataId);
   }
 }
@@ -29,9 +29,11 @@ import com.google.android.exoplayer2.testutil.CacheAsserts;
 import com.google.android.exoplayer2.testutil.FakeDataSet.FakeData;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
 import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSourceUtil;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.io.IOException;
@@ -39,6 +41,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -522,6 +525,145 @@ public final class CacheDataSourceTest {
     cacheDataSource.close();
   }
 
+  @Test
+  public void readWithMemorySpanCache_servesRepeatedReadsFromMemory() throws Exception {
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+    // Loads spans into memory on the reading thread, so that they're loaded when reads return.
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 1024, Runnable::run);
+    AtomicInteger cacheFileOpenCount = new AtomicInteger();
+    FileDataSource cacheReadDataSource = new FileDataSource();
+    cacheReadDataSource.addTransferListener(
+        new TransferListener() {
+          @Override
+          public void onTransferInitializing(
+              DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+
+          @Override
+          public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            cacheFileOpenCount.incrementAndGet();
+          }
+
+          @Override
+          public void onBytesTransferred(
+              DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {}
+
+          @Override
+          public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+        });
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setCacheKeyFactory(cacheKeyFactory)
+            .setCacheReadDataSourceFactory(() -> cacheReadDataSource)
+            .setCacheWriteDataSinkFactory(
+                new CacheDataSink.Factory().setCache(cache).setFragmentSize(CACHE_FRAGMENT_SIZE))
+            .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+            .setMemorySpanCache(memorySpanCache);
+    CacheAsserts.assertReadData(
+        cacheDataSourceFactory.createDataSource(), unboundedDataSpec, TEST_DATA);
+
+    // The first read from the cache doesn't load the spans into memory, but the second one does.
+    DataSpec dataSpec = buildDataSpec(/* position= */ 4, /* length= */ 5);
+    CacheAsserts.assertReadData(
+        cacheDataSourceFactory.createDataSource(), dataSpec, Arrays.copyOfRange(TEST_DATA, 4, 9));
+    assertThat(memorySpanCache.getCachedBytes()).isEqualTo(0);
+    CacheAsserts.assertReadData(
+        cacheDataSourceFactory.createDataSource(), dataSpec, Arrays.copyOfRange(TEST_DATA, 4, 9));
+    int fileOpenCount = cacheFileOpenCount.get();
+    assertThat(fileOpenCount).isGreaterThan(0);
+    assertThat(memorySpanCache.getCachedBytes()).isGreaterThan(0);
+    CacheAsserts.assertReadData(
+        cacheDataSourceFactory.createDataSource(), dataSpec, Arrays.copyOfRange(TEST_DATA, 4, 9));
+
+    assertThat(cacheFileOpenCount.get()).isEqualTo(fileOpenCount);
+  }
+
+  @Test
+  public void readWithReadAhead_cachesDataUpToReadAheadBoundaryInSameRequest() throws Exception {
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+            .setReadAheadLength(8);
+
+    CacheAsserts.assertReadData(
+        cacheDataSourceFactory.createDataSource(),
+        buildDataSpec(/* position= */ 1, /* length= */ 2),
+        Arrays.copyOfRange(TEST_DATA, 1, 3));
+
+    // The data up to the read-ahead boundary was cached before the request was closed.
+    assertThat(cache.getCachedBytes(defaultCacheKey, /* position= */ 0, TEST_DATA.length))
+        .isEqualTo(7);
+    DataSpec[] openedDataSpecs = upstreamDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    assertThat(openedDataSpecs[0].position).isEqualTo(1);
+    assertThat(openedDataSpecs[0].length).isEqualTo(7);
+    // Reads of data that was read ahead are served from the cache.
+    CacheAsserts.assertReadData(
+        cacheDataSourceFactory.createDataSource(),
+        buildDataSpec(/* position= */ 3, /* length= */ 5),
+        Arrays.copyOfRange(TEST_DATA, 3, 8));
+    assertThat(upstreamDataSource.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void readWithReadAhead_doesNotExtendRequestOverCachedData() throws Exception {
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+            .setReadAheadLength(8);
+    CacheAsserts.assertReadData(
+        cacheDataSourceFactory.createDataSource(),
+        buildDataSpec(/* position= */ 5, /* length= */ 1),
+        Arrays.copyOfRange(TEST_DATA, 5, 6));
+    upstreamDataSource.getAndClearOpenedDataSpecs();
+
+    CacheAsserts.assertReadData(
+        cacheDataSourceFactory.createDataSource(),
+        buildDataSpec(/* position= */ 1, /* length= */ 2),
+        Arrays.copyOfRange(TEST_DATA, 1, 3));
+
+    DataSpec[] openedDataSpecs = upstreamDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    assertThat(openedDataSpecs[0].position).isEqualTo(1);
+    assertThat(openedDataSpecs[0].length).isEqualTo(4);
+  }
+
+  @Test
+  public void readWithCacheStatistics_recordsHitsAndMisses() throws Exception {
+    upstreamDataSource.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+    CacheStatistics statistics = cache.getStatistics();
+    statistics.addKeyPrefix(defaultCacheKey);
+    statistics.addKeyPrefix("otherKey");
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> upstreamDataSource)
+            .setCacheStatistics(statistics);
+    DataSpec dataSpec = buildDataSpec(/* position= */ 0, TEST_DATA.length);
+
+    CacheAsserts.assertReadData(cacheDataSourceFactory.createDataSource(), dataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSourceFactory.createDataSource(), dataSpec, TEST_DATA);
+
+    CacheStatistics.Counters counters = statistics.getCounters();
+    assertThat(counters.hitCount).isEqualTo(1);
+    assertThat(counters.missCount).isEqualTo(1);
+    assertThat(counters.cachedBytesRead).isEqualTo(TEST_DATA.length);
+    assertThat(counters.upstreamBytesRead).isEqualTo(TEST_DATA.length);
+    assertThat(counters.cacheReadDurationUs.count).isGreaterThan(0);
+    assertThat(counters.upstreamReadDurationUs.count).isGreaterThan(0);
+    assertThat(counters.getHitRatio()).isEqualTo(0.5);
+    CacheStatistics.Counters keyCounters = statistics.getCounters(defaultCacheKey);
+    assertThat(keyCounters.hitCount).isEqualTo(1);
+    assertThat(keyCounters.cachedBytesRead).isEqualTo(TEST_DATA.length);
+    assertThat(statistics.getCounters("otherKey").hitCount).isEqualTo(0);
+    assertThat(statistics.getIndexStoreDurationUs().count).isGreaterThan(0);
+    assertThat(statistics.getInitializationDurationMs()).isAtLeast(0);
+  }
+
   private void assertCacheAndRead(DataSpec dataSpec, boolean unknownLength) throws IOException {
     assertCacheAndRead(dataSpec, unknownLength, /* cacheKeyFactory= */ null);
   }
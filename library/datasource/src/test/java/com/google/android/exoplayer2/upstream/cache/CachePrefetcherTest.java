@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CachePrefetcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class CachePrefetcherTest {
+
+  private File tempFolder;
+  private SimpleCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+  }
+
+  @After
+  public void tearDown() {
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void prefetch_cachesData() throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 100);
+    CachePrefetcher prefetcher =
+        new CachePrefetcher(
+            new CacheDataSource.Factory()
+                .setCache(cache)
+                .setUpstreamDataSourceFactory(() -> new FakeDataSource(fakeDataSet)),
+            Runnable::run);
+
+    prefetcher.prefetch(new DataSpec(Uri.parse("test_data"), /* position= */ 10, /* length= */ 20));
+
+    assertThat(cache.getCachedBytes("test_data", /* position= */ 0, /* length= */ 100))
+        .isEqualTo(20);
+    assertThat(prefetcher.getPendingPrefetchCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void prefetch_sameDataWhilePending_prefetchesOnce() throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 100);
+    List<Runnable> tasks = new ArrayList<>();
+    CachePrefetcher prefetcher =
+        new CachePrefetcher(
+            new CacheDataSource.Factory()
+                .setCache(cache)
+                .setUpstreamDataSourceFactory(() -> new FakeDataSource(fakeDataSet)),
+            tasks::add);
+    DataSpec dataSpec = new DataSpec(Uri.parse("test_data"), /* position= */ 0, /* length= */ 20);
+
+    prefetcher.prefetch(dataSpec);
+    prefetcher.prefetch(dataSpec);
+
+    assertThat(tasks).hasSize(1);
+    assertThat(prefetcher.getPendingPrefetchCount()).isEqualTo(1);
+    tasks.get(0).run();
+    assertThat(prefetcher.getPendingPrefetchCount()).isEqualTo(0);
+    assertThat(cache.getCachedBytes("test_data", /* position= */ 0, /* length= */ 100))
+        .isEqualTo(20);
+  }
+
+  @Test
+  public void prefetch_withUpstreamError_doesNotThrow() {
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    fakeDataSet
+        .newData("test_data")
+        .appendReadData(10)
+        .appendReadError(new IOException())
+        .appendReadData(10);
+    CachePrefetcher prefetcher =
+        new CachePrefetcher(
+            new CacheDataSource.Factory()
+                .setCache(cache)
+                .setUpstreamDataSourceFactory(() -> new FakeDataSource(fakeDataSet)),
+            Runnable::run);
+
+    prefetcher.prefetch(new DataSpec(Uri.parse("test_data")));
+
+    assertThat(prefetcher.getPendingPrefetchCount()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CacheStatistics}. */
+@RunWith(AndroidJUnit4.class)
+public final class CacheStatisticsTest {
+
+  @Test
+  public void histogram_addsValuesToPowerOfTwoBuckets() {
+    CacheStatistics.Histogram histogram = new CacheStatistics.Histogram();
+
+    histogram.add(0);
+    histogram.add(1);
+    histogram.add(5);
+    histogram.add(7);
+    histogram.add(Long.MAX_VALUE);
+
+    assertThat(histogram.count).isEqualTo(5);
+    assertThat(histogram.max).isEqualTo(Long.MAX_VALUE);
+    assertThat(histogram.bucketCounts[0]).isEqualTo(1);
+    assertThat(histogram.bucketCounts[1]).isEqualTo(1);
+    assertThat(histogram.bucketCounts[3]).isEqualTo(2);
+    assertThat(histogram.bucketCounts[CacheStatistics.Histogram.BUCKET_COUNT - 1]).isEqualTo(1);
+  }
+
+  @Test
+  public void histogram_getPercentileUpperBound() {
+    CacheStatistics.Histogram histogram = new CacheStatistics.Histogram();
+    assertThat(histogram.getPercentileUpperBound(50)).isEqualTo(C.TIME_UNSET);
+
+    for (int i = 1; i <= 10; i++) {
+      histogram.add(i);
+    }
+
+    assertThat(histogram.getPercentileUpperBound(0)).isEqualTo(1);
+    assertThat(histogram.getPercentileUpperBound(50)).isEqualTo(7);
+    assertThat(histogram.getPercentileUpperBound(100)).isEqualTo(10);
+    assertThat(histogram.getMean()).isEqualTo(5.5);
+  }
+
+  @Test
+  public void onSpanEvicted_updatesCountersOfMatchingKeyPrefixes() {
+    CacheStatistics statistics = new CacheStatistics();
+    statistics.addKeyPrefix("video/");
+    statistics.addKeyPrefix("audio/");
+
+    statistics.onSpanEvicted("video/1", /* length= */ 10);
+    statistics.onSpanEvicted("audio/1", /* length= */ 5);
+    statistics.onSpanEvicted("text/1", /* length= */ 1);
+
+    assertThat(statistics.getCounters().evictionCount).isEqualTo(3);
+    assertThat(statistics.getCounters().evictedBytes).isEqualTo(16);
+    assertThat(statistics.getCounters("video/").evictedBytes).isEqualTo(10);
+    assertThat(statistics.getCounters("audio/").evictedBytes).isEqualTo(5);
+    assertThat(statistics.getCounters("text/")).isNull();
+  }
+
+  @Test
+  public void getCounters_returnsCopy() {
+    CacheStatistics statistics = new CacheStatistics();
+    CacheStatistics.Recorder recorder = statistics.getRecorder("key");
+    recorder.onSpanRead(/* isCached= */ true);
+
+    CacheStatistics.Counters counters = statistics.getCounters();
+    recorder.onSpanRead(/* isCached= */ false);
+
+    assertThat(counters.hitCount).isEqualTo(1);
+    assertThat(counters.missCount).isEqualTo(0);
+    assertThat(statistics.getCounters().missCount).isEqualTo(1);
+  }
+
+  @Test
+  public void reset_clearsCountersButRetainsInitializationDuration() {
+    CacheStatistics statistics = new CacheStatistics();
+    statistics.addKeyPrefix("key");
+    statistics.onInitialized(/* durationMs= */ 12);
+    statistics.onIndexStored(/* durationUs= */ 100);
+    statistics
+        .getRecorder("key")
+        .onBytesRead(/* isCached= */ true, /* bytesRead= */ 10, /* durationUs= */ 3);
+
+    statistics.reset();
+
+    assertThat(statistics.getCounters().cachedBytesRead).isEqualTo(0);
+    assertThat(statistics.getCounters("key").cacheReadDurationUs.count).isEqualTo(0);
+    assertThat(statistics.getIndexStoreDurationUs().count).isEqualTo(0);
+    assertThat(statistics.getInitializationDurationMs()).isEqualTo(12);
+  }
+}
@@ -32,6 +32,8 @@ import com.google.android.exoplayer2.upstream.FileDataSource;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
@@ -263,6 +265,103 @@ public final class CacheWriterTest {
     assertCachedData(cache, fakeDataSet);
   }
 
+  @Test
+  public void cache_inParallel_cachesRangesConcurrently() throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 100);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> new FakeDataSource(fakeDataSet));
+    ExecutorService executorService = Executors.newFixedThreadPool(/* nThreads= */ 3);
+    CachingCounters counters = new CachingCounters();
+
+    CacheWriter cacheWriter =
+        new CacheWriter(
+            cacheDataSourceFactory.createDataSourceForDownloading(),
+            new DataSpec(Uri.parse("test_data")),
+            /* temporaryBuffer= */ null,
+            counters);
+    cacheWriter.experimentalSetParallelCaching(
+        cacheDataSourceFactory,
+        executorService,
+        /* maxParallelRequests= */ 4,
+        /* minRangeLength= */ 10);
+    try {
+      cacheWriter.cache();
+    } finally {
+      executorService.shutdown();
+    }
+
+    counters.assertValues(0, 100, 100);
+    assertCachedData(cache, fakeDataSet);
+    assertThat(cache.getCachedSpans("test_data")).hasSize(4);
+  }
+
+  @Test
+  public void cache_inParallelOnCallingThread_cachesAllRanges() throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 100);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> new FakeDataSource(fakeDataSet));
+    Uri testUri = Uri.parse("test_data");
+    CachingCounters counters = new CachingCounters();
+    new CacheWriter(
+            cacheDataSourceFactory.createDataSourceForDownloading(),
+            new DataSpec(testUri, /* position= */ 40, /* length= */ 20),
+            /* temporaryBuffer= */ null,
+            /* progressListener= */ null)
+        .cache();
+
+    CacheWriter cacheWriter =
+        new CacheWriter(
+            cacheDataSourceFactory.createDataSourceForDownloading(),
+            new DataSpec(testUri),
+            /* temporaryBuffer= */ null,
+            counters);
+    cacheWriter.experimentalSetParallelCaching(
+        cacheDataSourceFactory,
+        Runnable::run,
+        /* maxParallelRequests= */ 2,
+        /* minRangeLength= */ 10);
+    cacheWriter.cache();
+
+    counters.assertValues(20, 80, 100);
+    assertCachedData(cache, fakeDataSet);
+  }
+
+  @Test
+  public void cache_inParallelWithUnknownLength_cachesSequentially() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .newData("test_data")
+            .setSimulateUnknownLength(true)
+            .appendReadData(TestUtil.buildTestData(100))
+            .endData();
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> new FakeDataSource(fakeDataSet));
+    CachingCounters counters = new CachingCounters();
+
+    CacheWriter cacheWriter =
+        new CacheWriter(
+            cacheDataSourceFactory.createDataSourceForDownloading(),
+            new DataSpec(Uri.parse("test_data")),
+            /* temporaryBuffer= */ null,
+            counters);
+    cacheWriter.experimentalSetParallelCaching(
+        cacheDataSourceFactory,
+        Runnable::run,
+        /* maxParallelRequests= */ 4,
+        /* minRangeLength= */ 10);
+    cacheWriter.cache();
+
+    counters.assertValues(0, 100, 100);
+    assertCachedData(cache, fakeDataSet);
+    assertThat(cache.getCachedSpans("test_data")).hasSize(1);
+  }
+
   private static final class CachingCounters implements CacheWriter.ProgressListener {
 
     private long contentLength = C.LENGTH_UNSET;
@@ -324,6 +324,75 @@ public class CachedContentIndexTest {
     assertThat(ContentMetadata.getContentLength(metadata2)).isEqualTo(2560);
   }
 
+  @Test
+  public void journalStoreAndLoad() throws Exception {
+    assertStoredAndLoadedEqual(newJournalInstance(), newJournalInstance());
+  }
+
+  @Test
+  public void journalStore_afterRemoval_loadsRemainingContent() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    int id1 = index.assignIdForKey("key1");
+    index.store();
+    int id2 = index.assignIdForKey("key2");
+    index.store();
+    long journalLength = getJournalFile().length();
+
+    index.maybeRemove("key1");
+    index.store();
+
+    // Removing content appends to the journal.
+    assertThat(getJournalFile().length()).isGreaterThan(journalLength);
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key2");
+    assertThat(index2.assignIdForKey("key2")).isEqualTo(id2);
+    assertThat(index2.getKeyForId(id1)).isNull();
+  }
+
+  @Test
+  public void journalLoad_withPartiallyWrittenRecord_discardsRecord() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.assignIdForKey("key1");
+    index.assignIdForKey("key2");
+    index.store();
+    try (FileOutputStream outputStream = new FileOutputStream(getJournalFile(), true)) {
+      // The length and part of the checksum of a record.
+      outputStream.write(new byte[] {0, 0, 0, 20, 1, 2});
+    }
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    index2.assignIdForKey("key3");
+    index2.store();
+
+    assertThat(index2.getKeys()).containsExactly("key1", "key2", "key3");
+    CachedContentIndex index3 = newJournalInstance();
+    index3.initialize(/* uid= */ 0);
+    assertThat(index3.getKeys()).containsExactly("key1", "key2", "key3");
+  }
+
+  @Test
+  public void journalInitialize_withLegacyIndex_migratesIndex() throws Exception {
+    File legacyIndexFile = new File(cacheDir, CachedContentIndex.FILE_NAME_ATOMIC);
+    try (FileOutputStream outputStream = new FileOutputStream(legacyIndexFile)) {
+      outputStream.write(testIndexV2File);
+    }
+    CachedContentIndex index = newJournalInstance();
+
+    index.initialize(/* uid= */ 0);
+
+    assertThat(legacyIndexFile.exists()).isFalse();
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.assignIdForKey("ABCDE")).isEqualTo(5);
+    ContentMetadata metadata = index2.get("ABCDE").getMetadata();
+    assertThat(ContentMetadata.getRedirectedUri(metadata)).isEqualTo(Uri.parse("abcde"));
+    assertThat(index2.assignIdForKey("KLMNO")).isEqualTo(2);
+  }
+
   @Test
   public void assignIdForKeyAndGetKeyForId() {
     CachedContentIndex index = newInstance();
@@ -465,6 +534,14 @@ public class CachedContentIndexTest {
     return new CachedContentIndex(TestUtil.getInMemoryDatabaseProvider());
   }
 
+  private CachedContentIndex newJournalInstance() {
+    return CachedContentIndex.createWithJournalStorage(cacheDir, /* databaseProvider= */ null);
+  }
+
+  private File getJournalFile() {
+    return new File(cacheDir, CachedContentIndex.FILE_NAME_ATOMIC + ".journal");
+  }
+
   private CachedContentIndex newLegacyInstance() {
     return newLegacyInstance(null);
   }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link GreedyDualSizeFrequencyCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class GreedyDualSizeFrequencyCacheEvictorTest {
+
+  @Test
+  public void onSpanAdded_exceedingMaxBytes_evictsLargeSpanBeforeSmallSpan() {
+    GreedyDualSizeFrequencyCacheEvictor evictor =
+        new GreedyDualSizeFrequencyCacheEvictor(/* maxBytes= */ 100);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    evictor.onSpanAdded(
+        cache,
+        createSpan("key", /* position= */ 0, /* length= */ 10, /* lastTouchTimestamp= */ 1));
+    CacheSpan largeSpan =
+        createSpan("key", /* position= */ 10, /* length= */ 60, /* lastTouchTimestamp= */ 2);
+    evictor.onSpanAdded(cache, largeSpan);
+
+    evictor.onSpanAdded(
+        cache,
+        createSpan("key", /* position= */ 70, /* length= */ 40, /* lastTouchTimestamp= */ 3));
+
+    assertThat(removedSpans).containsExactly(largeSpan);
+  }
+
+  @Test
+  public void onStartFile_exceedingMaxBytes_evictsLeastFrequentlyUsedSpan() {
+    GreedyDualSizeFrequencyCacheEvictor evictor =
+        new GreedyDualSizeFrequencyCacheEvictor(/* maxBytes= */ 20);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    CacheSpan span2 = createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 2);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+    CacheSpan touchedSpan1 = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 3);
+    evictor.onSpanTouched(cache, span1, touchedSpan1);
+    evictor.onSpanTouched(
+        cache, touchedSpan1, createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 4));
+    CacheSpan touchedSpan2 = createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 5);
+    evictor.onSpanTouched(cache, span2, touchedSpan2);
+
+    evictor.onStartFile(cache, "key", /* position= */ 20, /* length= */ 10);
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 20, /* lastTouchTimestamp= */ 6));
+
+    assertThat(removedSpans).containsExactly(touchedSpan2);
+  }
+
+  @Test
+  public void onSpanMoved_keepsFrequencyOfSpan() {
+    GreedyDualSizeFrequencyCacheEvictor evictor =
+        new GreedyDualSizeFrequencyCacheEvictor(/* maxBytes= */ 20);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 2));
+    CacheSpan movedSpan1 =
+        new CacheSpan(
+            "key",
+            /* position= */ 0,
+            /* length= */ 10,
+            /* lastTouchTimestamp= */ 1,
+            new File("moved.exo"));
+    evictor.onSpanMoved(cache, span1, movedSpan1);
+
+    evictor.onStartFile(cache, "key", /* position= */ 20, /* length= */ 10);
+
+    assertThat(removedSpans).containsExactly(movedSpan1);
+  }
+
+  private static Cache createCache(CacheEvictor evictor, List<CacheSpan> removedSpans) {
+    Cache cache = mock(Cache.class);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              removedSpans.add(span);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    return cache;
+  }
+
+  private static CacheSpan createSpan(String key, long position, long lastTouchTimestamp) {
+    return createSpan(key, position, /* length= */ 10, lastTouchTimestamp);
+  }
+
+  private static CacheSpan createSpan(
+      String key, long position, long length, long lastTouchTimestamp) {
+    return new CacheSpan(
+        key, position, length, lastTouchTimestamp, new File(key + "." + position + ".exo"));
+  }
+}
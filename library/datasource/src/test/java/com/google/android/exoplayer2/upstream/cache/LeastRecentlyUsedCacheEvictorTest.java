@@ -15,7 +15,15 @@
  */
 package com.google.android.exoplayer2.upstream.cache;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -38,4 +46,62 @@ public class LeastRecentlyUsedCacheEvictorTest {
     evictor.onCacheInitialized();
     evictor.onStartFile(Mockito.mock(Cache.class), "key", 0, maxBytes + 1);
   }
+
+  @Test
+  public void onSpanAdded_exceedingMaxBytes_evictsLeastRecentlyUsedSpan() {
+    LeastRecentlyUsedCacheEvictor evictor = new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 30);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    CacheSpan span2 = createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 2);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 20, /* lastTouchTimestamp= */ 3));
+    evictor.onSpanTouched(
+        cache, span1, createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 4));
+
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 30, /* lastTouchTimestamp= */ 5));
+
+    assertThat(removedSpans).containsExactly(span2);
+  }
+
+  @Test
+  public void onSpanAdded_withSpansAddedOutOfOrder_evictsOldestSpan() {
+    LeastRecentlyUsedCacheEvictor evictor = new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 30);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan oldestSpan = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 20, /* lastTouchTimestamp= */ 3));
+    evictor.onSpanAdded(cache, oldestSpan);
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 2));
+    evictor.onCacheInitialized();
+
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 30, /* lastTouchTimestamp= */ 4));
+
+    assertThat(removedSpans).containsExactly(oldestSpan);
+  }
+
+  private static Cache createCache(CacheEvictor evictor, List<CacheSpan> removedSpans) {
+    Cache cache = mock(Cache.class);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              removedSpans.add(span);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    return cache;
+  }
+
+  private static CacheSpan createSpan(String key, long position, long lastTouchTimestamp) {
+    return createSpan(key, position, /* length= */ 10, lastTouchTimestamp);
+  }
+
+  private static CacheSpan createSpan(
+      String key, long position, long length, long lastTouchTimestamp) {
+    return new CacheSpan(
+        key, position, length, lastTouchTimestamp, new File(key + "." + position + ".exo"));
+  }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MemorySpanCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class MemorySpanCacheTest {
+
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+  private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+  private File testDir;
+
+  @Before
+  public void createTestDir() throws Exception {
+    testDir = Util.createTempFile(ApplicationProvider.getApplicationContext(), "MemorySpanCache");
+    assertThat(testDir.delete()).isTrue();
+    assertThat(testDir.mkdirs()).isTrue();
+  }
+
+  @After
+  public void deleteTestDir() {
+    Util.recursiveDelete(testDir);
+  }
+
+  @Test
+  public void get_returnsDataOfSpan() {
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 100, DIRECT_EXECUTOR);
+    CacheSpan span = createSpan(KEY_1, /* position= */ 0, /* length= */ 10, "a");
+    byte[] data = new byte[10];
+
+    memorySpanCache.put(KEY_1, span, data);
+
+    assertThat(memorySpanCache.get(KEY_1, span)).isSameInstanceAs(data);
+    assertThat(memorySpanCache.get(KEY_2, span)).isNull();
+    assertThat(memorySpanCache.getCachedBytes()).isEqualTo(10);
+  }
+
+  @Test
+  public void get_withTouchedSpanInDifferentFile_returnsDataOfSpan() {
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 100, DIRECT_EXECUTOR);
+    SimpleCacheSpan span = createSpan(KEY_1, /* position= */ 0, /* length= */ 10, "a");
+    byte[] data = new byte[10];
+    memorySpanCache.put(KEY_1, span, data);
+
+    CacheSpan touchedSpan =
+        span.copyWithFileAndLastTouchTimestamp(new File("b"), /* lastTouchTimestamp= */ 1);
+
+    assertThat(memorySpanCache.get(KEY_1, touchedSpan)).isSameInstanceAs(data);
+  }
+
+  @Test
+  public void get_withRewrittenSpan_returnsNullAndRemovesData() {
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 100, DIRECT_EXECUTOR);
+    memorySpanCache.put(
+        KEY_1, createSpan(KEY_1, /* position= */ 0, /* length= */ 10, "a"), new byte[10]);
+
+    // Rewriting the span in the same file still assigns it new data.
+    CacheSpan rewrittenSpan = createSpan(KEY_1, /* position= */ 0, /* length= */ 10, "a");
+
+    assertThat(memorySpanCache.get(KEY_1, rewrittenSpan)).isNull();
+    assertThat(memorySpanCache.getCachedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void get_spanReadTwice_loadsSpanInBackground() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 10);
+    File file = new File(testDir, "span");
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(new byte[5]);
+      outputStream.write(data);
+    }
+    CacheSpan span =
+        SimpleCacheSpan.createPackedEntry(
+            KEY_1,
+            /* position= */ 0,
+            /* length= */ 10,
+            /* lastTouchTimestamp= */ 0,
+            file,
+            /* fileOffset= */ 5);
+    ArrayList<Runnable> tasks = new ArrayList<>();
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 100, tasks::add);
+
+    assertThat(memorySpanCache.get(KEY_1, span)).isNull();
+    assertThat(tasks).isEmpty();
+    assertThat(memorySpanCache.get(KEY_1, span)).isNull();
+    assertThat(memorySpanCache.get(KEY_1, span)).isNull();
+    assertThat(tasks).hasSize(1);
+    tasks.get(0).run();
+
+    assertThat(memorySpanCache.get(KEY_1, span)).isEqualTo(data);
+    assertThat(memorySpanCache.getCachedBytes()).isEqualTo(10);
+  }
+
+  @Test
+  public void get_spanReadTwiceWithDifferentData_doesNotLoadSpan() {
+    ArrayList<Runnable> tasks = new ArrayList<>();
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 100, tasks::add);
+
+    memorySpanCache.get(KEY_1, createSpan(KEY_1, /* position= */ 0, /* length= */ 10, "a"));
+    memorySpanCache.get(KEY_1, createSpan(KEY_1, /* position= */ 0, /* length= */ 10, "a"));
+
+    assertThat(tasks).isEmpty();
+  }
+
+  @Test
+  public void get_spanNotCacheable_doesNotLoadSpan() {
+    ArrayList<Runnable> tasks = new ArrayList<>();
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 100, tasks::add);
+    CacheSpan span =
+        new CacheSpan(
+            KEY_1,
+            /* position= */ 0,
+            /* length= */ 10,
+            /* lastTouchTimestamp= */ 0,
+            new File("a"),
+            /* fileOffset= */ 0);
+
+    memorySpanCache.get(KEY_1, span);
+    memorySpanCache.get(KEY_1, span);
+
+    assertThat(memorySpanCache.isCacheable(span)).isFalse();
+    assertThat(tasks).isEmpty();
+  }
+
+  @Test
+  public void put_exceedingBudget_evictsLeastRecentlyUsedSpans() {
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 30, DIRECT_EXECUTOR);
+    CacheSpan span1 = createSpan(KEY_1, /* position= */ 0, /* length= */ 10, "a");
+    CacheSpan span2 = createSpan(KEY_1, /* position= */ 10, /* length= */ 10, "b");
+    CacheSpan span3 = createSpan(KEY_2, /* position= */ 0, /* length= */ 10, "c");
+    CacheSpan span4 = createSpan(KEY_2, /* position= */ 10, /* length= */ 5, "d");
+    memorySpanCache.put(KEY_1, span1, new byte[10]);
+    memorySpanCache.put(KEY_1, span2, new byte[10]);
+    memorySpanCache.put(KEY_2, span3, new byte[10]);
+    // Makes span1 the most recently used.
+    memorySpanCache.get(KEY_1, span1);
+
+    memorySpanCache.put(KEY_2, span4, new byte[5]);
+
+    assertThat(memorySpanCache.get(KEY_1, span1)).isNotNull();
+    assertThat(memorySpanCache.get(KEY_1, span2)).isNull();
+    assertThat(memorySpanCache.get(KEY_2, span3)).isNotNull();
+    assertThat(memorySpanCache.get(KEY_2, span4)).isNotNull();
+    assertThat(memorySpanCache.getCachedBytes()).isEqualTo(25);
+  }
+
+  @Test
+  public void put_spanLargerThanMaxSpanBytes_isIgnored() {
+    MemorySpanCache memorySpanCache =
+        new MemorySpanCache(/* maxBytes= */ 100, /* maxSpanBytes= */ 10, DIRECT_EXECUTOR);
+    CacheSpan span = createSpan(KEY_1, /* position= */ 0, /* length= */ 11, "a");
+
+    memorySpanCache.put(KEY_1, span, new byte[11]);
+
+    assertThat(memorySpanCache.isCacheable(span)).isFalse();
+    assertThat(memorySpanCache.get(KEY_1, span)).isNull();
+    assertThat(memorySpanCache.getCachedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void removeResource_removesOnlySpansOfResource() {
+    MemorySpanCache memorySpanCache = new MemorySpanCache(/* maxBytes= */ 100, DIRECT_EXECUTOR);
+    CacheSpan span1 = createSpan(KEY_1, /* position= */ 0, /* length= */ 10, "a");
+    CacheSpan span2 = createSpan(KEY_2, /* position= */ 0, /* length= */ 10, "b");
+    memorySpanCache.put(KEY_1, span1, new byte[10]);
+    memorySpanCache.put(KEY_2, span2, new byte[10]);
+
+    memorySpanCache.removeResource(KEY_1);
+
+    assertThat(memorySpanCache.get(KEY_1, span1)).isNull();
+    assertThat(memorySpanCache.get(KEY_2, span2)).isNotNull();
+    assertThat(memorySpanCache.getCachedBytes()).isEqualTo(10);
+  }
+
+  private static SimpleCacheSpan createSpan(
+      String key, long position, long length, String fileName) {
+    return SimpleCacheSpan.createPackedEntry(
+        key,
+        position,
+        length,
+        /* lastTouchTimestamp= */ 0,
+        new File(fileName),
+        /* fileOffset= */ 0);
+  }
+}
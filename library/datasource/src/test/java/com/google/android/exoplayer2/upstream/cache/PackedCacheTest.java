@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSourceUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.NavigableSet;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PackedCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class PackedCacheTest {
+
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+
+  private File testDir;
+  private File cacheDir;
+  private DatabaseProvider databaseProvider;
+
+  @Before
+  public void createTestDir() throws Exception {
+    testDir = Util.createTempFile(ApplicationProvider.getApplicationContext(), "PackedCacheTest");
+    assertThat(testDir.delete()).isTrue();
+    assertThat(testDir.mkdirs()).isTrue();
+    cacheDir = new File(testDir, "cache");
+  }
+
+  @Before
+  public void createDatabaseProvider() {
+    databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+  }
+
+  @After
+  public void deleteTestDir() {
+    Util.recursiveDelete(testDir);
+  }
+
+  @Test
+  public void commitFile_appendsSpansToSamePackFile() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 100);
+
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_2, /* position= */ 0, /* length= */ 20);
+
+    CacheSpan span1 = cache.getCachedSpans(KEY_1).first();
+    CacheSpan span2 = cache.getCachedSpans(KEY_2).first();
+    assertThat(span2.file).isEqualTo(span1.file);
+    assertThat(span1.fileOffset).isEqualTo(0);
+    assertThat(span2.fileOffset).isEqualTo(10);
+    assertThat(span1.file.length()).isEqualTo(100);
+    assertCachedDataReadCorrect(span1);
+    assertCachedDataReadCorrect(span2);
+    assertThat(cache.getCacheSpace()).isEqualTo(30);
+  }
+
+  @Test
+  public void commitFile_spanLargerThanPackSize_isStoredInOwnPackFile() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 10);
+
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 5);
+    addCache(cache, KEY_1, /* position= */ 5, /* length= */ 25);
+
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(KEY_1);
+    assertThat(spans.last().file).isNotEqualTo(spans.first().file);
+    assertThat(spans.last().fileOffset).isEqualTo(0);
+    assertThat(spans.last().file.length()).isEqualTo(25);
+    assertCachedDataReadCorrect(spans.last());
+  }
+
+  @Test
+  public void newInstance_withExistingCacheDirectory_loadsCachedData() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 100);
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 10, /* length= */ 15);
+    long uid = cache.getUid();
+    cache.release();
+
+    cache = getPackedCache(/* packSize= */ 100);
+
+    assertThat(cache.getUid()).isEqualTo(uid);
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(KEY_1);
+    assertThat(spans).hasSize(2);
+    assertThat(spans.last().fileOffset).isEqualTo(10);
+    for (CacheSpan span : spans) {
+      assertCachedDataReadCorrect(span);
+    }
+    // New spans are appended after the loaded ones.
+    addCache(cache, KEY_2, /* position= */ 0, /* length= */ 5);
+    CacheSpan span = cache.getCachedSpans(KEY_2).first();
+    assertThat(span.file).isEqualTo(spans.first().file);
+    assertThat(span.fileOffset).isEqualTo(25);
+  }
+
+  @Test
+  public void newInstance_removesUnreferencedPackAndTempFiles() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 100);
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    cache.startReadWriteNonBlocking(KEY_2, /* position= */ 0, /* length= */ 10);
+    File uncommittedFile = cache.startFile(KEY_2, /* position= */ 0, /* length= */ 10);
+    try (FileOutputStream outputStream = new FileOutputStream(uncommittedFile)) {
+      outputStream.write(generateData(KEY_2, /* position= */ 0, /* length= */ 10));
+    }
+    File packFile = cache.getCachedSpans(KEY_1).first().file;
+    cache.release();
+    File strayPackFile = new File(packFile.getParentFile(), "1000.pack");
+    assertThat(strayPackFile.createNewFile()).isTrue();
+
+    cache = getPackedCache(/* packSize= */ 100);
+
+    assertThat(uncommittedFile.exists()).isFalse();
+    assertThat(strayPackFile.exists()).isFalse();
+    assertThat(packFile.exists()).isTrue();
+    assertThat(cache.getKeys()).containsExactly(KEY_1);
+  }
+
+  @Test
+  public void removeSpan_leavingLessThanHalfOfPackCached_movesSpansAndDeletesPack()
+      throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 30);
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 10, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 20, /* length= */ 10);
+    // Fills the first pack, so this span is appended to a new pack.
+    addCache(cache, KEY_2, /* position= */ 0, /* length= */ 10);
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(KEY_1);
+    File firstPackFile = spans.first().file;
+    File secondPackFile = cache.getCachedSpans(KEY_2).first().file;
+
+    cache.removeSpan(spans.pollFirst());
+    assertThat(cache.getCachedSpans(KEY_1).last().file).isEqualTo(firstPackFile);
+    cache.removeSpan(spans.pollFirst());
+
+    CacheSpan movedSpan = cache.getCachedSpans(KEY_1).first();
+    assertThat(movedSpan.position).isEqualTo(20);
+    assertThat(movedSpan.file).isEqualTo(secondPackFile);
+    assertThat(movedSpan.fileOffset).isEqualTo(10);
+    assertCachedDataReadCorrect(movedSpan);
+    assertThat(firstPackFile.exists()).isFalse();
+    assertThat(cache.getCacheSpace()).isEqualTo(20);
+  }
+
+  @Test
+  public void removeSpan_packWithSpanBeingRead_keepsPackUntilSpanIsReleased() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 30);
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 10, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 20, /* length= */ 10);
+    addCache(cache, KEY_2, /* position= */ 0, /* length= */ 10);
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(KEY_1);
+    CacheSpan readSpan =
+        cache.startReadWriteNonBlocking(KEY_1, /* position= */ 20, /* length= */ 10);
+    File firstPackFile = readSpan.file;
+
+    cache.removeSpan(spans.pollFirst());
+    cache.removeSpan(spans.pollFirst());
+
+    assertThat(cache.getCachedSpans(KEY_1).first().file).isNotEqualTo(firstPackFile);
+    assertThat(firstPackFile.exists()).isTrue();
+    assertCachedDataReadCorrect(readSpan);
+    cache.releaseCachedSpan(readSpan);
+    assertThat(firstPackFile.exists()).isFalse();
+  }
+
+  @Test
+  public void commitFile_withEvictorRemovingSpans_compactsPackAfterCommit() throws Exception {
+    PackedCache cache =
+        new PackedCache(
+            cacheDir,
+            new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 20),
+            databaseProvider,
+            /* packSize= */ 30);
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 10, /* length= */ 10);
+    File firstPackFile = cache.getCachedSpans(KEY_1).first().file;
+    // Evicts the span at position 0.
+    addCache(cache, KEY_1, /* position= */ 20, /* length= */ 10);
+
+    // Evicts the span at position 10 and fills the first pack, leaving it eligible for compaction.
+    addCache(cache, KEY_2, /* position= */ 0, /* length= */ 10);
+
+    CacheSpan movedSpan = cache.getCachedSpans(KEY_1).first();
+    CacheSpan newSpan = cache.getCachedSpans(KEY_2).first();
+    assertThat(movedSpan.position).isEqualTo(20);
+    assertThat(movedSpan.file).isEqualTo(newSpan.file);
+    assertThat(movedSpan.fileOffset).isEqualTo(10);
+    assertCachedDataReadCorrect(movedSpan);
+    assertThat(firstPackFile.exists()).isFalse();
+    assertThat(cache.getCacheSpace()).isEqualTo(20);
+  }
+
+  @Test
+  public void commitFile_appendsToSpanJournalWithoutRewritingSpanIndex() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 100);
+    File spanIndexFile = new File(cacheDir, "packed_spans.idx");
+    byte[] spanIndexData = readFile(spanIndexFile);
+
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 10, /* length= */ 10);
+    cache.removeSpan(cache.getCachedSpans(KEY_1).first());
+
+    assertThat(readFile(spanIndexFile)).isEqualTo(spanIndexData);
+  }
+
+  @Test
+  public void newInstance_afterCacheWasNotReleased_loadsSpansFromSpanJournal() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 100);
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 10, /* length= */ 15);
+    addCache(cache, KEY_2, /* position= */ 0, /* length= */ 5);
+    cache.removeSpan(cache.getCachedSpans(KEY_1).first());
+    // Simulates the process being killed without the cache being released.
+    SimpleCache.unlockFolder(cacheDir);
+
+    cache = getPackedCache(/* packSize= */ 100);
+
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(KEY_1);
+    assertThat(spans).hasSize(1);
+    assertThat(spans.first().position).isEqualTo(10);
+    assertCachedDataReadCorrect(spans.first());
+    assertCachedDataReadCorrect(cache.getCachedSpans(KEY_2).first());
+    assertThat(cache.getCacheSpace()).isEqualTo(20);
+  }
+
+  @Test
+  public void removeResource_isPersisted() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 100);
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_2, /* position= */ 0, /* length= */ 10);
+
+    cache.removeResource(KEY_1);
+    cache.release();
+    cache = getPackedCache(/* packSize= */ 100);
+
+    assertThat(cache.getKeys()).containsExactly(KEY_2);
+    assertThat(cache.getCacheSpace()).isEqualTo(10);
+  }
+
+  @Test
+  public void cacheDataSource_readsSpansAtTheirPackOffsets() throws Exception {
+    PackedCache cache = getPackedCache(/* packSize= */ 100);
+    addCache(cache, KEY_2, /* position= */ 0, /* length= */ 7);
+    addCache(cache, KEY_1, /* position= */ 0, /* length= */ 10);
+    addCache(cache, KEY_1, /* position= */ 10, /* length= */ 10);
+    CacheDataSource dataSource = new CacheDataSource(cache, /* upstreamDataSource= */ null);
+
+    dataSource.open(
+        new DataSpec.Builder()
+            .setUri(Uri.parse("https://test.test"))
+            .setKey(KEY_1)
+            .setPosition(5)
+            .setLength(10)
+            .build());
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    byte[] expected = new byte[10];
+    System.arraycopy(generateData(KEY_1, /* position= */ 0, /* length= */ 10), 5, expected, 0, 5);
+    System.arraycopy(generateData(KEY_1, /* position= */ 10, /* length= */ 10), 0, expected, 5, 5);
+    assertThat(data).isEqualTo(expected);
+  }
+
+  private PackedCache getPackedCache(long packSize) {
+    return new PackedCache(cacheDir, new NoOpCacheEvictor(), databaseProvider, packSize);
+  }
+
+  private static void addCache(PackedCache cache, String key, int position, int length)
+      throws IOException {
+    cache.startReadWriteNonBlocking(key, position, length);
+    File file = cache.startFile(key, position, length);
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(generateData(key, position, length));
+    }
+    cache.commitFile(file, length);
+    cache.releaseHoleSpan(SimpleCacheSpan.createHole(key, position, length));
+  }
+
+  private static void assertCachedDataReadCorrect(CacheSpan cacheSpan) throws IOException {
+    assertThat(cacheSpan.isCached).isTrue();
+    byte[] expected = generateData(cacheSpan.key, (int) cacheSpan.position, (int) cacheSpan.length);
+    byte[] data = new byte[(int) cacheSpan.length];
+    try (RandomAccessFile file = new RandomAccessFile(cacheSpan.file, "r")) {
+      file.seek(cacheSpan.fileOffset);
+      file.readFully(data);
+    }
+    assertThat(data).isEqualTo(expected);
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    try (FileInputStream inputStream = new FileInputStream(file)) {
+      return Util.toByteArray(inputStream);
+    }
+  }
+
+  private static byte[] generateData(String key, int position, int length) {
+    byte[] bytes = new byte[length];
+    new Random(key.hashCode() ^ position).nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PerKeyQuotaCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class PerKeyQuotaCacheEvictorTest {
+
+  @Test
+  public void onSpanAdded_exceedingQuota_evictsLeastRecentlyUsedSpanOfResource() {
+    PerKeyQuotaCacheEvictor evictor =
+        new PerKeyQuotaCacheEvictor(new NoOpCacheEvictor(), /* maxBytesPerKey= */ 20);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key1", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    CacheSpan span2 = createSpan("key1", /* position= */ 10, /* lastTouchTimestamp= */ 3);
+    evictor.onSpanAdded(cache, createSpan("key2", /* position= */ 0, /* lastTouchTimestamp= */ 0));
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+    evictor.onSpanAdded(cache, createSpan("key2", /* position= */ 10, /* lastTouchTimestamp= */ 2));
+
+    evictor.onSpanAdded(cache, createSpan("key1", /* position= */ 20, /* lastTouchTimestamp= */ 4));
+
+    assertThat(removedSpans).containsExactly(span1);
+  }
+
+  @Test
+  public void onStartFile_exceedingQuota_evictsSpansOfResource() {
+    PerKeyQuotaCacheEvictor evictor =
+        new PerKeyQuotaCacheEvictor(new NoOpCacheEvictor(), /* maxBytesPerKey= */ 20);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key1", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    CacheSpan span2 = createSpan("key1", /* position= */ 10, /* lastTouchTimestamp= */ 2);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+
+    evictor.onStartFile(cache, "key1", /* position= */ 20, /* length= */ 15);
+
+    assertThat(removedSpans).containsExactly(span1, span2).inOrder();
+  }
+
+  @Test
+  public void onSpanAdded_exceedingMaxBytesOfEvictor_delegatesEviction() {
+    PerKeyQuotaCacheEvictor evictor =
+        new PerKeyQuotaCacheEvictor(
+            new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 20), /* maxBytesPerKey= */ 20);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key1", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, createSpan("key2", /* position= */ 0, /* lastTouchTimestamp= */ 2));
+
+    evictor.onSpanAdded(cache, createSpan("key3", /* position= */ 0, /* lastTouchTimestamp= */ 3));
+
+    assertThat(removedSpans).containsExactly(span1);
+  }
+
+  private static Cache createCache(CacheEvictor evictor, List<CacheSpan> removedSpans) {
+    Cache cache = mock(Cache.class);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              removedSpans.add(span);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    return cache;
+  }
+
+  private static CacheSpan createSpan(String key, long position, long lastTouchTimestamp) {
+    return createSpan(key, position, /* length= */ 10, lastTouchTimestamp);
+  }
+
+  private static CacheSpan createSpan(
+      String key, long position, long length, long lastTouchTimestamp) {
+    return new CacheSpan(
+        key, position, length, lastTouchTimestamp, new File(key + "." + position + ".exo"));
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SegmentedLeastRecentlyUsedCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class SegmentedLeastRecentlyUsedCacheEvictorTest {
+
+  @Test
+  public void onSpanAdded_exceedingMaxBytes_evictsProbationarySpanBeforeProtectedSpan() {
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        new SegmentedLeastRecentlyUsedCacheEvictor(/* maxBytes= */ 40);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    evictor.onSpanAdded(cache, span1);
+    // Reading the span again promotes it to the protected segment.
+    evictor.onSpanTouched(
+        cache, span1, createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 2));
+    CacheSpan span2 = createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 3);
+    evictor.onSpanAdded(cache, span2);
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 20, /* lastTouchTimestamp= */ 4));
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 30, /* lastTouchTimestamp= */ 5));
+
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 40, /* lastTouchTimestamp= */ 6));
+
+    assertThat(removedSpans).containsExactly(span2);
+  }
+
+  @Test
+  public void onSpanTouched_exceedingProtectedBytes_demotesLeastRecentlyUsedProtectedSpan() {
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        new SegmentedLeastRecentlyUsedCacheEvictor(
+            /* maxBytes= */ 30, /* protectedFraction= */ 0.5f);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    CacheSpan span2 = createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 2);
+    CacheSpan span3 = createSpan("key", /* position= */ 20, /* lastTouchTimestamp= */ 3);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+    evictor.onSpanAdded(cache, span3);
+    CacheSpan touchedSpan1 = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 4);
+    evictor.onSpanTouched(cache, span1, touchedSpan1);
+    // The protected segment only has room for one span, so span1 is demoted.
+    evictor.onSpanTouched(
+        cache, span2, createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 5));
+
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 30, /* lastTouchTimestamp= */ 6));
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 40, /* lastTouchTimestamp= */ 7));
+
+    assertThat(removedSpans).containsExactly(span3, touchedSpan1).inOrder();
+  }
+
+  @Test
+  public void onSpanMoved_keepsSpanInProbationarySegment() {
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        new SegmentedLeastRecentlyUsedCacheEvictor(/* maxBytes= */ 30);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key", /* position= */ 0, /* lastTouchTimestamp= */ 1);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 10, /* lastTouchTimestamp= */ 2));
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 20, /* lastTouchTimestamp= */ 3));
+    CacheSpan movedSpan1 =
+        new CacheSpan(
+            "key",
+            /* position= */ 0,
+            /* length= */ 10,
+            /* lastTouchTimestamp= */ 1,
+            new File("moved.exo"));
+    evictor.onSpanMoved(cache, span1, movedSpan1);
+
+    evictor.onSpanAdded(cache, createSpan("key", /* position= */ 30, /* lastTouchTimestamp= */ 4));
+
+    assertThat(removedSpans).containsExactly(movedSpan1);
+  }
+
+  private static Cache createCache(CacheEvictor evictor, List<CacheSpan> removedSpans) {
+    Cache cache = mock(Cache.class);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              removedSpans.add(span);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    return cache;
+  }
+
+  private static CacheSpan createSpan(String key, long position, long lastTouchTimestamp) {
+    return createSpan(key, position, /* length= */ 10, lastTouchTimestamp);
+  }
+
+  private static CacheSpan createSpan(
+      String key, long position, long length, long lastTouchTimestamp) {
+    return new CacheSpan(
+        key, position, length, lastTouchTimestamp, new File(key + "." + position + ".exo"));
+  }
+}
@@ -27,13 +27,16 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.NavigableSet;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -204,6 +207,111 @@ public class SimpleCacheTest {
     assertThat(simpleCache.getCachedSpans(KEY_1)).isEmpty();
   }
 
+  @Test
+  public void newInstance_afterRelease_loadsSpansFromSpanIndex() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    assertThat(simpleCache.getInitializationMetrics().loadedFromSpanIndex).isFalse();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 10);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+
+    simpleCache = getSimpleCache();
+
+    SimpleCache.InitializationMetrics metrics = simpleCache.getInitializationMetrics();
+    assertThat(metrics.loadedFromSpanIndex).isTrue();
+    assertThat(metrics.spanCount).isEqualTo(2);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(25);
+    assertCachedDataReadCorrect(simpleCache.startReadWrite(KEY_1, 15, LENGTH_UNSET));
+  }
+
+  @Test
+  public void newInstance_afterInstanceWasNotReleased_loadsSpansFromSpanJournal()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 10);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.removeSpan(simpleCache.getCachedSpans(KEY_1).first());
+    // The instance isn't released, as if the process had been killed.
+    File cacheDir2 = new File(testDir, "cache2");
+    assertThat(cacheDir.renameTo(cacheDir2)).isTrue();
+
+    simpleCache = new SimpleCache(cacheDir2, new NoOpCacheEvictor(), databaseProvider);
+
+    assertThat(simpleCache.getInitializationMetrics().loadedFromSpanIndex).isTrue();
+    NavigableSet<CacheSpan> cachedSpans = simpleCache.getCachedSpans(KEY_1);
+    assertThat(cachedSpans).hasSize(1);
+    assertThat(cachedSpans.first().position).isEqualTo(15);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(10);
+  }
+
+  @Test
+  public void newInstance_withPartiallyWrittenSpanJournalRecord_loadsPrecedingRecords()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    try (FileOutputStream journalOutputStream =
+        new FileOutputStream(new File(cacheDir, "cached_spans.journal"), /* append= */ true)) {
+      // The type of an add record, without its fields.
+      journalOutputStream.write(1);
+    }
+    File cacheDir2 = new File(testDir, "cache2");
+    assertThat(cacheDir.renameTo(cacheDir2)).isTrue();
+
+    simpleCache = new SimpleCache(cacheDir2, new NoOpCacheEvictor(), databaseProvider);
+
+    assertThat(simpleCache.getInitializationMetrics().loadedFromSpanIndex).isTrue();
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(1);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(15);
+  }
+
+  @Test
+  public void newInstance_fromSpanIndex_removesSpansWithMissingFilesBeforeReturningThem()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    File file = simpleCache.getCachedSpans(KEY_1).first().file;
+    simpleCache.release();
+    assertThat(file.delete()).isTrue();
+
+    simpleCache = getSimpleCache();
+    // The span isn't checked against its file until its key is accessed.
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(15);
+
+    assertThat(simpleCache.isCached(KEY_1, 0, 15)).isFalse();
+    assertThat(simpleCache.getCachedBytes(KEY_1, 0, 15)).isEqualTo(0);
+    assertThat(simpleCache.getCachedSpans(KEY_1)).isEmpty();
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(0);
+  }
+
+  @Test
+  public void newInstance_withSpanIndexHavingInvalidSpanCount_listsCacheDirectory()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+    try (RandomAccessFile spanIndexFile =
+        new RandomAccessFile(new File(cacheDir, "cached_spans.idx"), "rw")) {
+      // Overwrites the span count, which follows the version and the UID.
+      spanIndexFile.seek(12);
+      spanIndexFile.writeInt(Integer.MAX_VALUE);
+    }
+
+    simpleCache = getSimpleCache();
+
+    assertThat(simpleCache.getInitializationMetrics().loadedFromSpanIndex).isFalse();
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(1);
+  }
+
   @Test
   @SuppressWarnings("deprecation") // Encrypted index is deprecated
   public void newInstance_withEncryptedIndex() throws Exception {
@@ -643,6 +751,64 @@ public class SimpleCacheTest {
         .isEqualTo(10);
   }
 
+  @Test
+  public void spanQueries_whileCacheIsLockedByAnotherThread_doNotBlock() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, /* position= */ 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, /* position= */ 0, /* length= */ 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    ConditionVariable cacheLocked = new ConditionVariable();
+    ConditionVariable canUnlockCache = new ConditionVariable();
+    Thread lockingThread =
+        new Thread(
+            () -> {
+              synchronized (simpleCache) {
+                cacheLocked.open();
+                canUnlockCache.blockUninterruptible();
+              }
+            });
+    lockingThread.start();
+    cacheLocked.blockUninterruptible();
+
+    long cachedLength =
+        simpleCache.getCachedLength(KEY_1, /* position= */ 0, /* length= */ LENGTH_UNSET);
+    boolean isCached = simpleCache.isCached(KEY_1, /* position= */ 0, /* length= */ 15);
+    NavigableSet<CacheSpan> cachedSpans = simpleCache.getCachedSpans(KEY_1);
+    canUnlockCache.open();
+    lockingThread.join();
+
+    assertThat(cachedLength).isEqualTo(15);
+    assertThat(isCached).isTrue();
+    assertThat(cachedSpans).hasSize(1);
+  }
+
+  @Test
+  public void startReadWrite_withLockedRange_returnsWhenHoleSpanIsReleased() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, /* position= */ 0, LENGTH_UNSET);
+    AtomicReference<CacheSpan> secondHoleSpan = new AtomicReference<>();
+    Thread writingThread =
+        new Thread(
+            () -> {
+              try {
+                secondHoleSpan.set(
+                    simpleCache.startReadWrite(KEY_1, /* position= */ 0, LENGTH_UNSET));
+              } catch (InterruptedException | CacheException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    writingThread.start();
+
+    // Writes to other keys can proceed whilst the thread is waiting.
+    CacheSpan otherHoleSpan = simpleCache.startReadWrite(KEY_2, /* position= */ 0, LENGTH_UNSET);
+    simpleCache.releaseHoleSpan(otherHoleSpan);
+    simpleCache.releaseHoleSpan(holeSpan);
+    writingThread.join();
+
+    assertThat(secondHoleSpan.get()).isNotNull();
+    assertThat(secondHoleSpan.get().isHoleSpan()).isTrue();
+  }
+
   // Regression test for https://github.com/google/ExoPlayer/issues/3260.
   @Test
   public void exceptionDuringIndexStore_doesNotPreventEviction() throws Exception {
@@ -676,6 +842,25 @@ public class SimpleCacheTest {
     assertThat(fileSpan.length).isEqualTo(15);
   }
 
+  @Test
+  public void removeSpan_onlyRecordsSpansRemovedByEvictorAsEvictions() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(20), databaseProvider);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    // Adding more content causes the evictor to remove the first span.
+    addCache(simpleCache, KEY_1, 15, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+
+    // Removing the remaining span directly isn't an eviction.
+    simpleCache.removeSpan(simpleCache.getCachedSpans(KEY_1).first());
+
+    CacheStatistics.Counters counters = simpleCache.getStatistics().getCounters();
+    assertThat(simpleCache.getCachedSpans(KEY_1)).isEmpty();
+    assertThat(counters.evictionCount).isEqualTo(1);
+    assertThat(counters.evictedBytes).isEqualTo(15);
+  }
+
   @Test
   public void usingReleasedCache_throwsException() {
     SimpleCache simpleCache = getSimpleCache();
@@ -31,6 +31,7 @@ import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
 import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
 import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
 import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4SampleTableCache;
 import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
 import com.google.android.exoplayer2.extractor.ts.Ac3Extractor;
 import com.google.android.exoplayer2.extractor.ts.Ac4Extractor;
@@ -47,6 +48,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -102,6 +104,7 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
       };
 
   private static final FlacExtensionLoader FLAC_EXTENSION_LOADER = new FlacExtensionLoader();
+  private static final String[] VALIDATOR_HEADER_NAMES = {"ETag", "Last-Modified"};
 
   private boolean constantBitrateSeekingEnabled;
   private boolean constantBitrateSeekingAlwaysEnabled;
@@ -115,6 +118,8 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
   private @TsExtractor.Mode int tsMode;
   private @DefaultTsPayloadReaderFactory.Flags int tsFlags;
   private int tsTimestampSearchBytes;
+  @Nullable private Executor tsPayloadReadingExecutor;
+  @Nullable private Mp4SampleTableCache mp4SampleTableCache;
 
   public DefaultExtractorsFactory() {
     tsMode = TsExtractor.MODE_SINGLE_PMT;
@@ -292,6 +297,41 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     return this;
   }
 
+  /**
+   * Sets the {@link Executor} on which {@link TsExtractor} instances created by the factory read
+   * the payloads of elementary streams.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @see TsExtractor#experimentalSetPayloadReadingExecutor(Executor)
+   * @param payloadReadingExecutor The {@link Executor}, or null to read payloads on the loading
+   *     thread.
+   * @return The factory, for convenience.
+   */
+  public synchronized DefaultExtractorsFactory experimentalSetTsExtractorPayloadReadingExecutor(
+      @Nullable Executor payloadReadingExecutor) {
+    tsPayloadReadingExecutor = payloadReadingExecutor;
+    return this;
+  }
+
+  /**
+   * Sets the {@link Mp4SampleTableCache} used by {@link Mp4Extractor} instances created by the
+   * factory, keyed by the URI of the stream and validated by its ETag or, failing that, its
+   * Last-Modified response header. The cache is only used by extractors created by {@link
+   * #createExtractors(Uri, Map)} with a non-empty URI.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @see Mp4Extractor#experimentalSetSampleTableCache(Mp4SampleTableCache, String, String)
+   * @param sampleTableCache The {@link Mp4SampleTableCache}, or null to parse every moov atom.
+   * @return The factory, for convenience.
+   */
+  public synchronized DefaultExtractorsFactory experimentalSetMp4SampleTableCache(
+      @Nullable Mp4SampleTableCache sampleTableCache) {
+    mp4SampleTableCache = sampleTableCache;
+    return this;
+  }
+
   @Override
   public synchronized Extractor[] createExtractors() {
     return createExtractors(Uri.EMPTY, new HashMap<>());
@@ -305,25 +345,29 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     @FileTypes.Type
     int responseHeadersInferredFileType = inferFileTypeFromResponseHeaders(responseHeaders);
     if (responseHeadersInferredFileType != FileTypes.UNKNOWN) {
-      addExtractorsForFileType(responseHeadersInferredFileType, extractors);
+      addExtractorsForFileType(responseHeadersInferredFileType, uri, responseHeaders, extractors);
     }
 
     @FileTypes.Type int uriInferredFileType = inferFileTypeFromUri(uri);
     if (uriInferredFileType != FileTypes.UNKNOWN
         && uriInferredFileType != responseHeadersInferredFileType) {
-      addExtractorsForFileType(uriInferredFileType, extractors);
+      addExtractorsForFileType(uriInferredFileType, uri, responseHeaders, extractors);
     }
 
     for (int fileType : DEFAULT_EXTRACTOR_ORDER) {
       if (fileType != responseHeadersInferredFileType && fileType != uriInferredFileType) {
-        addExtractorsForFileType(fileType, extractors);
+        addExtractorsForFileType(fileType, uri, responseHeaders, extractors);
       }
     }
 
     return extractors.toArray(new Extractor[extractors.size()]);
   }
 
-  private void addExtractorsForFileType(@FileTypes.Type int fileType, List<Extractor> extractors) {
+  private void addExtractorsForFileType(
+      @FileTypes.Type int fileType,
+      Uri uri,
+      Map<String, List<String>> responseHeaders,
+      List<Extractor> extractors) {
     switch (fileType) {
       case FileTypes.AC3:
         extractors.add(new Ac3Extractor());
@@ -380,7 +424,12 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
         break;
       case FileTypes.MP4:
         extractors.add(new FragmentedMp4Extractor(fragmentedMp4Flags));
-        extractors.add(new Mp4Extractor(mp4Flags));
+        Mp4Extractor mp4Extractor = new Mp4Extractor(mp4Flags);
+        if (mp4SampleTableCache != null && !Uri.EMPTY.equals(uri)) {
+          mp4Extractor.experimentalSetSampleTableCache(
+              mp4SampleTableCache, uri.toString(), getValidator(responseHeaders));
+        }
+        extractors.add(mp4Extractor);
         break;
       case FileTypes.OGG:
         extractors.add(new OggExtractor());
@@ -389,7 +438,9 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
         extractors.add(new PsExtractor());
         break;
       case FileTypes.TS:
-        extractors.add(new TsExtractor(tsMode, tsFlags, tsTimestampSearchBytes));
+        TsExtractor tsExtractor = new TsExtractor(tsMode, tsFlags, tsTimestampSearchBytes);
+        tsExtractor.experimentalSetPayloadReadingExecutor(tsPayloadReadingExecutor);
+        extractors.add(tsExtractor);
         break;
       case FileTypes.WAV:
         extractors.add(new WavExtractor());
@@ -404,6 +455,21 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     }
   }
 
+  /**
+   * Returns the ETag response header, or the Last-Modified response header if there's no ETag, or
+   * null if there's neither.
+   */
+  @Nullable
+  private static String getValidator(Map<String, List<String>> responseHeaders) {
+    for (String headerName : VALIDATOR_HEADER_NAMES) {
+      @Nullable List<String> values = responseHeaders.get(headerName);
+      if (values != null && !values.isEmpty()) {
+        return values.get(0);
+      }
+    }
+    return null;
+  }
+
   private static final class FlacExtensionLoader {
     private final AtomicBoolean extensionLoaded;
 
@@ -71,4 +71,9 @@ public final class DummyTrackOutput implements TrackOutput {
       @Nullable CryptoData cryptoData) {
     // Do nothing.
   }
+
+  @Override
+  public void seiDataView(int type, ParsableByteArray view, long pts) {
+    // Do nothing.
+  }
 }
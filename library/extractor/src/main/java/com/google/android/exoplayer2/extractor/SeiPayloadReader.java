@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.NalUnitUtil;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+
+/**
+ * Reads the payloads of H.264 and H.265 SEI NAL units, outputting CEA-608/708 messages to caption
+ * tracks and reporting user_data_unregistered and Agora defined payloads to {@link
+ * TrackOutput#seiDataView(int, ParsableByteArray, long)}.
+ *
+ * <p>Shared by the TS, fragmented MP4, Matroska and RTP sample paths so that SEI user data is
+ * extracted the same way regardless of the container. Payloads are reported as views, and NAL
+ * units that need to be copied before unescaping go to a reused scratch buffer, so no allocation is
+ * made per SEI message once the scratch buffer has grown to the largest SEI NAL unit seen.
+ *
+ * <p>Instances are not thread-safe and should be owned by a single reader.
+ */
+public final class SeiPayloadReader {
+
+  /** SEI payload type of user_data_unregistered messages. */
+  public static final int PAYLOAD_TYPE_USER_DATA_UNREGISTERED = 5;
+  /** SEI payload type of Agora defined messages. */
+  public static final int PAYLOAD_TYPE_AGORA_DEFINED_DATA = 100;
+
+  private static final TrackOutput[] NO_OUTPUTS = new TrackOutput[0];
+
+  private final ParsableByteArray nalBuffer;
+  private final ParsableByteArray payloadView;
+  private final CeaUtil.SeiRetrivalInterface seiRetrival;
+
+  @Nullable private TrackOutput seiDataOutput;
+  private long seiTimeUs;
+
+  /** Creates an instance. */
+  public SeiPayloadReader() {
+    nalBuffer = new ParsableByteArray();
+    payloadView = new ParsableByteArray();
+    seiRetrival = this::onSeiPayload;
+  }
+
+  /**
+   * Consumes the escaped content of an SEI NAL unit, starting at the NAL unit header.
+   *
+   * <p>The data is copied before being unescaped, so {@code data} is not modified.
+   *
+   * @param mimeType The sample MIME type, {@link MimeTypes#VIDEO_H264} or {@link
+   *     MimeTypes#VIDEO_H265}.
+   * @param timeUs The presentation time of the access unit carrying the SEI, in microseconds.
+   * @param data The array containing the NAL unit.
+   * @param offset The offset of the NAL unit header in {@code data}.
+   * @param length The length of the NAL unit, including its header.
+   * @param ceaOutputs The outputs to which CEA-608/708 samples should be written.
+   * @param seiDataOutput The output to which user data payloads should be reported, or null to
+   *     ignore them.
+   */
+  public void consumeNalUnit(
+      String mimeType,
+      long timeUs,
+      byte[] data,
+      int offset,
+      int length,
+      TrackOutput[] ceaOutputs,
+      @Nullable TrackOutput seiDataOutput) {
+    nalBuffer.reset(length);
+    System.arraycopy(data, offset, nalBuffer.getData(), 0, length);
+    int unescapedLength = NalUnitUtil.unescapeStream(nalBuffer.getData(), length);
+    nalBuffer.setLimit(unescapedLength);
+    nalBuffer.setPosition(getNalUnitHeaderLength(mimeType));
+    consume(timeUs, nalBuffer, ceaOutputs, seiDataOutput);
+  }
+
+  /**
+   * Equivalent to {@link #consumeNalUnit(String, long, byte[], int, int, TrackOutput[],
+   * TrackOutput)} without caption outputs.
+   */
+  public void consumeNalUnit(
+      String mimeType,
+      long timeUs,
+      byte[] data,
+      int offset,
+      int length,
+      TrackOutput seiDataOutput) {
+    consumeNalUnit(mimeType, timeUs, data, offset, length, NO_OUTPUTS, seiDataOutput);
+  }
+
+  /**
+   * Consumes the unescaped content of an SEI NAL unit.
+   *
+   * @param timeUs The presentation time of the access unit carrying the SEI, in microseconds.
+   * @param seiBuffer The unescaped SEI NAL unit data, positioned after the NAL unit header.
+   * @param ceaOutputs The outputs to which CEA-608/708 samples should be written.
+   * @param seiDataOutput The output to which user data payloads should be reported, or null to
+   *     ignore them.
+   */
+  public void consume(
+      long timeUs,
+      ParsableByteArray seiBuffer,
+      TrackOutput[] ceaOutputs,
+      @Nullable TrackOutput seiDataOutput) {
+    if (seiDataOutput == null) {
+      CeaUtil.consume(timeUs, seiBuffer, ceaOutputs);
+      return;
+    }
+    this.seiDataOutput = seiDataOutput;
+    seiTimeUs = timeUs;
+    try {
+      CeaUtil.consume(timeUs, seiBuffer, ceaOutputs, seiRetrival);
+    } finally {
+      this.seiDataOutput = null;
+    }
+  }
+
+  /**
+   * Equivalent to {@link #consume(long, ParsableByteArray, TrackOutput[], TrackOutput)} without
+   * caption outputs.
+   */
+  public void consume(long timeUs, ParsableByteArray seiBuffer, TrackOutput seiDataOutput) {
+    consume(timeUs, seiBuffer, NO_OUTPUTS, seiDataOutput);
+  }
+
+  /** Returns the length of the NAL unit header for the given video MIME type. */
+  public static int getNalUnitHeaderLength(String mimeType) {
+    return MimeTypes.VIDEO_H265.equals(mimeType) ? 2 : 1;
+  }
+
+  private void onSeiPayload(int payloadType, int payloadSize, byte[] data, int position) {
+    if (payloadType != PAYLOAD_TYPE_USER_DATA_UNREGISTERED
+        && payloadType != PAYLOAD_TYPE_AGORA_DEFINED_DATA) {
+      return;
+    }
+    payloadView.reset(data, position + payloadSize);
+    payloadView.setPosition(position);
+    Assertions.checkNotNull(seiDataOutput).seiDataView(payloadType, payloadView, seiTimeUs);
+  }
+}
@@ -21,6 +21,7 @@ import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.SeiDataItem;
 import com.google.android.exoplayer2.upstream.DataReader;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import java.io.EOFException;
@@ -210,9 +211,33 @@ public interface TrackOutput {
 
   /**
    * Called to pass sei data to the output
+   *
+   * <p>Ownership of {@code data} passes to the output. It is allocated from {@link
+   * SeiDataItem#PAYLOAD_POOL} when called from {@link #seiDataView}, and may be returned to it
+   * once no longer needed.
+   *
    * @param type The sei data type
    * @param data The sei data
    * @param pts Pts of Pes header
    */
   default void seiDataNotify(int type, ParsableByteArray data, long pts) { }
+
+  /**
+   * Called to pass a view of sei data to the output.
+   *
+   * <p>{@code view} spans from its position to its limit and is only valid for the duration of the
+   * call. It must not be modified. Outputs that consume the payload synchronously may override this
+   * method to read it in place without allocating. The default implementation copies the payload
+   * into a buffer from {@link SeiDataItem#PAYLOAD_POOL} and passes it to {@link #seiDataNotify}.
+   *
+   * @param type The sei data type.
+   * @param view A view over the sei data.
+   * @param pts Pts of Pes header.
+   */
+  default void seiDataView(int type, ParsableByteArray view, long pts) {
+    int length = view.bytesLeft();
+    ParsableByteArray data = SeiDataItem.PAYLOAD_POOL.acquire(length);
+    view.readBytes(data.getData(), /* offset= */ 0, length);
+    seiDataNotify(type, data, pts);
+  }
 }
@@ -41,6 +41,7 @@ import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeiPayloadReader;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.extractor.TrueHdSampleRechunker;
@@ -390,6 +391,8 @@ public class MatroskaExtractor implements Extractor {
   private final ParsableByteArray encryptionInitializationVector;
   private final ParsableByteArray encryptionSubsampleData;
   private final ParsableByteArray blockAdditionalData;
+  private final ParsableByteArray seiNalBuffer;
+  private final SeiPayloadReader seiPayloadReader;
   private @MonotonicNonNull ByteBuffer encryptionSubsampleDataBuffer;
 
   private long segmentContentSize;
@@ -437,6 +440,7 @@ public class MatroskaExtractor implements Extractor {
   private int sampleBytesRead;
   private int sampleBytesWritten;
   private int sampleCurrentNalBytesRemaining;
+  private boolean sampleNalUnitIsSei;
   private boolean sampleEncodingHandled;
   private boolean sampleSignalByteRead;
   private boolean samplePartitionCountRead;
@@ -465,7 +469,9 @@ public class MatroskaExtractor implements Extractor {
     vorbisNumPageSamples = new ParsableByteArray(ByteBuffer.allocate(4).putInt(-1).array());
     seekEntryIdBytes = new ParsableByteArray(4);
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
-    nalLength = new ParsableByteArray(4);
+    nalLength = new ParsableByteArray(5);
+    seiNalBuffer = new ParsableByteArray();
+    seiPayloadReader = new SeiPayloadReader();
     sampleStrippedBytes = new ParsableByteArray();
     subtitleSample = new ParsableByteArray();
     encryptionInitializationVector = new ParsableByteArray(ENCRYPTION_IV_SIZE);
@@ -1590,6 +1596,36 @@ public class MatroskaExtractor implements Extractor {
           nalStartCode.setPosition(0);
           output.sampleData(nalStartCode, 4);
           sampleBytesWritten += 4;
+          if (sampleCurrentNalBytesRemaining > 0) {
+            // Read and write the NAL unit type byte, so that SEI NAL units can be identified.
+            writeToTarget(input, nalLengthData, /* offset= */ 4, /* length= */ 1);
+            nalLength.setPosition(4);
+            output.sampleData(nalLength, 1);
+            sampleBytesRead++;
+            sampleBytesWritten++;
+            sampleCurrentNalBytesRemaining--;
+            String mimeType =
+                CODEC_ID_H265.equals(track.codecId) ? MimeTypes.VIDEO_H265 : MimeTypes.VIDEO_H264;
+            sampleNalUnitIsSei = NalUnitUtil.isNalUnitSei(mimeType, nalLengthData[4]);
+          }
+        } else if (sampleNalUnitIsSei) {
+          // Read and write the payload of the SEI NAL unit, then extract user data from it.
+          int nalPayloadLength = sampleCurrentNalBytesRemaining;
+          seiNalBuffer.reset(nalPayloadLength);
+          writeToTarget(input, seiNalBuffer.getData(), /* offset= */ 0, nalPayloadLength);
+          output.sampleData(seiNalBuffer, nalPayloadLength);
+          sampleBytesRead += nalPayloadLength;
+          sampleBytesWritten += nalPayloadLength;
+          sampleCurrentNalBytesRemaining = 0;
+          sampleNalUnitIsSei = false;
+          int unescapedLength =
+              NalUnitUtil.unescapeStream(seiNalBuffer.getData(), nalPayloadLength);
+          // If the format is H.265/HEVC the NAL unit header has two bytes so skip one more byte.
+          seiNalBuffer.setPosition(CODEC_ID_H265.equals(track.codecId) ? 1 : 0);
+          seiNalBuffer.setLimit(unescapedLength);
+          long sampleTimeUs =
+              blockTimeUs + (blockSampleIndex * track.defaultSampleDurationNs) / 1000;
+          seiPayloadReader.consume(sampleTimeUs, seiNalBuffer, output);
         } else {
           // Write the payload of the NAL unit.
           int bytesWritten = writeToOutput(input, output, sampleCurrentNalBytesRemaining);
@@ -1642,6 +1678,7 @@ public class MatroskaExtractor implements Extractor {
     sampleBytesRead = 0;
     sampleBytesWritten = 0;
     sampleCurrentNalBytesRemaining = 0;
+    sampleNalUnitIsSei = false;
     sampleEncodingHandled = false;
     sampleSignalByteRead = false;
     samplePartitionCountRead = false;
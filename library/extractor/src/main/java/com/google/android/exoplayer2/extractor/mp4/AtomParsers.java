@@ -127,30 +127,65 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
         continue;
       }
       @Nullable
-      Track track =
-          modifyTrackFunction.apply(
-              parseTrak(
-                  atom,
-                  checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
-                  duration,
-                  drmInitData,
-                  ignoreEditLists,
-                  isQuickTime));
-      if (track == null) {
-        continue;
+      TrackSampleTable trackSampleTable =
+          parseTrakSampleTable(
+              atom,
+              checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
+              gaplessInfoHolder,
+              duration,
+              drmInitData,
+              ignoreEditLists,
+              isQuickTime,
+              modifyTrackFunction);
+      if (trackSampleTable != null) {
+        trackSampleTables.add(trackSampleTable);
       }
-      Atom.ContainerAtom stblAtom =
-          checkNotNull(
-              checkNotNull(
-                      checkNotNull(atom.getContainerAtomOfType(Atom.TYPE_mdia))
-                          .getContainerAtomOfType(Atom.TYPE_minf))
-                  .getContainerAtomOfType(Atom.TYPE_stbl));
-      TrackSampleTable trackSampleTable = parseStbl(track, stblAtom, gaplessInfoHolder);
-      trackSampleTables.add(trackSampleTable);
     }
     return trackSampleTables;
   }
 
+  /**
+   * Parses a trak atom and its sample table (defined in ISO/IEC 14496-12).
+   *
+   * @param trak Trak atom to decode.
+   * @param mvhd Movie header atom, used to get the timescale.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @param duration The duration in units of the timescale declared in the mvhd atom, or {@link
+   *     C#TIME_UNSET} if the duration should be parsed from the tkhd atom.
+   * @param drmInitData {@link DrmInitData} to be included in the format, or {@code null}.
+   * @param ignoreEditLists Whether to ignore any edit lists in the trak box.
+   * @param isQuickTime True for QuickTime media. False otherwise.
+   * @param modifyTrackFunction A function to apply to the {@link Track}.
+   * @return The {@link TrackSampleTable}, or null if the track isn't supported.
+   * @throws ParserException Thrown if the trak atom can't be parsed.
+   */
+  @Nullable
+  public static TrackSampleTable parseTrakSampleTable(
+      Atom.ContainerAtom trak,
+      Atom.LeafAtom mvhd,
+      GaplessInfoHolder gaplessInfoHolder,
+      long duration,
+      @Nullable DrmInitData drmInitData,
+      boolean ignoreEditLists,
+      boolean isQuickTime,
+      Function<@NullableType Track, @NullableType Track> modifyTrackFunction)
+      throws ParserException {
+    @Nullable
+    Track track =
+        modifyTrackFunction.apply(
+            parseTrak(trak, mvhd, duration, drmInitData, ignoreEditLists, isQuickTime));
+    if (track == null) {
+      return null;
+    }
+    Atom.ContainerAtom stblAtom =
+        checkNotNull(
+            checkNotNull(
+                    checkNotNull(trak.getContainerAtomOfType(Atom.TYPE_mdia))
+                        .getContainerAtomOfType(Atom.TYPE_minf))
+                .getContainerAtomOfType(Atom.TYPE_stbl));
+    return parseStbl(track, stblAtom, gaplessInfoHolder);
+  }
+
   /**
    * Parses a udta atom.
    *
@@ -32,6 +32,7 @@ import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.audio.Ac3Util;
 import com.google.android.exoplayer2.audio.Ac4Util;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
@@ -46,6 +47,7 @@ import com.google.android.exoplayer2.extractor.mp4.Atom.ContainerAtom;
 import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.metadata.mp4.MotionPhotoMetadata;
 import com.google.android.exoplayer2.metadata.mp4.SlowMotionData;
+import com.google.android.exoplayer2.upstream.DataReader;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.NalUnitUtil;
@@ -150,8 +152,18 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private final ArrayDeque<ContainerAtom> containerAtoms;
   private final SefReader sefReader;
   private final List<Metadata.Entry> slowMotionMetadataEntries;
+  /** Sample tables of the trak atoms that have been parsed before the end of the moov atom. */
+  private final List<TrackSampleTable> parsedTrackSampleTables;
+  /** Gapless information from the sample tables in {@link #parsedTrackSampleTables}. */
+  private GaplessInfoHolder parsedTracksGaplessInfoHolder;
+
+  @Nullable private Mp4SampleTableCache sampleTableCache;
+  @Nullable private String sampleTableCacheKey;
+  @Nullable private String sampleTableCacheValidator;
+  private boolean isReadingMoovAtomFromMemory;
 
   private @State int parserState;
+  private long inputLength;
   private int atomType;
   private long atomSize;
   private int atomHeaderBytesRead;
@@ -189,6 +201,9 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         ((flags & FLAG_READ_SEF_DATA) != 0) ? STATE_READING_SEF : STATE_READING_ATOM_HEADER;
     sefReader = new SefReader();
     slowMotionMetadataEntries = new ArrayList<>();
+    parsedTrackSampleTables = new ArrayList<>();
+    parsedTracksGaplessInfoHolder = new GaplessInfoHolder();
+    inputLength = C.LENGTH_UNSET;
     atomHeader = new ParsableByteArray(Atom.LONG_HEADER_SIZE);
     containerAtoms = new ArrayDeque<>();
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
@@ -197,6 +212,41 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     sampleTrackIndex = C.INDEX_UNSET;
   }
 
+  /**
+   * Equivalent to {@link #experimentalSetSampleTableCache(Mp4SampleTableCache, String, String)
+   * experimentalSetSampleTableCache(sampleTableCache, key, null)}.
+   */
+  public void experimentalSetSampleTableCache(
+      @Nullable Mp4SampleTableCache sampleTableCache, @Nullable String key) {
+    experimentalSetSampleTableCache(sampleTableCache, key, /* validator= */ null);
+  }
+
+  /**
+   * Sets a cache of parsed sample tables, and the key and validator of the stream in the cache. The
+   * default is no cache.
+   *
+   * <p>If the cache holds an entry for the stream, the tracks are output from it and the moov atom
+   * isn't read. Otherwise, if the cache persisted the moov atom of the stream, the moov atom is
+   * parsed from the cache without seeking to it. Otherwise, the moov atom is read from the stream
+   * and added to the cache. The cache isn't used if {@link #FLAG_READ_MOTION_PHOTO_METADATA} is
+   * set, or if the length of the stream is unknown.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param sampleTableCache The {@link Mp4SampleTableCache}, or null.
+   * @param key The key of the stream, such as its URI, or null.
+   * @param validator A value that changes whenever the stream changes, such as its ETag or last
+   *     modification date, or null if unknown. Cached data is only used for the same validator.
+   */
+  public void experimentalSetSampleTableCache(
+      @Nullable Mp4SampleTableCache sampleTableCache,
+      @Nullable String key,
+      @Nullable String validator) {
+    this.sampleTableCache = sampleTableCache;
+    sampleTableCacheKey = key;
+    sampleTableCacheValidator = validator;
+  }
+
   @Override
   public boolean sniff(ExtractorInput input) throws IOException {
     return Sniffer.sniffUnfragmented(
@@ -242,6 +292,13 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition) throws IOException {
+    inputLength = input.getLength();
+    if (tracks == null
+        && parserState == STATE_READING_ATOM_HEADER
+        && atomHeaderBytesRead == 0
+        && input.getPosition() == 0) {
+      maybeOutputTracksFromSampleTableCache();
+    }
     while (true) {
       switch (parserState) {
         case STATE_READING_ATOM_HEADER:
@@ -294,14 +351,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
+      firstOffset = sampleTable.getOffset(sampleIndex);
       if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -375,11 +432,32 @@ public final class Mp4Extractor implements Extractor, SeekMap {
           "Atom size less than header length (unsupported).");
     }
 
-    if (shouldParseContainerAtom(atomType)) {
+    if (atomType == Atom.TYPE_moov
+        && containerAtoms.isEmpty()
+        && !isReadingMoovAtomFromMemory
+        && isSampleTableCacheEnabled()
+        && checkNotNull(sampleTableCache).isPersistingMoovAtoms()
+        && atomSize <= Integer.MAX_VALUE) {
+      // Read the whole moov atom so that it can be persisted, then parse it from memory.
+      long position = input.getPosition() - atomHeaderBytesRead;
+      byte[] moovData = new byte[(int) atomSize];
+      System.arraycopy(atomHeader.getData(), 0, moovData, 0, atomHeaderBytesRead);
+      input.readFully(moovData, atomHeaderBytesRead, moovData.length - atomHeaderBytesRead);
+      readMoovAtom(moovData, position);
+      checkNotNull(sampleTableCache)
+          .putMoovAtom(
+              checkNotNull(sampleTableCacheKey),
+              new Mp4SampleTableCache.MoovAtom(
+                  inputLength, sampleTableCacheValidator, fileType, position, moovData));
+    } else if (shouldParseContainerAtom(atomType)) {
       long endPosition = input.getPosition() + atomSize - atomHeaderBytesRead;
       if (atomSize != atomHeaderBytesRead && atomType == Atom.TYPE_meta) {
         maybeSkipRemainingMetaAtomHeaderBytes(input);
       }
+      if (atomType == Atom.TYPE_moov) {
+        parsedTrackSampleTables.clear();
+        parsedTracksGaplessInfoHolder = new GaplessInfoHolder();
+      }
       containerAtoms.push(new ContainerAtom(atomType, endPosition));
       if (atomSize == atomHeaderBytesRead) {
         processAtomEnded(endPosition);
@@ -453,6 +531,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         processMoovAtom(containerAtom);
         containerAtoms.clear();
         parserState = STATE_READING_SAMPLE;
+      } else if (containerAtom.type == Atom.TYPE_trak && maybeParseTrakAtom(containerAtom)) {
+        // The trak atom doesn't need to be held until the end of the moov atom.
       } else if (!containerAtoms.isEmpty()) {
         containerAtoms.peek().add(containerAtom);
       }
@@ -462,12 +542,123 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
+  /**
+   * Parses a trak atom as soon as it ends, rather than at the end of the moov atom, so that the
+   * moov atom is parsed incrementally while it's read.
+   *
+   * @param trak The trak atom.
+   * @return Whether the trak atom was parsed. If false, it should be parsed with the moov atom.
+   * @throws ParserException If the trak atom can't be parsed.
+   */
+  private boolean maybeParseTrakAtom(ContainerAtom trak) throws ParserException {
+    @Nullable ContainerAtom moov = containerAtoms.peek();
+    if (moov == null || moov.type != Atom.TYPE_moov) {
+      return false;
+    }
+    @Nullable Atom.LeafAtom mvhd = moov.getLeafAtomOfType(Atom.TYPE_mvhd);
+    if (mvhd == null || moov.getContainerAtomOfType(Atom.TYPE_trak) != null) {
+      // Tracks are output in the order of their trak atoms, so a trak atom can't be parsed before
+      // the preceding ones.
+      return false;
+    }
+    @Nullable
+    TrackSampleTable trackSampleTable =
+        AtomParsers.parseTrakSampleTable(
+            trak,
+            mvhd,
+            parsedTracksGaplessInfoHolder,
+            /* duration= */ C.TIME_UNSET,
+            /* drmInitData= */ null,
+            /* ignoreEditLists= */ (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0,
+            /* isQuickTime= */ fileType == FILE_TYPE_QUICKTIME,
+            /* modifyTrackFunction= */ track -> track);
+    if (trackSampleTable != null) {
+      parsedTrackSampleTables.add(trackSampleTable);
+    }
+    return true;
+  }
+
+  /**
+   * Outputs the tracks from the {@link #sampleTableCache} if it holds an entry or a persisted moov
+   * atom for the stream.
+   */
+  private void maybeOutputTracksFromSampleTableCache() throws IOException {
+    if (!isSampleTableCacheEnabled()) {
+      return;
+    }
+    Mp4SampleTableCache sampleTableCache = checkNotNull(this.sampleTableCache);
+    String key = checkNotNull(sampleTableCacheKey);
+    @Nullable
+    Mp4SampleTableCache.Entry entry =
+        sampleTableCache.get(key, inputLength, sampleTableCacheValidator, flags);
+    if (entry != null) {
+      outputTracks(entry);
+      containerAtoms.clear();
+      parserState = STATE_READING_SAMPLE;
+      return;
+    }
+    @Nullable
+    Mp4SampleTableCache.MoovAtom moovAtom =
+        sampleTableCache.getMoovAtom(key, inputLength, sampleTableCacheValidator);
+    if (moovAtom != null) {
+      fileType = moovAtom.fileType;
+      readMoovAtom(moovAtom.data, moovAtom.position);
+    }
+  }
+
+  /**
+   * Reads a moov atom from memory, as if it were read from the stream at the given position, and
+   * prepares to read samples.
+   *
+   * @param moovData The moov atom, including its header.
+   * @param position The position of the moov atom in the stream.
+   * @throws IOException If the moov atom is malformed.
+   */
+  private void readMoovAtom(byte[] moovData, long position) throws IOException {
+    ParsableByteArray moovBuffer = new ParsableByteArray(moovData);
+    DataReader moovReader =
+        (buffer, offset, length) -> {
+          int bytesLeft = moovBuffer.bytesLeft();
+          if (bytesLeft == 0) {
+            return C.RESULT_END_OF_INPUT;
+          }
+          int bytesRead = min(length, bytesLeft);
+          moovBuffer.readBytes(buffer, offset, bytesRead);
+          return bytesRead;
+        };
+    ExtractorInput moovInput = new DefaultExtractorInput(moovReader, position, inputLength);
+    long moovEndPosition = position + moovData.length;
+    PositionHolder positionHolder = new PositionHolder();
+    containerAtoms.clear();
+    enterReadingAtomHeaderState();
+    isReadingMoovAtomFromMemory = true;
+    try {
+      while (parserState != STATE_READING_SAMPLE) {
+        if (moovInput.getPosition() >= moovEndPosition) {
+          throw ParserException.createForMalformedContainer(
+              "Truncated moov atom.", /* cause= */ null);
+        }
+        if (parserState == STATE_READING_ATOM_HEADER) {
+          readAtomHeader(moovInput);
+        } else if (readAtomPayload(moovInput, positionHolder)) {
+          // Skip the atom in memory rather than seeking.
+          moovInput.skipFully((int) (positionHolder.position - moovInput.getPosition()));
+        }
+      }
+    } finally {
+      isReadingMoovAtomFromMemory = false;
+    }
+  }
+
+  private boolean isSampleTableCacheEnabled() {
+    return sampleTableCache != null
+        && sampleTableCacheKey != null
+        && inputLength != C.LENGTH_UNSET
+        && (flags & FLAG_READ_MOTION_PHOTO_METADATA) == 0;
+  }
+
   /** Updates the stored track metadata to reflect the contents of the specified moov atom. */
   private void processMoovAtom(ContainerAtom moov) throws ParserException {
-    int firstVideoTrackIndex = C.INDEX_UNSET;
-    long durationUs = C.TIME_UNSET;
-    List<Mp4Track> tracks = new ArrayList<>();
-
     // Process metadata.
     @Nullable Metadata udtaMetaMetadata = null;
     @Nullable Metadata smtaMetadata = null;
@@ -489,6 +680,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       mdtaMetadata = AtomParsers.parseMdtaFromMeta(meta);
     }
 
+    // Parse the trak atoms that weren't parsed when they ended, which precede the parsed ones.
     boolean ignoreEditLists = (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0;
     List<TrackSampleTable> trackSampleTables =
         parseTraks(
@@ -499,8 +691,41 @@ public final class Mp4Extractor implements Extractor, SeekMap {
             ignoreEditLists,
             isQuickTime,
             /* modifyTrackFunction= */ track -> track);
+    trackSampleTables.addAll(parsedTrackSampleTables);
+    parsedTrackSampleTables.clear();
+    if (parsedTracksGaplessInfoHolder.hasGaplessInfo()) {
+      gaplessInfoHolder.encoderDelay = parsedTracksGaplessInfoHolder.encoderDelay;
+      gaplessInfoHolder.encoderPadding = parsedTracksGaplessInfoHolder.encoderPadding;
+    }
+
+    Mp4SampleTableCache.Entry entry =
+        new Mp4SampleTableCache.Entry(
+            inputLength,
+            sampleTableCacheValidator,
+            flags,
+            trackSampleTables,
+            gaplessInfoHolder.encoderDelay,
+            gaplessInfoHolder.encoderPadding,
+            udtaMetaMetadata,
+            smtaMetadata,
+            mdtaMetadata);
+    if (isSampleTableCacheEnabled()) {
+      checkNotNull(sampleTableCache).put(checkNotNull(sampleTableCacheKey), entry);
+    }
+    outputTracks(entry);
+  }
+
+  /** Outputs the tracks and the seek map, and prepares to read samples. */
+  private void outputTracks(Mp4SampleTableCache.Entry entry) {
+    int firstVideoTrackIndex = C.INDEX_UNSET;
+    long durationUs = C.TIME_UNSET;
+    List<Mp4Track> tracks = new ArrayList<>();
+    GaplessInfoHolder gaplessInfoHolder = new GaplessInfoHolder();
+    gaplessInfoHolder.encoderDelay = entry.encoderDelay;
+    gaplessInfoHolder.encoderPadding = entry.encoderPadding;
 
     ExtractorOutput extractorOutput = checkNotNull(this.extractorOutput);
+    List<TrackSampleTable> trackSampleTables = entry.trackSampleTables;
     int trackCount = trackSampleTables.size();
     for (int i = 0; i < trackCount; i++) {
       TrackSampleTable trackSampleTable = trackSampleTables.get(i);
@@ -536,10 +761,10 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       MetadataUtil.setFormatGaplessInfo(track.type, gaplessInfoHolder, formatBuilder);
       MetadataUtil.setFormatMetadata(
           track.type,
-          udtaMetaMetadata,
-          mdtaMetadata,
+          entry.udtaMetaMetadata,
+          entry.mdtaMetadata,
           formatBuilder,
-          smtaMetadata,
+          entry.smtaMetadata,
           slowMotionMetadataEntries.isEmpty() ? null : new Metadata(slowMotionMetadataEntries));
       mp4Track.trackOutput.format(formatBuilder.build());
 
@@ -583,8 +808,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = castNonNull(tracks)[sampleTrackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     @Nullable TrueHdSampleRechunker trueHdSampleRechunker = track.trueHdSampleRechunker;
     long skipAmount = position - inputPosition + sampleBytesRead;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
@@ -655,8 +880,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
     }
 
-    long timeUs = track.sampleTable.timestampsUs[sampleIndex];
-    @C.BufferFlags int flags = track.sampleTable.flags[sampleIndex];
+    long timeUs = track.sampleTable.getTimestampUs(sampleIndex);
+    @C.BufferFlags int flags = track.sampleTable.getFlags(sampleIndex);
     if (trueHdSampleRechunker != null) {
       trueHdSampleRechunker.sampleMetadata(
           trackOutput, timeUs, flags, sampleSize, /* offset= */ 0, /* cryptoData= */ null);
@@ -703,7 +928,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == track.sampleTable.sampleCount) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex);
       long sampleAccumulatedBytes = castNonNull(accumulatedSampleSizes)[trackIndex][sampleIndex];
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
@@ -786,7 +1011,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     boolean[] tracksFinished = new boolean[tracks.length];
     for (int i = 0; i < tracks.length; i++) {
       accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
+      nextSampleTimesUs[i] = tracks[i].sampleTable.getTimestampUs(0);
     }
     long accumulatedSampleSize = 0;
     int finishedTracks = 0;
@@ -801,11 +1026,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
       int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
       accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
+      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.getSize(trackSampleIndex);
       nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
       if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
         nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
+            tracks[minTimeTrackIndex].sampleTable.getTimestampUs(trackSampleIndex);
       } else {
         tracksFinished[minTimeTrackIndex] = true;
         finishedTracks++;
@@ -829,7 +1054,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return min(sampleOffset, offset);
   }
 
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.metadata.Metadata;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A cache of the sample tables parsed from the moov atoms of unfragmented MP4 streams, which
+ * allows an {@link Mp4Extractor} to skip reading and parsing the moov atom when a stream is opened
+ * again.
+ *
+ * <p>Entries are keyed by the URI of the stream, and are only used for a stream of the same length
+ * and validator that's extracted with the same flags. The validator identifies the version of the
+ * stream, such as its ETag or last modification date, and is optional. Entries are evicted in least
+ * recently used order once the maximum number of entries is exceeded.
+ *
+ * <p>If the cache is created with a directory, the raw moov atoms are also persisted to it, so that
+ * an {@link Mp4Extractor} doesn't need to seek to the moov atom when a stream is opened again after
+ * its entry was evicted, or after the process was restarted.
+ *
+ * <p>An instance can be shared by {@link Mp4Extractor} instances on different threads.
+ */
+public final class Mp4SampleTableCache {
+
+  /** The default maximum number of entries. */
+  public static final int DEFAULT_MAX_ENTRIES = 8;
+
+  private static final String TAG = "Mp4SampleTableCache";
+
+  private static final String MOOV_FILE_SUFFIX = ".moov";
+  private static final int MOOV_FILE_VERSION = 1;
+
+  private final int maxEntries;
+  @Nullable private final File moovDirectory;
+  private final LinkedHashMap<String, Entry> entries;
+
+  /** Creates an instance that holds up to {@link #DEFAULT_MAX_ENTRIES} entries. */
+  public Mp4SampleTableCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Creates an instance that doesn't persist moov atoms.
+   *
+   * @param maxEntries The maximum number of entries. Must be positive.
+   */
+  public Mp4SampleTableCache(int maxEntries) {
+    this(maxEntries, /* moovDirectory= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxEntries The maximum number of entries. Must be positive.
+   * @param moovDirectory A directory dedicated to persisting the raw moov atoms, or null to not
+   *     persist them. The directory is created if it doesn't exist.
+   */
+  public Mp4SampleTableCache(int maxEntries, @Nullable File moovDirectory) {
+    checkArgument(maxEntries > 0);
+    this.maxEntries = maxEntries;
+    this.moovDirectory = moovDirectory;
+    entries = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+  }
+
+  /** Removes the entry and the persisted moov atom for a stream, if any. */
+  public synchronized void remove(String key) {
+    entries.remove(key);
+    @Nullable AtomicFile moovFile = getMoovFile(key);
+    if (moovFile != null) {
+      moovFile.delete();
+    }
+  }
+
+  /** Removes all entries and persisted moov atoms. */
+  public synchronized void clear() {
+    entries.clear();
+    @Nullable File[] files = moovDirectory == null ? null : moovDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.getName().endsWith(MOOV_FILE_SUFFIX)) {
+        new AtomicFile(file).delete();
+      }
+    }
+  }
+
+  /** Returns the number of entries. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the entry for a stream, or null if there's no entry for a stream of the given length
+   * and validator that was extracted with the given flags. A returned entry becomes the most
+   * recently used.
+   */
+  @Nullable
+  /* package */ synchronized Entry get(
+      String key, long inputLength, @Nullable String validator, @Mp4Extractor.Flags int flags) {
+    @Nullable Entry entry = entries.get(key);
+    if (entry == null
+        || entry.inputLength != inputLength
+        || !Util.areEqual(entry.validator, validator)
+        || entry.flags != flags) {
+      return null;
+    }
+    return entry;
+  }
+
+  /** Adds the entry for a stream, evicting the least recently used entry if necessary. */
+  /* package */ synchronized void put(String key, Entry entry) {
+    entries.put(key, entry);
+    if (entries.size() > maxEntries) {
+      entries.remove(entries.keySet().iterator().next());
+    }
+  }
+
+  /** Returns whether moov atoms are persisted. */
+  /* package */ boolean isPersistingMoovAtoms() {
+    return moovDirectory != null;
+  }
+
+  /**
+   * Returns the persisted moov atom of a stream, or null if there's no persisted moov atom for a
+   * stream of the given length and validator, or if it can't be read.
+   */
+  @Nullable
+  /* package */ synchronized MoovAtom getMoovAtom(
+      String key, long inputLength, @Nullable String validator) {
+    @Nullable AtomicFile moovFile = getMoovFile(key);
+    if (moovFile == null || !moovFile.exists()) {
+      return null;
+    }
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(moovFile.openRead()))) {
+      if (input.readInt() != MOOV_FILE_VERSION
+          || !key.equals(input.readUTF())
+          || input.readLong() != inputLength) {
+        return null;
+      }
+      @Nullable String persistedValidator = input.readBoolean() ? input.readUTF() : null;
+      if (!Util.areEqual(persistedValidator, validator)) {
+        return null;
+      }
+      int fileType = input.readInt();
+      long position = input.readLong();
+      byte[] data = new byte[input.readInt()];
+      input.readFully(data);
+      return new MoovAtom(inputLength, validator, fileType, position, data);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read moov atom", e);
+      return null;
+    }
+  }
+
+  /** Persists the moov atom of a stream, replacing any persisted moov atom of the stream. */
+  /* package */ synchronized void putMoovAtom(String key, MoovAtom moovAtom) {
+    @Nullable AtomicFile moovFile = getMoovFile(key);
+    if (moovFile == null) {
+      return;
+    }
+    try {
+      OutputStream outputStream = moovFile.startWrite();
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+      output.writeInt(MOOV_FILE_VERSION);
+      output.writeUTF(key);
+      output.writeLong(moovAtom.inputLength);
+      output.writeBoolean(moovAtom.validator != null);
+      if (moovAtom.validator != null) {
+        output.writeUTF(moovAtom.validator);
+      }
+      output.writeInt(moovAtom.fileType);
+      output.writeLong(moovAtom.position);
+      output.writeInt(moovAtom.data.length);
+      output.write(moovAtom.data);
+      output.flush();
+      moovFile.endWrite(outputStream);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to persist moov atom", e);
+    }
+  }
+
+  @Nullable
+  private AtomicFile getMoovFile(String key) {
+    if (moovDirectory == null) {
+      return null;
+    }
+    if (!moovDirectory.exists() && !moovDirectory.mkdirs()) {
+      return null;
+    }
+    // Keys that collide on their hash replace each other's moov atom, and are told apart by the key
+    // that's persisted with the moov atom.
+    String fileName = Integer.toHexString(key.hashCode()) + MOOV_FILE_SUFFIX;
+    return new AtomicFile(new File(moovDirectory, fileName));
+  }
+
+  /** A raw moov atom of a stream. */
+  /* package */ static final class MoovAtom {
+
+    /** The length of the stream. */
+    public final long inputLength;
+    /** The validator of the stream, or null. */
+    @Nullable public final String validator;
+    /** The file type of the stream, as determined from its ftyp atom. */
+    public final int fileType;
+    /** The position of the moov atom in the stream. */
+    public final long position;
+    /** The moov atom, including its header. */
+    public final byte[] data;
+
+    public MoovAtom(
+        long inputLength, @Nullable String validator, int fileType, long position, byte[] data) {
+      this.inputLength = inputLength;
+      this.validator = validator;
+      this.fileType = fileType;
+      this.position = position;
+      this.data = data;
+    }
+  }
+
+  /** The result of parsing a moov atom. */
+  /* package */ static final class Entry {
+
+    /** The length of the stream. */
+    public final long inputLength;
+    /** The validator of the stream, or null. */
+    @Nullable public final String validator;
+    /** The flags of the extractor that parsed the moov atom. */
+    public final @Mp4Extractor.Flags int flags;
+    /** The sample tables of the tracks, in the order in which they're declared. */
+    public final List<TrackSampleTable> trackSampleTables;
+    /** The encoder delay, or {@link com.google.android.exoplayer2.Format#NO_VALUE}. */
+    public final int encoderDelay;
+    /** The encoder padding, or {@link com.google.android.exoplayer2.Format#NO_VALUE}. */
+    public final int encoderPadding;
+    /** The metadata from the meta atom in the udta atom, if any. */
+    @Nullable public final Metadata udtaMetaMetadata;
+    /** The metadata from the smta atom in the udta atom, if any. */
+    @Nullable public final Metadata smtaMetadata;
+    /** The metadata from the meta atom in the moov atom, if any. */
+    @Nullable public final Metadata mdtaMetadata;
+
+    public Entry(
+        long inputLength,
+        @Nullable String validator,
+        @Mp4Extractor.Flags int flags,
+        List<TrackSampleTable> trackSampleTables,
+        int encoderDelay,
+        int encoderPadding,
+        @Nullable Metadata udtaMetaMetadata,
+        @Nullable Metadata smtaMetadata,
+        @Nullable Metadata mdtaMetadata) {
+      this.inputLength = inputLength;
+      this.validator = validator;
+      this.flags = flags;
+      this.trackSampleTables = trackSampleTables;
+      this.encoderDelay = encoderDelay;
+      this.encoderPadding = encoderPadding;
+      this.udtaMetaMetadata = udtaMetaMetadata;
+      this.smtaMetadata = smtaMetadata;
+      this.mdtaMetadata = mdtaMetadata;
+    }
+  }
+}
@@ -15,30 +15,48 @@
  */
 package com.google.android.exoplayer2.extractor.mp4;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
-import com.google.android.exoplayer2.util.Util;
 
-/** Sample table for a track in an MP4 file. */
+/**
+ * Sample table for a track in an MP4 file.
+ *
+ * <p>The table is held in a compact form, since it's retained for the whole playback and may
+ * describe millions of samples. Offsets and timestamps are stored as deltas from the first value
+ * in each block of samples, sizes are stored as a single value if all samples have the same size,
+ * and flags are stored as a bit per sample if they only indicate synchronization samples.
+ */
 /* package */ final class TrackSampleTable {
 
+  /** The base 2 logarithm of the number of samples in each block of a packed array. */
+  private static final int BLOCK_SIZE_SHIFT = 6;
+
+  private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_SHIFT;
+
   /** The track corresponding to this sample table. */
   public final Track track;
   /** Number of samples. */
   public final int sampleCount;
-  /** Sample offsets in bytes. */
-  public final long[] offsets;
-  /** Sample sizes in bytes. */
-  public final int[] sizes;
-  /** Maximum sample size in {@link #sizes}. */
+  /** Maximum sample size. */
   public final int maximumSize;
-  /** Sample timestamps in microseconds. */
-  public final long[] timestampsUs;
-  /** Sample flags. */
-  public final int[] flags;
   /** The duration of the track sample table in microseconds. */
   public final long durationUs;
 
+  private final PackedLongArray offsets;
+  private final PackedLongArray timestampsUs;
+  /** Sample sizes in bytes, or null if all samples have size {@link #fixedSize}. */
+  @Nullable private final int[] sizes;
+
+  private final int fixedSize;
+  /** Sample flags, or null if they're held by {@link #keyFrames}. */
+  @Nullable private final int[] flags;
+  /**
+   * A bit per sample, which is set if the sample is a synchronization sample, or null if all
+   * samples are synchronization samples. Only used if {@link #flags} is null.
+   */
+  @Nullable private final long[] keyFrames;
+
   public TrackSampleTable(
       Track track,
       long[] offsets,
@@ -52,16 +70,69 @@ import com.google.android.exoplayer2.util.Util;
     Assertions.checkArgument(flags.length == timestampsUs.length);
 
     this.track = track;
-    this.offsets = offsets;
-    this.sizes = sizes;
     this.maximumSize = maximumSize;
-    this.timestampsUs = timestampsUs;
-    this.flags = flags;
     this.durationUs = durationUs;
     sampleCount = offsets.length;
-    if (flags.length > 0) {
-      flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
+    this.offsets = new PackedLongArray(offsets);
+    this.timestampsUs = new PackedLongArray(timestampsUs);
+
+    boolean hasFixedSize = true;
+    for (int i = 1; i < sizes.length && hasFixedSize; i++) {
+      hasFixedSize = sizes[i] == sizes[0];
+    }
+    this.sizes = hasFixedSize ? null : sizes;
+    fixedSize = hasFixedSize && sizes.length > 0 ? sizes[0] : 0;
+
+    boolean allKeyFrames = true;
+    boolean onlyKeyFrameFlags = true;
+    for (int i = 0; i < flags.length && onlyKeyFrameFlags; i++) {
+      allKeyFrames &= flags[i] == C.BUFFER_FLAG_KEY_FRAME;
+      onlyKeyFrameFlags = flags[i] == 0 || flags[i] == C.BUFFER_FLAG_KEY_FRAME;
+    }
+    if (!onlyKeyFrameFlags) {
+      this.flags = flags;
+      keyFrames = null;
+    } else if (allKeyFrames) {
+      this.flags = null;
+      keyFrames = null;
+    } else {
+      this.flags = null;
+      keyFrames = new long[(flags.length + 63) >> 6];
+      for (int i = 0; i < flags.length; i++) {
+        if (flags[i] == C.BUFFER_FLAG_KEY_FRAME) {
+          keyFrames[i >> 6] |= 1L << (i & 63);
+        }
+      }
+    }
+  }
+
+  /** Returns the offset of a sample in bytes. */
+  public long getOffset(int sampleIndex) {
+    return offsets.get(sampleIndex);
+  }
+
+  /** Returns the size of a sample in bytes. */
+  public int getSize(int sampleIndex) {
+    return sizes != null ? sizes[sampleIndex] : fixedSize;
+  }
+
+  /** Returns the timestamp of a sample in microseconds. */
+  public long getTimestampUs(int sampleIndex) {
+    return timestampsUs.get(sampleIndex);
+  }
+
+  /** Returns the {@link C.BufferFlags} of a sample. */
+  public @C.BufferFlags int getFlags(int sampleIndex) {
+    int sampleFlags;
+    if (flags != null) {
+      sampleFlags = flags[sampleIndex];
+    } else {
+      sampleFlags = isSynchronizationSample(sampleIndex) ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+    if (sampleIndex == sampleCount - 1) {
+      sampleFlags |= C.BUFFER_FLAG_LAST_SAMPLE;
     }
+    return sampleFlags;
   }
 
   /**
@@ -74,9 +145,17 @@ import com.google.android.exoplayer2.util.Util;
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
-    int startIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
+    int startIndex = binarySearchTimestamp(timeUs);
+    if (startIndex < 0) {
+      startIndex = -(startIndex + 2);
+    } else {
+      // Find the first sample with the timestamp, as Util.binarySearchFloor does.
+      while (startIndex > 0 && timestampsUs.get(startIndex - 1) == timeUs) {
+        startIndex--;
+      }
+    }
     for (int i = startIndex; i >= 0; i--) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      if (isSynchronizationSample(i)) {
         return i;
       }
     }
@@ -91,12 +170,88 @@ import com.google.android.exoplayer2.util.Util;
    * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
    */
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
-    int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i < timestampsUs.length; i++) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+    int startIndex = binarySearchTimestamp(timeUs);
+    if (startIndex < 0) {
+      startIndex = ~startIndex;
+    } else {
+      // Find the last sample with the timestamp, as Util.binarySearchCeil does.
+      while (startIndex < sampleCount - 1 && timestampsUs.get(startIndex + 1) == timeUs) {
+        startIndex++;
+      }
+    }
+    for (int i = startIndex; i < sampleCount; i++) {
+      if (isSynchronizationSample(i)) {
         return i;
       }
     }
     return C.INDEX_UNSET;
   }
+
+  private boolean isSynchronizationSample(int sampleIndex) {
+    if (flags != null) {
+      return (flags[sampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0;
+    }
+    return keyFrames == null || (keyFrames[sampleIndex >> 6] & (1L << (sampleIndex & 63))) != 0;
+  }
+
+  /**
+   * Searches the timestamps in the same way as {@link java.util.Arrays#binarySearch(long[], long)},
+   * so that the result is the same for timestamps that aren't sorted.
+   */
+  private int binarySearchTimestamp(long timeUs) {
+    int low = 0;
+    int high = sampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimeUs = timestampsUs.get(mid);
+      if (midTimeUs < timeUs) {
+        low = mid + 1;
+      } else if (midTimeUs > timeUs) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * An array of values that are stored as deltas from the first value in their block, if all
+   * deltas fit in an int.
+   */
+  private static final class PackedLongArray {
+
+    @Nullable private final long[] values;
+    private final long[] blockValues;
+    private final int[] deltas;
+
+    public PackedLongArray(long[] values) {
+      long[] blockValues = new long[(values.length + BLOCK_SIZE - 1) >> BLOCK_SIZE_SHIFT];
+      int[] deltas = new int[values.length];
+      boolean packed = true;
+      for (int i = 0; i < values.length && packed; i++) {
+        if ((i & (BLOCK_SIZE - 1)) == 0) {
+          blockValues[i >> BLOCK_SIZE_SHIFT] = values[i];
+        }
+        long delta = values[i] - blockValues[i >> BLOCK_SIZE_SHIFT];
+        deltas[i] = (int) delta;
+        packed = deltas[i] == delta;
+      }
+      if (packed) {
+        this.values = null;
+        this.blockValues = blockValues;
+        this.deltas = deltas;
+      } else {
+        this.values = values;
+        this.blockValues = new long[0];
+        this.deltas = new int[0];
+      }
+    }
+
+    public long get(int index) {
+      return values != null
+          ? values[index]
+          : blockValues[index >> BLOCK_SIZE_SHIFT] + deltas[index];
+    }
+  }
 }
@@ -219,7 +219,7 @@ public final class H265Reader implements ElementaryStreamReader {
 
       // Skip the NAL prefix and type.
       seiWrapper.skipBytes(5);
-      seiReader.consume(pesTimeUs, seiWrapper);
+      seiReader.consume(pesTimeUs, seiWrapper, output);
     }
     if (suffixSei.endNalUnit(discardPadding)) {
       int unescapedLength = NalUnitUtil.unescapeStream(suffixSei.nalData, suffixSei.nalLength);
@@ -227,7 +227,7 @@ public final class H265Reader implements ElementaryStreamReader {
 
       // Skip the NAL prefix and type.
       seiWrapper.skipBytes(5);
-      seiReader.consume(pesTimeUs, seiWrapper);
+      seiReader.consume(pesTimeUs, seiWrapper, output);
     }
   }
 
@@ -18,8 +18,8 @@ package com.google.android.exoplayer2.extractor.ts;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
-import com.google.android.exoplayer2.extractor.CeaUtil;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.SeiPayloadReader;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.extractor.ts.TsPayloadReader.TrackIdGenerator;
 import com.google.android.exoplayer2.util.Assertions;
@@ -30,24 +30,17 @@ import java.util.List;
 /** Consumes SEI buffers, outputting contained CEA-608/708 messages to a {@link TrackOutput}. */
 public final class SeiReader {
 
-
   private static final String TAG = "SeiReader";
 
-  private static final int PAYLOAD_TYPE_USER_DATA_UNREGISTERED = 5;
-  private static final int PAYLOAD_TYPE_AGORA_DEFINED_DATA = 100;
-
   private final List<Format> closedCaptionFormats;
   private final TrackOutput[] outputs;
-
-
-  public interface SeiDataCallback {
-    public void onSeiDataNotify(int type, ParsableByteArray userData, long pts);
-  }
+  private final SeiPayloadReader seiPayloadReader;
 
   /** @param closedCaptionFormats A list of formats for the closed caption channels to expose. */
   public SeiReader(List<Format> closedCaptionFormats) {
     this.closedCaptionFormats = closedCaptionFormats;
     outputs = new TrackOutput[closedCaptionFormats.size()];
+    seiPayloadReader = new SeiPayloadReader();
   }
 
   public void createTracks(ExtractorOutput extractorOutput, TrackIdGenerator idGenerator) {
@@ -74,29 +67,22 @@ public final class SeiReader {
     }
   }
 
-  public void consume(long pesTimeUs, ParsableByteArray seiBuffer){
-    consume(pesTimeUs, seiBuffer, null);
+  public void consume(long pesTimeUs, ParsableByteArray seiBuffer) {
+    consume(pesTimeUs, seiBuffer, /* seiDataOutput= */ null);
   }
 
   /**
-   *  consume the sei payload data, and return user_data_unregisted/agora_defined_data by callback
-   * @param pesTimeUs
-   * @param seiBuffer
-   * @param seiDataCallback
+   * Consumes the unescaped content of an SEI NAL unit, outputting CEA-608/708 messages to the
+   * closed caption tracks and reporting user_data_unregistered and Agora defined payloads to
+   * {@link TrackOutput#seiDataView(int, ParsableByteArray, long)} of {@code seiDataOutput}.
+   *
+   * @param pesTimeUs The presentation time of the access unit carrying the SEI, in microseconds.
+   * @param seiBuffer The unescaped SEI NAL unit data, positioned after the NAL unit header.
+   * @param seiDataOutput The output to which user data payloads are reported, or null to ignore
+   *     them.
    */
-  public void consume(long pesTimeUs, ParsableByteArray seiBuffer, SeiDataCallback seiDataCallback) {
-
-    CeaUtil.consume(pesTimeUs, seiBuffer, outputs, (int payloadType, int payloadSize, byte [] data, int position)->{
-
-      if(null != seiDataCallback && (PAYLOAD_TYPE_USER_DATA_UNREGISTERED == payloadType ||
-          PAYLOAD_TYPE_AGORA_DEFINED_DATA == payloadType)){
-
-        ParsableByteArray seiData = new ParsableByteArray(payloadSize);
-        System.arraycopy(data, position, seiData.getData(), 0, payloadSize);
-
-        seiDataCallback.onSeiDataNotify(payloadType, seiData, pesTimeUs);
-      }
-    });
-
+  public void consume(
+      long pesTimeUs, ParsableByteArray seiBuffer, @Nullable TrackOutput seiDataOutput) {
+    seiPayloadReader.consume(pesTimeUs, seiBuffer, outputs, seiDataOutput);
   }
 }
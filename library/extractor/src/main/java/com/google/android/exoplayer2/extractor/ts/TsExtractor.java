@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.extractor.ts;
 
 import static com.google.android.exoplayer2.extractor.ts.TsPayloadReader.FLAG_PAYLOAD_UNIT_START_INDICATOR;
 import static java.lang.annotation.ElementType.TYPE_USE;
+import static java.lang.Math.max;
 
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
@@ -37,6 +38,7 @@ import com.google.android.exoplayer2.extractor.ts.TsPayloadReader.DvbSubtitleInf
 import com.google.android.exoplayer2.extractor.ts.TsPayloadReader.EsInfo;
 import com.google.android.exoplayer2.extractor.ts.TsPayloadReader.TrackIdGenerator;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.ParsableBitArray;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
@@ -49,7 +51,11 @@ import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
@@ -113,21 +119,28 @@ public final class TsExtractor implements Extractor {
   private static final long AC4_FORMAT_IDENTIFIER = 0x41432d34;
   private static final long HEVC_FORMAT_IDENTIFIER = 0x48455643;
 
-  private static final int BUFFER_SIZE = TS_PACKET_SIZE * 50;
+  /** The size of the packet buffer, which is filled with as much data as each read returns. */
+  private static final int BUFFER_SIZE = TS_PACKET_SIZE * 256;
   private static final int SNIFF_TS_PACKET_COUNT = 5;
 
   private final @Mode int mode;
   private final int timestampSearchBytes;
   private final List<TimestampAdjuster> timestampAdjusters;
   private final ParsableByteArray tsPacketBuffer;
-  private final SparseIntArray continuityCounters;
+  private final int[] continuityCounters; // Indexed by pid
   private final TsPayloadReader.Factory payloadReaderFactory;
-  private final SparseArray<TsPayloadReader> tsPayloadReaders; // Indexed by pid
+  private final @NullableType TsPayloadReader[] tsPayloadReaders; // Indexed by pid
   private final SparseBooleanArray trackIds;
-  private final SparseBooleanArray trackPids;
+  private final boolean[] trackPids; // Indexed by pid
   private final TsDurationReader durationReader;
+  private final IdentityHashMap<TsPayloadReader, PayloadBatch> payloadBatches;
+  private final ArrayList<PayloadBatch> pendingPayloadBatches;
+  // Reused by each read of the pending payload batches on the executor.
+  private final AtomicInteger remainingPayloadBatchCount;
+  private final ConditionVariable payloadBatchesRead;
 
   // Accessed only by the loading thread.
+  @Nullable private Executor payloadReadingExecutor;
   private @MonotonicNonNull TsBinarySearchSeeker tsBinarySearchSeeker;
   private ExtractorOutput output;
   private int remainingPmts;
@@ -216,15 +229,40 @@ public final class TsExtractor implements Extractor {
     }
     tsPacketBuffer = new ParsableByteArray(new byte[BUFFER_SIZE], 0);
     trackIds = new SparseBooleanArray();
-    trackPids = new SparseBooleanArray();
-    tsPayloadReaders = new SparseArray<>();
-    continuityCounters = new SparseIntArray();
+    trackPids = new boolean[MAX_PID_PLUS_ONE];
+    tsPayloadReaders = new TsPayloadReader[MAX_PID_PLUS_ONE];
+    continuityCounters = new int[MAX_PID_PLUS_ONE];
+    Arrays.fill(continuityCounters, C.INDEX_UNSET);
     durationReader = new TsDurationReader(timestampSearchBytes);
+    payloadBatches = new IdentityHashMap<>();
+    pendingPayloadBatches = new ArrayList<>();
+    remainingPayloadBatchCount = new AtomicInteger();
+    payloadBatchesRead = new ConditionVariable();
     output = ExtractorOutput.PLACEHOLDER;
     pcrPid = -1;
     resetPayloadReaders();
   }
 
+  /**
+   * Sets an {@link Executor} on which the payloads of elementary streams are read, or null to read
+   * them on the loading thread. The default is null.
+   *
+   * <p>Each call to {@link #read} splits the complete packets in the buffer by stream, and passes
+   * the payloads of each PES stream to its payload reader in order, with consecutive packets that
+   * continue a PES packet passed to the reader together. When an executor is set, the payloads of
+   * each PES stream are read in a task run on the executor, so that different streams are read in
+   * parallel, and all tasks complete before {@link #read} returns. Payloads are read on the loading
+   * thread until the timestamp offsets of the stream have been established, so that the output
+   * timestamps don't depend on the order in which the tasks run.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param payloadReadingExecutor The {@link Executor}, or null. Should have more than one thread.
+   */
+  public void experimentalSetPayloadReadingExecutor(@Nullable Executor payloadReadingExecutor) {
+    this.payloadReadingExecutor = payloadReadingExecutor;
+  }
+
   // Extractor implementation.
 
   @Override
@@ -283,9 +321,11 @@ public final class TsExtractor implements Extractor {
       tsBinarySearchSeeker.setSeekTargetUs(timeUs);
     }
     tsPacketBuffer.reset(/* limit= */ 0);
-    continuityCounters.clear();
-    for (int i = 0; i < tsPayloadReaders.size(); i++) {
-      tsPayloadReaders.valueAt(i).seek();
+    Arrays.fill(continuityCounters, C.INDEX_UNSET);
+    for (@Nullable TsPayloadReader payloadReader : tsPayloadReaders) {
+      if (payloadReader != null) {
+        payloadReader.seek();
+      }
     }
     bytesSinceLastSync = 0;
   }
@@ -325,11 +365,50 @@ public final class TsExtractor implements Extractor {
     }
 
     int endOfPacket = findEndOfFirstTsPacketInBuffer();
-    int limit = tsPacketBuffer.limit();
-    if (endOfPacket > limit) {
+    if (endOfPacket > tsPacketBuffer.limit()) {
       return RESULT_CONTINUE;
     }
 
+    // Read all complete packets in the buffer. Once the timestamp offsets have been established,
+    // the payloads of each PES stream are batched, so that each reader consumes runs of payload
+    // rather than single packets.
+    boolean wereTracksEnded = tracksEnded;
+    boolean batchPesPayloads = areTimestampOffsetsEstablished();
+    try {
+      while (true) {
+        if (readPacket(endOfPacket, inputLength, batchPesPayloads) && !batchPesPayloads) {
+          batchPesPayloads = areTimestampOffsetsEstablished();
+        }
+        if (tracksEnded != wereTracksEnded) {
+          // The caller may need to seek or read the duration.
+          break;
+        }
+        endOfPacket = findEndOfFirstTsPacketInBuffer();
+        if (endOfPacket > tsPacketBuffer.limit()) {
+          break;
+        }
+      }
+    } finally {
+      readPendingPayloadBatches();
+    }
+    return RESULT_CONTINUE;
+  }
+
+  // Internals.
+
+  /**
+   * Reads the TS packet at the start of the packet buffer, and advances the position past it.
+   *
+   * @param endOfPacket The position of the end of the packet in the buffer.
+   * @param inputLength The length of the input, or {@link C#LENGTH_UNSET}.
+   * @param batchPesPayloads Whether the payloads of PES streams are batched, to be read by {@link
+   *     #readPendingPayloadBatches()}, rather than read immediately.
+   * @return Whether the payload of the packet was read immediately. Pending batches are read
+   *     first, so that payloads are always read in stream order.
+   * @throws IOException If an error occurs reading the packet.
+   */
+  private boolean readPacket(int endOfPacket, long inputLength, boolean batchPesPayloads)
+      throws IOException {
     @TsPayloadReader.Flags int packetHeaderFlags = 0;
 
     // Note: See ISO/IEC 13818-1, section 2.4.3.2 for details of the header format.
@@ -337,7 +416,7 @@ public final class TsExtractor implements Extractor {
     if ((tsPacketHeader & 0x800000) != 0) { // transport_error_indicator
       // There are uncorrectable errors in this packet.
       tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return false;
     }
     packetHeaderFlags |= (tsPacketHeader & 0x400000) != 0 ? FLAG_PAYLOAD_UNIT_START_INDICATOR : 0;
     // Ignoring transport_priority (tsPacketHeader & 0x200000)
@@ -346,24 +425,32 @@ public final class TsExtractor implements Extractor {
     boolean adaptationFieldExists = (tsPacketHeader & 0x20) != 0;
     boolean payloadExists = (tsPacketHeader & 0x10) != 0;
 
-    TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders.get(pid) : null;
+    @Nullable TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders[pid] : null;
     if (payloadReader == null) {
       tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return false;
     }
+    boolean isBatched = batchPesPayloads && payloadReader instanceof PesReader;
 
     // Discontinuity check.
     if (mode != MODE_HLS) {
       int continuityCounter = tsPacketHeader & 0xF;
-      int previousCounter = continuityCounters.get(pid, continuityCounter - 1);
-      continuityCounters.put(pid, continuityCounter);
+      int previousCounter = continuityCounters[pid];
+      if (previousCounter == C.INDEX_UNSET) {
+        previousCounter = continuityCounter - 1;
+      }
+      continuityCounters[pid] = continuityCounter;
       if (previousCounter == continuityCounter) {
         // Duplicate packet found.
         tsPacketBuffer.setPosition(endOfPacket);
-        return RESULT_CONTINUE;
+        return false;
       } else if (continuityCounter != ((previousCounter + 1) & 0xF)) {
         // Discontinuity found.
-        payloadReader.seek();
+        if (isBatched) {
+          getPayloadBatch(payloadReader).addSeek();
+        } else {
+          payloadReader.seek();
+        }
       }
     }
 
@@ -381,10 +468,20 @@ public final class TsExtractor implements Extractor {
 
     // Read the payload.
     boolean wereTracksEnded = tracksEnded;
+    boolean readImmediately = false;
     if (shouldConsumePacketPayload(pid)) {
-      tsPacketBuffer.setLimit(endOfPacket);
-      payloadReader.consume(tsPacketBuffer, packetHeaderFlags);
-      tsPacketBuffer.setLimit(limit);
+      if (isBatched) {
+        getPayloadBatch(payloadReader)
+            .addPacket(tsPacketBuffer.getPosition(), endOfPacket, packetHeaderFlags);
+      } else {
+        // The reader may create readers and tracks, or establish timestamp offsets.
+        readPendingPayloadBatches();
+        int limit = tsPacketBuffer.limit();
+        tsPacketBuffer.setLimit(endOfPacket);
+        payloadReader.consume(tsPacketBuffer, packetHeaderFlags);
+        tsPacketBuffer.setLimit(limit);
+        readImmediately = true;
+      }
     }
     if (mode != MODE_HLS && !wereTracksEnded && tracksEnded && inputLength != C.LENGTH_UNSET) {
       // We have read all tracks from all PMTs in this non-live stream. Now seek to the beginning
@@ -394,10 +491,80 @@ public final class TsExtractor implements Extractor {
     }
 
     tsPacketBuffer.setPosition(endOfPacket);
-    return RESULT_CONTINUE;
+    return readImmediately;
   }
 
-  // Internals.
+  private boolean areTimestampOffsetsEstablished() {
+    for (int i = 0; i < timestampAdjusters.size(); i++) {
+      if (timestampAdjusters.get(i).getTimestampOffsetUs() == C.TIME_UNSET) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private PayloadBatch getPayloadBatch(TsPayloadReader payloadReader) {
+    // Batches are keyed by reader rather than PID, since a reader may be used for several PIDs.
+    @Nullable PayloadBatch payloadBatch = payloadBatches.get(payloadReader);
+    if (payloadBatch == null) {
+      payloadBatch = new PayloadBatch(payloadReader);
+      payloadBatches.put(payloadReader, payloadBatch);
+    }
+    if (payloadBatch.isEmpty()) {
+      pendingPayloadBatches.add(payloadBatch);
+    }
+    return payloadBatch;
+  }
+
+  /**
+   * Reads the pending payload batches. If a {@link #payloadReadingExecutor} is set, one batch is
+   * read on the loading thread and the others on the executor, and this method waits until all of
+   * them have been read.
+   */
+  private void readPendingPayloadBatches() throws IOException {
+    int batchCount = pendingPayloadBatches.size();
+    if (batchCount == 0) {
+      return;
+    }
+    @Nullable Executor executor = payloadReadingExecutor;
+    if (executor == null || batchCount == 1) {
+      try {
+        for (int i = 0; i < batchCount; i++) {
+          pendingPayloadBatches.get(i).read();
+        }
+      } finally {
+        pendingPayloadBatches.clear();
+      }
+      return;
+    }
+    payloadBatchesRead.close();
+    remainingPayloadBatchCount.set(batchCount);
+    for (int i = 1; i < batchCount; i++) {
+      PayloadBatch payloadBatch = pendingPayloadBatches.get(i);
+      try {
+        executor.execute(payloadBatch);
+      } catch (RejectedExecutionException e) {
+        payloadBatch.run();
+      }
+    }
+    pendingPayloadBatches.get(0).run();
+    // The batches write to the track outputs, so they must be read before returning even if the
+    // loading thread is interrupted.
+    payloadBatchesRead.blockUninterruptible();
+    @Nullable Exception exception = null;
+    for (int i = 0; i < batchCount; i++) {
+      @Nullable Exception batchException = pendingPayloadBatches.get(i).getAndClearException();
+      if (exception == null) {
+        exception = batchException;
+      }
+    }
+    pendingPayloadBatches.clear();
+    if (exception instanceof IOException) {
+      throw (IOException) exception;
+    } else if (exception != null) {
+      throw (RuntimeException) exception;
+    }
+  }
 
   private void maybeOutputSeekMap(long inputLength) {
     if (!hasOutputSeekMap) {
@@ -470,22 +637,154 @@ public final class TsExtractor implements Extractor {
   private boolean shouldConsumePacketPayload(int packetPid) {
     return mode == MODE_HLS
         || tracksEnded
-        || !trackPids.get(packetPid, /* valueIfKeyNotFound= */ false); // It's a PSI packet
+        || !trackPids[packetPid]; // It's a PSI packet
   }
 
   private void resetPayloadReaders() {
     trackIds.clear();
-    tsPayloadReaders.clear();
+    Arrays.fill(tsPayloadReaders, null);
     SparseArray<TsPayloadReader> initialPayloadReaders =
         payloadReaderFactory.createInitialPayloadReaders();
     int initialPayloadReadersSize = initialPayloadReaders.size();
     for (int i = 0; i < initialPayloadReadersSize; i++) {
-      tsPayloadReaders.put(initialPayloadReaders.keyAt(i), initialPayloadReaders.valueAt(i));
+      tsPayloadReaders[initialPayloadReaders.keyAt(i)] = initialPayloadReaders.valueAt(i);
     }
-    tsPayloadReaders.put(TS_PAT_PID, new SectionReader(new PatReader()));
+    tsPayloadReaders[TS_PAT_PID] = new SectionReader(new PatReader());
+    payloadBatches.clear();
     id3Reader = null;
   }
 
+  /**
+   * Payloads of a PES stream, which are read by the stream's reader in runs of contiguous payload,
+   * either on the loading thread or on the {@link #payloadReadingExecutor}.
+   */
+  private final class PayloadBatch implements Runnable {
+
+    private static final int SEEK = -1;
+    /** The initial size of the buffer into which runs of payload are copied. */
+    private static final int INITIAL_RUN_BUFFER_SIZE = TS_PACKET_SIZE * 16;
+
+    private final TsPayloadReader payloadReader;
+    private final ParsableByteArray payload;
+
+    /**
+     * The payload start position, end position and header flags of each packet in the packet
+     * buffer, or {@link #SEEK} values for a discontinuity.
+     */
+    private int[] packets;
+
+    private int packetCount;
+    private byte[] runBuffer;
+    @Nullable private Exception exception;
+
+    public PayloadBatch(TsPayloadReader payloadReader) {
+      this.payloadReader = payloadReader;
+      payload = new ParsableByteArray();
+      packets = new int[3 * 16];
+      runBuffer = Util.EMPTY_BYTE_ARRAY;
+    }
+
+    public boolean isEmpty() {
+      return packetCount == 0;
+    }
+
+    public void addPacket(
+        int payloadPosition, int endOfPacket, @TsPayloadReader.Flags int packetHeaderFlags) {
+      add(payloadPosition, endOfPacket, packetHeaderFlags);
+    }
+
+    public void addSeek() {
+      add(SEEK, SEEK, SEEK);
+    }
+
+    @Nullable
+    public Exception getAndClearException() {
+      @Nullable Exception exception = this.exception;
+      this.exception = null;
+      return exception;
+    }
+
+    /** Passes the payloads to the reader, and clears the batch. */
+    public void read() throws IOException {
+      try {
+        byte[] data = tsPacketBuffer.getData();
+        int i = 0;
+        while (i < packetCount) {
+          int payloadPosition = packets[3 * i];
+          if (payloadPosition == SEEK) {
+            payloadReader.seek();
+            i++;
+            continue;
+          }
+          int flags = packets[3 * i + 2];
+          int runEnd = i + 1;
+          // Packets that continue a PES packet are passed together with the preceding packet if
+          // their flags are the same. Packets that start a PES packet are always passed separately.
+          while (runEnd < packetCount
+              && packets[3 * runEnd] != SEEK
+              && packets[3 * runEnd + 2] == flags
+              && (flags & FLAG_PAYLOAD_UNIT_START_INDICATOR) == 0) {
+            runEnd++;
+          }
+          if (runEnd == i + 1) {
+            payload.reset(data, /* limit= */ packets[3 * i + 1]);
+            payload.setPosition(payloadPosition);
+          } else {
+            payload.reset(runBuffer, copyRun(data, i, runEnd));
+          }
+          payloadReader.consume(payload, flags);
+          i = runEnd;
+        }
+      } finally {
+        packetCount = 0;
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        read();
+      } catch (IOException | RuntimeException e) {
+        exception = e;
+      } finally {
+        if (remainingPayloadBatchCount.decrementAndGet() == 0) {
+          payloadBatchesRead.open();
+        }
+      }
+    }
+
+    /**
+     * Copies the payloads of the packets from index {@code start} (inclusive) to {@code end}
+     * (exclusive) into the run buffer, and returns the length of the run.
+     */
+    private int copyRun(byte[] data, int start, int end) {
+      int runLength = 0;
+      for (int i = start; i < end; i++) {
+        runLength += packets[3 * i + 1] - packets[3 * i];
+      }
+      if (runBuffer.length < runLength) {
+        runBuffer = new byte[max(runLength, INITIAL_RUN_BUFFER_SIZE)];
+      }
+      int runPosition = 0;
+      for (int i = start; i < end; i++) {
+        int payloadLength = packets[3 * i + 1] - packets[3 * i];
+        System.arraycopy(data, packets[3 * i], runBuffer, runPosition, payloadLength);
+        runPosition += payloadLength;
+      }
+      return runLength;
+    }
+
+    private void add(int payloadPosition, int endOfPacket, int packetHeaderFlags) {
+      if (3 * packetCount == packets.length) {
+        packets = Arrays.copyOf(packets, packets.length * 2);
+      }
+      packets[3 * packetCount] = payloadPosition;
+      packets[3 * packetCount + 1] = endOfPacket;
+      packets[3 * packetCount + 2] = packetHeaderFlags;
+      packetCount++;
+    }
+  }
+
   /** Parses Program Association Table data. */
   private class PatReader implements SectionPayloadReader {
 
@@ -529,14 +828,14 @@ public final class TsExtractor implements Extractor {
           patScratch.skipBits(13); // network_PID (13)
         } else {
           int pid = patScratch.readBits(13);
-          if (tsPayloadReaders.get(pid) == null) {
-            tsPayloadReaders.put(pid, new SectionReader(new PmtReader(pid)));
+          if (tsPayloadReaders[pid] == null) {
+            tsPayloadReaders[pid] = new SectionReader(new PmtReader(pid));
             remainingPmts++;
           }
         }
       }
       if (mode != MODE_HLS) {
-        tsPayloadReaders.remove(TS_PAT_PID);
+        tsPayloadReaders[TS_PAT_PID] = null;
       }
     }
   }
@@ -671,7 +970,7 @@ public final class TsExtractor implements Extractor {
         int trackId = trackIdToPidScratch.keyAt(i);
         int trackPid = trackIdToPidScratch.valueAt(i);
         trackIds.put(trackId, true);
-        trackPids.put(trackPid, true);
+        trackPids[trackPid] = true;
         @Nullable TsPayloadReader reader = trackIdToReaderScratch.valueAt(i);
         if (reader != null) {
           if (reader != id3Reader) {
@@ -680,7 +979,7 @@ public final class TsExtractor implements Extractor {
                 output,
                 new TrackIdGenerator(programNumber, trackId, MAX_PID_PLUS_ONE));
           }
-          tsPayloadReaders.put(trackPid, reader);
+          tsPayloadReaders[trackPid] = reader;
         }
       }
 
@@ -691,7 +990,7 @@ public final class TsExtractor implements Extractor {
           tracksEnded = true;
         }
       } else {
-        tsPayloadReaders.remove(pid);
+        tsPayloadReaders[pid] = null;
         remainingPmts = mode == MODE_SINGLE_PMT ? 0 : remainingPmts - 1;
         if (remainingPmts == 0) {
           output.endTracks();
@@ -677,7 +677,8 @@ public final class NalUnitUtil {
 
     int limit = endOffset - 1;
     // We're looking for the NAL unit start code prefix 0x000001. The value of i tracks the index of
-    // the third byte.
+    // the third byte. This loop reads one byte in three where there's no prefix, which is faster
+    // than reading eight bytes at a time to skip words that contain no zero byte.
     for (int i = startOffset + 2; i < limit; i += 3) {
       if ((data[i] & 0xFE) != 0) {
         // There isn't a NAL prefix here, or at the next two positions. Do nothing and let the
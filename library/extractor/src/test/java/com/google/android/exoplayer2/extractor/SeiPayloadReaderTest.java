@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SeiPayloadReader}. */
+@RunWith(AndroidJUnit4.class)
+public final class SeiPayloadReaderTest {
+
+  @Test
+  public void consumeNalUnit_h264UserDataUnregistered_reportsUnescapedPayload() {
+    byte[] data = Util.getBytesFromHexString("ff0605030000030180");
+    byte[] originalData = data.clone();
+    SeiRecordingTrackOutput output = new SeiRecordingTrackOutput();
+
+    new SeiPayloadReader()
+        .consumeNalUnit(
+            MimeTypes.VIDEO_H264,
+            /* timeUs= */ 1000,
+            data,
+            /* offset= */ 1,
+            /* length= */ 8,
+            output);
+
+    assertThat(output.types).containsExactly(SeiPayloadReader.PAYLOAD_TYPE_USER_DATA_UNREGISTERED);
+    assertThat(output.payloads).containsExactly(Util.getBytesFromHexString("000001"));
+    assertThat(output.timesUs).containsExactly(1000L);
+    assertThat(data).isEqualTo(originalData);
+  }
+
+  @Test
+  public void consumeNalUnit_h265AgoraDefinedData_skipsTwoByteHeader() {
+    byte[] data = Util.getBytesFromHexString("4e016402abcd80");
+    SeiRecordingTrackOutput output = new SeiRecordingTrackOutput();
+
+    new SeiPayloadReader()
+        .consumeNalUnit(
+            MimeTypes.VIDEO_H265,
+            /* timeUs= */ 2000,
+            data,
+            /* offset= */ 0,
+            data.length,
+            output);
+
+    assertThat(output.types).containsExactly(SeiPayloadReader.PAYLOAD_TYPE_AGORA_DEFINED_DATA);
+    assertThat(output.payloads).containsExactly(Util.getBytesFromHexString("abcd"));
+  }
+
+  @Test
+  public void consume_otherPayloadTypes_areNotReported() {
+    ParsableByteArray seiBuffer = new ParsableByteArray(Util.getBytesFromHexString("0102abcd80"));
+    SeiRecordingTrackOutput output = new SeiRecordingTrackOutput();
+
+    new SeiPayloadReader().consume(/* timeUs= */ 0, seiBuffer, output);
+
+    assertThat(output.types).isEmpty();
+  }
+
+  private static final class SeiRecordingTrackOutput implements TrackOutput {
+
+    public final List<Integer> types;
+    public final List<byte[]> payloads;
+    public final List<Long> timesUs;
+
+    public SeiRecordingTrackOutput() {
+      types = new ArrayList<>();
+      payloads = new ArrayList<>();
+      timesUs = new ArrayList<>();
+    }
+
+    @Override
+    public void seiDataView(int type, ParsableByteArray view, long pts) {
+      byte[] payload = new byte[view.bytesLeft()];
+      view.readBytes(payload, /* offset= */ 0, payload.length);
+      types.add(type);
+      payloads.add(payload);
+      timesUs.add(pts);
+    }
+
+    @Override
+    public void format(Format format) {}
+
+    @Override
+    public int sampleData(
+        DataReader input, int length, boolean allowEndOfInput, @SampleDataPart int sampleDataPart) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sampleData(
+        ParsableByteArray data, int length, @SampleDataPart int sampleDataPart) {
+      data.skipBytes(length);
+    }
+
+    @Override
+    public void sampleMetadata(
+        long timeUs,
+        @C.BufferFlags int flags,
+        int size,
+        int offset,
+        @Nullable CryptoData cryptoData) {}
+  }
+}
@@ -15,8 +15,18 @@
  */
 package com.google.android.exoplayer2.extractor.mkv;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.exoplayer2.extractor.SeiPayloadReader;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
@@ -112,4 +122,30 @@ public final class MatroskaExtractorTest {
     ExtractorAsserts.assertBehavior(
         MatroskaExtractor::new, "media/mkv/subsample_encrypted_altref.webm", simulationConfig);
   }
+
+  @Test
+  public void mkvSample_reportsUserDataUnregisteredSei() throws Exception {
+    FakeExtractorOutput output =
+        TestUtil.extractAllSamplesFromFile(
+            new MatroskaExtractor(),
+            ApplicationProvider.getApplicationContext(),
+            "media/mkv/sample.mkv");
+
+    // x264 writes its version and options to a user_data_unregistered SEI in the first frame.
+    List<FakeTrackOutput.SeiData> seiData = output.trackOutputs.get(1).getSeiData();
+    assertThat(seiData).hasSize(1);
+    assertX264UserDataUnregistered(
+        seiData.get(0), "x264 - core 148 r2601 a0cd7d3", /* expectedTimeUs= */ 67000);
+  }
+
+  private static void assertX264UserDataUnregistered(
+      FakeTrackOutput.SeiData seiData, String expectedVersion, long expectedTimeUs) {
+    assertThat(seiData.type).isEqualTo(SeiPayloadReader.PAYLOAD_TYPE_USER_DATA_UNREGISTERED);
+    assertThat(seiData.timeUs).isEqualTo(expectedTimeUs);
+    assertThat(seiData.data).hasLength(681);
+    assertThat(Arrays.copyOf(seiData.data, /* newLength= */ 16))
+        .isEqualTo(Util.getBytesFromHexString("dc45e9bde6d948b7962cd820d923eeef"));
+    assertThat(Util.fromUtf8Bytes(seiData.data, /* offset= */ 16, expectedVersion.length()))
+        .isEqualTo(expectedVersion);
+  }
 }
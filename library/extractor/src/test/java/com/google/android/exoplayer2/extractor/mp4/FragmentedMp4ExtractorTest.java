@@ -15,11 +15,20 @@
  */
 package com.google.android.exoplayer2.extractor.mp4;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.SeiPayloadReader;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
@@ -122,6 +131,22 @@ public final class FragmentedMp4ExtractorTest {
         simulationConfig);
   }
 
+  @Test
+  public void sample_reportsUserDataUnregisteredSei() throws Exception {
+    FakeExtractorOutput output =
+        TestUtil.extractAllSamplesFromFile(
+            new FragmentedMp4Extractor(),
+            ApplicationProvider.getApplicationContext(),
+            "media/mp4/sample_fragmented.mp4");
+
+    // x264 writes its version and options to a user_data_unregistered SEI in the first frame.
+    List<FakeTrackOutput.SeiData> seiData = output.trackOutputs.get(0).getSeiData();
+    assertThat(seiData).hasSize(1);
+    assertX264UserDataUnregistered(
+        seiData.get(0), "x264 - core 142 r2389 956c8d8", /* expectedTimeUs= */ 66733);
+    assertThat(output.trackOutputs.get(1).getSeiData()).isEmpty();
+  }
+
   private static ExtractorFactory getExtractorFactory(final List<Format> closedCaptionFormats) {
     return () ->
         new FragmentedMp4Extractor(
@@ -130,4 +155,15 @@ public final class FragmentedMp4ExtractorTest {
             /* sideloadedTrack= */ null,
             closedCaptionFormats);
   }
+
+  private static void assertX264UserDataUnregistered(
+      FakeTrackOutput.SeiData seiData, String expectedVersion, long expectedTimeUs) {
+    assertThat(seiData.type).isEqualTo(SeiPayloadReader.PAYLOAD_TYPE_USER_DATA_UNREGISTERED);
+    assertThat(seiData.timeUs).isEqualTo(expectedTimeUs);
+    assertThat(seiData.data).hasLength(681);
+    assertThat(Arrays.copyOf(seiData.data, /* newLength= */ 16))
+        .isEqualTo(Util.getBytesFromHexString("dc45e9bde6d948b7962cd820d923eeef"));
+    assertThat(Util.fromUtf8Bytes(seiData.data, /* offset= */ 16, expectedVersion.length()))
+        .isEqualTo(expectedVersion);
+  }
 }
@@ -15,8 +15,13 @@
  */
 package com.google.android.exoplayer2.extractor.mp4;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
+import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
+import java.io.File;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
@@ -39,6 +44,49 @@ public final class Mp4ExtractorTest {
     ExtractorAsserts.assertBehavior(Mp4Extractor::new, "media/mp4/sample.mp4", simulationConfig);
   }
 
+  @Test
+  public void mp4SampleWithSampleTableCache() throws Exception {
+    Mp4SampleTableCache sampleTableCache = new Mp4SampleTableCache();
+    ExtractorAsserts.assertBehavior(
+        () -> {
+          Mp4Extractor mp4Extractor = new Mp4Extractor();
+          mp4Extractor.experimentalSetSampleTableCache(sampleTableCache, "sample.mp4");
+          return mp4Extractor;
+        },
+        "media/mp4/sample.mp4",
+        simulationConfig);
+    // Streams of unknown length aren't cached.
+    if (!simulationConfig.simulateUnknownLength) {
+      assertThat(sampleTableCache.size()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void mp4SampleWithPersistedMoovAtom() throws Exception {
+    File moovDirectory =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    try {
+      ExtractorAsserts.assertBehavior(
+          () -> {
+            // A new cache holds no entries, so every extractor after the first one parses the
+            // moov atom persisted by the first one.
+            Mp4Extractor mp4Extractor = new Mp4Extractor();
+            mp4Extractor.experimentalSetSampleTableCache(
+                new Mp4SampleTableCache(Mp4SampleTableCache.DEFAULT_MAX_ENTRIES, moovDirectory),
+                "sample.mp4",
+                /* validator= */ "\"etag\"");
+            return mp4Extractor;
+          },
+          "media/mp4/sample.mp4",
+          simulationConfig);
+      // Streams of unknown length aren't cached.
+      assertThat(moovDirectory.listFiles())
+          .hasLength(simulationConfig.simulateUnknownLength ? 0 : 1);
+    } finally {
+      Util.recursiveDelete(moovDirectory);
+    }
+  }
+
   @Test
   public void mp4SampleWithSlowMotionMetadata() throws Exception {
     ExtractorAsserts.assertBehavior(
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link Mp4SampleTableCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class Mp4SampleTableCacheTest {
+
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+  private static final String ETAG_1 = "\"etag1\"";
+  private static final String ETAG_2 = "\"etag2\"";
+
+  private File moovDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+    moovDirectory =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(moovDirectory);
+  }
+
+  @Test
+  public void get_withDifferentLengthValidatorOrFlags_returnsNull() {
+    Mp4SampleTableCache sampleTableCache = new Mp4SampleTableCache();
+    Mp4SampleTableCache.Entry entry = createEntry(/* inputLength= */ 100, ETAG_1, /* flags= */ 0);
+
+    sampleTableCache.put(KEY_1, entry);
+
+    assertThat(sampleTableCache.get(KEY_1, /* inputLength= */ 100, ETAG_1, /* flags= */ 0))
+        .isSameInstanceAs(entry);
+    assertThat(sampleTableCache.get(KEY_1, /* inputLength= */ 101, ETAG_1, /* flags= */ 0))
+        .isNull();
+    assertThat(sampleTableCache.get(KEY_1, /* inputLength= */ 100, ETAG_2, /* flags= */ 0))
+        .isNull();
+    assertThat(
+            sampleTableCache.get(
+                KEY_1, /* inputLength= */ 100, /* validator= */ null, /* flags= */ 0))
+        .isNull();
+    assertThat(
+            sampleTableCache.get(
+                KEY_1,
+                /* inputLength= */ 100,
+                ETAG_1,
+                Mp4Extractor.FLAG_WORKAROUND_IGNORE_EDIT_LISTS))
+        .isNull();
+    assertThat(sampleTableCache.get(KEY_2, /* inputLength= */ 100, ETAG_1, /* flags= */ 0))
+        .isNull();
+  }
+
+  @Test
+  public void put_exceedingMaxEntries_evictsLeastRecentlyUsedEntry() {
+    Mp4SampleTableCache sampleTableCache = new Mp4SampleTableCache(/* maxEntries= */ 2);
+    sampleTableCache.put(KEY_1, createEntry(/* inputLength= */ 100, /* flags= */ 0));
+    sampleTableCache.put(KEY_2, createEntry(/* inputLength= */ 100, /* flags= */ 0));
+    // Makes KEY_1 the most recently used.
+    sampleTableCache.get(KEY_1, /* inputLength= */ 100, /* flags= */ 0);
+
+    sampleTableCache.put("key3", createEntry(/* inputLength= */ 100, /* flags= */ 0));
+
+    assertThat(sampleTableCache.size()).isEqualTo(2);
+    assertThat(sampleTableCache.get(KEY_1, /* inputLength= */ 100, /* flags= */ 0)).isNotNull();
+    assertThat(sampleTableCache.get(KEY_2, /* inputLength= */ 100, /* flags= */ 0)).isNull();
+  }
+
+  @Test
+  public void getMoovAtom_fromNewInstance_returnsPersistedMoovAtomForSameLengthAndValidator() {
+    byte[] data = new byte[] {0, 0, 0, 8, 'm', 'o', 'o', 'v'};
+    new Mp4SampleTableCache(Mp4SampleTableCache.DEFAULT_MAX_ENTRIES, moovDirectory)
+        .putMoovAtom(
+            KEY_1,
+            new Mp4SampleTableCache.MoovAtom(
+                /* inputLength= */ 100, ETAG_1, /* fileType= */ 1, /* position= */ 92, data));
+
+    Mp4SampleTableCache sampleTableCache =
+        new Mp4SampleTableCache(Mp4SampleTableCache.DEFAULT_MAX_ENTRIES, moovDirectory);
+    Mp4SampleTableCache.MoovAtom moovAtom =
+        sampleTableCache.getMoovAtom(KEY_1, /* inputLength= */ 100, ETAG_1);
+
+    assertThat(moovAtom).isNotNull();
+    assertThat(moovAtom.fileType).isEqualTo(1);
+    assertThat(moovAtom.position).isEqualTo(92);
+    assertThat(moovAtom.data).isEqualTo(data);
+    assertThat(sampleTableCache.getMoovAtom(KEY_1, /* inputLength= */ 101, ETAG_1)).isNull();
+    assertThat(sampleTableCache.getMoovAtom(KEY_1, /* inputLength= */ 100, ETAG_2)).isNull();
+    assertThat(sampleTableCache.getMoovAtom(KEY_1, /* inputLength= */ 100, /* validator= */ null))
+        .isNull();
+    assertThat(sampleTableCache.getMoovAtom(KEY_2, /* inputLength= */ 100, ETAG_1)).isNull();
+  }
+
+  @Test
+  public void remove_deletesPersistedMoovAtom() {
+    Mp4SampleTableCache sampleTableCache =
+        new Mp4SampleTableCache(Mp4SampleTableCache.DEFAULT_MAX_ENTRIES, moovDirectory);
+    sampleTableCache.putMoovAtom(KEY_1, createMoovAtom(/* inputLength= */ 100));
+    sampleTableCache.putMoovAtom(KEY_2, createMoovAtom(/* inputLength= */ 100));
+
+    sampleTableCache.remove(KEY_1);
+
+    assertThat(sampleTableCache.getMoovAtom(KEY_1, /* inputLength= */ 100, ETAG_1)).isNull();
+    assertThat(sampleTableCache.getMoovAtom(KEY_2, /* inputLength= */ 100, ETAG_1)).isNotNull();
+  }
+
+  @Test
+  public void clear_deletesPersistedMoovAtoms() {
+    Mp4SampleTableCache sampleTableCache =
+        new Mp4SampleTableCache(Mp4SampleTableCache.DEFAULT_MAX_ENTRIES, moovDirectory);
+    sampleTableCache.putMoovAtom(KEY_1, createMoovAtom(/* inputLength= */ 100));
+    sampleTableCache.putMoovAtom(KEY_2, createMoovAtom(/* inputLength= */ 100));
+
+    sampleTableCache.clear();
+
+    assertThat(sampleTableCache.getMoovAtom(KEY_1, /* inputLength= */ 100, ETAG_1)).isNull();
+    assertThat(sampleTableCache.getMoovAtom(KEY_2, /* inputLength= */ 100, ETAG_1)).isNull();
+    assertThat(moovDirectory.listFiles()).isEmpty();
+  }
+
+  private static Mp4SampleTableCache.Entry createEntry(long inputLength, int flags) {
+    return createEntry(inputLength, /* validator= */ null, flags);
+  }
+
+  private static Mp4SampleTableCache.Entry createEntry(
+      long inputLength, @Nullable String validator, int flags) {
+    return new Mp4SampleTableCache.Entry(
+        inputLength,
+        validator,
+        flags,
+        /* trackSampleTables= */ ImmutableList.of(),
+        /* encoderDelay= */ Format.NO_VALUE,
+        /* encoderPadding= */ Format.NO_VALUE,
+        /* udtaMetaMetadata= */ null,
+        /* smtaMetadata= */ null,
+        /* mdtaMetadata= */ null);
+  }
+
+  private static Mp4SampleTableCache.MoovAtom createMoovAtom(long inputLength) {
+    return new Mp4SampleTableCache.MoovAtom(
+        inputLength,
+        ETAG_1,
+        /* fileType= */ 0,
+        /* position= */ 0,
+        /* data= */ new byte[] {0, 0, 0, 8, 'm', 'o', 'o', 'v'});
+  }
+}
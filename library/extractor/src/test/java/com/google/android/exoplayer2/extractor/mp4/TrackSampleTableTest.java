@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link TrackSampleTable}. */
+@RunWith(AndroidJUnit4.class)
+public final class TrackSampleTableTest {
+
+  private static final int SAMPLE_COUNT = 200;
+
+  @Test
+  public void getters_returnSampleValues() {
+    long[] offsets = new long[SAMPLE_COUNT];
+    int[] sizes = new int[SAMPLE_COUNT];
+    long[] timestampsUs = new long[SAMPLE_COUNT];
+    int[] flags = new int[SAMPLE_COUNT];
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      offsets[i] = 5_000_000_000L + i * 1000L;
+      sizes[i] = 100 + i;
+      timestampsUs[i] = i * 33_333L;
+      flags[i] = i % 30 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+
+    TrackSampleTable sampleTable =
+        createSampleTable(offsets, sizes.clone(), timestampsUs, flags.clone());
+
+    assertThat(sampleTable.sampleCount).isEqualTo(SAMPLE_COUNT);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      assertThat(sampleTable.getOffset(i)).isEqualTo(offsets[i]);
+      assertThat(sampleTable.getSize(i)).isEqualTo(sizes[i]);
+      assertThat(sampleTable.getTimestampUs(i)).isEqualTo(timestampsUs[i]);
+      int expectedFlags = i == SAMPLE_COUNT - 1 ? flags[i] | C.BUFFER_FLAG_LAST_SAMPLE : flags[i];
+      assertThat(sampleTable.getFlags(i)).isEqualTo(expectedFlags);
+    }
+  }
+
+  @Test
+  public void getters_withValuesNotFittingPackedArray_returnSampleValues() {
+    long[] offsets = new long[SAMPLE_COUNT];
+    int[] sizes = new int[SAMPLE_COUNT];
+    long[] timestampsUs = new long[SAMPLE_COUNT];
+    int[] flags = new int[SAMPLE_COUNT];
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      // Offsets that are further apart than Integer.MAX_VALUE.
+      offsets[i] = i * 3_000_000_000L;
+      sizes[i] = 100;
+      timestampsUs[i] = i * 33_333L;
+      flags[i] = C.BUFFER_FLAG_KEY_FRAME | C.BUFFER_FLAG_ENCRYPTED;
+    }
+
+    TrackSampleTable sampleTable =
+        createSampleTable(offsets, sizes, timestampsUs, flags.clone());
+
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      assertThat(sampleTable.getOffset(i)).isEqualTo(offsets[i]);
+      assertThat(sampleTable.getSize(i)).isEqualTo(100);
+      int expectedFlags = i == SAMPLE_COUNT - 1 ? flags[i] | C.BUFFER_FLAG_LAST_SAMPLE : flags[i];
+      assertThat(sampleTable.getFlags(i)).isEqualTo(expectedFlags);
+    }
+  }
+
+  @Test
+  public void getSynchronizationSampleIndices_returnsKeyFrames() {
+    long[] offsets = new long[SAMPLE_COUNT];
+    int[] sizes = new int[SAMPLE_COUNT];
+    long[] timestampsUs = new long[SAMPLE_COUNT];
+    int[] flags = new int[SAMPLE_COUNT];
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      offsets[i] = i * 100L;
+      sizes[i] = 100;
+      timestampsUs[i] = i * 1000L;
+      flags[i] = i % 70 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+
+    TrackSampleTable sampleTable = createSampleTable(offsets, sizes, timestampsUs, flags);
+
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(/* timeUs= */ 69_000))
+        .isEqualTo(0);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(/* timeUs= */ 70_000))
+        .isEqualTo(70);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(/* timeUs= */ 150_500))
+        .isEqualTo(140);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(/* timeUs= */ 70_500))
+        .isEqualTo(140);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(/* timeUs= */ 150_000))
+        .isEqualTo(C.INDEX_UNSET);
+  }
+
+  private static TrackSampleTable createSampleTable(
+      long[] offsets, int[] sizes, long[] timestampsUs, int[] flags) {
+    Track track =
+        new Track(
+            /* id= */ 1,
+            C.TRACK_TYPE_VIDEO,
+            /* timescale= */ 1_000_000,
+            /* movieTimescale= */ 1_000_000,
+            /* durationUs= */ C.TIME_UNSET,
+            new Format.Builder().build(),
+            Track.TRANSFORMATION_NONE,
+            /* sampleDescriptionEncryptionBoxes= */ null,
+            /* nalUnitLengthFieldLength= */ 4,
+            /* editListDurations= */ null,
+            /* editListMediaTimes= */ null);
+    int maximumSize = 0;
+    for (int size : sizes) {
+      maximumSize = Math.max(maximumSize, size);
+    }
+    return new TrackSampleTable(
+        track,
+        offsets,
+        sizes,
+        maximumSize,
+        timestampsUs,
+        flags,
+        /* durationUs= */ timestampsUs[timestampsUs.length - 1]);
+  }
+}
@@ -16,7 +16,9 @@
 package com.google.android.exoplayer2.extractor.ts;
 
 import static com.google.android.exoplayer2.extractor.ts.DefaultTsPayloadReaderFactory.FLAG_DETECT_ACCESS_UNITS;
+import static com.google.android.exoplayer2.extractor.ts.TsExtractor.TS_PACKET_SIZE;
 import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
 
 import android.util.SparseArray;
 import androidx.annotation.Nullable;
@@ -36,7 +38,16 @@ import com.google.android.exoplayer2.testutil.FakeTrackOutput;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
+import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
@@ -47,6 +58,12 @@ import org.robolectric.ParameterizedRobolectricTestRunner.Parameters;
 @RunWith(ParameterizedRobolectricTestRunner.class)
 public final class TsExtractorTest {
 
+  private static final int PID_1 = 0x100;
+  private static final int PID_2 = 0x101;
+  /** A PES header with an unset packet length and no timestamps. */
+  private static final byte[] PES_HEADER =
+      TestUtil.createByteArray(0x00, 0x00, 0x01, 0xE0, 0x00, 0x00, 0x80, 0x00, 0x00);
+
   @Parameters(name = "{0}")
   public static ImmutableList<ExtractorAsserts.SimulationConfig> params() {
     return ExtractorAsserts.configs();
@@ -71,6 +88,23 @@ public final class TsExtractorTest {
         TsExtractor::new, "media/ts/sample_h264_mpeg_audio.ts", simulationConfig);
   }
 
+  @Test
+  public void sampleWithH264AndMpegAudio_withPayloadReadingExecutor() throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(/* nThreads= */ 2);
+    try {
+      ExtractorAsserts.assertBehavior(
+          () -> {
+            TsExtractor extractor = new TsExtractor();
+            extractor.experimentalSetPayloadReadingExecutor(executorService);
+            return extractor;
+          },
+          "media/ts/sample_h264_mpeg_audio.ts",
+          simulationConfig);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
   @Test
   public void sampleWithH264NoAccessUnitDelimiters() throws Exception {
     ExtractorAsserts.assertBehavior(
@@ -210,6 +244,177 @@ public final class TsExtractorTest {
     assertThat(factory.sdtReader.consumedSdts).isEqualTo(2);
   }
 
+  @Test
+  public void read_withoutPayloadReadingExecutor_readsAllBufferedPacketsInEachCall()
+      throws Exception {
+    byte[] data =
+        TestUtil.getByteArray(
+            ApplicationProvider.getApplicationContext(), "media/ts/sample_h264_mpeg_audio.ts");
+    TsExtractor tsExtractor = new TsExtractor();
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(data)
+            .setSimulateIOErrors(false)
+            .setSimulateUnknownLength(false)
+            .setSimulatePartialReads(false)
+            .build();
+    tsExtractor.init(new FakeExtractorOutput());
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readCount = 0;
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = tsExtractor.read(input, seekPositionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) seekPositionHolder.position);
+      }
+      readCount++;
+    }
+
+    assertThat(readCount).isLessThan(data.length / TS_PACKET_SIZE / 4);
+  }
+
+  @Test
+  public void read_batchesAcrossPesPackets_readsAllPayloads() throws Exception {
+    byte[][] bodies1 = buildPesBodies(/* seed= */ 1);
+    byte[][] bodies2 = buildPesBodies(/* seed= */ 2);
+    byte[] data =
+        interleave(
+            new TsPacketBuilder(PID_1).buildPesPackets(bodies1),
+            new TsPacketBuilder(PID_2).buildPesPackets(bodies2));
+
+    ImmutableList<List<String>> expectedEvents =
+        ImmutableList.of(buildExpectedEvents(bodies1), buildExpectedEvents(bodies2));
+    assertThat(readPesEvents(data, /* executor= */ null)).isEqualTo(expectedEvents);
+    assertThat(readPesEventsWithExecutor(data)).isEqualTo(expectedEvents);
+  }
+
+  @Test
+  public void read_withDiscontinuity_readsPayloadsUpToDiscontinuity() throws Exception {
+    byte[][] bodies1 = buildPesBodies(/* seed= */ 1);
+    byte[][] bodies2 = buildPesBodies(/* seed= */ 2);
+    List<byte[]> packets1 = new TsPacketBuilder(PID_1).buildPesPackets(bodies1);
+    // Drop the third TS packet of the second PES packet.
+    int droppedPacketIndex = getTsPacketCount(bodies1[0]) + 2;
+    packets1.remove(droppedPacketIndex);
+    byte[] data = interleave(packets1, new TsPacketBuilder(PID_2).buildPesPackets(bodies2));
+
+    int bytesBeforeDiscontinuity = 2 * (TS_PACKET_SIZE - 4) - PES_HEADER.length;
+    ImmutableList<String> expectedEvents1 =
+        ImmutableList.of(
+            "started",
+            Util.toHexString(bodies1[0]),
+            "finished",
+            "started",
+            Util.toHexString(Arrays.copyOf(bodies1[1], bytesBeforeDiscontinuity)),
+            "seek",
+            "started",
+            Util.toHexString(bodies1[2]));
+    ImmutableList<List<String>> expectedEvents =
+        ImmutableList.of(expectedEvents1, buildExpectedEvents(bodies2));
+    assertThat(readPesEvents(data, /* executor= */ null)).isEqualTo(expectedEvents);
+    assertThat(readPesEventsWithExecutor(data)).isEqualTo(expectedEvents);
+  }
+
+  @Test
+  public void read_withPartialFinalPacket_readsCompletePackets() throws Exception {
+    byte[][] bodies1 = buildPesBodies(/* seed= */ 1);
+    byte[][] bodies2 = buildPesBodies(/* seed= */ 2);
+    TsPacketBuilder packetBuilder1 = new TsPacketBuilder(PID_1);
+    byte[] packets =
+        interleave(
+            packetBuilder1.buildPesPackets(bodies1),
+            new TsPacketBuilder(PID_2).buildPesPackets(bodies2));
+    // End the input part way through a TS packet that starts another PES packet.
+    byte[] partialPacket =
+        packetBuilder1.buildPesPackets(TestUtil.buildTestData(/* length= */ 300)).get(0);
+    byte[] data = Arrays.copyOf(packets, packets.length + TS_PACKET_SIZE / 2);
+    System.arraycopy(partialPacket, 0, data, packets.length, TS_PACKET_SIZE / 2);
+
+    ImmutableList<List<String>> expectedEvents =
+        ImmutableList.of(buildExpectedEvents(bodies1), buildExpectedEvents(bodies2));
+    assertThat(readPesEvents(data, /* executor= */ null)).isEqualTo(expectedEvents);
+    assertThat(readPesEventsWithExecutor(data)).isEqualTo(expectedEvents);
+  }
+
+  private ImmutableList<List<String>> readPesEventsWithExecutor(byte[] data) throws IOException {
+    ExecutorService executorService = Executors.newFixedThreadPool(/* nThreads= */ 2);
+    try {
+      return readPesEvents(data, executorService);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * Returns the events of the elementary stream readers of {@link #PID_1} and {@link #PID_2} when
+   * the data is extracted.
+   */
+  private ImmutableList<List<String>> readPesEvents(byte[] data, @Nullable Executor executor)
+      throws IOException {
+    RecordingPesReaderFactory factory = new RecordingPesReaderFactory();
+    TsExtractor tsExtractor =
+        new TsExtractor(
+            TsExtractor.MODE_MULTI_PMT,
+            new TimestampAdjuster(TimestampAdjuster.MODE_NO_OFFSET),
+            factory);
+    tsExtractor.experimentalSetPayloadReadingExecutor(executor);
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(data)
+            .setSimulateIOErrors(false)
+            .setSimulateUnknownLength(simulationConfig.simulateUnknownLength)
+            .setSimulatePartialReads(simulationConfig.simulatePartialReads)
+            .build();
+    tsExtractor.init(new FakeExtractorOutput());
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = tsExtractor.read(input, seekPositionHolder);
+      assertThat(readResult).isNotEqualTo(Extractor.RESULT_SEEK);
+    }
+    return ImmutableList.of(
+        factory.esReaders.get(PID_1).getEvents(), factory.esReaders.get(PID_2).getEvents());
+  }
+
+  /** Returns the bodies of three PES packets, which span several TS packets. */
+  private static byte[][] buildPesBodies(int seed) {
+    return new byte[][] {
+      TestUtil.buildTestData(/* length= */ 600, seed),
+      TestUtil.buildTestData(/* length= */ 1000, seed + 1),
+      TestUtil.buildTestData(/* length= */ 50, seed + 2)
+    };
+  }
+
+  private static ImmutableList<String> buildExpectedEvents(byte[][] pesBodies) {
+    ImmutableList.Builder<String> events = ImmutableList.builder();
+    for (int i = 0; i < pesBodies.length; i++) {
+      events.add("started").add(Util.toHexString(pesBodies[i]));
+      // The length of the PES packets is unset, so the last one is never finished.
+      if (i < pesBodies.length - 1) {
+        events.add("finished");
+      }
+    }
+    return events.build();
+  }
+
+  private static int getTsPacketCount(byte[] pesBody) {
+    return Util.ceilDivide(PES_HEADER.length + pesBody.length, TS_PACKET_SIZE - 4);
+  }
+
+  /** Returns the TS packets of two streams, alternating between them whilst both have packets. */
+  private static byte[] interleave(List<byte[]> packets1, List<byte[]> packets2) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (int i = 0; i < packets1.size() || i < packets2.size(); i++) {
+      if (i < packets1.size()) {
+        output.write(packets1.get(i), /* off= */ 0, TS_PACKET_SIZE);
+      }
+      if (i < packets2.size()) {
+        output.write(packets2.get(i), /* off= */ 0, TS_PACKET_SIZE);
+      }
+    }
+    return output.toByteArray();
+  }
+
   private static final class CustomTsPayloadReaderFactory implements TsPayloadReader.Factory {
 
     private final boolean provideSdtReader;
@@ -332,4 +537,141 @@ public final class TsExtractorTest {
       consumedSdts++;
     }
   }
+
+  /** Builds the TS packets of a single stream. */
+  private static final class TsPacketBuilder {
+
+    private static final int MAX_PAYLOAD_SIZE = TS_PACKET_SIZE - 4;
+
+    private final int pid;
+    private int continuityCounter;
+
+    public TsPacketBuilder(int pid) {
+      this.pid = pid;
+    }
+
+    /** Returns the TS packets carrying PES packets with the given bodies. */
+    public List<byte[]> buildPesPackets(byte[]... pesBodies) {
+      List<byte[]> packets = new ArrayList<>();
+      for (byte[] pesBody : pesBodies) {
+        byte[] pesPacket = Arrays.copyOf(PES_HEADER, PES_HEADER.length + pesBody.length);
+        System.arraycopy(pesBody, 0, pesPacket, PES_HEADER.length, pesBody.length);
+        int position = 0;
+        while (position < pesPacket.length) {
+          int payloadSize = min(MAX_PAYLOAD_SIZE, pesPacket.length - position);
+          if (payloadSize == MAX_PAYLOAD_SIZE - 1) {
+            // Leave room for the adaptation field flags.
+            payloadSize--;
+          }
+          packets.add(
+              buildTsPacket(
+                  /* payloadUnitStart= */ position == 0,
+                  Arrays.copyOfRange(pesPacket, position, position + payloadSize)));
+          position += payloadSize;
+        }
+      }
+      return packets;
+    }
+
+    private byte[] buildTsPacket(boolean payloadUnitStart, byte[] payload) {
+      byte[] packet = new byte[TS_PACKET_SIZE];
+      packet[0] = TsExtractor.TS_SYNC_BYTE;
+      packet[1] = (byte) ((payloadUnitStart ? 0x40 : 0) | (pid >> 8));
+      packet[2] = (byte) pid;
+      if (payload.length < MAX_PAYLOAD_SIZE) {
+        // Fill the rest of the packet with an adaptation field of stuffing bytes.
+        packet[3] = (byte) (0x30 | continuityCounter);
+        packet[4] = (byte) (MAX_PAYLOAD_SIZE - 1 - payload.length); // adaptation_field_length
+        Arrays.fill(packet, 6, TS_PACKET_SIZE - payload.length, (byte) 0xFF);
+      } else {
+        packet[3] = (byte) (0x10 | continuityCounter);
+      }
+      System.arraycopy(payload, 0, packet, TS_PACKET_SIZE - payload.length, payload.length);
+      continuityCounter = (continuityCounter + 1) & 0xF;
+      return packet;
+    }
+  }
+
+  /** Provides {@link PesReader PesReaders} for {@link #PID_1} and {@link #PID_2} initially. */
+  private static final class RecordingPesReaderFactory implements TsPayloadReader.Factory {
+
+    private final SparseArray<RecordingEsReader> esReaders;
+
+    public RecordingPesReaderFactory() {
+      esReaders = new SparseArray<>();
+    }
+
+    @Override
+    public SparseArray<TsPayloadReader> createInitialPayloadReaders() {
+      SparseArray<TsPayloadReader> payloadReaders = new SparseArray<>();
+      for (int pid : new int[] {PID_1, PID_2}) {
+        RecordingEsReader esReader = new RecordingEsReader();
+        PesReader pesReader = new PesReader(esReader);
+        pesReader.init(
+            new TimestampAdjuster(TimestampAdjuster.MODE_NO_OFFSET),
+            new FakeExtractorOutput(),
+            new TrackIdGenerator(/* firstTrackId= */ pid, /* trackIdIncrement= */ 1));
+        esReaders.put(pid, esReader);
+        payloadReaders.put(pid, pesReader);
+      }
+      return payloadReaders;
+    }
+
+    @Override
+    @Nullable
+    public TsPayloadReader createPayloadReader(int streamType, EsInfo esInfo) {
+      return null;
+    }
+  }
+
+  /** Records the calls made by a {@link PesReader}, merging the data of consecutive calls. */
+  private static final class RecordingEsReader implements ElementaryStreamReader {
+
+    private final List<String> events;
+    private final ByteArrayOutputStream data;
+
+    public RecordingEsReader() {
+      events = new ArrayList<>();
+      data = new ByteArrayOutputStream();
+    }
+
+    @Override
+    public void seek() {
+      flushData();
+      events.add("seek");
+    }
+
+    @Override
+    public void createTracks(ExtractorOutput extractorOutput, TrackIdGenerator idGenerator) {}
+
+    @Override
+    public void packetStarted(long pesTimeUs, @TsPayloadReader.Flags int flags) {
+      flushData();
+      events.add("started");
+    }
+
+    @Override
+    public void consume(ParsableByteArray data) {
+      this.data.write(data.getData(), data.getPosition(), data.bytesLeft());
+      data.skipBytes(data.bytesLeft());
+    }
+
+    @Override
+    public void packetFinished() {
+      flushData();
+      events.add("finished");
+    }
+
+    public List<String> getEvents() {
+      flushData();
+      return events;
+    }
+
+    private void flushData() {
+      if (data.size() > 0) {
+        events.add(Util.toHexString(data.toByteArray()));
+        data.reset();
+      }
+    }
+  }
 }
@@ -65,6 +65,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.upstream.LoaderExecutor;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -798,7 +799,10 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     loadingChunk = loadable;
     long elapsedRealtimeMs =
         loader.startLoading(
-            loadable, this, loadErrorHandlingPolicy.getMinimumLoadableRetryCount(loadable.type));
+            loadable,
+            this,
+            loadErrorHandlingPolicy.getMinimumLoadableRetryCount(loadable.type),
+            LoaderExecutor.getLoadPriority(trackType, loadPositionUs - positionUs));
     mediaSourceEventDispatcher.loadStarted(
         new LoadEventInfo(loadable.loadTaskId, loadable.dataSpec, elapsedRealtimeMs),
         loadable.type,
@@ -1178,16 +1182,10 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   }
 
   @Override
-  public void onSeiDataNotify(int type, ParsableByteArray data, long pts){
-
-    handler.post(()->{
-
-      if(null != callback){
-        callback.onSeiDataNotify(type, data, pts);
-      }
-
-    });
-
+  public void onSeiDataNotify(int type, ParsableByteArray data, long pts) {
+    // Called by the loading thread. The player queues SEI data without blocking, so it is forwarded
+    // directly rather than posting a message per item to the playback thread.
+    callback.onSeiDataNotify(type, data, pts);
   }
 
   // Called by the loading thread.
@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
 import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.SeiDataItem;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
 import com.google.android.exoplayer2.extractor.SeekMap;
@@ -35,6 +36,7 @@ import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.offline.StreamKey;
 import com.google.android.exoplayer2.source.MediaPeriod;
 import com.google.android.exoplayer2.source.SampleQueue;
+import com.google.android.exoplayer2.source.SampleQueue.SeiDataListener;
 import com.google.android.exoplayer2.source.SampleQueue.UpstreamFormatChangedListener;
 import com.google.android.exoplayer2.source.SampleStream;
 import com.google.android.exoplayer2.source.SampleStream.ReadDataResult;
@@ -49,6 +51,7 @@ import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
@@ -480,6 +483,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       implements ExtractorOutput,
           Loader.Callback<RtpDataLoadable>,
           UpstreamFormatChangedListener,
+          SeiDataListener,
           SessionInfoListener,
           PlaybackEventListener {
 
@@ -565,6 +569,18 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       handler.post(RtspMediaPeriod.this::maybeFinishPrepare);
     }
 
+    // SampleQueue.SeiDataListener implementation.
+
+    @Override
+    public void onSeiDataNotify(int type, ParsableByteArray data, long pts) {
+      @Nullable Callback callback = RtspMediaPeriod.this.callback;
+      if (callback != null) {
+        callback.onSeiDataNotify(type, data, pts);
+      } else {
+        SeiDataItem.PAYLOAD_POOL.release(data);
+      }
+    }
+
     // RtspClient.PlaybackEventListener implementation.
 
     @Override
@@ -750,9 +766,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     public RtspLoaderWrapper(
         RtspMediaTrack mediaTrack, int trackId, RtpDataChannel.Factory rtpDataChannelFactory) {
       loadInfo = new RtpLoadInfo(mediaTrack, trackId, rtpDataChannelFactory);
-      loader = new Loader("ExoPlayer:RtspMediaPeriod:RtspLoaderWrapper " + trackId);
+      // RTP loads run until playback ends, so they don't hold a thread of a shared executor.
+      loader =
+          new Loader(
+              "ExoPlayer:RtspMediaPeriod:RtspLoaderWrapper " + trackId, /* executor= */ null);
       sampleQueue = SampleQueue.createWithoutDrm(allocator);
       sampleQueue.setUpstreamFormatChangeListener(internalListener);
+      sampleQueue.setUserDataListener(internalListener);
     }
 
     /**
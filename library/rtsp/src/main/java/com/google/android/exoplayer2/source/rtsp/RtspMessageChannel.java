@@ -128,7 +128,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    */
   public RtspMessageChannel(MessageListener messageListener) {
     this.messageListener = messageListener;
-    this.receiverLoader = new Loader("ExoPlayer:RtspMessageChannel:ReceiverLoader");
+    // The receiver runs until the channel is closed, so it doesn't hold a thread of a shared
+    // executor.
+    this.receiverLoader =
+        new Loader("ExoPlayer:RtspMessageChannel:ReceiverLoader", /* executor= */ null);
     this.interleavedBinaryDataListeners = Collections.synchronizedMap(new HashMap<>());
   }
 
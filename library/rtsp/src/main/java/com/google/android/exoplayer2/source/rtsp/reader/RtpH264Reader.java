@@ -22,10 +22,12 @@ import static com.google.android.exoplayer2.util.Util.castNonNull;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.SeiPayloadReader;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.source.rtsp.RtpPacket;
 import com.google.android.exoplayer2.source.rtsp.RtpPayloadFormat;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.NalUnitUtil;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
@@ -48,6 +50,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
   /** IDR NAL unit type. */
   private static final int NAL_UNIT_TYPE_IDR = 5;
+  /** SEI NAL unit type. */
+  private static final int NAL_UNIT_TYPE_SEI = 6;
 
   /** Scratch for Fragmentation Unit RTP packets. */
   private final ParsableByteArray fuScratchBuffer;
@@ -56,6 +60,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
 
   private final RtpPayloadFormat payloadFormat;
+  private final SeiPayloadReader seiPayloadReader;
 
   private @MonotonicNonNull TrackOutput trackOutput;
   private @C.BufferFlags int bufferFlags;
@@ -71,6 +76,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   public RtpH264Reader(RtpPayloadFormat payloadFormat) {
     this.payloadFormat = payloadFormat;
     fuScratchBuffer = new ParsableByteArray();
+    seiPayloadReader = new SeiPayloadReader();
     firstReceivedTimestamp = C.TIME_UNSET;
     previousSequenceNumber = C.INDEX_UNSET;
   }
@@ -99,9 +105,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
     checkStateNotNull(trackOutput);
     if (rtpH264PacketMode > 0 && rtpH264PacketMode < 24) {
-      processSingleNalUnitPacket(data);
+      processSingleNalUnitPacket(data, timestamp);
     } else if (rtpH264PacketMode == RTP_PACKET_TYPE_STAP_A) {
-      processSingleTimeAggregationPacket(data);
+      processSingleTimeAggregationPacket(data, timestamp);
     } else if (rtpH264PacketMode == RTP_PACKET_TYPE_FU_A) {
       processFragmentationUnitPacket(data, sequenceNumber);
     } else {
@@ -140,7 +146,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * #bufferFlags} and {@link #fragmentedSampleSizeBytes} accordingly.
    */
   @RequiresNonNull("trackOutput")
-  private void processSingleNalUnitPacket(ParsableByteArray data) {
+  private void processSingleNalUnitPacket(ParsableByteArray data, long timestamp) {
     // Example of a Single Nal Unit packet
     //    0                   1                   2                   3
     //    0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
@@ -155,6 +161,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     //    +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
 
     int numBytesInData = data.bytesLeft();
+    maybeConsumeSei(data, data.getPosition(), numBytesInData, timestamp);
     fragmentedSampleSizeBytes += writeStartCode();
     trackOutput.sampleData(data, numBytesInData);
     fragmentedSampleSizeBytes += numBytesInData;
@@ -170,7 +177,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * Sets {@link #bufferFlags} and {@link #fragmentedSampleSizeBytes} accordingly.
    */
   @RequiresNonNull("trackOutput")
-  private void processSingleTimeAggregationPacket(ParsableByteArray data) {
+  private void processSingleTimeAggregationPacket(ParsableByteArray data, long timestamp) {
     //  Example of an STAP-A packet.
     //      0                   1                   2                   3
     //     0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
@@ -198,6 +205,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     int nalUnitLength;
     while (data.bytesLeft() > 4) {
       nalUnitLength = data.readUnsignedShort();
+      maybeConsumeSei(data, data.getPosition(), nalUnitLength, timestamp);
       fragmentedSampleSizeBytes += writeStartCode();
       trackOutput.sampleData(data, nalUnitLength);
       fragmentedSampleSizeBytes += nalUnitLength;
@@ -287,6 +295,22 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     return bytesWritten;
   }
 
+  /**
+   * Extracts user data from the NAL unit of {@code length} bytes at {@code offset} in {@code data}
+   * if it is an SEI NAL unit. The NAL unit is not modified.
+   */
+  @RequiresNonNull("trackOutput")
+  private void maybeConsumeSei(ParsableByteArray data, int offset, int length, long timestamp) {
+    if (length < 2 || (data.getData()[offset] & 0x1F) != NAL_UNIT_TYPE_SEI) {
+      return;
+    }
+    long firstTimestamp =
+        firstReceivedTimestamp == C.TIME_UNSET ? timestamp : firstReceivedTimestamp;
+    long timeUs = toSampleUs(startTimeOffsetUs, timestamp, firstTimestamp);
+    seiPayloadReader.consumeNalUnit(
+        MimeTypes.VIDEO_H264, timeUs, data.getData(), offset, length, trackOutput);
+  }
+
   private static long toSampleUs(
       long startTimeOffsetUs, long rtpTimestamp, long firstReceivedRtpTimestamp) {
     return startTimeOffsetUs
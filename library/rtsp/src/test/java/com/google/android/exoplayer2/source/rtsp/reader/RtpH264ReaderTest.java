@@ -0,0 +1,152 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.rtsp.reader;
+
+import static com.google.android.exoplayer2.util.Util.getBytesFromHexString;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.SeiPayloadReader;
+import com.google.android.exoplayer2.source.rtsp.RtpPacket;
+import com.google.android.exoplayer2.source.rtsp.RtpPayloadFormat;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+/** Unit test for {@link RtpH264Reader}. */
+@RunWith(AndroidJUnit4.class)
+public final class RtpH264ReaderTest {
+
+  /** A user_data_unregistered SEI NAL unit, with a 16 byte UUID followed by 4 bytes of data. */
+  private static final String USER_DATA_UNREGISTERED_SEI_NAL_UNIT =
+      "0605140102030405060708090a0b0c0d0e0f10a1a2a3a480";
+  /** An Agora defined SEI NAL unit with 3 bytes of data. */
+  private static final String AGORA_DEFINED_DATA_SEI_NAL_UNIT = "066403b1b2b380";
+
+  private final RtpPacket frame1SeiPacket =
+      createRtpPacket(
+          /* timestamp= */ 2599168056L,
+          /* sequenceNumber= */ 40289,
+          /* marker= */ false,
+          /* payloadData= */ getBytesFromHexString(USER_DATA_UNREGISTERED_SEI_NAL_UNIT));
+  private final RtpPacket frame1SlicePacket =
+      createRtpPacket(
+          /* timestamp= */ 2599168056L,
+          /* sequenceNumber= */ 40290,
+          /* marker= */ true,
+          /* payloadData= */ getBytesFromHexString("65010203"));
+  private final RtpPacket frame2StapAPacket =
+      createRtpPacket(
+          /* timestamp= */ 2599171056L,
+          /* sequenceNumber= */ 40291,
+          /* marker= */ true,
+          /* payloadData= */ getBytesFromHexString(
+              "18"
+                  + "0007"
+                  + AGORA_DEFINED_DATA_SEI_NAL_UNIT
+                  + "0004"
+                  + "41040506"));
+
+  private static final RtpPayloadFormat H264_FORMAT =
+      new RtpPayloadFormat(
+          new Format.Builder().setSampleMimeType(MimeTypes.VIDEO_H264).build(),
+          /* rtpPayloadType= */ 96,
+          /* clockRate= */ 90_000,
+          /* fmtpParameters= */ ImmutableMap.of());
+
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+
+  private ParsableByteArray packetData;
+
+  private RtpH264Reader h264Reader;
+  private FakeTrackOutput trackOutput;
+  @Mock private ExtractorOutput extractorOutput;
+
+  @Before
+  public void setUp() {
+    packetData = new ParsableByteArray();
+    trackOutput = new FakeTrackOutput(/* deduplicateConsecutiveFormats= */ true);
+    when(extractorOutput.track(anyInt(), anyInt())).thenReturn(trackOutput);
+    h264Reader = new RtpH264Reader(H264_FORMAT);
+    h264Reader.createTracks(extractorOutput, /* trackId= */ 0);
+  }
+
+  @Test
+  public void consume_singleNalUnitAndStapAPackets_reportsSeiPayloads() throws Exception {
+    h264Reader.onReceivingFirstPacket(frame1SeiPacket.timestamp, frame1SeiPacket.sequenceNumber);
+    consume(frame1SeiPacket);
+    consume(frame1SlicePacket);
+    consume(frame2StapAPacket);
+
+    assertThat(trackOutput.getSampleCount()).isEqualTo(2);
+    assertThat(trackOutput.getSampleTimeUs(0)).isEqualTo(0);
+    assertThat(trackOutput.getSampleTimeUs(1)).isEqualTo(33333);
+    List<FakeTrackOutput.SeiData> seiData = trackOutput.getSeiData();
+    assertThat(seiData).hasSize(2);
+    assertThat(seiData.get(0).type)
+        .isEqualTo(SeiPayloadReader.PAYLOAD_TYPE_USER_DATA_UNREGISTERED);
+    assertThat(seiData.get(0).data)
+        .isEqualTo(getBytesFromHexString("0102030405060708090a0b0c0d0e0f10a1a2a3a4"));
+    assertThat(seiData.get(0).timeUs).isEqualTo(0);
+    assertThat(seiData.get(1).type).isEqualTo(SeiPayloadReader.PAYLOAD_TYPE_AGORA_DEFINED_DATA);
+    assertThat(seiData.get(1).data).isEqualTo(getBytesFromHexString("b1b2b3"));
+    assertThat(seiData.get(1).timeUs).isEqualTo(33333);
+  }
+
+  @Test
+  public void consume_seiNalUnit_writesNalUnitToSampleUnchanged() throws Exception {
+    h264Reader.onReceivingFirstPacket(frame1SeiPacket.timestamp, frame1SeiPacket.sequenceNumber);
+    consume(frame1SeiPacket);
+    consume(frame1SlicePacket);
+
+    assertThat(trackOutput.getSampleData(0))
+        .isEqualTo(
+            getBytesFromHexString(
+                "00000001" + USER_DATA_UNREGISTERED_SEI_NAL_UNIT + "00000001" + "65010203"));
+  }
+
+  private void consume(RtpPacket rtpPacket) throws Exception {
+    packetData.reset(rtpPacket.payloadData);
+    h264Reader.consume(
+        packetData,
+        rtpPacket.timestamp,
+        rtpPacket.sequenceNumber,
+        /* rtpMarker= */ rtpPacket.marker);
+  }
+
+  private static RtpPacket createRtpPacket(
+      long timestamp, int sequenceNumber, boolean marker, byte[] payloadData) {
+    return new RtpPacket.Builder()
+        .setTimestamp((int) timestamp)
+        .setSequenceNumber(sequenceNumber)
+        .setMarker(marker)
+        .setPayloadData(payloadData)
+        .build();
+  }
+}
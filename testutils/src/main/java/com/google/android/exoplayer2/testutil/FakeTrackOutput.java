@@ -45,9 +45,27 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
     FakeTrackOutput create(int id, int type);
   }
 
+  /** An SEI payload passed to {@link #seiDataNotify(int, ParsableByteArray, long)}. */
+  public static final class SeiData {
+
+    /** The SEI payload type. */
+    public final int type;
+    /** The SEI payload. */
+    public final byte[] data;
+    /** The presentation time of the access unit carrying the SEI, in microseconds. */
+    public final long timeUs;
+
+    public SeiData(int type, byte[] data, long timeUs) {
+      this.type = type;
+      this.data = data;
+      this.timeUs = timeUs;
+    }
+  }
+
   private final boolean deduplicateConsecutiveFormats;
   private final ArrayList<DumpableSampleInfo> sampleInfos;
   private final ArrayList<Dumpable> dumpables;
+  private final ArrayList<SeiData> seiData;
 
   private byte[] sampleData;
   private int formatCount;
@@ -59,6 +77,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
     this.deduplicateConsecutiveFormats = deduplicateConsecutiveFormats;
     sampleInfos = new ArrayList<>();
     dumpables = new ArrayList<>();
+    seiData = new ArrayList<>();
     sampleData = Util.EMPTY_BYTE_ARRAY;
     formatCount = 0;
     receivedSampleInFormat = true;
@@ -67,6 +86,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
   public void clear() {
     sampleInfos.clear();
     dumpables.clear();
+    seiData.clear();
     sampleData = Util.EMPTY_BYTE_ARRAY;
     formatCount = 0;
     receivedSampleInFormat = true;
@@ -136,6 +156,16 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
         timeUs, flags, sampleData.length - offset - size, sampleData.length - offset, cryptoData);
   }
 
+  @Override
+  public void seiDataNotify(int type, ParsableByteArray data, long pts) {
+    seiData.add(new SeiData(type, Arrays.copyOf(data.getData(), data.limit()), pts));
+  }
+
+  /** Returns the SEI payloads passed to {@link #seiDataNotify(int, ParsableByteArray, long)}. */
+  public List<SeiData> getSeiData() {
+    return Collections.unmodifiableList(seiData);
+  }
+
   public void assertSampleCount(int count) {
     assertThat(sampleInfos).hasSize(count);
   }
@@ -23,6 +23,8 @@ import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.PlayerMessage;
 import com.google.android.exoplayer2.Renderer;
 import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.PlaybackLoopCounters;
+import com.google.android.exoplayer2.SeiDataCounters;
 import com.google.android.exoplayer2.analytics.AnalyticsCollector;
 import com.google.android.exoplayer2.analytics.AnalyticsListener;
 import com.google.android.exoplayer2.audio.AudioAttributes;
@@ -331,6 +333,16 @@ public class StubExoPlayer extends StubPlayer implements ExoPlayer {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public SeiDataCounters getSeiDataCounters() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public PlaybackLoopCounters getPlaybackLoopCounters() {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public void setHandleAudioBecomingNoisy(boolean handleAudioBecomingNoisy) {
     throw new UnsupportedOperationException();
@@ -50,6 +50,7 @@ public class TestExoPlayerBuilder {
   private @MonotonicNonNull Looper looper;
   private long seekBackIncrementMs;
   private long seekForwardIncrementMs;
+  private boolean dynamicSchedulingEnabled;
 
   public TestExoPlayerBuilder(Context context) {
     this.context = context;
@@ -272,6 +273,23 @@ public class TestExoPlayerBuilder {
     return seekForwardIncrementMs;
   }
 
+  /**
+   * Sets whether the player schedules its playback loop from the renderers' durations to progress.
+   * See {@link ExoPlayer.Builder#experimentalSetDynamicSchedulingEnabled(boolean)}.
+   *
+   * @param dynamicSchedulingEnabled Whether dynamic scheduling is enabled.
+   * @return This builder.
+   */
+  public TestExoPlayerBuilder setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    this.dynamicSchedulingEnabled = dynamicSchedulingEnabled;
+    return this;
+  }
+
+  /** Returns whether dynamic scheduling is enabled. */
+  public boolean getDynamicSchedulingEnabled() {
+    return dynamicSchedulingEnabled;
+  }
+
   /** Builds an {@link ExoPlayer} using the provided values or their defaults. */
   public ExoPlayer build() {
     Assertions.checkNotNull(
@@ -304,7 +322,8 @@ public class TestExoPlayerBuilder {
             .setUseLazyPreparation(useLazyPreparation)
             .setLooper(looper)
             .setSeekBackIncrementMs(seekBackIncrementMs)
-            .setSeekForwardIncrementMs(seekForwardIncrementMs);
+            .setSeekForwardIncrementMs(seekForwardIncrementMs)
+            .experimentalSetDynamicSchedulingEnabled(dynamicSchedulingEnabled);
     if (mediaSourceFactory != null) {
       builder.setMediaSourceFactory(mediaSourceFactory);
     }